@@ -3,11 +3,10 @@ package edu.cmu.cs.lti.event_coref.model.graph;
 import com.google.common.collect.HashBasedTable;
 import com.google.common.collect.Table;
 import edu.cmu.cs.lti.learning.feature.mention_pair.extractor.PairFeatureExtractor;
+import edu.cmu.cs.lti.learning.model.FeatureEmitter;
 import edu.cmu.cs.lti.learning.model.FeatureVector;
 import edu.cmu.cs.lti.learning.model.MentionCandidate;
 import edu.cmu.cs.lti.learning.model.NodeKey;
-import gnu.trove.map.TObjectDoubleMap;
-import gnu.trove.map.hash.TObjectDoubleHashMap;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
@@ -30,7 +29,7 @@ public class MentionGraphEdge implements Serializable {
 //    private LabelledMentionGraphEdge realLabelledEdge;
 
     // Features are expensive, only initialized when needed.
-    private TObjectDoubleMap<String> rawFeaturesLabelIndependent;
+    private FeatureVector featuresLabelIndependent;
 
     private Table<NodeKey, NodeKey, LabelledMentionGraphEdge> typedEdges;
 
@@ -74,13 +73,14 @@ public class MentionGraphEdge implements Serializable {
     private void extractNoLabelFeatures(List<MentionCandidate> mentions, NodeKey govKey, NodeKey depKey) {
         int depMentionIndex = hostingGraph.getCandidateIndex(depIdx);
 
-        rawFeaturesLabelIndependent = new TObjectDoubleHashMap<>();
+        featuresLabelIndependent = extractor.newFeatureVector();
+        FeatureEmitter emitter = new FeatureEmitter(featuresLabelIndependent);
 
         if (isRoot()) {
             MentionCandidate mention = mentions.get(depMentionIndex);
-            extractor.extract(mention, rawFeaturesLabelIndependent, depKey);
+            extractor.extract(mention, emitter, depKey);
         } else {
-            extractor.extract(mentions, govKey, depKey, rawFeaturesLabelIndependent);
+            extractor.extract(mentions, govKey, depKey, emitter);
         }
     }
 
@@ -90,28 +90,29 @@ public class MentionGraphEdge implements Serializable {
      * @param mentions
      * @return
      */
-    public TObjectDoubleMap<String> getNodeIndependentFeatures(List<MentionCandidate> mentions, NodeKey govKey,
-                                                               NodeKey depKey) {
-        if (rawFeaturesLabelIndependent == null) {
+    public FeatureVector getNodeIndependentFeatures(List<MentionCandidate> mentions, NodeKey govKey,
+                                                    NodeKey depKey) {
+        if (featuresLabelIndependent == null) {
             extractNoLabelFeatures(mentions, govKey, depKey);
         }
-        return rawFeaturesLabelIndependent;
+        return featuresLabelIndependent;
     }
 
-    public TObjectDoubleMap<String> extractNodeDependentFeatures(List<MentionCandidate> mentions, NodeKey govKey,
-                                                                 NodeKey depKey) {
+    /**
+     * Extract the features depending on the nodes into the given vector.
+     */
+    public void extractNodeDependentFeatures(List<MentionCandidate> mentions, NodeKey govKey, NodeKey depKey,
+                                             FeatureVector featureVector) {
         int depMentionIdx = hostingGraph.getCandidateIndex(depIdx);
 
-        TObjectDoubleMap<String> rawFeaturesNodeDependent = new TObjectDoubleHashMap<>();
+        FeatureEmitter emitter = new FeatureEmitter(featureVector);
 
         if (isRoot()) {
             MentionCandidate mention = mentions.get(depMentionIdx);
-            extractor.extractCandidateRelated(mention, rawFeaturesNodeDependent, depKey);
+            extractor.extractCandidateRelated(mention, emitter, depKey);
         } else {
-            extractor.extractCandidateRelated(mentions, govKey, depKey, rawFeaturesNodeDependent);
+            extractor.extractCandidateRelated(mentions, govKey, depKey, emitter);
         }
-
-        return rawFeaturesNodeDependent;
     }
 
     public LabelledMentionGraphEdge getLabelledEdge(List<MentionCandidate> mentions, NodeKey govKey,
@@ -128,20 +129,9 @@ public class MentionGraphEdge implements Serializable {
         LabelledMentionGraphEdge newEdge = new LabelledMentionGraphEdge(this, govKey, depKey, averageMode, edgeType);
         typedEdges.put(govKey, depKey, newEdge);
 
-        TObjectDoubleMap<String> rawFeaturesNeedLabel = extractNodeDependentFeatures(mentions, govKey, depKey);
-        TObjectDoubleMap<String> rawFeaturesNoLabel = getNodeIndependentFeatures(mentions, govKey, depKey);
-
         FeatureVector featureVector = extractor.newFeatureVector();
-
-        rawFeaturesNoLabel.forEachEntry((featureName, featureValue) -> {
-            featureVector.addFeature(featureName, featureValue);
-            return true;
-        });
-
-        rawFeaturesNeedLabel.forEachEntry((featureName, featureValue) -> {
-            featureVector.addFeature(featureName, featureValue);
-            return true;
-        });
+        extractNodeDependentFeatures(mentions, govKey, depKey, featureVector);
+        featureVector.extend(getNodeIndependentFeatures(mentions, govKey, depKey));
 
         newEdge.setFeatureVector(featureVector);
 
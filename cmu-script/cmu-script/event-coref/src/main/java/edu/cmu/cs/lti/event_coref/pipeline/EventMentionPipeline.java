@@ -28,6 +28,7 @@ import edu.cmu.cs.lti.pipeline.ProcessorWrapper;
 import edu.cmu.cs.lti.script.annotators.SemaforAnnotator;
 import edu.cmu.cs.lti.uima.io.reader.CustomCollectionReaderFactory;
 import edu.cmu.cs.lti.uima.io.reader.RandomizedXmiCollectionReader;
+import edu.cmu.cs.lti.uima.util.CasSerialization;
 import edu.cmu.cs.lti.utils.Configuration;
 import edu.cmu.cs.lti.utils.FileUtils;
 import org.apache.commons.lang.mutable.MutableInt;
@@ -84,6 +85,12 @@ public class EventMentionPipeline {
 
     private boolean useCharOffset;
 
+    // The format of the intermediate stage outputs, the preprocessed data is always XMI.
+    private CasSerialization.Format stageFormat = CasSerialization.Format.XMI;
+
+    // Whether the stages only process the documents whose input or models changed since the last run.
+    private boolean incremental = false;
+
     protected final Logger logger = LoggerFactory.getLogger(getClass());
 
     /**
@@ -131,6 +138,12 @@ public class EventMentionPipeline {
                 config.get("edu.cmu.cs.lti.model.dir"),
                 config.get("edu.cmu.cs.lti.model.event.dir"), config.get("edu.cmu.cs.lti.training.working.dir"),
                 config.get("edu.cmu.cs.lti.test.working.dir"));
+        stageFormat = CasSerialization.Format.fromName(config.getOrElse("edu.cmu.cs.lti.stage.format", "xmi"));
+        logger.info("Intermediate results will be written as " + stageFormat);
+        incremental = config.getBoolean("edu.cmu.cs.lti.stage.incremental", false);
+        if (incremental) {
+            logger.info("Stages will only process new or changed documents.");
+        }
     }
 
     /**
@@ -201,7 +214,7 @@ public class EventMentionPipeline {
 
         File preprocessDir = new File(workingDirPath, preprocessBase);
 
-        if (skipIfExists && preprocessDir.exists()) {
+        if (skipIfExists && !incremental && preprocessDir.exists()) {
             logger.info("Preprocessed data exists, not running.");
             return;
         } else {
@@ -209,12 +222,13 @@ public class EventMentionPipeline {
         }
 
         List<String> preprocessorNames = validatePreprocessors(taskConfig.getList("edu.cmu.cs.lti.preprocessors"));
+        int numThreads = taskConfig.getInt("edu.cmu.cs.lti.preprocess.threads", 1);
 
         final String semaforModelDirectory = generalModelDir + "/semafor_malt_model_20121129";
         final String fanseModelDirectory = generalModelDir + "/fanse_models";
         final String opennlpDirectory = generalModelDir + "/opennlp/en-chunker.bin";
 
-        new BasicPipeline(new ProcessorWrapper() {
+        BasicPipeline pipeline = new BasicPipeline(new ProcessorWrapper() {
             @Override
             public CollectionReaderDescription getCollectionReader() throws ResourceInitializationException {
                 return inputReader;
@@ -269,7 +283,22 @@ public class EventMentionPipeline {
                 }
                 return preprocessors;
             }
-        }, workingDirPath, preprocessBase).runWithOutput();
+        }, workingDirPath, preprocessBase);
+
+        if (incremental) {
+            pipeline.runIncrementalWithOutput();
+        } else if (numThreads > 1) {
+            pipeline.runParallelWithOutput(numThreads);
+        } else {
+            pipeline.runWithOutput();
+        }
+    }
+
+    /**
+     * Run a stage with output, incrementally if configured so.
+     */
+    private CollectionReaderDescription runStage(BasicPipeline pipeline) throws UIMAException, IOException {
+        return incremental ? pipeline.runIncrementalWithOutput() : pipeline.runWithOutput();
     }
 
     private List<String> validatePreprocessors(String[] preprocessorNames) {
@@ -330,8 +359,8 @@ public class EventMentionPipeline {
                         getGoldAnnotator(copyType, copyRealis, copyCluster, mergeSameSpan)
                 };
             }
-        }, mainDir, baseOutput).runWithOutput();
-        return CustomCollectionReaderFactory.createXmiReader(typeSystemDescription, mainDir, baseOutput);
+        }, mainDir, baseOutput, stageFormat).runWithOutput();
+        return CustomCollectionReaderFactory.createReader(stageFormat, typeSystemDescription, mainDir, baseOutput);
     }
 
     public String trainSentLvType(Configuration config, CollectionReaderDescription trainingReader, String suffix,
@@ -372,6 +401,11 @@ public class EventMentionPipeline {
                     trainingReader.setAttributeValue(RandomizedXmiCollectionReader.PARAM_SEED, trainingSeed.getValue());
                 }
 
+                @Override
+                protected boolean replayIteration() {
+                    return MentionTypeCrfTrainer.replayIteration(trainingSeed.intValue());
+                }
+
                 @Override
                 protected void finish() throws IOException {
                     MentionTypeCrfTrainer.loopStopActions();
@@ -396,11 +430,11 @@ public class EventMentionPipeline {
             throws UIMAException, IOException, CpeDescriptorException, SAXException {
         File outputFile = new File(mainDir, baseOutput);
 
-        if (skipTest && outputFile.exists()) {
+        if (skipTest && !incremental && outputFile.exists()) {
             logger.info("Skipping sent level tagging because output exists.");
-            return CustomCollectionReaderFactory.createXmiReader(mainDir, baseOutput);
+            return CustomCollectionReaderFactory.createReader(stageFormat, mainDir, baseOutput);
         } else {
-            return new BasicPipeline(new ProcessorWrapper() {
+            return runStage(new BasicPipeline(new ProcessorWrapper() {
                 @Override
                 public CollectionReaderDescription getCollectionReader() throws ResourceInitializationException {
                     return reader;
@@ -416,7 +450,7 @@ public class EventMentionPipeline {
 
                     return new AnalysisEngineDescription[]{sentenceLevelTagger};
                 }
-            }, mainDir, baseOutput).runWithOutput();
+            }, mainDir, baseOutput, stageFormat));
         }
     }
 
@@ -456,6 +490,11 @@ public class EventMentionPipeline {
                     trainingReader.setAttributeValue(RandomizedXmiCollectionReader.PARAM_SEED, trainingSeed.getValue());
                 }
 
+                @Override
+                protected boolean replayIteration() {
+                    return MentionSequenceCrfTrainer.replayIteration(trainingSeed.intValue());
+                }
+
                 @Override
                 protected void finish() throws IOException {
                     MentionSequenceCrfTrainer.loopStopActions();
@@ -476,7 +515,7 @@ public class EventMentionPipeline {
             IOException, CpeDescriptorException, SAXException {
         if (skipTest && new File(mainDir, baseOutput).exists()) {
             logger.info("Skipping doc level mention tagging because output exists.");
-            return CustomCollectionReaderFactory.createXmiReader(typeSystemDescription, mainDir, baseOutput);
+            return CustomCollectionReaderFactory.createReader(stageFormat, typeSystemDescription, mainDir, baseOutput);
         } else {
             return new BasicPipeline(new ProcessorWrapper() {
                 @Override
@@ -494,7 +533,7 @@ public class EventMentionPipeline {
 
                     return new AnalysisEngineDescription[]{documentLevelTagger};
                 }
-            }, mainDir, baseOutput).runWithOutput();
+            }, mainDir, baseOutput, stageFormat).runWithOutput();
         }
     }
 
@@ -519,11 +558,12 @@ public class EventMentionPipeline {
                                                         boolean skipTest)
             throws IOException, UIMAException, CpeDescriptorException, SAXException {
 
-        if (skipTest && new File(mainDir, realisOutputBase).exists()) {
+        if (skipTest && !incremental && new File(mainDir, realisOutputBase).exists()) {
             logger.info("Skipping realis detection because output exists.");
-            return CustomCollectionReaderFactory.createXmiReader(typeSystemDescription, mainDir, realisOutputBase);
+            return CustomCollectionReaderFactory.createReader(stageFormat, typeSystemDescription, mainDir,
+                    realisOutputBase);
         } else {
-            return new BasicPipeline(new ProcessorWrapper() {
+            return runStage(new BasicPipeline(new ProcessorWrapper() {
                 @Override
                 public CollectionReaderDescription getCollectionReader() throws ResourceInitializationException {
                     return reader;
@@ -540,7 +580,7 @@ public class EventMentionPipeline {
                     );
                     return new AnalysisEngineDescription[]{realisAnnotator};
                 }
-            }, mainDir, realisOutputBase).runWithOutput();
+            }, mainDir, realisOutputBase, stageFormat));
         }
     }
 
@@ -668,11 +708,11 @@ public class EventMentionPipeline {
                                                         boolean useAverage, boolean skipCorefTest)
             throws UIMAException, IOException, CpeDescriptorException, SAXException {
         logger.info("Running coreference resolution, output at " + outputBase);
-        if (skipCorefTest && new File(mainDir, outputBase).exists()) {
+        if (skipCorefTest && !incremental && new File(mainDir, outputBase).exists()) {
             logger.info("Skipping running coreference, using existing results.");
-            return CustomCollectionReaderFactory.createXmiReader(typeSystemDescription, mainDir, outputBase);
+            return CustomCollectionReaderFactory.createReader(stageFormat, typeSystemDescription, mainDir, outputBase);
         } else {
-            return new BasicPipeline(new ProcessorWrapper() {
+            return runStage(new BasicPipeline(new ProcessorWrapper() {
                 @Override
                 public CollectionReaderDescription getCollectionReader() throws ResourceInitializationException {
                     return reader;
@@ -692,7 +732,7 @@ public class EventMentionPipeline {
                     annotators.add(corefAnnotator);
                     return annotators.toArray(new AnalysisEngineDescription[annotators.size()]);
                 }
-            }, mainDir, outputBase).runWithOutput();
+            }, mainDir, outputBase, stageFormat));
         }
     }
 
@@ -704,7 +744,7 @@ public class EventMentionPipeline {
 
         if (skipJointTest && new File(mainDir, outputBase).exists()) {
             logger.info("Skipping running Joint, using existing results.");
-            return CustomCollectionReaderFactory.createXmiReader(typeSystemDescription, mainDir, outputBase);
+            return CustomCollectionReaderFactory.createReader(stageFormat, typeSystemDescription, mainDir, outputBase);
         } else {
             new BasicPipeline(new ProcessorWrapper() {
                 @Override
@@ -734,8 +774,8 @@ public class EventMentionPipeline {
 
                     return annotators.toArray(new AnalysisEngineDescription[annotators.size()]);
                 }
-            }, mainDir, outputBase).runWithOutput();
-            return CustomCollectionReaderFactory.createXmiReader(typeSystemDescription, mainDir, outputBase);
+            }, mainDir, outputBase, stageFormat).runWithOutput();
+            return CustomCollectionReaderFactory.createReader(stageFormat, typeSystemDescription, mainDir, outputBase);
         }
     }
 
@@ -792,11 +832,11 @@ public class EventMentionPipeline {
             UIMAException, SAXException, CpeDescriptorException, IOException {
         logger.info("Running joint beam mention detection and coreference, output at " + outputBase);
 
-        if (skipTest && new File(mainDir, outputBase).exists()) {
+        if (skipTest && !incremental && new File(mainDir, outputBase).exists()) {
             logger.info("Skipping running Joint beam, using existing results.");
-            return CustomCollectionReaderFactory.createXmiReader(typeSystemDescription, mainDir, outputBase);
+            return CustomCollectionReaderFactory.createReader(stageFormat, typeSystemDescription, mainDir, outputBase);
         } else {
-            new BasicPipeline(new ProcessorWrapper() {
+            runStage(new BasicPipeline(new ProcessorWrapper() {
                 @Override
                 public CollectionReaderDescription getCollectionReader() throws ResourceInitializationException {
                     return reader;
@@ -817,8 +857,8 @@ public class EventMentionPipeline {
 
                     return annotators.toArray(new AnalysisEngineDescription[annotators.size()]);
                 }
-            }, mainDir, outputBase).runWithOutput();
-            return CustomCollectionReaderFactory.createXmiReader(typeSystemDescription, mainDir, outputBase);
+            }, mainDir, outputBase, stageFormat));
+            return CustomCollectionReaderFactory.createReader(stageFormat, typeSystemDescription, mainDir, outputBase);
         }
     }
 
@@ -6,6 +6,7 @@ import edu.cmu.cs.lti.learning.feature.extractor.MultiSentenceFeatureExtractor;
 import edu.cmu.cs.lti.learning.feature.sequence.FeatureUtils;
 import edu.cmu.cs.lti.learning.model.ClassAlphabet;
 import edu.cmu.cs.lti.learning.model.FeatureVector;
+import edu.cmu.cs.lti.learning.model.FeatureVectorCodec;
 import edu.cmu.cs.lti.learning.model.GraphFeatureVector;
 import edu.cmu.cs.lti.learning.model.SequenceSolution;
 import edu.cmu.cs.lti.learning.training.AveragePerceptronTrainer;
@@ -53,7 +54,8 @@ public class MentionSequenceCrfTrainer extends AbstractCrfTrainer {
         long weightLimit = config.getLong("edu.cmu.cs.lti.mention.cache.document.num", 1000);
 
         try {
-            featureCacher = createFeatureCacher(weightLimit, discardAfter);
+            featureCacher = createFeatureCacher(weightLimit, discardAfter,
+                    new FeatureVectorCodec(featureAlphabet).sequenceCodec());
             goldCacher = createGoldCacher(weightLimit, discardAfter);
         } catch (IOException e) {
             e.printStackTrace();
@@ -81,7 +83,7 @@ public class MentionSequenceCrfTrainer extends AbstractCrfTrainer {
         }
 
         trainer = new AveragePerceptronTrainer(decoder, classAlphabet, featureAlphabet,
-                FeatureUtils.joinFeatureSpec(sentFeatureSpec, docFeatureSpec), false);
+                FeatureUtils.joinFeatureSpec(sentFeatureSpec, docFeatureSpec), false, denseWeights);
 
         logger.info("Training with the following specification: ");
         logger.info("[Sentence Spec]" + sentFeatureSpec);
@@ -134,6 +136,10 @@ public class MentionSequenceCrfTrainer extends AbstractCrfTrainer {
                 sequenceFeatures);
         trainingStats.addLoss(logger, loss);
 
+        if (replayBuffer != null) {
+            replayBuffer.add(goldSolution, goldFv, sequenceFeatures);
+        }
+
         if (newSequenceFeatures) {
             featureCacher.addWithMultiKey(sequenceFeatures, documentKey);
         }
@@ -6,6 +6,7 @@ import edu.cmu.cs.lti.learning.feature.extractor.SentenceFeatureExtractor;
 import edu.cmu.cs.lti.learning.feature.sequence.FeatureUtils;
 import edu.cmu.cs.lti.learning.model.ClassAlphabet;
 import edu.cmu.cs.lti.learning.model.FeatureVector;
+import edu.cmu.cs.lti.learning.model.FeatureVectorCodec;
 import edu.cmu.cs.lti.learning.model.GraphFeatureVector;
 import edu.cmu.cs.lti.learning.model.SequenceSolution;
 import edu.cmu.cs.lti.learning.training.AveragePerceptronTrainer;
@@ -69,7 +70,8 @@ public class MentionTypeCrfTrainer extends AbstractCrfTrainer {
         long weightLimit = config.getLong("edu.cmu.cs.lti.mention.cache.document.num", 1000);
 
         try {
-            featureCacher = createFeatureCacher(weightLimit, discardAfter);
+            featureCacher = createFeatureCacher(weightLimit, discardAfter,
+                    new FeatureVectorCodec(featureAlphabet).documentCodec());
             goldCacher = createGoldCacher(weightLimit, discardAfter);
         } catch (IOException e) {
             e.printStackTrace();
@@ -97,7 +99,7 @@ public class MentionTypeCrfTrainer extends AbstractCrfTrainer {
         }
 
         trainer = new AveragePerceptronTrainer(decoder, classAlphabet, featureAlphabet,
-                FeatureUtils.joinFeatureSpec(sentFeatureSpec, docFeatureSpec), usePaUpdate);
+                FeatureUtils.joinFeatureSpec(sentFeatureSpec, docFeatureSpec), usePaUpdate, denseWeights);
 
         logger.info("Training with the following specification: ");
         logger.info("[Sentence Spec]" + sentFeatureSpec);
@@ -178,6 +180,10 @@ public class MentionTypeCrfTrainer extends AbstractCrfTrainer {
             trainingStats.addLoss(logger, loss);
             sentenceId++;
 
+            if (replayBuffer != null) {
+                replayBuffer.add(goldSolution, goldFv, sentenceFeatures);
+            }
+
             if (documentCacheFeatures == null) {
                 featuresToCache.add(sentenceFeatures);
             }
@@ -6,7 +6,9 @@ import edu.cmu.cs.lti.learning.model.ClassAlphabet;
 import edu.cmu.cs.lti.learning.model.HashAlphabet;
 import edu.cmu.cs.lti.learning.model.TrainingStats;
 import edu.cmu.cs.lti.learning.training.AveragePerceptronTrainer;
+import edu.cmu.cs.lti.learning.training.ReplayBuffer;
 import edu.cmu.cs.lti.uima.annotator.AbstractLoggingAnnotator;
+import edu.cmu.cs.lti.utils.CacheCodec;
 import edu.cmu.cs.lti.utils.Configuration;
 import edu.cmu.cs.lti.utils.MultiKeyDiskCacher;
 import org.apache.commons.io.FileUtils;
@@ -48,8 +50,13 @@ public abstract class AbstractCrfTrainer extends AbstractLoggingAnnotator {
 
     protected double stepSize;
 
+    protected boolean denseWeights;
+
     protected static AveragePerceptronTrainer trainer;
 
+    // Holds the instances of the first iteration when training data replay is enabled, null otherwise.
+    protected static ReplayBuffer replayBuffer;
+
     @Override
     public void initialize(UimaContext aContext) throws ResourceInitializationException {
         super.initialize(aContext);
@@ -58,6 +65,7 @@ public abstract class AbstractCrfTrainer extends AbstractLoggingAnnotator {
         int printLossOverPreviousN = config.getInt("edu.cmu.cs.lti.avergelossN", 50);
         boolean readableModel = config.getBoolean("edu.cmu.cs.lti.mention.readableModel", false);
         stepSize = config.getDouble("edu.cmu.cs.lti.perceptron.stepsize", 0.01);
+        denseWeights = config.getBoolean("edu.cmu.cs.lti.mention.dense_weights", false);
 
         File classFile = config.getFile("edu.cmu.cs.lti.mention.classes.path");
         String[] classes = new String[0];
@@ -81,6 +89,16 @@ public abstract class AbstractCrfTrainer extends AbstractLoggingAnnotator {
 
         decoder = new ViterbiDecoder(featureAlphabet, classAlphabet);
 
+        if (config.getBoolean("edu.cmu.cs.lti.perceptron.replay", false)) {
+            int batchSize = config.getInt("edu.cmu.cs.lti.perceptron.batch_size", 1);
+            logger.info("Training instances will be kept in memory and replayed after the first iteration, " +
+                    "with batch size " + batchSize);
+            replayBuffer = new ReplayBuffer(trainingStats, batchSize,
+                    () -> new ViterbiDecoder(featureAlphabet, classAlphabet));
+        } else {
+            replayBuffer = null;
+        }
+
         logger.info("Initializing gold cacher with " + cacheDir.getAbsolutePath());
     }
 
@@ -93,9 +111,23 @@ public abstract class AbstractCrfTrainer extends AbstractLoggingAnnotator {
     }
 
     protected <T extends Serializable> MultiKeyDiskCacher<T> createFeatureCacher(long maxCachedInstance, boolean
-            discardAfter) throws IOException {
+            discardAfter, CacheCodec<T> codec) throws IOException {
         return new MultiKeyDiskCacher<>(cacheDir.getPath(), (strings, featureVectors) -> 1,
-                maxCachedInstance, discardAfter, "feature_cache");
+                maxCachedInstance, discardAfter, "feature_cache", codec);
+    }
+
+    /**
+     * Train one iteration on the instances kept from the first iteration, if replay is enabled.
+     *
+     * @param seed The seed to shuffle the instances.
+     * @return Whether the iteration is trained, if not, the documents need to be read again.
+     */
+    public static boolean replayIteration(long seed) {
+        if (replayBuffer == null || replayBuffer.isEmpty()) {
+            return false;
+        }
+        replayBuffer.replay(trainer, seed);
+        return true;
     }
 
     public static void saveModels(File modelOutputDirectory, String modelName) throws IOException {
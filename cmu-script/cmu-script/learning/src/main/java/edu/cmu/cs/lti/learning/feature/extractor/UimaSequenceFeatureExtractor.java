@@ -4,13 +4,11 @@ import edu.cmu.cs.lti.learning.feature.FeatureSpecParser;
 import edu.cmu.cs.lti.learning.feature.sequence.base.SequenceFeatureWithFocus;
 import edu.cmu.cs.lti.learning.model.ChainFeatureExtractor;
 import edu.cmu.cs.lti.learning.model.FeatureAlphabet;
+import edu.cmu.cs.lti.learning.model.FeatureEmitter;
 import edu.cmu.cs.lti.learning.model.FeatureVector;
 import edu.cmu.cs.lti.script.type.StanfordCorenlpToken;
 import edu.cmu.cs.lti.utils.Configuration;
-import gnu.trove.iterator.TObjectDoubleIterator;
-import gnu.trove.map.TObjectDoubleMap;
 import gnu.trove.map.TObjectIntMap;
-import gnu.trove.map.hash.TObjectDoubleHashMap;
 import org.apache.uima.fit.util.JCasUtil;
 import org.apache.uima.jcas.JCas;
 import org.apache.uima.jcas.tcas.Annotation;
@@ -46,6 +44,10 @@ public abstract class UimaSequenceFeatureExtractor<T extends Annotation> extends
 
     protected Class<T> clazz;
 
+    private final FeatureEmitter noStateEmitter = new FeatureEmitter();
+
+    private final FeatureEmitter stateEmitter = new FeatureEmitter();
+
     public UimaSequenceFeatureExtractor(FeatureAlphabet alphabet, Configuration generalConfig,
                                         Configuration sentenceFeatureConfig, Configuration docFeatureConfig,
                                         boolean useStateFeatures, Class<T> elementClass)
@@ -118,31 +120,25 @@ public abstract class UimaSequenceFeatureExtractor<T extends Annotation> extends
 
     @Override
     public void extract(int focus, FeatureVector featuresNoState, FeatureVector featuresNeedForState) {
-        TObjectDoubleMap<String> rawFeaturesNoState = new TObjectDoubleHashMap<>();
-        TObjectDoubleMap<String> rawFeaturesNeedForState = new TObjectDoubleHashMap<>();
+        // Features go straight into the vectors, values of repeated features are summed.
+        noStateEmitter.reset(featuresNoState);
+        stateEmitter.reset(useStateFeatures ? featuresNeedForState : null);
 
         List<StanfordCorenlpToken> sentenceTokens = getSentenceTokens(focus);
 
         if (focus < sequenceElements.size() && focus >= 0) {
-            sentenceFeatureFunctions.forEach(ff -> ff.extract(sentenceTokens, getSentenceFocus(focus),
-                    rawFeaturesNoState, rawFeaturesNeedForState));
+            int sentenceFocus = getSentenceFocus(focus);
+            for (SequenceFeatureWithFocus<StanfordCorenlpToken> ff : sentenceFeatureFunctions) {
+                ff.extract(sentenceTokens, sentenceFocus, noStateEmitter, stateEmitter);
+            }
         }
 
-        documentFeatureFunctions.forEach(ff -> ff.extract(sequenceElements, focus, rawFeaturesNoState,
-                rawFeaturesNeedForState));
-
-        for (TObjectDoubleIterator<String> iter = rawFeaturesNoState.iterator(); iter.hasNext(); ) {
-            iter.advance();
-            featuresNoState.addFeature(iter.key(), iter.value());
+        for (SequenceFeatureWithFocus<T> ff : documentFeatureFunctions) {
+            ff.extract(sequenceElements, focus, noStateEmitter, stateEmitter);
         }
 
-        if (useStateFeatures) {
-            logger.debug("Using state features.");
-            for (TObjectDoubleIterator<String> iter = rawFeaturesNeedForState.iterator(); iter.hasNext(); ) {
-                iter.advance();
-                featuresNeedForState.addFeature(iter.key(), iter.value());
-            }
-        }
+        noStateEmitter.reset(null);
+        stateEmitter.reset(null);
 
 //        logger.debug("Extracted state features are : ");
 //        logger.debug(featuresNeedForState.readableString());
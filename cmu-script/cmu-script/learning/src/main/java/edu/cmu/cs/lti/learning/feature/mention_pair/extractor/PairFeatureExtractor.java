@@ -4,7 +4,6 @@ import edu.cmu.cs.lti.learning.feature.FeatureSpecParser;
 import edu.cmu.cs.lti.learning.feature.mention_pair.functions.AbstractMentionPairFeatures;
 import edu.cmu.cs.lti.learning.model.*;
 import edu.cmu.cs.lti.utils.Configuration;
-import gnu.trove.map.TObjectDoubleMap;
 import org.apache.uima.jcas.JCas;
 
 import java.io.Serializable;
@@ -70,7 +69,7 @@ public class PairFeatureExtractor implements Serializable {
      * @param depKey           The node key for the dependent.
      * @return Feature vector of this mention against the other
      */
-    public void extract(MentionCandidate mentionCandidate, TObjectDoubleMap<String> rawFeaturesNoLabel,
+    public void extract(MentionCandidate mentionCandidate, FeatureEmitter rawFeaturesNoLabel,
                         NodeKey depKey) {
         featureFunctions.forEach(ff -> ff.extract(context, rawFeaturesNoLabel, mentionCandidate, depKey));
     }
@@ -83,7 +82,7 @@ public class PairFeatureExtractor implements Serializable {
      * @param depKey           The node key for the dependent
      * @return Feature vector of this mention against the other
      */
-    public void extractCandidateRelated(MentionCandidate mentionCandidate, TObjectDoubleMap<String>
+    public void extractCandidateRelated(MentionCandidate mentionCandidate, FeatureEmitter
             rawFeaturesNeedLabel, NodeKey depKey) {
         featureFunctions.forEach(ff -> {
             ff.extractCandidateRelated(context, rawFeaturesNeedLabel, mentionCandidate, depKey);
@@ -99,7 +98,7 @@ public class PairFeatureExtractor implements Serializable {
      * @param secondNode @return Feature vector of this mention against the other
      */
     public void extract(List<MentionCandidate> candidates, NodeKey firstNode, NodeKey secondNode,
-                        TObjectDoubleMap<String>
+                        FeatureEmitter
             rawFeaturesNoLabel) {
         featureFunctions.forEach(ff -> {
             ff.extract(context, rawFeaturesNoLabel, candidates, firstNode, secondNode);
@@ -114,7 +113,7 @@ public class PairFeatureExtractor implements Serializable {
      * @param secondKey  @return Feature vector of this mention against the other
      */
     public void extractCandidateRelated(List<MentionCandidate> candidates, NodeKey firstKey, NodeKey secondKey,
-                                        TObjectDoubleMap<String> rawFeaturesNeedLabel) {
+                                        FeatureEmitter rawFeaturesNeedLabel) {
         featureFunctions.forEach(ff -> {
             ff.extractCandidateRelated(context, rawFeaturesNeedLabel, candidates, firstKey, secondKey);
         });
@@ -1,9 +1,9 @@
 package edu.cmu.cs.lti.learning.feature.mention_pair.functions;
 
+import edu.cmu.cs.lti.learning.model.FeatureEmitter;
 import edu.cmu.cs.lti.learning.model.MentionCandidate;
 import edu.cmu.cs.lti.learning.model.NodeKey;
 import edu.cmu.cs.lti.utils.Configuration;
-import gnu.trove.map.TObjectDoubleMap;
 import org.apache.uima.jcas.JCas;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
@@ -35,23 +35,23 @@ public abstract class AbstractMentionPairFeatures {
     /**
      * Extract features from the annotation pair, without label specific features.
      *  @param documentContext The UIMA context.
-     * @param featuresNoLabel Features don't need labels will be added to this raw feature map.
+     * @param featuresNoLabel Features don't need labels will be added to this feature vector.
      * @param candidates
      * @param firstNode
      * @param secondNode
      */
-    public abstract void extract(JCas documentContext, TObjectDoubleMap<String> featuresNoLabel,
+    public abstract void extract(JCas documentContext, FeatureEmitter featuresNoLabel,
                                  List<MentionCandidate> candidates, NodeKey firstNode, NodeKey secondNode);
 
     /**
      * Extract features from the annotation pair, with candidate specific features.
      * @param documentContext   The UIMA context.
-     * @param featuresNeedLabel Features don't need labels will be added to this raw feature map.
+     * @param featuresNeedLabel Features don't need labels will be added to this feature vector.
      * @param candidates
      * @param firstNode
      * @param secondNode
      */
-    public abstract void extractCandidateRelated(JCas documentContext, TObjectDoubleMap<String> featuresNeedLabel,
+    public abstract void extractCandidateRelated(JCas documentContext, FeatureEmitter featuresNeedLabel,
                                                  List<MentionCandidate> candidates, NodeKey firstNode,
                                                  NodeKey secondNode);
 
@@ -59,21 +59,21 @@ public abstract class AbstractMentionPairFeatures {
     /**
      * Extract features from the annotation pair, with label specific features.
      *  @param documentContext The UIMA context
-     * @param featuresNoLabel Features need labels will be added to this raw feature map.
+     * @param featuresNoLabel Features need labels will be added to this feature vector.
      * @param secondCandidate Second mention to extract from.
      * @param secondNode The node key to extract from.
      */
-    public abstract void extract(JCas documentContext, TObjectDoubleMap<String> featuresNoLabel,
+    public abstract void extract(JCas documentContext, FeatureEmitter featuresNoLabel,
                                  MentionCandidate secondCandidate, NodeKey secondNode);
 
     /**
      * Extract features from the annotation pair, with label specific features.
      *  @param documentContext   The UIMA context
-     * @param featuresNeedLabel Features need labels will be added to this raw feature map.
+     * @param featuresNeedLabel Features need labels will be added to this feature vector.
      * @param secondCandidate   Second mention to extract from.
      * @param secondNode The node key to extract from
      */
-    public abstract void extractCandidateRelated(JCas documentContext, TObjectDoubleMap<String> featuresNeedLabel,
+    public abstract void extractCandidateRelated(JCas documentContext, FeatureEmitter featuresNeedLabel,
                                                  MentionCandidate secondCandidate, NodeKey secondNode);
 
 
@@ -86,8 +86,15 @@ public abstract class AbstractMentionPairFeatures {
         return this.getClass().getName();
     }
 
-    protected void addBoolean(TObjectDoubleMap<String> rawFeatures, String featureName) {
+    protected void addBoolean(FeatureEmitter rawFeatures, String featureName) {
         rawFeatures.put(featureName, 1);
     }
 
+    /**
+     * Add the boolean feature "featureType::featureName" without building the name.
+     */
+    protected void addBoolean(FeatureEmitter rawFeatures, String featureType, String featureName) {
+        rawFeatures.begin(featureType).append("::").append(featureName).put(1);
+    }
+
 }
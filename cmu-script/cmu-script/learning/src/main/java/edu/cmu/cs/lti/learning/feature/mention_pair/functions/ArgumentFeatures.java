@@ -1,12 +1,12 @@
 package edu.cmu.cs.lti.learning.feature.mention_pair.functions;
 
 import edu.cmu.cs.lti.learning.feature.sequence.FeatureUtils;
+import edu.cmu.cs.lti.learning.model.FeatureEmitter;
 import edu.cmu.cs.lti.learning.model.MentionCandidate;
 import edu.cmu.cs.lti.learning.model.NodeKey;
 import edu.cmu.cs.lti.script.type.*;
 import edu.cmu.cs.lti.utils.Configuration;
 import edu.cmu.cs.lti.utils.SimilarityUtils;
-import gnu.trove.map.TObjectDoubleMap;
 import org.apache.uima.fit.util.FSCollectionFactory;
 import org.apache.uima.fit.util.JCasUtil;
 import org.apache.uima.jcas.JCas;
@@ -41,7 +41,7 @@ public class ArgumentFeatures extends AbstractMentionPairFeatures {
     }
 
     @Override
-    public void extract(JCas documentContext, TObjectDoubleMap<String> rawFeatures,
+    public void extract(JCas documentContext, FeatureEmitter rawFeatures,
                         List<MentionCandidate> candidates, NodeKey firstNode, NodeKey secondNode) {
         MentionCandidate firstCandidate = candidates.get(firstNode.getIndex());
         MentionCandidate secondCandidate = candidates.get(secondNode.getIndex());
@@ -54,24 +54,24 @@ public class ArgumentFeatures extends AbstractMentionPairFeatures {
     }
 
     @Override
-    public void extractCandidateRelated(JCas documentContext, TObjectDoubleMap<String> featuresNeedLabel,
+    public void extractCandidateRelated(JCas documentContext, FeatureEmitter featuresNeedLabel,
                                         List<MentionCandidate> candidates, NodeKey firstNode, NodeKey secondNode) {
 
     }
 
     @Override
-    public void extract(JCas documentContext, TObjectDoubleMap<String> featuresNoLabel, MentionCandidate
+    public void extract(JCas documentContext, FeatureEmitter featuresNoLabel, MentionCandidate
             secondCandidate, NodeKey secondNode) {
 
     }
 
     @Override
-    public void extractCandidateRelated(JCas documentContext, TObjectDoubleMap<String> rawFeatures, MentionCandidate
+    public void extractCandidateRelated(JCas documentContext, FeatureEmitter rawFeatures, MentionCandidate
             secondCandidate, NodeKey secondNode) {
 
     }
 
-    private void extractLinkFeatures(JCas documentContext, TObjectDoubleMap<String> rawFeatures,
+    private void extractLinkFeatures(JCas documentContext, FeatureEmitter rawFeatures,
                                      SemanticRelation firstLink, SemanticRelation secondLink) {
         addWhenEqualNotNull(rawFeatures, "BothHaveFrameRole", firstLink.getFrameElementName(), secondLink
                 .getFrameElementName());
@@ -100,9 +100,9 @@ public class ArgumentFeatures extends AbstractMentionPairFeatures {
             double argumentDice = SimilarityUtils.getDiceCoefficient(argumentText1, argumentText2);
             if (argumentDice > 0.5) {
                 if (roleName1.equals(roleName2)) {
-                    addBoolean(rawFeatures, FeatureUtils.formatFeatureName("SimilarArgument", roleName1));
+                    addBoolean(rawFeatures, "SimilarArgument", roleName1);
                 }
-                addBoolean(rawFeatures, FeatureUtils.formatFeatureName("SimilarArgumentWithPair", rolePair));
+                addBoolean(rawFeatures, "SimilarArgumentWithPair", rolePair);
             }
 
             String ner1 = getArgumentNer(argument1);
@@ -110,26 +110,25 @@ public class ArgumentFeatures extends AbstractMentionPairFeatures {
 
             if (ner1 != null && ner2 != null) {
                 if (ner1.equals(ner2)) {
-                    addBoolean(rawFeatures, FeatureUtils.formatFeatureName("SameNerForRole", rolePair));
+                    addBoolean(rawFeatures, "SameNerForRole", rolePair);
                 }
-                addBoolean(rawFeatures, FeatureUtils.formatFeatureName("RoleNerPair", FeatureUtils.sortedJoin
-                        (roleName1 + "_" + ner1, roleName2 + "_" + ner2)
-                ));
+                addBoolean(rawFeatures, "RoleNerPair",
+                        FeatureUtils.sortedJoin(roleName1 + "_" + ner1, roleName2 + "_" + ner2));
             }
         }
     }
 
-    private void addWhenEqualNotNull(TObjectDoubleMap<String> rawFeatures, String name, String a, String b) {
+    private void addWhenEqualNotNull(FeatureEmitter rawFeatures, String name, String a, String b) {
         if (a != null && b != null) {
             if (a.equals(b)) {
-                addBoolean(rawFeatures, FeatureUtils.formatFeatureName(name, a));
+                addBoolean(rawFeatures, name, a);
             }
         }
     }
 
-    private void addPairNotNull(TObjectDoubleMap<String> rawFeatures, String name, String a, String b) {
+    private void addPairNotNull(FeatureEmitter rawFeatures, String name, String a, String b) {
         if (a != null && b != null) {
-            addBoolean(rawFeatures, FeatureUtils.formatFeatureName(name, FeatureUtils.sortedJoin(a, b)));
+            addBoolean(rawFeatures, name, FeatureUtils.sortedJoin(a, b));
         }
     }
 
@@ -1,11 +1,10 @@
 package edu.cmu.cs.lti.learning.feature.mention_pair.functions;
 
-import edu.cmu.cs.lti.learning.feature.sequence.FeatureUtils;
+import edu.cmu.cs.lti.learning.model.FeatureEmitter;
 import edu.cmu.cs.lti.learning.model.MentionCandidate;
 import edu.cmu.cs.lti.learning.model.NodeKey;
 import edu.cmu.cs.lti.script.type.Sentence;
 import edu.cmu.cs.lti.utils.Configuration;
-import gnu.trove.map.TObjectDoubleMap;
 import org.apache.uima.fit.util.JCasUtil;
 import org.apache.uima.jcas.JCas;
 
@@ -40,7 +39,7 @@ public class DistanceFeatures extends AbstractMentionPairFeatures {
     }
 
     @Override
-    public void extract(JCas documentContext, TObjectDoubleMap<String> featuresNoLabel, List<MentionCandidate>
+    public void extract(JCas documentContext, FeatureEmitter featuresNoLabel, List<MentionCandidate>
             candidates, NodeKey firstNode, NodeKey secondNode) {
         MentionCandidate firstCandidate = candidates.get(firstNode.getIndex());
         MentionCandidate secondCandidate = candidates.get(secondNode.getIndex());
@@ -48,22 +47,22 @@ public class DistanceFeatures extends AbstractMentionPairFeatures {
     }
 
     @Override
-    public void extractCandidateRelated(JCas documentContext, TObjectDoubleMap<String> featuresNeedLabel,
+    public void extractCandidateRelated(JCas documentContext, FeatureEmitter featuresNeedLabel,
                                         List<MentionCandidate> candidates, NodeKey firstNode, NodeKey secondNode) {
         thresholdedMentionDistance(featuresNeedLabel, candidates, firstNode, secondNode);
     }
 
     @Override
-    public void extract(JCas documentContext, TObjectDoubleMap<String> featuresNoLabel, MentionCandidate
+    public void extract(JCas documentContext, FeatureEmitter featuresNoLabel, MentionCandidate
             secondCandidate, NodeKey secondNode) {
     }
 
     @Override
-    public void extractCandidateRelated(JCas documentContext, TObjectDoubleMap<String> featureNoLabel, MentionCandidate
+    public void extractCandidateRelated(JCas documentContext, FeatureEmitter featureNoLabel, MentionCandidate
             secondCandidate, NodeKey secondNode) {
     }
 
-    private void thresholdedSentenceDistance(TObjectDoubleMap<String> rawFeatures, MentionCandidate firstCandidate,
+    private void thresholdedSentenceDistance(FeatureEmitter rawFeatures, MentionCandidate firstCandidate,
                                              MentionCandidate secondCandidate) {
         Sentence firstSentence = firstCandidate.getContainedSentence();
         Sentence secondSentence = secondCandidate.getContainedSentence();
@@ -75,17 +74,15 @@ public class DistanceFeatures extends AbstractMentionPairFeatures {
         int sentenceInBetween = Math.abs(firstSentence.getIndex() - secondSentence.getIndex());
         for (int sentenceThreshold : sentenceThresholds) {
             if (sentenceInBetween <= sentenceThreshold) {
-                addBoolean(rawFeatures, FeatureUtils.formatFeatureName("SentenceDistance",
-                        "i<=" + sentenceThreshold));
+                rawFeatures.begin("SentenceDistance::i<=").append(sentenceThreshold).put(1);
                 return;
             }
         }
 
-        rawFeatures.put(FeatureUtils.formatFeatureName("SentenceDistance", "i>" +
-                lastSentenceThreshold), 1);
+        rawFeatures.begin("SentenceDistance::i>").append(lastSentenceThreshold).put(1);
     }
 
-    private void thresholdedMentionDistance(TObjectDoubleMap<String> rawFeatures, List<MentionCandidate> candidates,
+    private void thresholdedMentionDistance(FeatureEmitter rawFeatures, List<MentionCandidate> candidates,
                                             NodeKey firstNode, NodeKey secondNode) {
         int firstIndex = firstNode.getIndex();
         int secondIndex = secondNode.getIndex();
@@ -108,13 +105,11 @@ public class DistanceFeatures extends AbstractMentionPairFeatures {
 
         for (int mentionThreshold : mentionThresholds) {
             if (mentionInBetween <= mentionThreshold) {
-                rawFeatures.put(FeatureUtils.formatFeatureName("MentionDistance",
-                        "i<=" + mentionThreshold), 1);
+                rawFeatures.begin("MentionDistance::i<=").append(mentionThreshold).put(1);
                 return;
             }
         }
-        rawFeatures.put(FeatureUtils.formatFeatureName("MentionDistance",
-                "i>" + lastMentionTreshold), 1);
+        rawFeatures.begin("MentionDistance::i>").append(lastMentionTreshold).put(1);
     }
 
     private String getDocumentType(JCas context) {
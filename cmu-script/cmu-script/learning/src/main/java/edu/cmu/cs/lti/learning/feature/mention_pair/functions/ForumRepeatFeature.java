@@ -1,10 +1,10 @@
 package edu.cmu.cs.lti.learning.feature.mention_pair.functions;
 
+import edu.cmu.cs.lti.learning.model.FeatureEmitter;
 import edu.cmu.cs.lti.learning.model.MentionCandidate;
 import edu.cmu.cs.lti.learning.model.NodeKey;
 import edu.cmu.cs.lti.script.type.StanfordCorenlpSentence;
 import edu.cmu.cs.lti.utils.Configuration;
-import gnu.trove.map.TObjectDoubleMap;
 import org.apache.uima.jcas.JCas;
 
 import java.util.List;
@@ -26,7 +26,7 @@ public class ForumRepeatFeature extends AbstractMentionPairFeatures {
     }
 
     @Override
-    public void extract(JCas documentContext, TObjectDoubleMap<String> featuresNoLabel, List<MentionCandidate> candidates, NodeKey firstNode, NodeKey secondNode) {
+    public void extract(JCas documentContext, FeatureEmitter featuresNoLabel, List<MentionCandidate> candidates, NodeKey firstNode, NodeKey secondNode) {
         MentionCandidate firstCandidate = candidates.get(firstNode.getIndex());
         MentionCandidate secondCandidate = candidates.get(secondNode.getIndex());
 
@@ -48,20 +48,20 @@ public class ForumRepeatFeature extends AbstractMentionPairFeatures {
     }
 
     @Override
-    public void extractCandidateRelated(JCas documentContext, TObjectDoubleMap<String> featuresNeedLabel, List<MentionCandidate> candidates, NodeKey firstNode, NodeKey
+    public void extractCandidateRelated(JCas documentContext, FeatureEmitter featuresNeedLabel, List<MentionCandidate> candidates, NodeKey firstNode, NodeKey
 
             secondNode) {
 
     }
 
     @Override
-    public void extract(JCas documentContext, TObjectDoubleMap<String> featuresNoLabel, MentionCandidate
+    public void extract(JCas documentContext, FeatureEmitter featuresNoLabel, MentionCandidate
             secondCandidate, NodeKey secondNode) {
 
     }
 
     @Override
-    public void extractCandidateRelated(JCas documentContext, TObjectDoubleMap<String> featureNoLabel, MentionCandidate
+    public void extractCandidateRelated(JCas documentContext, FeatureEmitter featureNoLabel, MentionCandidate
             secondCandidate, NodeKey secondNode) {
 
     }
@@ -1,11 +1,11 @@
 package edu.cmu.cs.lti.learning.feature.mention_pair.functions;
 
 import edu.cmu.cs.lti.learning.feature.sequence.FeatureUtils;
+import edu.cmu.cs.lti.learning.model.FeatureEmitter;
 import edu.cmu.cs.lti.learning.model.MentionCandidate;
 import edu.cmu.cs.lti.learning.model.NodeKey;
 import edu.cmu.cs.lti.script.type.Word;
 import edu.cmu.cs.lti.utils.Configuration;
-import gnu.trove.map.TObjectDoubleMap;
 import org.apache.uima.jcas.JCas;
 
 import java.util.List;
@@ -28,7 +28,7 @@ public class FrameFeatures extends AbstractMentionPairFeatures {
     }
 
     @Override
-    public void extract(JCas documentContext, TObjectDoubleMap<String> featuresNoLabel, List<MentionCandidate> candidates, NodeKey firstNode, NodeKey secondNode) {
+    public void extract(JCas documentContext, FeatureEmitter featuresNoLabel, List<MentionCandidate> candidates, NodeKey firstNode, NodeKey secondNode) {
         MentionCandidate firstCandidate = candidates.get(firstNode.getIndex());
         MentionCandidate secondCandidate = candidates.get(secondNode.getIndex());
 
@@ -36,26 +36,26 @@ public class FrameFeatures extends AbstractMentionPairFeatures {
         Word secondHead = secondCandidate.getHeadWord();
 
         if (firstHead.getFrameName() != null && secondHead.getFrameName() != null) {
-            addBoolean(featuresNoLabel, FeatureUtils.formatFeatureName("FramePair", FeatureUtils.sortedJoin(
-                    firstHead.getFrameName(), secondHead.getFrameName())));
+            addBoolean(featuresNoLabel, "FramePair", FeatureUtils.sortedJoin(
+                    firstHead.getFrameName(), secondHead.getFrameName()));
         }
     }
 
     @Override
-    public void extractCandidateRelated(JCas documentContext, TObjectDoubleMap<String> featuresNeedLabel,
+    public void extractCandidateRelated(JCas documentContext, FeatureEmitter featuresNeedLabel,
                                         List
                                                 <MentionCandidate> candidates, NodeKey firstNode, NodeKey secondNode) {
 
     }
 
     @Override
-    public void extract(JCas documentContext, TObjectDoubleMap<String> featuresNoLabel, MentionCandidate
+    public void extract(JCas documentContext, FeatureEmitter featuresNoLabel, MentionCandidate
             secondCandidate, NodeKey secondNode) {
 
     }
 
     @Override
-    public void extractCandidateRelated(JCas documentContext, TObjectDoubleMap<String> featureNoLabel, MentionCandidate
+    public void extractCandidateRelated(JCas documentContext, FeatureEmitter featureNoLabel, MentionCandidate
             secondCandidate, NodeKey secondNode) {
 
     }
@@ -1,11 +1,10 @@
 package edu.cmu.cs.lti.learning.feature.mention_pair.functions;
 
-import edu.cmu.cs.lti.learning.feature.sequence.FeatureUtils;
+import edu.cmu.cs.lti.learning.model.FeatureEmitter;
 import edu.cmu.cs.lti.learning.model.MentionCandidate;
 import edu.cmu.cs.lti.learning.model.NodeKey;
 import edu.cmu.cs.lti.script.type.Word;
 import edu.cmu.cs.lti.utils.Configuration;
-import gnu.trove.map.TObjectDoubleMap;
 import org.apache.uima.jcas.JCas;
 
 import java.util.List;
@@ -27,7 +26,7 @@ public class HeadWordPairFeatures extends AbstractMentionPairFeatures {
     }
 
     @Override
-    public void extract(JCas documentContext, TObjectDoubleMap<String> featuresNoLabel, List<MentionCandidate> candidates, NodeKey firstNode, NodeKey secondNode) {
+    public void extract(JCas documentContext, FeatureEmitter featuresNoLabel, List<MentionCandidate> candidates, NodeKey firstNode, NodeKey secondNode) {
         MentionCandidate firstCandidate = candidates.get(firstNode.getIndex());
         MentionCandidate secondCandidate = candidates.get(secondNode.getIndex());
 
@@ -42,41 +41,38 @@ public class HeadWordPairFeatures extends AbstractMentionPairFeatures {
     }
 
     @Override
-    public void extractCandidateRelated(JCas documentContext, TObjectDoubleMap<String> featuresNeedLabel, List<MentionCandidate> candidates, NodeKey firstNode, NodeKey
+    public void extractCandidateRelated(JCas documentContext, FeatureEmitter featuresNeedLabel, List<MentionCandidate> candidates, NodeKey firstNode, NodeKey
 
             secondNode) {
 
     }
 
     @Override
-    public void extract(JCas documentContext, TObjectDoubleMap<String> featuresNoLabel,
+    public void extract(JCas documentContext, FeatureEmitter featuresNoLabel,
                         MentionCandidate secondCandidate, NodeKey secondNode) {
 
     }
 
     @Override
-    public void extractCandidateRelated(JCas documentContext, TObjectDoubleMap<String> featureNoLabel, MentionCandidate secondCandidate, NodeKey secondNode) {
+    public void extractCandidateRelated(JCas documentContext, FeatureEmitter featureNoLabel, MentionCandidate secondCandidate, NodeKey secondNode) {
 
     }
 
-    private void lemmaPairFeature(TObjectDoubleMap<String> rawFeatures, String firstLemma, String secondLemma) {
-        String lemmaPair;
+    private void lemmaPairFeature(FeatureEmitter rawFeatures, String firstLemma, String secondLemma) {
         if (firstLemma.compareTo(secondLemma) > 0) {
-            lemmaPair = firstLemma + "_" + secondLemma;
+            rawFeatures.begin("HeadLemmaPair::").append(firstLemma).append('_').append(secondLemma).put(1);
         } else {
-            lemmaPair = secondLemma + "_" + firstLemma;
+            rawFeatures.begin("HeadLemmaPair::").append(secondLemma).append('_').append(firstLemma).put(1);
         }
-
-        rawFeatures.put(FeatureUtils.formatFeatureName("HeadLemmaPair", lemmaPair), 1);
     }
 
-    private void lemmaMatchFeature(TObjectDoubleMap<String> rawFeatures, String firstLemma, String secondLemma) {
+    private void lemmaMatchFeature(FeatureEmitter rawFeatures, String firstLemma, String secondLemma) {
         if (firstLemma.equals(secondLemma)) {
             rawFeatures.put("LemmaMatch", 1);
         }
     }
 
-    private void lemmaSubstringFeature(TObjectDoubleMap<String> rawFeatures, String firstLemma, String secondLemma) {
+    private void lemmaSubstringFeature(FeatureEmitter rawFeatures, String firstLemma, String secondLemma) {
         if (firstLemma.contains(secondLemma) || secondLemma.contains(firstLemma)) {
             rawFeatures.put("LemmaSubString", 1);
         }
@@ -1,11 +1,10 @@
 package edu.cmu.cs.lti.learning.feature.mention_pair.functions;
 
 import com.google.common.base.Joiner;
-import edu.cmu.cs.lti.learning.feature.sequence.FeatureUtils;
+import edu.cmu.cs.lti.learning.model.FeatureEmitter;
 import edu.cmu.cs.lti.learning.model.MentionCandidate;
 import edu.cmu.cs.lti.learning.model.NodeKey;
 import edu.cmu.cs.lti.utils.Configuration;
-import gnu.trove.map.TObjectDoubleMap;
 import org.apache.uima.jcas.JCas;
 
 import java.util.Arrays;
@@ -29,13 +28,13 @@ public class MentionTypeFeatures extends AbstractMentionPairFeatures {
     }
 
     @Override
-    public void extract(JCas documentContext, TObjectDoubleMap<String> featuresNoLabel, List<MentionCandidate>
+    public void extract(JCas documentContext, FeatureEmitter featuresNoLabel, List<MentionCandidate>
             candidates, NodeKey firstNode, NodeKey secondNode) {
 
     }
 
     @Override
-    public void extractCandidateRelated(JCas documentContext, TObjectDoubleMap<String> featuresNeedLabel,
+    public void extractCandidateRelated(JCas documentContext, FeatureEmitter featuresNeedLabel,
                                         List<MentionCandidate> candidates, NodeKey firstNode, NodeKey secondNode) {
         String firstType = firstNode.getMentionType();
         String secondType = secondNode.getMentionType();
@@ -47,7 +46,7 @@ public class MentionTypeFeatures extends AbstractMentionPairFeatures {
         String[] types = {firstType, secondType};
         Arrays.sort(types);
 
-        addBoolean(featuresNeedLabel, FeatureUtils.formatFeatureName("MentionTypePair", Joiner.on(":").join(types)));
+        addBoolean(featuresNeedLabel, "MentionTypePair", Joiner.on(":").join(types));
 
         String firstSuperType = firstType.split("_")[0];
         String secondSuperType = secondType.split("_")[0];
@@ -59,18 +58,18 @@ public class MentionTypeFeatures extends AbstractMentionPairFeatures {
         String[] superTypes = {firstSuperType, secondSuperType};
         Arrays.sort(superTypes);
 
-        addBoolean(featuresNeedLabel, FeatureUtils.formatFeatureName("MentionSuperTypePair", Joiner.on(":").join
-                (superTypes)));
+        addBoolean(featuresNeedLabel, "MentionSuperTypePair", Joiner.on(":").join
+                (superTypes));
     }
 
     @Override
-    public void extract(JCas documentContext, TObjectDoubleMap<String> featuresNoLabel, MentionCandidate
+    public void extract(JCas documentContext, FeatureEmitter featuresNoLabel, MentionCandidate
             secondCandidate, NodeKey secondNode) {
-//        addBoolean(featuresNoLabel, FeatureUtils.formatFeatureName("SingleType", secondNode.getMentionType()));
+//        addBoolean(featuresNoLabel, "SingleType", secondNode.getMentionType());
     }
 
     @Override
-    public void extractCandidateRelated(JCas documentContext, TObjectDoubleMap<String> featureNeedLabel,
+    public void extractCandidateRelated(JCas documentContext, FeatureEmitter featureNeedLabel,
                                         MentionCandidate secondCandidate, NodeKey secondNode) {
 
     }
@@ -1,11 +1,10 @@
 package edu.cmu.cs.lti.learning.feature.mention_pair.functions;
 
 import com.google.common.base.Joiner;
-import edu.cmu.cs.lti.learning.feature.sequence.FeatureUtils;
+import edu.cmu.cs.lti.learning.model.FeatureEmitter;
 import edu.cmu.cs.lti.learning.model.MentionCandidate;
 import edu.cmu.cs.lti.learning.model.NodeKey;
 import edu.cmu.cs.lti.utils.Configuration;
-import gnu.trove.map.TObjectDoubleMap;
 import org.apache.uima.jcas.JCas;
 
 import java.util.Arrays;
@@ -29,27 +28,27 @@ public class RealisFeatures extends AbstractMentionPairFeatures {
     }
 
     @Override
-    public void extract(JCas documentContext, TObjectDoubleMap<String> featuresNoLabel, List<MentionCandidate>
+    public void extract(JCas documentContext, FeatureEmitter featuresNoLabel, List<MentionCandidate>
             candidates, NodeKey firstNode, NodeKey secondNode) {
     }
 
     @Override
-    public void extractCandidateRelated(JCas documentContext, TObjectDoubleMap<String> featuresNeedLabel,
+    public void extractCandidateRelated(JCas documentContext, FeatureEmitter featuresNeedLabel,
                                         List<MentionCandidate> candidates, NodeKey firstNode, NodeKey secondNode) {
         String[] realisTypes = {firstNode.getRealis(), secondNode.getRealis()};
         Arrays.sort(realisTypes);
-        addBoolean(featuresNeedLabel, FeatureUtils.formatFeatureName("RealisPair", Joiner.on(":").join(realisTypes)));
+        addBoolean(featuresNeedLabel, "RealisPair", Joiner.on(":").join(realisTypes));
     }
 
     @Override
-    public void extract(JCas documentContext, TObjectDoubleMap<String> featureNoLabel, MentionCandidate
+    public void extract(JCas documentContext, FeatureEmitter featureNoLabel, MentionCandidate
             secondCandidate, NodeKey secondNode) {
-        addBoolean(featureNoLabel, FeatureUtils.formatFeatureName("SingleRealis", secondCandidate.getRealis()));
+        addBoolean(featureNoLabel, "SingleRealis", secondCandidate.getRealis());
     }
 
 
     @Override
-    public void extractCandidateRelated(JCas documentContext, TObjectDoubleMap<String> featuresNoLabel,
+    public void extractCandidateRelated(JCas documentContext, FeatureEmitter featuresNoLabel,
                                         MentionCandidate secondCandidate, NodeKey secondNode) {
 
     }
@@ -2,7 +2,7 @@ package edu.cmu.cs.lti.learning.feature.mention_pair.functions;
 
 import com.google.common.base.Joiner;
 import com.google.common.collect.ArrayListMultimap;
-import edu.cmu.cs.lti.learning.feature.sequence.FeatureUtils;
+import edu.cmu.cs.lti.learning.model.FeatureEmitter;
 import edu.cmu.cs.lti.learning.model.MentionCandidate;
 import edu.cmu.cs.lti.learning.model.NodeKey;
 import edu.cmu.cs.lti.script.type.Sentence;
@@ -10,7 +10,6 @@ import edu.cmu.cs.lti.script.type.StanfordCorenlpSentence;
 import edu.cmu.cs.lti.script.type.StanfordEntityMention;
 import edu.cmu.cs.lti.utils.Configuration;
 import edu.cmu.cs.lti.utils.SimilarityUtils;
-import gnu.trove.map.TObjectDoubleMap;
 import org.apache.uima.fit.util.JCasUtil;
 import org.apache.uima.jcas.JCas;
 
@@ -42,7 +41,7 @@ public class SurroundingEntityPairFeatures extends AbstractMentionPairFeatures {
     }
 
     @Override
-    public void extract(JCas documentContext, TObjectDoubleMap<String> featuresNoLabel, List<MentionCandidate>
+    public void extract(JCas documentContext, FeatureEmitter featuresNoLabel, List<MentionCandidate>
             candidates, NodeKey firstNode, NodeKey secondNode) {
         MentionCandidate firstCandidate = candidates.get(firstNode.getIndex());
         MentionCandidate secondCandidate = candidates.get(secondNode.getIndex());
@@ -56,7 +55,7 @@ public class SurroundingEntityPairFeatures extends AbstractMentionPairFeatures {
     }
 
     @Override
-    public void extractCandidateRelated(JCas documentContext, TObjectDoubleMap<String> featuresNeedLabel,
+    public void extractCandidateRelated(JCas documentContext, FeatureEmitter featuresNeedLabel,
                                         List<MentionCandidate> candidates, NodeKey firstNode, NodeKey
 
                                                 secondNode) {
@@ -64,30 +63,30 @@ public class SurroundingEntityPairFeatures extends AbstractMentionPairFeatures {
     }
 
     @Override
-    public void extract(JCas documentContext, TObjectDoubleMap<String> featuresNoLabel, MentionCandidate
+    public void extract(JCas documentContext, FeatureEmitter featuresNoLabel, MentionCandidate
             secondCandidate, NodeKey secondNode) {
 
     }
 
     @Override
-    public void extractCandidateRelated(JCas documentContext, TObjectDoubleMap<String> featureNoLabel,
+    public void extractCandidateRelated(JCas documentContext, FeatureEmitter featureNoLabel,
                                         MentionCandidate secondCandidate, NodeKey secondNode) {
 
     }
 
-    private void closestTypePairFeature(TObjectDoubleMap<String> rawFeatures,
+    private void closestTypePairFeature(FeatureEmitter rawFeatures,
                                         StanfordEntityMention firstMention, StanfordEntityMention secondMention) {
         if (firstMention != null && secondMention != null) {
             String firstClosest = getEntityType(firstMention);
             String secondClosest = getEntityType(secondMention);
             String[] closestTypes = {firstClosest, secondClosest};
             Arrays.sort(closestTypes);
-            addBoolean(rawFeatures, FeatureUtils.formatFeatureName("ClosestEntityTypePair",
-                    Joiner.on(":").join(closestTypes)));
+            addBoolean(rawFeatures, "ClosestEntityTypePair",
+                    Joiner.on(":").join(closestTypes));
         }
     }
 
-    private void closestSurfacePairFeature(TObjectDoubleMap<String> rawFeatures, StanfordEntityMention firstMention,
+    private void closestSurfacePairFeature(FeatureEmitter rawFeatures, StanfordEntityMention firstMention,
                                            StanfordEntityMention secondMention) {
         if (firstMention != null && secondMention != null) {
             String firstSurface = firstMention.getCoveredText();
@@ -2,7 +2,7 @@ package edu.cmu.cs.lti.learning.feature.mention_pair.functions;
 
 import com.google.common.base.Joiner;
 import com.google.common.collect.ArrayListMultimap;
-import edu.cmu.cs.lti.learning.feature.sequence.FeatureUtils;
+import edu.cmu.cs.lti.learning.model.FeatureEmitter;
 import edu.cmu.cs.lti.learning.model.MentionCandidate;
 import edu.cmu.cs.lti.learning.model.NodeKey;
 import edu.cmu.cs.lti.script.type.Sentence;
@@ -11,7 +11,6 @@ import edu.cmu.cs.lti.script.type.StanfordCorenlpToken;
 import edu.cmu.cs.lti.script.type.WordNetBasedEntity;
 import edu.cmu.cs.lti.uima.util.UimaConvenience;
 import edu.cmu.cs.lti.utils.Configuration;
-import gnu.trove.map.TObjectDoubleMap;
 import org.apache.uima.fit.util.JCasUtil;
 import org.apache.uima.jcas.JCas;
 
@@ -48,7 +47,7 @@ public class SurroundingWordNetSenseFeatures extends AbstractMentionPairFeatures
     }
 
     @Override
-    public void extract(JCas documentContext, TObjectDoubleMap<String> featuresNoLabel, List<MentionCandidate>
+    public void extract(JCas documentContext, FeatureEmitter featuresNoLabel, List<MentionCandidate>
             candidates, NodeKey firstNode, NodeKey secondNode) {
         MentionCandidate firstCandidate = candidates.get(firstNode.getIndex());
         MentionCandidate secondCandidate = candidates.get(secondNode.getIndex());
@@ -62,8 +61,8 @@ public class SurroundingWordNetSenseFeatures extends AbstractMentionPairFeatures
             String secondClosestEnType = getWordNetEntityType(secondClosestEn);
             String[] enPair = {firstClosestEnType, secondClosestEnType};
             Arrays.sort(enPair);
-            addBoolean(featuresNoLabel, FeatureUtils.formatFeatureName("ClosestWordNetSenseType",
-                    Joiner.on(":").join(enPair)));
+            addBoolean(featuresNoLabel, "ClosestWordNetSenseType",
+                    Joiner.on(":").join(enPair));
 
             // Add surface pair.
             String firstClosestEnSurface = getWordNetEntitySurface(firstClosestEn);
@@ -71,8 +70,8 @@ public class SurroundingWordNetSenseFeatures extends AbstractMentionPairFeatures
             String[] enSurfacePair = {firstClosestEnSurface, secondClosestEnSurface};
 
             Arrays.sort(enSurfacePair);
-            addBoolean(featuresNoLabel, FeatureUtils.formatFeatureName("ClosestWordNetSenseSurface",
-                    Joiner.on(":").join(enSurfacePair)));
+            addBoolean(featuresNoLabel, "ClosestWordNetSenseSurface",
+                    Joiner.on(":").join(enSurfacePair));
 
             if (firstClosestEnSurface.equals(secondClosestEnSurface)) {
                 addBoolean(featuresNoLabel, "ClosestWordNetSenseSurfaceMatch");
@@ -81,20 +80,20 @@ public class SurroundingWordNetSenseFeatures extends AbstractMentionPairFeatures
     }
 
     @Override
-    public void extractCandidateRelated(JCas documentContext, TObjectDoubleMap<String> featuresNeedLabel,
+    public void extractCandidateRelated(JCas documentContext, FeatureEmitter featuresNeedLabel,
                                         List
                                                 <MentionCandidate> candidates, NodeKey firstNode, NodeKey secondNode) {
 
     }
 
     @Override
-    public void extract(JCas documentContext, TObjectDoubleMap<String> featuresNoLabel, MentionCandidate
+    public void extract(JCas documentContext, FeatureEmitter featuresNoLabel, MentionCandidate
             secondCandidate, NodeKey secondNode) {
 
     }
 
     @Override
-    public void extractCandidateRelated(JCas documentContext, TObjectDoubleMap<String> featureNoLabel, MentionCandidate
+    public void extractCandidateRelated(JCas documentContext, FeatureEmitter featureNoLabel, MentionCandidate
             secondCandidate, NodeKey secondNode) {
 
     }
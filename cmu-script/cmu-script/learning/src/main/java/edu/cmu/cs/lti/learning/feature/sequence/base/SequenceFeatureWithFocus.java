@@ -1,8 +1,8 @@
 package edu.cmu.cs.lti.learning.feature.sequence.base;
 
+import edu.cmu.cs.lti.learning.model.FeatureEmitter;
 import edu.cmu.cs.lti.script.type.StanfordCorenlpToken;
 import edu.cmu.cs.lti.utils.Configuration;
-import gnu.trove.map.TObjectDoubleMap;
 import org.apache.uima.jcas.JCas;
 import org.apache.uima.jcas.tcas.Annotation;
 import org.slf4j.Logger;
@@ -95,15 +95,16 @@ public abstract class SequenceFeatureWithFocus<T extends Annotation> {
      *
      * @param sequence             The sequence represented as token.
      * @param focus                The focus to evaluate the features.
-     * @param features             The local feature vector to be filled.
-     * @param featuresNeedForState The feature vector that should depend on a previous state.
+     * @param features             Emits into the local feature vector.
+     * @param featuresNeedForState Emits into the feature vector that should depend on a previous state, it drops
+     *                             the features when state features are not used.
      */
     public abstract void extract(List<T> sequence, int focus,
-                                 TObjectDoubleMap<String> features,
-                                 TObjectDoubleMap<String> featuresNeedForState);
+                                 FeatureEmitter features,
+                                 FeatureEmitter featuresNeedForState);
 
     // TODO think about whether multi-thread will have problem here.
-    public void addToFeatures(TObjectDoubleMap<String> features, String name, double value) {
-        features.adjustOrPutValue(name, value, value);
+    public void addToFeatures(FeatureEmitter features, String name, double value) {
+        features.add(name, value);
     }
 }
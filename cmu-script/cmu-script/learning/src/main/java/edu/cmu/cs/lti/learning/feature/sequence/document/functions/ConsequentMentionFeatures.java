@@ -1,10 +1,10 @@
 package edu.cmu.cs.lti.learning.feature.sequence.document.functions;
 
 import edu.cmu.cs.lti.learning.feature.sequence.base.SequenceFeatureWithFocus;
+import edu.cmu.cs.lti.learning.model.FeatureEmitter;
 import edu.cmu.cs.lti.script.type.EventMention;
 import edu.cmu.cs.lti.script.type.StanfordCorenlpSentence;
 import edu.cmu.cs.lti.utils.Configuration;
-import gnu.trove.map.TObjectDoubleMap;
 import gnu.trove.map.TObjectIntMap;
 import gnu.trove.map.hash.TObjectIntHashMap;
 import org.apache.uima.fit.util.JCasUtil;
@@ -45,8 +45,8 @@ public class ConsequentMentionFeatures extends SequenceFeatureWithFocus<EventMen
     }
 
     @Override
-    public void extract(List<EventMention> sequence, int focus, TObjectDoubleMap<String> features,
-                        TObjectDoubleMap<String> featuresNeedForState) {
+    public void extract(List<EventMention> sequence, int focus, FeatureEmitter features,
+                        FeatureEmitter featuresNeedForState) {
         if (focus > 1 && focus < sequence.size()) {
             EventMention thisItem = sequence.get(focus);
             EventMention previousItem = sequence.get(focus - 1);
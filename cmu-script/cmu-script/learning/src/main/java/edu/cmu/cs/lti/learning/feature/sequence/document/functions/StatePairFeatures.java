@@ -1,9 +1,9 @@
 package edu.cmu.cs.lti.learning.feature.sequence.document.functions;
 
 import edu.cmu.cs.lti.learning.feature.sequence.base.SequenceFeatureWithFocus;
+import edu.cmu.cs.lti.learning.model.FeatureEmitter;
 import edu.cmu.cs.lti.script.type.CandidateEventMention;
 import edu.cmu.cs.lti.utils.Configuration;
-import gnu.trove.map.TObjectDoubleMap;
 import org.apache.uima.jcas.JCas;
 
 import java.util.List;
@@ -31,8 +31,8 @@ public class StatePairFeatures extends SequenceFeatureWithFocus<CandidateEventMe
     }
 
     @Override
-    public void extract(List<CandidateEventMention> sequence, int focus, TObjectDoubleMap<String> features,
-                        TObjectDoubleMap<String> featuresNeedForState) {
+    public void extract(List<CandidateEventMention> sequence, int focus, FeatureEmitter features,
+                        FeatureEmitter featuresNeedForState) {
         addToFeatures(featuresNeedForState, "StatePair", 1);
     }
 }
@@ -1,10 +1,10 @@
 package edu.cmu.cs.lti.learning.feature.sequence.document.functions;
 
 import edu.cmu.cs.lti.learning.feature.sequence.base.SequenceFeatureWithFocus;
+import edu.cmu.cs.lti.learning.model.FeatureEmitter;
 import edu.cmu.cs.lti.script.type.EventMention;
 import edu.cmu.cs.lti.uima.util.UimaNlpUtils;
 import edu.cmu.cs.lti.utils.Configuration;
-import gnu.trove.map.TObjectDoubleMap;
 import org.apache.uima.jcas.JCas;
 
 import java.util.List;
@@ -34,14 +34,14 @@ public class SurroundingMentionFeatures extends SequenceFeatureWithFocus<EventMe
     }
 
     @Override
-    public void extract(List<EventMention> sequence, int focus, TObjectDoubleMap<String> features,
-                        TObjectDoubleMap<String> featuresNeedForState) {
+    public void extract(List<EventMention> sequence, int focus, FeatureEmitter features,
+                        FeatureEmitter featuresNeedForState) {
         for (int window = 0; window < 3; window++) {
             for (int offset = 0; offset < window; offset++) {
-                addToFeatures(features, String.format("MentionHead@i+%d=%s", window, getMentionHead(sequence, focus +
-                        window)), 1);
-                addToFeatures(features, String.format("MentionHead@i-%d=%s", window, getMentionHead(sequence, focus -
-                        window)), 1);
+                features.begin("MentionHead@i+").append(window).append('=')
+                        .append(getMentionHead(sequence, focus + window)).add(1);
+                features.begin("MentionHead@i-").append(window).append('=')
+                        .append(getMentionHead(sequence, focus - window)).add(1);
             }
         }
     }
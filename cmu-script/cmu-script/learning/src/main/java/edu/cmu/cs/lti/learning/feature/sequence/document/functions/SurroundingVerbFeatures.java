@@ -1,11 +1,10 @@
 package edu.cmu.cs.lti.learning.feature.sequence.document.functions;
 
-import edu.cmu.cs.lti.learning.feature.sequence.FeatureUtils;
 import edu.cmu.cs.lti.learning.feature.sequence.base.SequenceFeatureWithFocus;
+import edu.cmu.cs.lti.learning.model.FeatureEmitter;
 import edu.cmu.cs.lti.script.type.StanfordCorenlpToken;
 import edu.cmu.cs.lti.uima.util.UimaNlpUtils;
 import edu.cmu.cs.lti.utils.Configuration;
-import gnu.trove.map.TObjectDoubleMap;
 import gnu.trove.map.TObjectIntMap;
 import gnu.trove.map.hash.TObjectIntHashMap;
 import org.apache.uima.fit.util.JCasUtil;
@@ -87,7 +86,7 @@ public class SurroundingVerbFeatures<T extends Annotation> extends SequenceFeatu
     }
 
     @Override
-    public void extract(List<T> sequence, int focus, TObjectDoubleMap<String> features, TObjectDoubleMap<String>
+    public void extract(List<T> sequence, int focus, FeatureEmitter features, FeatureEmitter
             featuresNeedForState) {
         if (focus < 0 || focus >= sequence.size()) {
             return;
@@ -96,11 +95,11 @@ public class SurroundingVerbFeatures<T extends Annotation> extends SequenceFeatu
         StanfordCorenlpToken token = UimaNlpUtils.findFirstToken(sequence.get(focus));
 
         for (StanfordCorenlpToken lVerb : findVerbs(token, 2, leftJumps)) {
-            addToFeatures(features, FeatureUtils.formatFeatureName("Left2Verb", lVerb.getLemma().toLowerCase()), 1);
+            features.begin("Left2Verb::").append(lVerb.getLemma().toLowerCase()).add(1);
         }
 
         for (StanfordCorenlpToken rVerb : findVerbs(token, 2, rightJumps)) {
-            addToFeatures(features, FeatureUtils.formatFeatureName("Right2Verb", rVerb.getLemma().toLowerCase()), 1);
+            features.begin("Right2Verb::").append(rVerb.getLemma().toLowerCase()).add(1);
         }
     }
 }
@@ -1,9 +1,9 @@
 package edu.cmu.cs.lti.learning.feature.sequence.sentence.functions;
 
 import edu.cmu.cs.lti.learning.feature.sequence.base.SequenceFeatureWithFocus;
+import edu.cmu.cs.lti.learning.model.FeatureEmitter;
 import edu.cmu.cs.lti.script.type.StanfordCorenlpToken;
 import edu.cmu.cs.lti.utils.Configuration;
-import gnu.trove.map.TObjectDoubleMap;
 import org.apache.commons.io.FileUtils;
 import org.apache.uima.jcas.JCas;
 
@@ -57,19 +57,19 @@ public class BrownClusterFeatures extends SequenceFeatureWithFocus<StanfordCoren
     }
 
     @Override
-    public void extract(List<StanfordCorenlpToken> sequence, int focus, TObjectDoubleMap<String> features,
-                        TObjectDoubleMap<String> featuresNeedForState) {
+    public void extract(List<StanfordCorenlpToken> sequence, int focus, FeatureEmitter features,
+                        FeatureEmitter featuresNeedForState) {
         String lemma = operateWithOutsideLowerCase(sequence, StanfordCorenlpToken::getLemma, focus);
 
         if (brownClusters.containsKey(lemma)) {
             String fullClusterId = brownClusters.get(lemma);
             for (int prefixLength : brownClusterPrefix) {
                 if (prefixLength <= fullClusterId.length()) {
-                    String brownClusterLabel = fullClusterId.substring(0, prefixLength);
-                    addToFeatures(features, String.format("HeadLemmaBrown@%d=%s", prefixLength, brownClusterLabel), 1);
+                    features.begin("HeadLemmaBrown@").append(prefixLength).append('=')
+                            .append(fullClusterId, 0, prefixLength).add(1);
                 }
             }
-            addToFeatures(features, String.format("HeadLemmaBrownFull=%s", fullClusterId), 1);
+            features.begin("HeadLemmaBrownFull=").append(fullClusterId).add(1);
         }
     }
 }
@@ -1,9 +1,9 @@
 package edu.cmu.cs.lti.learning.feature.sequence.sentence.functions;
 
 import edu.cmu.cs.lti.learning.feature.sequence.base.SequenceFeatureWithFocus;
+import edu.cmu.cs.lti.learning.model.FeatureEmitter;
 import edu.cmu.cs.lti.script.type.StanfordCorenlpToken;
 import edu.cmu.cs.lti.utils.Configuration;
-import gnu.trove.map.TObjectDoubleMap;
 import org.apache.uima.jcas.JCas;
 
 import java.util.List;
@@ -32,8 +32,8 @@ public class CharacterFeatures extends SequenceFeatureWithFocus<StanfordCorenlpT
     }
 
     @Override
-    public void extract(List<StanfordCorenlpToken> sequence, int focus, TObjectDoubleMap<String> features,
-                        TObjectDoubleMap<String> featuresNeedForState) {
+    public void extract(List<StanfordCorenlpToken> sequence, int focus, FeatureEmitter features,
+                        FeatureEmitter featuresNeedForState) {
         if (focus < 0 || focus >= sequence.size()) {
             return;
         }
@@ -43,15 +43,15 @@ public class CharacterFeatures extends SequenceFeatureWithFocus<StanfordCorenlpT
         char[] characters = targetToken.getCoveredText().toCharArray();
         for (int index = 0; index < characters.length; index++) {
             char character = characters[index];
-            addToFeatures(features, String.format("ContainsChar:%s", character), 1);
-            addToFeatures(features, String.format("ContainsChar:%sWithPos:%s", character, targetToken.getPos()), 1);
+            features.begin("ContainsChar:").append(character).add(1);
+            features.begin("ContainsChar:").append(character).append("WithPos:").append(targetToken.getPos()).add(1);
 
             if (index == 0) {
-                addToFeatures(features, String.format("BeginChar:%s", character), 1);
+                features.begin("BeginChar:").append(character).add(1);
             }
 
             if (index == characters.length - 1) {
-                addToFeatures(features, String.format("EndChar:%s", character), 1);
+                features.begin("EndChar:").append(character).add(1);
             }
         }
     }
@@ -1,12 +1,12 @@
 package edu.cmu.cs.lti.learning.feature.sequence.sentence.functions;
 
 import edu.cmu.cs.lti.learning.feature.sequence.base.SequenceFeatureWithFocus;
+import edu.cmu.cs.lti.learning.model.FeatureEmitter;
 import edu.cmu.cs.lti.script.type.Dependency;
 import edu.cmu.cs.lti.script.type.StanfordCorenlpToken;
 import edu.cmu.cs.lti.script.type.StanfordEntityMention;
 import edu.cmu.cs.lti.script.type.Word;
 import edu.cmu.cs.lti.utils.Configuration;
-import gnu.trove.map.TObjectDoubleMap;
 import org.apache.uima.fit.util.FSCollectionFactory;
 import org.apache.uima.fit.util.JCasUtil;
 import org.apache.uima.jcas.JCas;
@@ -51,8 +51,8 @@ public class DependentWordFeatures extends SequenceFeatureWithFocus<StanfordCore
     }
 
     @Override
-    public void extract(List<StanfordCorenlpToken> sequence, int focus, TObjectDoubleMap<String> features,
-                        TObjectDoubleMap<String> featuresNeedForState) {
+    public void extract(List<StanfordCorenlpToken> sequence, int focus, FeatureEmitter features,
+                        FeatureEmitter featuresNeedForState) {
         if (featureTemplates.contains("ChildLemma")) {
             addDependentFeatures(sequence, focus, features, Word::getLemma, "ChildLemma");
         }
@@ -80,7 +80,7 @@ public class DependentWordFeatures extends SequenceFeatureWithFocus<StanfordCore
     }
 
     public void addDependentLabelFeatures(List<StanfordCorenlpToken> sentence, int focus,
-                                          TObjectDoubleMap<String> features, String featureType) {
+                                          FeatureEmitter features, String featureType) {
         if (focus < 0 || focus > sentence.size() - 1) {
             return;
         }
@@ -94,13 +94,13 @@ public class DependentWordFeatures extends SequenceFeatureWithFocus<StanfordCore
         for (Dependency dep : FSCollectionFactory.create(childDependencies, Dependency.class)) {
             String featureVal = dep.getDependencyType();
             if (featureVal != null) {
-                addToFeatures(features, String.format("%s=%s", featureType, featureVal), 1);
+                features.begin(featureType).append('=').append(featureVal).add(1);
             }
         }
     }
 
     public void addGovnerLabelFeatures(List<StanfordCorenlpToken> sentence, int focus,
-                                       TObjectDoubleMap<String> features, String featureType) {
+                                       FeatureEmitter features, String featureType) {
         if (focus < 0 || focus > sentence.size() - 1) {
             return;
         }
@@ -114,12 +114,12 @@ public class DependentWordFeatures extends SequenceFeatureWithFocus<StanfordCore
         for (Dependency dep : FSCollectionFactory.create(headDependencyRelations, Dependency.class)) {
             String featureVal = dep.getDependencyType();
             if (featureVal != null) {
-                addToFeatures(features, String.format("%s=%s", featureType, featureVal), 1);
+                features.begin(featureType).append('=').append(featureVal).add(1);
             }
         }
     }
 
-    public void addDependentFeatures(List<StanfordCorenlpToken> sentence, int focus, TObjectDoubleMap<String> features,
+    public void addDependentFeatures(List<StanfordCorenlpToken> sentence, int focus, FeatureEmitter features,
                                      Function<Word, String> operator, String featureType) {
         if (focus < 0 || focus > sentence.size() - 1) {
             return;
@@ -135,12 +135,12 @@ public class DependentWordFeatures extends SequenceFeatureWithFocus<StanfordCore
             Word dependent = dep.getChild();
             String featureVal = operator.apply(dependent);
             if (featureVal != null) {
-                addToFeatures(features, String.format("%s=%s", featureType, featureVal), 1);
+                features.begin(featureType).append('=').append(featureVal).add(1);
             }
         }
     }
 
-    public void addGovnerFeatures(List<StanfordCorenlpToken> sentence, int focus, TObjectDoubleMap<String> features,
+    public void addGovnerFeatures(List<StanfordCorenlpToken> sentence, int focus, FeatureEmitter features,
                                   Function<Word, String> operator, String featureType) {
         if (focus < 0 || focus > sentence.size() - 1) {
             return;
@@ -156,7 +156,7 @@ public class DependentWordFeatures extends SequenceFeatureWithFocus<StanfordCore
             Word gov = dep.getHead();
             String featureVal = operator.apply(gov);
             if (featureVal != null) {
-                addToFeatures(features, String.format("%s=%s", featureType, featureVal), 1);
+                features.begin(featureType).append('=').append(featureVal).add(1);
             }
         }
     }
@@ -1,11 +1,10 @@
 package edu.cmu.cs.lti.learning.feature.sequence.sentence.functions;
 
-import edu.cmu.cs.lti.learning.feature.sequence.FeatureUtils;
 import edu.cmu.cs.lti.learning.feature.sequence.base.SequenceFeatureWithFocus;
+import edu.cmu.cs.lti.learning.model.FeatureEmitter;
 import edu.cmu.cs.lti.script.type.StanfordCorenlpToken;
 import edu.cmu.cs.lti.script.type.StanfordEntityMention;
 import edu.cmu.cs.lti.utils.Configuration;
-import gnu.trove.map.TObjectDoubleMap;
 import org.apache.uima.fit.util.JCasUtil;
 import org.apache.uima.jcas.JCas;
 
@@ -40,14 +39,14 @@ public class EntityFeatures extends SequenceFeatureWithFocus<StanfordCorenlpToke
     }
 
     @Override
-    public void extract(List<StanfordCorenlpToken> sequence, int focus, TObjectDoubleMap<String> features,
-                        TObjectDoubleMap<String> featuresNeedForState) {
+    public void extract(List<StanfordCorenlpToken> sequence, int focus, FeatureEmitter features,
+                        FeatureEmitter featuresNeedForState) {
         if (focus < sequence.size() && focus > 0) {
             closestEntityType(sequence, focus, features);
         }
     }
 
-    private void closestEntityType(List<StanfordCorenlpToken> sequence, int focus, TObjectDoubleMap<String> features) {
+    private void closestEntityType(List<StanfordCorenlpToken> sequence, int focus, FeatureEmitter features) {
         int closest = Integer.MAX_VALUE;
         String closestMentionType = null;
 
@@ -63,7 +62,7 @@ public class EntityFeatures extends SequenceFeatureWithFocus<StanfordCorenlpToke
         }
 
         if (closestMentionType != null) {
-            addToFeatures(features, FeatureUtils.formatFeatureName("ClosestEntityType", closestMentionType), 1);
+            features.begin("ClosestEntityType::").append(closestMentionType).add(1);
         }
     }
 
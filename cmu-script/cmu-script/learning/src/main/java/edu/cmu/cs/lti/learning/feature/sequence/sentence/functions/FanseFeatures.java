@@ -1,11 +1,10 @@
 package edu.cmu.cs.lti.learning.feature.sequence.sentence.functions;
 
-import edu.cmu.cs.lti.learning.feature.sequence.FeatureUtils;
 import edu.cmu.cs.lti.learning.feature.sequence.base.SequenceFeatureWithFocus;
+import edu.cmu.cs.lti.learning.model.FeatureEmitter;
 import edu.cmu.cs.lti.script.type.*;
 import edu.cmu.cs.lti.uima.util.TokenAlignmentHelper;
 import edu.cmu.cs.lti.utils.Configuration;
-import gnu.trove.map.TObjectDoubleMap;
 import org.apache.uima.fit.util.FSCollectionFactory;
 import org.apache.uima.fit.util.JCasUtil;
 import org.apache.uima.jcas.JCas;
@@ -27,9 +26,9 @@ import java.util.function.BiConsumer;
 public class FanseFeatures extends SequenceFeatureWithFocus<StanfordCorenlpToken>  {
     private TokenAlignmentHelper align;
 
-    private List<BiConsumer<TObjectDoubleMap<String>, FanseToken>> headTemplates;
+    private List<BiConsumer<FeatureEmitter, FanseToken>> headTemplates;
 
-    private List<BiConsumer<TObjectDoubleMap<String>, FanseSemanticRelation>> argumentTemplates;
+    private List<BiConsumer<FeatureEmitter, FanseSemanticRelation>> argumentTemplates;
 
     private boolean loadWordnetSenseTokens;
 
@@ -99,8 +98,8 @@ public class FanseFeatures extends SequenceFeatureWithFocus<StanfordCorenlpToken
     }
 
     @Override
-    public void extract(List<StanfordCorenlpToken> sequence, int focus, TObjectDoubleMap<String> features,
-                        TObjectDoubleMap<String> featuresNeedForState) {
+    public void extract(List<StanfordCorenlpToken> sequence, int focus, FeatureEmitter features,
+                        FeatureEmitter featuresNeedForState) {
         if (focus > sequence.size() - 1 || focus < 0) {
             return;
         }
@@ -119,36 +118,33 @@ public class FanseFeatures extends SequenceFeatureWithFocus<StanfordCorenlpToken
         }
     }
 
-    private void fanseHeadLemmaTemplate(TObjectDoubleMap<String> features, FanseToken token) {
-        addToFeatures(features, FeatureUtils.formatFeatureName("FanseHeadLemma", token.getLemma()), 1);
+    private void fanseHeadLemmaTemplate(FeatureEmitter features, FanseToken token) {
+        features.begin("FanseHeadLemma::").append(token.getLemma()).add(1);
     }
 
-    private void fanseHeadSenseTemplate(TObjectDoubleMap<String> features, FanseToken token) {
+    private void fanseHeadSenseTemplate(FeatureEmitter features, FanseToken token) {
         if (token.getLexicalSense() != null) {
-            addToFeatures(features, FeatureUtils.formatFeatureName("FanseHeadSense", token.getLexicalSense()), 1);
+            features.begin("FanseHeadSense::").append(token.getLexicalSense()).add(1);
         }
     }
 
-    private void fanseArgumentRoles(TObjectDoubleMap<String> features, FanseSemanticRelation relation) {
-        addToFeatures(features,
-                FeatureUtils.formatFeatureName("FanseArgumentRole", relation.getSemanticAnnotation()), 1);
+    private void fanseArgumentRoles(FeatureEmitter features, FanseSemanticRelation relation) {
+        features.begin("FanseArgumentRole::").append(relation.getSemanticAnnotation()).add(1);
     }
 
 
-    private void fanseArgumentLemma(TObjectDoubleMap<String> features, FanseSemanticRelation relation) {
-        addToFeatures(features,
-                FeatureUtils.formatFeatureName("FanseArgumentLemma", relation.getChildHead().getLemma()), 1);
+    private void fanseArgumentLemma(FeatureEmitter features, FanseSemanticRelation relation) {
+        features.begin("FanseArgumentLemma::").append(relation.getChildHead().getLemma()).add(1);
     }
 
-    private void fanseArgumentNer(TObjectDoubleMap<String> features, FanseSemanticRelation relation) {
-        addToFeatures(features, FeatureUtils.formatFeatureName("FanseArgumentNer", relation.getChildHead().getNerTag()), 1);
+    private void fanseArgumentNer(FeatureEmitter features, FanseSemanticRelation relation) {
+        features.begin("FanseArgumentNer::").append(relation.getChildHead().getNerTag()).add(1);
     }
 
-    private void fanseArgumentWordNetSense(TObjectDoubleMap<String> features, FanseSemanticRelation relation) {
+    private void fanseArgumentWordNetSense(FeatureEmitter features, FanseSemanticRelation relation) {
         Word child = relation.getChildHead();
         if (fanseToken2WordnetType.containsKey(child)) {
-            addToFeatures(features, FeatureUtils.formatFeatureName("FanseArgumentWordNetSense",
-                    fanseToken2WordnetType.get(child)), 1);
+            features.begin("FanseArgumentWordNetSense::").append(fanseToken2WordnetType.get(child)).add(1);
         }
     }
 }
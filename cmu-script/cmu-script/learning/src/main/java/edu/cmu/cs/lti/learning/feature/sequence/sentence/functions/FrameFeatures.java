@@ -1,8 +1,8 @@
 package edu.cmu.cs.lti.learning.feature.sequence.sentence.functions;
 
 import com.google.common.collect.ArrayListMultimap;
-import edu.cmu.cs.lti.learning.feature.sequence.FeatureUtils;
 import edu.cmu.cs.lti.learning.feature.sequence.base.SequenceFeatureWithFocus;
+import edu.cmu.cs.lti.learning.model.FeatureEmitter;
 import edu.cmu.cs.lti.script.type.SemaforAnnotationSet;
 import edu.cmu.cs.lti.script.type.SemaforLabel;
 import edu.cmu.cs.lti.script.type.SemaforLayer;
@@ -10,7 +10,6 @@ import edu.cmu.cs.lti.script.type.StanfordCorenlpToken;
 import edu.cmu.cs.lti.uima.util.UimaConvenience;
 import edu.cmu.cs.lti.uima.util.UimaNlpUtils;
 import edu.cmu.cs.lti.utils.Configuration;
-import gnu.trove.map.TObjectDoubleMap;
 import org.apache.uima.fit.util.FSCollectionFactory;
 import org.apache.uima.fit.util.JCasUtil;
 import org.apache.uima.jcas.JCas;
@@ -35,8 +34,8 @@ public class FrameFeatures extends SequenceFeatureWithFocus<StanfordCorenlpToken
     ArrayListMultimap<StanfordCorenlpToken, Pair<String, String>> triggerToArgs;
     Map<StanfordCorenlpToken, String> triggerToFrameName;
 
-    List<BiConsumer<TObjectDoubleMap<String>, Pair<String, String>>> argumentTemplates;
-    List<BiConsumer<TObjectDoubleMap<String>, String>> frameTemplates;
+    List<BiConsumer<FeatureEmitter, Pair<String, String>>> argumentTemplates;
+    List<BiConsumer<FeatureEmitter, String>> frameTemplates;
 
     public FrameFeatures(Configuration generalConfig, Configuration featureConfig) {
         super(generalConfig, featureConfig);
@@ -70,8 +69,8 @@ public class FrameFeatures extends SequenceFeatureWithFocus<StanfordCorenlpToken
     }
 
     @Override
-    public void extract(List<StanfordCorenlpToken> sequence, int focus, TObjectDoubleMap<String> features,
-                        TObjectDoubleMap<String> featuresNeedForState) {
+    public void extract(List<StanfordCorenlpToken> sequence, int focus, FeatureEmitter features,
+                        FeatureEmitter featuresNeedForState) {
         if (focus > sequence.size() - 1 || focus < 0) {
             return;
         }
@@ -79,30 +78,30 @@ public class FrameFeatures extends SequenceFeatureWithFocus<StanfordCorenlpToken
 
         if (triggerToArgs.containsKey(token)) {
             for (Pair<String, String> triggerAndType : triggerToArgs.get(token)) {
-                for (BiConsumer<TObjectDoubleMap<String>, Pair<String, String>> argumentTemplate : argumentTemplates) {
+                for (BiConsumer<FeatureEmitter, Pair<String, String>> argumentTemplate : argumentTemplates) {
                     argumentTemplate.accept(features, triggerAndType);
                 }
             }
         }
 
         if (triggerToFrameName.containsKey(token)) {
-            for (BiConsumer<TObjectDoubleMap<String>, String> frameTemplate : frameTemplates) {
+            for (BiConsumer<FeatureEmitter, String> frameTemplate : frameTemplates) {
                 frameTemplate.accept(features, triggerToFrameName.get(token));
             }
         }
     }
 
     // Feature templates.
-    private void frameName(TObjectDoubleMap<String> features, String frameName) {
-        addToFeatures(features, FeatureUtils.formatFeatureName("FrameName", frameName), 1);
+    private void frameName(FeatureEmitter features, String frameName) {
+        features.begin("FrameName::").append(frameName).add(1);
     }
 
-    private void frameArgumentLemma(TObjectDoubleMap<String> features, Pair<String, String> triggerAndType) {
-        addToFeatures(features, FeatureUtils.formatFeatureName("FrameArgumentLemma", triggerAndType.getValue0()), 1);
+    private void frameArgumentLemma(FeatureEmitter features, Pair<String, String> triggerAndType) {
+        features.begin("FrameArgumentLemma::").append(triggerAndType.getValue0()).add(1);
     }
 
-    private void frameArgumentRole(TObjectDoubleMap<String> features, Pair<String, String> triggerAndType) {
-        addToFeatures(features, FeatureUtils.formatFeatureName("FrameArgumentRole", triggerAndType.getValue1()), 1);
+    private void frameArgumentRole(FeatureEmitter features, Pair<String, String> triggerAndType) {
+        features.begin("FrameArgumentRole::").append(triggerAndType.getValue1()).add(1);
     }
 
     // Prepare frames.
@@ -1,10 +1,10 @@
 package edu.cmu.cs.lti.learning.feature.sequence.sentence.functions;
 
 import edu.cmu.cs.lti.learning.feature.sequence.base.SequenceFeatureWithFocus;
+import edu.cmu.cs.lti.learning.model.FeatureEmitter;
 import edu.cmu.cs.lti.script.type.QuotedContent;
 import edu.cmu.cs.lti.script.type.StanfordCorenlpToken;
 import edu.cmu.cs.lti.utils.Configuration;
-import gnu.trove.map.TObjectDoubleMap;
 import org.apache.uima.fit.util.JCasUtil;
 import org.apache.uima.jcas.JCas;
 
@@ -43,14 +43,14 @@ public class InQuoteFeatures extends SequenceFeatureWithFocus<StanfordCorenlpTok
     }
 
     @Override
-    public void extract(List<StanfordCorenlpToken> sequence, int focus, TObjectDoubleMap<String> features,
-                        TObjectDoubleMap<String> featuresNeedForState) {
+    public void extract(List<StanfordCorenlpToken> sequence, int focus, FeatureEmitter features,
+                        FeatureEmitter featuresNeedForState) {
         if (focus > 0 && focus < sequence.size()) {
             isInPhraseQuote(features, sequence.get(focus));
         }
     }
 
-    private void isInPhraseQuote(TObjectDoubleMap<String> features, StanfordCorenlpToken token) {
+    private void isInPhraseQuote(FeatureEmitter features, StanfordCorenlpToken token) {
         if (phraseQuotedTokens.contains(token)) {
             addToFeatures(features, "InPhraseQuote", 1);
         }
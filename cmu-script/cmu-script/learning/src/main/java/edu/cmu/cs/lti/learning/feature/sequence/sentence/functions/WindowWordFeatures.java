@@ -1,20 +1,17 @@
 package edu.cmu.cs.lti.learning.feature.sequence.sentence.functions;
 
-import edu.cmu.cs.lti.learning.feature.sequence.FeatureUtils;
 import edu.cmu.cs.lti.learning.feature.sequence.base.SequenceFeatureWithFocus;
+import edu.cmu.cs.lti.learning.model.FeatureEmitter;
 import edu.cmu.cs.lti.script.type.StanfordCorenlpToken;
 import edu.cmu.cs.lti.script.type.StanfordEntityMention;
 import edu.cmu.cs.lti.utils.Configuration;
-import gnu.trove.map.TObjectDoubleMap;
 import org.apache.uima.fit.util.JCasUtil;
 import org.apache.uima.jcas.JCas;
-import org.javatuples.Pair;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.util.List;
 import java.util.function.Function;
-import java.util.stream.IntStream;
 
 /**
  * Created with IntelliJ IDEA.
@@ -64,8 +61,8 @@ public class WindowWordFeatures extends SequenceFeatureWithFocus<StanfordCorenlp
     }
 
     @Override
-    public void extract(List<StanfordCorenlpToken> sequence, int focus, TObjectDoubleMap<String> features,
-                        TObjectDoubleMap<String> featuresNeedForState) {
+    public void extract(List<StanfordCorenlpToken> sequence, int focus, FeatureEmitter features,
+                        FeatureEmitter featuresNeedForState) {
         if (posWindowSize >= 0) {
             addWindowFeatures(sequence, focus, features, StanfordCorenlpToken::getPos, "Pos", posWindowSize);
 //            // POS conjoined with previous state, we are conservative about window size here.
@@ -87,9 +84,9 @@ public class WindowWordFeatures extends SequenceFeatureWithFocus<StanfordCorenlp
         }
     }
 
-    public void addWindowFeatures(List<StanfordCorenlpToken> sentence, int focus, TObjectDoubleMap<String> features,
+    public void addWindowFeatures(List<StanfordCorenlpToken> sentence, int focus, FeatureEmitter features,
                                   Function<StanfordCorenlpToken, String> operator, String featureType, int windowSize) {
-        putWithoutOutside(features, computeWordFeature(sentence, featureType, operator, focus, 0));
+        addWordFeature(sentence, featureType, operator, focus, 0, features);
 
         addPositionFeatureWithOffsetRange(sentence, focus, -windowSize, -1, featureType, operator, features);
         addPositionFeatureWithOffsetRange(sentence, focus, 1, windowSize, featureType, operator, features);
@@ -100,31 +97,29 @@ public class WindowWordFeatures extends SequenceFeatureWithFocus<StanfordCorenlp
 
     public void addPositionFeatureWithOffsetRange(List<StanfordCorenlpToken> sentence, int focus, int begin, int end,
                                                   String prefix, Function<StanfordCorenlpToken, String> operator,
-                                                  TObjectDoubleMap<String> features) {
-        IntStream.rangeClosed(begin, end)
-                .mapToObj(offset -> computeWordFeature(sentence, prefix, operator, focus, offset))
-                .forEach(featureTypeAndName -> putWithoutOutside(features, featureTypeAndName));
+                                                  FeatureEmitter features) {
+        for (int offset = begin; offset <= end; offset++) {
+            addWordFeature(sentence, prefix, operator, focus, offset, features);
+        }
     }
 
     public void addWindowFeatureWithOffsetRange(List<StanfordCorenlpToken> sentence, int focus,
                                                 int limitStart, int limitEnd, String prefix,
                                                 Function<StanfordCorenlpToken, String> operator,
-                                                TObjectDoubleMap<String> features) {
-        IntStream.rangeClosed(limitStart, limitEnd).forEach(windowLimit -> {
-            IntStream.rangeClosed(1, windowLimit)
-                    .mapToObj(offset -> computeWindowWordFeature(sentence, prefix, operator, windowLimit, focus,
-                            offset))
-                    .forEach(featureTypeAndName -> putWithoutOutside(features, featureTypeAndName));
-            IntStream.rangeClosed(-windowLimit, -1)
-                    .mapToObj(offset -> computeWindowWordFeature(sentence, prefix, operator, windowLimit, focus,
-                            offset))
-                    .forEach(featureTypeAndName -> putWithoutOutside(features, featureTypeAndName));
-        });
+                                                FeatureEmitter features) {
+        for (int windowLimit = limitStart; windowLimit <= limitEnd; windowLimit++) {
+            for (int offset = 1; offset <= windowLimit; offset++) {
+                addWindowWordFeature(sentence, prefix, operator, windowLimit, focus, offset, features);
+            }
+            for (int offset = -windowLimit; offset <= -1; offset++) {
+                addWindowWordFeature(sentence, prefix, operator, windowLimit, focus, offset, features);
+            }
+        }
     }
 
     public void addNgramFeatureWithOffsetRange(List<StanfordCorenlpToken> sentence, int focus, int begin, int end,
                                                String prefix, Function<StanfordCorenlpToken, String> operator,
-                                               TObjectDoubleMap<String> features, int n) {
+                                               FeatureEmitter features, int n) {
         int left = Math.min(focus + begin, -1);
         int right = Math.max(focus + end, sentence.size());
 
@@ -136,44 +131,49 @@ public class WindowWordFeatures extends SequenceFeatureWithFocus<StanfordCorenlp
             }
         }
 
-        String ngramPrefix = "window_" + n + "gram" + prefix;
+        String ngramPrefix = "window_" + n + "gram" + prefix + "::";
 
         while (true) {
-            StringBuilder sb = new StringBuilder();
-            String ngramSep = "";
+            features.begin(ngramPrefix);
             for (int i = 0; i < runners.length; i++) {
-                sb.append(ngramSep);
-                ngramSep = "_";
+                if (i > 0) {
+                    features.append('_');
+                }
                 // Operate with outside will ensure we get a feature value. However, we do not allow outside here, this
                 // function will simply create <outside> for tokens without NER.
-                String val = operateWithOutsideLowerCase(sentence, operator, runners[i]);
-                sb.append(val);
+                features.append(operateWithOutsideLowerCase(sentence, operator, runners[i]));
                 runners[i]++;
                 if (runners[i] > right) {
                     return;
                 }
             }
-            addToFeatures(features, FeatureUtils.formatFeatureName(ngramPrefix, sb.toString()), 1);
+            features.add(1);
         }
     }
 
-    public void putWithoutOutside(TObjectDoubleMap<String> features, Pair<String, String> featureTypeAndName) {
-        if (!featureTypeAndName.getValue1().equals(outsideValue)) {
-            addToFeatures(features, FeatureUtils.formatFeatureName(featureTypeAndName), 1);
-        }
-    }
-
-    public Pair<String, String> computeWordFeature(List<StanfordCorenlpToken> sentence, String
-            prefix, Function<StanfordCorenlpToken, String> operator, int focus, int offset) {
+    /**
+     * Add the feature "prefix_offset=offset::word", unless the word is outside the sentence.
+     */
+    public void addWordFeature(List<StanfordCorenlpToken> sentence, String prefix,
+                               Function<StanfordCorenlpToken, String> operator, int focus, int offset,
+                               FeatureEmitter features) {
         // NOTE all word features are lowercased.
-        return Pair.with(String.format("%s_offset=%d", prefix, offset), operateWithOutsideLowerCase(sentence, operator,
-                focus + offset));
+        String word = operateWithOutsideLowerCase(sentence, operator, focus + offset);
+        if (!word.equals(outsideValue)) {
+            features.begin(prefix).append("_offset=").append(offset).append("::").append(word).add(1);
+        }
     }
 
-    public Pair<String, String> computeWindowWordFeature(List<StanfordCorenlpToken> sentence, String
-            prefix, Function<StanfordCorenlpToken, String> operator, int windowSize, int focus, int offset) {
+    /**
+     * Add the feature "prefix_window=windowSize::word", unless the word is outside the sentence.
+     */
+    public void addWindowWordFeature(List<StanfordCorenlpToken> sentence, String prefix,
+                                     Function<StanfordCorenlpToken, String> operator, int windowSize, int focus,
+                                     int offset, FeatureEmitter features) {
         // NOTE all word features are lowercased.
-        return Pair.with(String.format("%s_window=%d", prefix, windowSize), operateWithOutsideLowerCase(sentence,
-                operator, focus + offset));
+        String word = operateWithOutsideLowerCase(sentence, operator, focus + offset);
+        if (!word.equals(outsideValue)) {
+            features.begin(prefix).append("_window=").append(windowSize).append("::").append(word).add(1);
+        }
     }
-}
\ No newline at end of file
+}
@@ -1,14 +1,13 @@
 package edu.cmu.cs.lti.learning.feature.sequence.sentence.functions;
 
-import edu.cmu.cs.lti.learning.feature.sequence.FeatureUtils;
 import edu.cmu.cs.lti.learning.feature.sequence.base.SequenceFeatureWithFocus;
+import edu.cmu.cs.lti.learning.model.FeatureEmitter;
 import edu.cmu.cs.lti.ling.WordNetSearcher;
 import edu.cmu.cs.lti.script.type.Dependency;
 import edu.cmu.cs.lti.script.type.StanfordCorenlpToken;
 import edu.cmu.cs.lti.script.type.WordNetBasedEntity;
 import edu.cmu.cs.lti.utils.Configuration;
 import edu.cmu.cs.lti.utils.FileUtils;
-import gnu.trove.map.TObjectDoubleMap;
 import org.apache.uima.fit.util.FSCollectionFactory;
 import org.apache.uima.fit.util.JCasUtil;
 import org.apache.uima.jcas.JCas;
@@ -34,7 +33,7 @@ public class WordNetSenseFeatures extends SequenceFeatureWithFocus<StanfordCoren
     Set<StanfordCorenlpToken> jobTitleWords;
     WordNetSearcher searcher;
 
-    List<BiConsumer<TObjectDoubleMap<String>, StanfordCorenlpToken>> featureTemplates;
+    List<BiConsumer<FeatureEmitter, StanfordCorenlpToken>> featureTemplates;
 
     public WordNetSenseFeatures(Configuration generalConfig, Configuration featureConfig) throws IOException {
         super(generalConfig, featureConfig);
@@ -79,16 +78,16 @@ public class WordNetSenseFeatures extends SequenceFeatureWithFocus<StanfordCoren
     }
 
     @Override
-    public void extract(List<StanfordCorenlpToken> sequence, int focus, TObjectDoubleMap<String> features,
-                        TObjectDoubleMap<String> featuresNeedForState) {
+    public void extract(List<StanfordCorenlpToken> sequence, int focus, FeatureEmitter features,
+                        FeatureEmitter featuresNeedForState) {
         if (focus > 0 && focus < sequence.size()) {
-            for (BiConsumer<TObjectDoubleMap<String>, StanfordCorenlpToken> featureTemplate : featureTemplates) {
+            for (BiConsumer<FeatureEmitter, StanfordCorenlpToken> featureTemplate : featureTemplates) {
                 featureTemplate.accept(features, sequence.get(focus));
             }
         }
     }
 
-    private void modifyingJobTitle(TObjectDoubleMap<String> features, StanfordCorenlpToken token) {
+    private void modifyingJobTitle(FeatureEmitter features, StanfordCorenlpToken token) {
         FSList headDeps = token.getHeadDependencyRelations();
         if (headDeps != null) {
             FSCollectionFactory.create(headDeps, Dependency.class).stream().forEach(dep -> {
@@ -99,13 +98,13 @@ public class WordNetSenseFeatures extends SequenceFeatureWithFocus<StanfordCoren
         }
     }
 
-    private void synonymFeatures(TObjectDoubleMap<String> features, StanfordCorenlpToken token) {
+    private void synonymFeatures(FeatureEmitter features, StanfordCorenlpToken token) {
         for (String synonym : searcher.getAllSynonyms(token.getLemma().toLowerCase(), token.getPos())) {
-            addToFeatures(features, FeatureUtils.formatFeatureName("TriggerLemmaSynonym", synonym), 1);
+            features.begin("TriggerLemmaSynonym::").append(synonym).add(1);
         }
     }
 
-    private void derivationFeatures(TObjectDoubleMap<String> features, StanfordCorenlpToken token) {
+    private void derivationFeatures(FeatureEmitter features, StanfordCorenlpToken token) {
         Set<String> derivedWordType = new HashSet<>();
 
         for (Pair<String, String> der : searcher.getDerivations(token.getLemma().toLowerCase(), token.getPos())) {
@@ -117,7 +116,7 @@ public class WordNetSenseFeatures extends SequenceFeatureWithFocus<StanfordCoren
         }
 
         for (String s : derivedWordType) {
-            addToFeatures(features, FeatureUtils.formatFeatureName("TriggerDerivationForm", s), 1);
+            features.begin("TriggerDerivationForm::").append(s).add(1);
         }
     }
 }
@@ -2,9 +2,11 @@ package edu.cmu.cs.lti.pipeline;
 
 import edu.cmu.cs.lti.uima.io.reader.CustomCollectionReaderFactory;
 import edu.cmu.cs.lti.uima.io.writer.CustomAnalysisEngineFactory;
+import edu.cmu.cs.lti.uima.pipeline.InstrumentedEngines;
+import edu.cmu.cs.lti.uima.pipeline.PipelineInstrumentation;
+import edu.cmu.cs.lti.uima.util.CasSerialization;
 import org.apache.commons.lang3.ArrayUtils;
 import org.apache.uima.UIMAException;
-import org.apache.uima.analysis_engine.AnalysisEngine;
 import org.apache.uima.analysis_engine.AnalysisEngineDescription;
 import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
 import org.apache.uima.cas.CAS;
@@ -25,7 +27,6 @@ import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.List;
 
-import static org.apache.uima.fit.factory.AnalysisEngineFactory.createEngine;
 import static org.apache.uima.fit.factory.AnalysisEngineFactory.createEngineDescription;
 
 /**
@@ -41,9 +42,21 @@ public class BasicPipeline {
     private CollectionReaderDescription readerDescription;
     private CollectionReaderDescription outputReader;
     private AnalysisEngineDescription aggregateAnalysisEngineDesc;
+    private AnalysisEngineDescription[] engineDescriptions;
+
+    // The processors and the writer are kept separately for the multi-thread runner.
+    private AnalysisEngineDescription[] processorDescriptions;
+    private AnalysisEngineDescription writerDescription;
+
+    // Name of the instrumentation report.
+    private String pipelineName;
+
+    // The output location, used to find the documents that are already processed.
+    private File outputDirectory;
+    private CasSerialization.Format outputFormat;
 
     private CollectionReader cReader;
-    private AnalysisEngine aggregateAnalysisEngine;
+    private InstrumentedEngines aggregateAnalysisEngine;
     private CAS mergedCas;
 
     private boolean withOutput;
@@ -55,19 +68,37 @@ public class BasicPipeline {
 
     public BasicPipeline(ProcessorWrapper wrapper, String workingDir, String outputDir) throws
             UIMAException, CpeDescriptorException, SAXException, IOException {
+        this(wrapper, workingDir, outputDir, CasSerialization.Format.XMI);
+    }
+
+    /**
+     * @param wrapper      The reader and processors to run.
+     * @param workingDir   The parent directory of the output.
+     * @param outputDir    The output directory name.
+     * @param outputFormat The format to write the processed CAS, binary is much faster to write and read than XMI.
+     */
+    public BasicPipeline(ProcessorWrapper wrapper, String workingDir, String outputDir,
+                         CasSerialization.Format outputFormat) throws
+            UIMAException, CpeDescriptorException, SAXException, IOException {
         readerDescription = wrapper.getCollectionReader();
         AnalysisEngineDescription[] processers = wrapper.getProcessors();
+        processorDescriptions = processers;
 
-        AnalysisEngineDescription[] engineDescriptions;
         if (workingDir != null && outputDir != null) {
             logger.info("Pipeline with output at " + new File(workingDir, outputDir));
-            engineDescriptions = ArrayUtils.add(processers, CustomAnalysisEngineFactory.createXmiWriter(workingDir,
-                    outputDir));
-            outputReader = CustomCollectionReaderFactory.createXmiReader(workingDir, outputDir);
+            writerDescription = CustomAnalysisEngineFactory.createWriter(outputFormat, workingDir, outputDir);
+            engineDescriptions = ArrayUtils.add(processers, writerDescription);
+            outputReader = CustomCollectionReaderFactory.createReader(outputFormat, workingDir, outputDir);
             withOutput = true;
+            pipelineName = outputDir.replace('/', '_');
+            outputDirectory = new File(workingDir, outputDir);
+            this.outputFormat = outputFormat;
         } else {
             withOutput = false;
             engineDescriptions = processers;
+            String firstName = processers.length == 0 ? "pipeline" :
+                    processers[0].getAnalysisEngineMetaData().getName();
+            pipelineName = firstName.substring(firstName.lastIndexOf('.') + 1);
         }
 
         aggregateAnalysisEngineDesc = createEngineDescription(engineDescriptions);
@@ -131,11 +162,34 @@ public class BasicPipeline {
     public void run() throws IOException, UIMAException {
 //        logger.info(readerDescription.toString());
 //        logger.info(aggregateAnalysisEngineDesc.toString());
-        SimplePipeline.runPipeline(readerDescription, aggregateAnalysisEngineDesc);
+        if (!PipelineInstrumentation.isEnabled()) {
+            SimplePipeline.runPipeline(readerDescription, aggregateAnalysisEngineDesc);
+            return;
+        }
+
+        // Same as the simple pipeline, but with each engine measured.
+        CollectionReader reader = CollectionReaderFactory.createReader(readerDescription);
+        InstrumentedEngines engines = InstrumentedEngines.create(pipelineName, engineDescriptions);
+        CAS cas = CasCreationUtils.createCas(Arrays.asList(reader.getMetaData(),
+                aggregateAnalysisEngineDesc.getMetaData()));
+        reader.typeSystemInit(cas.getTypeSystem());
+
+        try {
+            while (reader.hasNext()) {
+                reader.getNext(cas);
+                engines.process(cas);
+                cas.reset();
+            }
+            engines.collectionProcessComplete();
+        } finally {
+            engines.destroy();
+            reader.close();
+            reader.destroy();
+        }
     }
 
     /**
-     * Run processor from provided reader, write processed CAS as XMI to the given directory.
+     * Run processor from provided reader, write processed CAS to the given directory.
      *
      * @return A reader description for the processed output.
      * @throws UIMAException
@@ -151,12 +205,115 @@ public class BasicPipeline {
         }
     }
 
+    /**
+     * Run processor from provided reader, write processed CAS to the given directory, skipping the documents that are
+     * already in the output and were produced from the same input and the same processors, as recorded by the
+     * {@link StageManifest} of the output directory. All documents are still read and hashed, but only the new or
+     * changed ones are processed. Documents recorded earlier but no longer in the input are removed from the output.
+     * <p>
+     * Documents without source document information cannot be identified across runs, they are always processed.
+     * <p>
+     * The processors are not notified of the collection end when no document is processed, so the processors that
+     * write results over the whole collection (e.g. trainers) keep the results of the last run that processed any.
+     *
+     * @return A reader description for the processed output.
+     * @throws UIMAException
+     * @throws IOException
+     */
+    public CollectionReaderDescription runIncrementalWithOutput() throws UIMAException, IOException {
+        if (!withOutput) {
+            throw new IllegalAccessError("Pipeline is not initialized with output.");
+        }
+
+        StageManifest manifest = new StageManifest(outputDirectory);
+        String fingerprint = StageManifest.fingerprint(processorDescriptions);
+
+        CollectionReader reader = CollectionReaderFactory.createReader(readerDescription);
+        InstrumentedEngines engines = InstrumentedEngines.create(pipelineName, engineDescriptions);
+        CAS cas = CasCreationUtils.createCas(Arrays.asList(reader.getMetaData(),
+                aggregateAnalysisEngineDesc.getMetaData()));
+        reader.typeSystemInit(cas.getTypeSystem());
+
+        int numProcessed = 0;
+        int numSkipped = 0;
+        try {
+            while (reader.hasNext()) {
+                reader.getNext(cas);
+                String outputFileName = CasSerialization.getOutputFileName(cas.getJCas(),
+                        outputFormat.getFileSuffix());
+                String inputHash = outputFileName == null ? null : StageManifest.hashCas(cas);
+
+                if (outputFileName != null && manifest.isUpToDate(outputFileName, inputHash, fingerprint)) {
+                    numSkipped++;
+                } else {
+                    engines.process(cas);
+                    numProcessed++;
+                    if (outputFileName != null) {
+                        manifest.update(outputFileName, inputHash, fingerprint);
+                    }
+                }
+                cas.reset();
+            }
+            if (numProcessed > 0) {
+                engines.collectionProcessComplete();
+            }
+
+            int numRemoved = manifest.removeUnseen();
+            logger.info(String.format("Processed %d documents, %d up to date, %d removed from %s.", numProcessed,
+                    numSkipped, numRemoved, outputDirectory));
+        } finally {
+            // Keep the record of the finished documents even if the run fails.
+            manifest.save();
+            engines.destroy();
+            reader.close();
+            reader.destroy();
+        }
+        return outputReader;
+    }
+
+    /**
+     * Run processor from provided reader with multiple worker threads. Each worker runs its own instances of the
+     * processors, the output is written by a single thread in the reading order. The first failure in reading order
+     * is thrown after the running documents finish.
+     * <p>
+     * Processors that accumulate results over the collection get only part of the documents in each thread, run them
+     * with {@link #run()} instead.
+     *
+     * @param numThreads Number of worker threads.
+     * @throws IOException
+     * @throws UIMAException
+     */
+    public void runParallel(int numThreads) throws IOException, UIMAException {
+        new MultiThreadPipelineRunner(pipelineName, readerDescription, processorDescriptions, writerDescription,
+                numThreads).run();
+    }
+
+    /**
+     * Run processor from provided reader with multiple worker threads, write processed CAS to the given directory.
+     *
+     * @param numThreads Number of worker threads.
+     * @return A reader description for the processed output.
+     * @throws UIMAException
+     * @throws IOException
+     */
+    public CollectionReaderDescription runParallelWithOutput(int numThreads) throws UIMAException, IOException {
+        if (withOutput) {
+            logger.info("Processing with output using " + numThreads + " threads.");
+            runParallel(numThreads);
+            return outputReader;
+        } else {
+            throw new IllegalAccessError("Pipeline is not initialized with output.");
+        }
+    }
+
     /**
      * Run with a CPE from provided reader. CPE use a asynchronous thread pool, which may die during processing.
      *
      * @throws IOException
      * @throws UIMAException
+     * @deprecated Use {@link #runParallel(int)}.
      */
+    @Deprecated
     public void runWithCpe(int numThread) throws IOException, UIMAException, CpeDescriptorException, SAXException {
         CpeBuilder cpeBuilder = new CpeBuilder();
         cpeBuilder.setMaxProcessingUnitThreadCount(numThread);
@@ -185,12 +342,14 @@ public class BasicPipeline {
 
 
     /**
-     * Run processor from provided reader, write processed CAS as XMI to the given directory.
+     * Run processor from provided reader, write processed CAS to the given directory.
      *
      * @return A reader description for the processed output.
      * @throws UIMAException
      * @throws IOException
+     * @deprecated Use {@link #runParallelWithOutput(int)}.
      */
+    @Deprecated
     public CollectionReaderDescription runCpeWithOutput(int numThread) throws UIMAException, IOException,
             CpeDescriptorException, SAXException {
         if (withOutput) {
@@ -212,7 +371,7 @@ public class BasicPipeline {
         cReader = CollectionReaderFactory.createReader(readerDescription);
 
         // Instantiate AAE
-        aggregateAnalysisEngine = createEngine(aggregateAnalysisEngineDesc);
+        aggregateAnalysisEngine = InstrumentedEngines.create(pipelineName, engineDescriptions);
 
         // Create CAS from merged metadata
         mergedCas = CasCreationUtils.createCas(
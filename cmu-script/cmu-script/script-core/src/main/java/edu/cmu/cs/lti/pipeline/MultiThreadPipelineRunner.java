@@ -0,0 +1,344 @@
+package edu.cmu.cs.lti.pipeline;
+
+import edu.cmu.cs.lti.uima.pipeline.PipelineInstrumentation;
+import org.apache.uima.UIMAException;
+import org.apache.uima.UIMAFramework;
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.analysis_engine.AnalysisEngineDescription;
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.TypeSystem;
+import org.apache.uima.collection.CollectionReader;
+import org.apache.uima.collection.CollectionReaderDescription;
+import org.apache.uima.fit.factory.CollectionReaderFactory;
+import org.apache.uima.resource.CasDefinition;
+import org.apache.uima.resource.metadata.ProcessingResourceMetaData;
+import org.apache.uima.util.CasCreationUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import static org.apache.uima.fit.factory.AnalysisEngineFactory.createEngine;
+
+/**
+ * Run a pipeline with several worker threads. A reader thread fills CASes from a bounded pool and puts them on a
+ * bounded work queue. Each worker owns its own instances of the processors and runs them on the CASes it takes. The
+ * calling thread is the single writer stage: it runs the writer on the processed CASes in reading order, then resets
+ * them and returns them to the pool.
+ * <p>
+ * The time, allocation and CAS size of the reader, each processor (summed over the workers) and the writer are
+ * recorded with {@link PipelineInstrumentation} and reported at the end.
+ * <p>
+ * When a document fails, no more documents are read, the remaining ones are drained without processing, and the
+ * failure of the first failed document in reading order is thrown. Processors that collect results over the whole
+ * collection (e.g. trainers) will see only part of the documents in each worker, they should be run single threaded.
+ */
+class MultiThreadPipelineRunner {
+    private static final Logger logger = LoggerFactory.getLogger(MultiThreadPipelineRunner.class);
+
+    private final CollectionReaderDescription readerDescription;
+    private final AnalysisEngineDescription[] processorDescriptions;
+    private final AnalysisEngineDescription writerDescription;
+    private final int numThreads;
+
+    private final BlockingQueue<CAS> casPool;
+    private final BlockingQueue<Task> workQueue;
+    private final BlockingQueue<Task> processedQueue = new LinkedBlockingQueue<>();
+
+    private volatile boolean aborted = false;
+
+    private final PipelineInstrumentation instrumentation;
+    private long numProcessed;
+
+    private static class Task {
+        final long index;
+        final CAS cas;
+        final boolean endOfCollection;
+        Throwable error;
+
+        Task(long index, CAS cas, boolean endOfCollection) {
+            this.index = index;
+            this.cas = cas;
+            this.endOfCollection = endOfCollection;
+        }
+    }
+
+    private static final Task NO_MORE_TASK = new Task(-1, null, true);
+
+    /**
+     * @param pipelineName          Name of the instrumentation report.
+     * @param readerDescription     The reader.
+     * @param processorDescriptions The processors, each worker creates its own instances.
+     * @param writerDescription     The writer, run on a single thread in the reading order, can be null.
+     * @param numThreads            Number of worker threads.
+     */
+    MultiThreadPipelineRunner(String pipelineName, CollectionReaderDescription readerDescription,
+                              AnalysisEngineDescription[] processorDescriptions,
+                              AnalysisEngineDescription writerDescription, int numThreads) {
+        this.readerDescription = readerDescription;
+        this.processorDescriptions = processorDescriptions;
+        this.writerDescription = writerDescription;
+        this.numThreads = numThreads;
+
+        // Two CASes per worker, so that the reader can fill the next one while the worker is processing.
+        int poolSize = numThreads * 2;
+        this.casPool = new ArrayBlockingQueue<>(poolSize);
+        this.workQueue = new ArrayBlockingQueue<>(poolSize + numThreads);
+        this.instrumentation = new PipelineInstrumentation(pipelineName);
+    }
+
+    void run() throws UIMAException, IOException {
+        CollectionReader reader = CollectionReaderFactory.createReader(readerDescription);
+
+        List<AnalysisEngine[]> workerEngines = new ArrayList<>();
+        for (int i = 0; i < numThreads; i++) {
+            AnalysisEngine[] engines = new AnalysisEngine[processorDescriptions.length];
+            for (int j = 0; j < processorDescriptions.length; j++) {
+                engines[j] = createEngine(processorDescriptions[j]);
+            }
+            workerEngines.add(engines);
+        }
+        AnalysisEngine writer = writerDescription == null ? null : createEngine(writerDescription);
+
+        List<ProcessingResourceMetaData> metaData = new ArrayList<>();
+        metaData.add(reader.getProcessingResourceMetaData());
+        for (AnalysisEngineDescription description : processorDescriptions) {
+            metaData.add(description.getAnalysisEngineMetaData());
+        }
+        if (writerDescription != null) {
+            metaData.add(writerDescription.getAnalysisEngineMetaData());
+        }
+        // The type systems, priorities and indexes are merged once, and all the CASes of the pool share the type
+        // system of the first one instead of committing a new one each.
+        CasDefinition casDefinition = new CasDefinition(metaData, UIMAFramework.newDefaultResourceManager());
+        CAS firstCas = CasCreationUtils.createCas(casDefinition.getTypeSystemDescription(),
+                casDefinition.getTypePriorities(), casDefinition.getFsIndexDescriptions());
+        TypeSystem typeSystem = firstCas.getTypeSystem();
+        casPool.add(firstCas);
+        for (int i = 1; i < numThreads * 2; i++) {
+            casPool.add(CasCreationUtils.createCas(typeSystem, casDefinition.getTypePriorities(),
+                    casDefinition.getFsIndexDescriptions(), null));
+        }
+        reader.typeSystemInit(typeSystem);
+
+        // Register the stats in the pipeline order, so that the report does not depend on the thread scheduling.
+        instrumentation.getEngineStats("reader");
+        for (int i = 0; i < processorDescriptions.length; i++) {
+            instrumentation.getEngineStats(engineName(i, processorDescriptions[i]));
+        }
+        if (writerDescription != null) {
+            instrumentation.getEngineStats(engineName(processorDescriptions.length, writerDescription));
+        }
+
+        logger.info(String.format("Running pipeline with %d worker threads.", numThreads));
+
+        List<Thread> threads = new ArrayList<>();
+        threads.add(new Thread(() -> read(reader), "pipeline-reader"));
+        for (int i = 0; i < numThreads; i++) {
+            AnalysisEngine[] engines = workerEngines.get(i);
+            threads.add(new Thread(() -> work(engines), "pipeline-worker-" + i));
+        }
+        threads.forEach(Thread::start);
+
+        Throwable failure = null;
+        try {
+            failure = write(writer);
+        } finally {
+            aborted = aborted || failure != null;
+            if (Thread.currentThread().isInterrupted()) {
+                // The writer stopped early, the other stages may be waiting for it.
+                threads.forEach(Thread::interrupt);
+            }
+            for (Thread thread : threads) {
+                try {
+                    thread.join();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            try {
+                if (failure == null) {
+                    for (AnalysisEngine[] engines : workerEngines) {
+                        for (AnalysisEngine engine : engines) {
+                            engine.collectionProcessComplete();
+                        }
+                    }
+                    if (writer != null) {
+                        writer.collectionProcessComplete();
+                    }
+                }
+            } finally {
+                for (AnalysisEngine[] engines : workerEngines) {
+                    for (AnalysisEngine engine : engines) {
+                        engine.destroy();
+                    }
+                }
+                if (writer != null) {
+                    writer.destroy();
+                }
+                reader.close();
+                reader.destroy();
+            }
+        }
+
+        if (failure != null) {
+            if (failure instanceof UIMAException) {
+                throw (UIMAException) failure;
+            } else if (failure instanceof IOException) {
+                throw (IOException) failure;
+            } else {
+                throw new AnalysisEngineProcessException(failure);
+            }
+        }
+
+        logger.info(String.format("Processed %d documents with %d threads.", numProcessed, numThreads));
+        instrumentation.report();
+    }
+
+    /**
+     * Reader stage, fill the CASes from the pool in order.
+     */
+    private void read(CollectionReader reader) {
+        PipelineInstrumentation.EngineStats readerStats = instrumentation.getEngineStats("reader");
+        long index = 0;
+        try {
+            while (!aborted && reader.hasNext()) {
+                CAS cas = casPool.take();
+                Task task = new Task(index++, cas, false);
+                long allocatedBefore = PipelineInstrumentation.currentThreadAllocatedBytes();
+                long start = System.nanoTime();
+                try {
+                    reader.getNext(cas);
+                    long wallTime = System.nanoTime() - start;
+                    long allocated = allocatedBefore < 0 ? -1 :
+                            PipelineInstrumentation.currentThreadAllocatedBytes() - allocatedBefore;
+                    readerStats.record(wallTime, allocated, PipelineInstrumentation.textSize(cas),
+                            PipelineInstrumentation.annotationCount(cas));
+                } catch (Exception e) {
+                    task.error = e;
+                    aborted = true;
+                }
+                workQueue.put(task);
+            }
+        } catch (Throwable e) {
+            // The failure happens outside of a document, reported as one without a CAS.
+            Task task = new Task(index++, null, false);
+            task.error = e;
+            aborted = true;
+            putQuietly(processedQueue, task);
+        } finally {
+            putQuietly(processedQueue, new Task(index, null, true));
+            for (int i = 0; i < numThreads; i++) {
+                putQuietly(workQueue, NO_MORE_TASK);
+            }
+        }
+    }
+
+    /**
+     * Worker stage, run this worker's processors on the CASes. After a failure, the CASes are only passed on.
+     */
+    private void work(AnalysisEngine[] engines) {
+        PipelineInstrumentation.EngineStats[] stats = new PipelineInstrumentation.EngineStats[engines.length];
+        for (int i = 0; i < engines.length; i++) {
+            stats[i] = instrumentation.getEngineStats(engineName(i, processorDescriptions[i]));
+        }
+
+        try {
+            while (true) {
+                Task task = workQueue.take();
+                if (task == NO_MORE_TASK) {
+                    break;
+                }
+                if (task.error == null && !aborted) {
+                    try {
+                        for (int i = 0; i < engines.length; i++) {
+                            stats[i].process(engines[i], task.cas);
+                        }
+                    } catch (Throwable e) {
+                        task.error = e;
+                        aborted = true;
+                    }
+                }
+                processedQueue.put(task);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static String engineName(int position, AnalysisEngineDescription description) {
+        return String.format("%02d_%s", position, description.getAnalysisEngineMetaData().getName());
+    }
+
+    /**
+     * Writer stage, run on the calling thread. The processed CASes are put back to the reading order, so that the
+     * output and the reported failure do not depend on the thread scheduling.
+     *
+     * @return The failure of the first failed document, or null if all succeeded.
+     */
+    private Throwable write(AnalysisEngine writer) {
+        PipelineInstrumentation.EngineStats writerStats = writer == null ? null :
+                instrumentation.getEngineStats(engineName(processorDescriptions.length, writerDescription));
+        Map<Long, Task> pending = new HashMap<>();
+        long nextIndex = 0;
+        long numDocuments = -1;
+        Throwable failure = null;
+
+        while (numDocuments < 0 || nextIndex < numDocuments) {
+            Task processed;
+            try {
+                processed = processedQueue.take();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                aborted = true;
+                return failure == null ? e : failure;
+            }
+
+            if (processed.endOfCollection) {
+                numDocuments = processed.index;
+                continue;
+            }
+            pending.put(processed.index, processed);
+
+            while (pending.containsKey(nextIndex)) {
+                Task task = pending.remove(nextIndex++);
+                if (failure == null) {
+                    if (task.error != null) {
+                        failure = task.error;
+                        aborted = true;
+                        logger.error(String.format("Pipeline failed at document %d, stopping.", task.index));
+                    } else if (writer != null) {
+                        try {
+                            writerStats.process(writer, task.cas);
+                        } catch (Throwable e) {
+                            failure = e;
+                            aborted = true;
+                        }
+                    }
+                    if (failure == null) {
+                        numProcessed++;
+                    }
+                }
+                if (task.cas != null) {
+                    task.cas.reset();
+                    casPool.add(task.cas);
+                }
+            }
+        }
+        return failure;
+    }
+
+    private static void putQuietly(BlockingQueue<Task> queue, Task task) {
+        try {
+            queue.put(task);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,210 @@
+package edu.cmu.cs.lti.pipeline;
+
+import org.apache.commons.io.output.NullOutputStream;
+import org.apache.uima.analysis_engine.AnalysisEngineDescription;
+import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.impl.Serialization;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.resource.ResourceSpecifier;
+import org.apache.uima.resource.metadata.NameValuePair;
+import org.apache.uima.util.InvalidXMLException;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.*;
+
+/**
+ * The record of which documents an output directory holds, and what they were computed from. Each document is keyed
+ * by its output file name, and stores the hash of its input CAS and the fingerprint of the processors that produced
+ * it. A document needs to be processed again only if either of them changed.
+ * <p>
+ * The fingerprint covers the processor classes and parameters, and for each parameter naming a file or directory, the
+ * names, sizes and modification times of the files in it. So a retrained model or an edited configuration file
+ * invalidates all the documents, while an unchanged stage only reprocesses the new or changed documents.
+ */
+class StageManifest {
+    static final String MANIFEST_FILE = "stage_manifest.tsv";
+
+    private static final Logger logger = LoggerFactory.getLogger(StageManifest.class);
+
+    private final File outputDir;
+
+    private final File manifestFile;
+
+    private final Map<String, String[]> entries = new TreeMap<>();
+
+    private final Set<String> seen = new HashSet<>();
+
+    /**
+     * Load the manifest of the output directory, empty if there is none.
+     *
+     * @param outputDir The directory holding the documents and the manifest.
+     */
+    StageManifest(File outputDir) throws IOException {
+        this.outputDir = outputDir;
+        this.manifestFile = new File(outputDir, MANIFEST_FILE);
+
+        if (manifestFile.exists()) {
+            for (String line : Files.readAllLines(manifestFile.toPath(), StandardCharsets.UTF_8)) {
+                String[] fields = line.split("\t");
+                if (fields.length == 3) {
+                    entries.put(fields[0], new String[]{fields[1], fields[2]});
+                }
+            }
+            logger.info(String.format("Loaded manifest of %d documents from %s.", entries.size(), manifestFile));
+        }
+    }
+
+    /**
+     * @return Whether the document exists in the output and was produced from the same input and processors.
+     */
+    boolean isUpToDate(String outputFileName, String inputHash, String fingerprint) {
+        seen.add(outputFileName);
+        String[] entry = entries.get(outputFileName);
+        return entry != null && entry[0].equals(inputHash) && entry[1].equals(fingerprint) &&
+                new File(outputDir, outputFileName).exists();
+    }
+
+    /**
+     * Record a document that has just been written to the output.
+     */
+    void update(String outputFileName, String inputHash, String fingerprint) {
+        seen.add(outputFileName);
+        entries.put(outputFileName, new String[]{inputHash, fingerprint});
+    }
+
+    /**
+     * Remove the documents recorded earlier but not seen in this run, they are no longer in the input.
+     *
+     * @return Number of documents removed.
+     */
+    int removeUnseen() {
+        int numRemoved = 0;
+        for (Iterator<Map.Entry<String, String[]>> iter = entries.entrySet().iterator(); iter.hasNext(); ) {
+            String outputFileName = iter.next().getKey();
+            if (!seen.contains(outputFileName)) {
+                File staleOutput = new File(outputDir, outputFileName);
+                if (staleOutput.exists() && !staleOutput.delete()) {
+                    logger.warn("Cannot delete stale output " + staleOutput);
+                    continue;
+                }
+                iter.remove();
+                numRemoved++;
+            }
+        }
+        return numRemoved;
+    }
+
+    /**
+     * Write the manifest, through a temporary file so that an interrupted write does not lose the old one.
+     */
+    void save() throws IOException {
+        if (!outputDir.exists()) {
+            outputDir.mkdirs();
+        }
+        File tmpFile = new File(outputDir, MANIFEST_FILE + ".tmp");
+        try (PrintWriter writer = new PrintWriter(new OutputStreamWriter(new FileOutputStream(tmpFile),
+                StandardCharsets.UTF_8))) {
+            for (Map.Entry<String, String[]> entry : entries.entrySet()) {
+                writer.println(entry.getKey() + "\t" + entry.getValue()[0] + "\t" + entry.getValue()[1]);
+            }
+        }
+        Files.move(tmpFile.toPath(), manifestFile.toPath(), StandardCopyOption.REPLACE_EXISTING);
+    }
+
+    /**
+     * @return The hash of the CAS content, in binary serialization.
+     */
+    static String hashCas(CAS cas) throws IOException {
+        MessageDigest digest = newDigest();
+        try (OutputStream out = new DigestOutputStream(NullOutputStream.NULL_OUTPUT_STREAM, digest)) {
+            Serialization.serializeCAS(cas, out);
+        }
+        return toHex(digest.digest());
+    }
+
+    /**
+     * @return The fingerprint of the processors, see the class description.
+     */
+    static String fingerprint(AnalysisEngineDescription[] processors) throws ResourceInitializationException {
+        MessageDigest digest = newDigest();
+        for (AnalysisEngineDescription processor : processors) {
+            addDescription(digest, processor);
+        }
+        return toHex(digest.digest());
+    }
+
+    private static void addDescription(MessageDigest digest, AnalysisEngineDescription description) throws
+            ResourceInitializationException {
+        if (description.isPrimitive()) {
+            update(digest, description.getAnnotatorImplementationName());
+        } else {
+            try {
+                for (ResourceSpecifier delegate : description.getDelegateAnalysisEngineSpecifiers().values()) {
+                    if (delegate instanceof AnalysisEngineDescription) {
+                        addDescription(digest, (AnalysisEngineDescription) delegate);
+                    }
+                }
+            } catch (InvalidXMLException e) {
+                throw new ResourceInitializationException(e);
+            }
+        }
+
+        NameValuePair[] settings = description.getAnalysisEngineMetaData().getConfigurationParameterSettings()
+                .getParameterSettings().clone();
+        Arrays.sort(settings, (a, b) -> a.getName().compareTo(b.getName()));
+        for (NameValuePair setting : settings) {
+            Object value = setting.getValue();
+            Object[] values = value instanceof Object[] ? (Object[]) value : new Object[]{value};
+            update(digest, setting.getName());
+            for (Object v : values) {
+                update(digest, String.valueOf(v));
+                if (v instanceof String) {
+                    addFiles(digest, new File((String) v));
+                }
+            }
+        }
+    }
+
+    private static void addFiles(MessageDigest digest, File file) {
+        if (file.isDirectory()) {
+            File[] children = file.listFiles();
+            if (children != null) {
+                Arrays.sort(children);
+                for (File child : children) {
+                    addFiles(digest, child);
+                }
+            }
+        } else if (file.isFile()) {
+            update(digest, file.getPath() + ":" + file.length() + ":" + file.lastModified());
+        }
+    }
+
+    private static void update(MessageDigest digest, String s) {
+        digest.update(s.getBytes(StandardCharsets.UTF_8));
+        digest.update((byte) 0);
+    }
+
+    private static MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance("SHA-1");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static String toHex(byte[] bytes) {
+        StringBuilder sb = new StringBuilder();
+        for (byte b : bytes) {
+            sb.append(String.format("%02x", b));
+        }
+        return sb.toString();
+    }
+}
@@ -0,0 +1,130 @@
+package edu.cmu.cs.lti.pipeline;
+
+import org.apache.uima.analysis_engine.AnalysisEngineDescription;
+import org.apache.uima.fit.component.JCasAnnotator_ImplBase;
+import org.apache.uima.fit.descriptor.ConfigurationParameter;
+import org.apache.uima.jcas.JCas;
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+import static org.apache.uima.fit.factory.AnalysisEngineFactory.createEngineDescription;
+import static org.junit.Assert.*;
+
+public class StageManifestTest {
+    private static final String FINGERPRINT = "processors-v1";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File outputDir;
+
+    public static class ModelAnnotator extends JCasAnnotator_ImplBase {
+        @ConfigurationParameter(name = "modelPath")
+        private String modelPath;
+
+        @Override
+        public void process(JCas aJCas) {
+        }
+    }
+
+    @Before
+    public void setUp() throws IOException {
+        outputDir = folder.newFolder("output");
+    }
+
+    private void writeOutput(String outputFileName) throws IOException {
+        Files.write(new File(outputDir, outputFileName).toPath(), "output".getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    public void savedEntriesAreLoadedAgain() throws IOException {
+        StageManifest manifest = new StageManifest(outputDir);
+        writeOutput("a.xmi");
+        writeOutput("b.xmi");
+        manifest.update("a.xmi", "hash-a", FINGERPRINT);
+        manifest.update("b.xmi", "hash-b", FINGERPRINT);
+        manifest.save();
+
+        StageManifest loaded = new StageManifest(outputDir);
+        assertTrue(loaded.isUpToDate("a.xmi", "hash-a", FINGERPRINT));
+        assertTrue(loaded.isUpToDate("b.xmi", "hash-b", FINGERPRINT));
+        assertFalse(loaded.isUpToDate("c.xmi", "hash-c", FINGERPRINT));
+        assertFalse(new File(outputDir, StageManifest.MANIFEST_FILE + ".tmp").exists());
+    }
+
+    @Test
+    public void reprocessWhenTheInputChanges() throws IOException {
+        StageManifest manifest = new StageManifest(outputDir);
+        writeOutput("a.xmi");
+        manifest.update("a.xmi", "hash-a", FINGERPRINT);
+
+        assertTrue(manifest.isUpToDate("a.xmi", "hash-a", FINGERPRINT));
+        assertFalse(manifest.isUpToDate("a.xmi", "hash-a2", FINGERPRINT));
+    }
+
+    @Test
+    public void reprocessWhenTheFingerprintChanges() throws IOException {
+        StageManifest manifest = new StageManifest(outputDir);
+        writeOutput("a.xmi");
+        manifest.update("a.xmi", "hash-a", FINGERPRINT);
+
+        assertFalse(manifest.isUpToDate("a.xmi", "hash-a", "processors-v2"));
+    }
+
+    @Test
+    public void reprocessWhenTheOutputIsMissing() throws IOException {
+        StageManifest manifest = new StageManifest(outputDir);
+        manifest.update("a.xmi", "hash-a", FINGERPRINT);
+
+        assertFalse(manifest.isUpToDate("a.xmi", "hash-a", FINGERPRINT));
+    }
+
+    @Test
+    public void removeUnseenDeletesStaleOutput() throws IOException {
+        StageManifest manifest = new StageManifest(outputDir);
+        writeOutput("a.xmi");
+        writeOutput("b.xmi");
+        manifest.update("a.xmi", "hash-a", FINGERPRINT);
+        manifest.update("b.xmi", "hash-b", FINGERPRINT);
+        manifest.save();
+
+        // The next run only sees the first document.
+        StageManifest next = new StageManifest(outputDir);
+        assertTrue(next.isUpToDate("a.xmi", "hash-a", FINGERPRINT));
+        assertEquals(1, next.removeUnseen());
+        next.save();
+
+        assertTrue(new File(outputDir, "a.xmi").exists());
+        assertFalse(new File(outputDir, "b.xmi").exists());
+
+        StageManifest loaded = new StageManifest(outputDir);
+        assertTrue(loaded.isUpToDate("a.xmi", "hash-a", FINGERPRINT));
+        assertEquals(0, loaded.removeUnseen());
+        assertTrue(new File(outputDir, "a.xmi").exists());
+    }
+
+    @Test
+    public void fingerprintFollowsParametersAndModelFiles() throws Exception {
+        File model = folder.newFile("model.bin");
+        Files.write(model.toPath(), "weights".getBytes(StandardCharsets.UTF_8));
+        AnalysisEngineDescription[] processors = {createEngineDescription(ModelAnnotator.class, "modelPath",
+                model.getPath())};
+        String fingerprint = StageManifest.fingerprint(processors);
+
+        assertEquals(fingerprint, StageManifest.fingerprint(new AnalysisEngineDescription[]{
+                createEngineDescription(ModelAnnotator.class, "modelPath", model.getPath())}));
+        assertNotEquals(fingerprint, StageManifest.fingerprint(new AnalysisEngineDescription[]{
+                createEngineDescription(ModelAnnotator.class, "modelPath", model.getPath() + ".old")}));
+
+        // A retrained model changes the fingerprint.
+        Files.write(model.toPath(), "retrained weights".getBytes(StandardCharsets.UTF_8));
+        assertNotEquals(fingerprint, StageManifest.fingerprint(processors));
+    }
+}
@@ -2,6 +2,7 @@ package edu.cmu.cs.lti.uima.annotator;
 
 import com.google.common.collect.Lists;
 import edu.cmu.cs.lti.uima.io.reader.AbstractStepBasedDirReader;
+import edu.cmu.cs.lti.uima.io.reader.CasPrefetcher;
 import edu.cmu.cs.lti.uima.util.CasSerialization;
 import org.apache.commons.io.FileUtils;
 import org.apache.uima.UimaContext;
@@ -50,6 +51,7 @@ public class CrossValidationReader extends AbstractStepBasedDirReader {
 
     private int currentIndex;
     private Iterator<File> corpusIter;
+    private CasPrefetcher prefetcher;
 
     @Override
     public void initialize(UimaContext context) throws ResourceInitializationException {
@@ -87,6 +89,9 @@ public class CrossValidationReader extends AbstractStepBasedDirReader {
             }
             logger.info(String.format("Reading %d files for training.", corpus.size()));
         }
+        // Shard after the split, so that the slices do not depend on the sharding.
+        corpus = selectShard(corpus);
+        prefetcher = createPrefetcher(corpus, (cas, file) -> CasSerialization.readXmi(cas, file, false));
         corpusIter = corpus.iterator();
         currentIndex = 0;
     }
@@ -95,7 +100,12 @@ public class CrossValidationReader extends AbstractStepBasedDirReader {
     public void getNext(JCas jCas) throws IOException, CollectionException {
         JCas inputView = JCasUtil.getView(jCas, inputViewName, jCas);
         currentIndex++;
-        CasSerialization.readXmi(inputView, corpusIter.next());
+        File file = corpusIter.next();
+        if (prefetcher != null) {
+            prefetcher.next(inputView.getCas());
+        } else {
+            CasSerialization.readXmi(inputView, file);
+        }
     }
 
     @Override
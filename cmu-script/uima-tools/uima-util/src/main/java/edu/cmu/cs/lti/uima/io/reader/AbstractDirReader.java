@@ -11,12 +11,16 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
 
 /**
  * An abstract reader to consume input in a directory whose name is based on the
  * step number for convenience
+ * <p>
+ * Like {@link AbstractStepBasedDirReader}, readers can read ahead by {@link #PARAM_PREFETCH_DEPTH} documents, and read
+ * one shard of the directory with {@link #PARAM_NUM_SHARDS} and {@link #PARAM_SHARD_INDEX}.
  *
  * @author Jun Araki
  */
@@ -32,6 +36,12 @@ public abstract class AbstractDirReader extends CollectionReader_ImplBase {
 
     public static final String PARAM_INPUT_VIEW_NAME = "ViewName";
 
+    public static final String PARAM_PREFETCH_DEPTH = AbstractStepBasedDirReader.PARAM_PREFETCH_DEPTH;
+
+    public static final String PARAM_NUM_SHARDS = AbstractStepBasedDirReader.PARAM_NUM_SHARDS;
+
+    public static final String PARAM_SHARD_INDEX = AbstractStepBasedDirReader.PARAM_SHARD_INDEX;
+
     protected Boolean failOnUnknownType;
 
     protected File inputDir;
@@ -46,6 +56,10 @@ public abstract class AbstractDirReader extends CollectionReader_ImplBase {
 
     protected int currentDocIndex;
 
+    protected int prefetchDepth;
+
+    private CasPrefetcher prefetcher;
+
     @Override
     public void initialize() throws ResourceInitializationException {
         super.initialize();
@@ -85,12 +99,54 @@ public abstract class AbstractDirReader extends CollectionReader_ImplBase {
                     + " does not have any files ending with " + inputFileSuffix);
         }
 
+        int numShards = getIntParameter(PARAM_NUM_SHARDS, 1);
+        int shardIndex = getIntParameter(PARAM_SHARD_INDEX, 0);
+        if (numShards < 1 || shardIndex < 0 || shardIndex >= numShards) {
+            throw new IllegalArgumentException(String.format("Invalid shard [%d] of [%d] shards.", shardIndex,
+                    numShards));
+        }
+        if (numShards > 1) {
+            int numFiles = xmiFiles.size();
+            xmiFiles = AbstractStepBasedDirReader.selectShard(xmiFiles, inputDir, shardIndex, numShards);
+            logger.info(String.format("Reading shard %d of %d, %d of %d files.", shardIndex, numShards,
+                    xmiFiles.size(), numFiles));
+        }
+
+        prefetchDepth = getIntParameter(PARAM_PREFETCH_DEPTH, 0);
+
         inputViewName = (String) getConfigParameterValue(PARAM_INPUT_VIEW_NAME);
         currentDocIndex = 0;
     }
 
+    private int getIntParameter(String name, int defaultValue) {
+        Integer value = (Integer) getConfigParameterValue(name);
+        return value == null ? defaultValue : value;
+    }
+
     protected abstract String getDefaultFileSuffix();
 
+    /**
+     * Create the prefetcher if {@link #PARAM_PREFETCH_DEPTH} is positive, it is closed with the reader.
+     *
+     * @param loader How to load a file into a CAS.
+     * @return The prefetcher over the files, or null if the reader should load the files itself.
+     */
+    protected CasPrefetcher createPrefetcher(CasPrefetcher.DocumentLoader loader) {
+        if (prefetchDepth > 0) {
+            prefetcher = new CasPrefetcher(xmiFiles, prefetchDepth, loader);
+        }
+        return prefetcher;
+    }
+
+    /**
+     * @see org.apache.uima.collection.base_cpm.BaseCollectionReader#close()
+     */
+    public void close() throws IOException {
+        if (prefetcher != null) {
+            prefetcher.close();
+        }
+    }
+
 
     /**
      * @see org.apache.uima.collection.base_cpm.BaseCollectionReader#getProgress()
@@ -1,6 +1,7 @@
 package edu.cmu.cs.lti.uima.io.reader;
 
 import com.google.common.base.Joiner;
+import com.google.common.hash.Hashing;
 import org.apache.uima.UimaContext;
 import org.apache.uima.fit.component.JCasCollectionReader_ImplBase;
 import org.apache.uima.fit.descriptor.ConfigurationParameter;
@@ -9,12 +10,18 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
 import java.util.ArrayList;
 import java.util.List;
 
 /**
  * An abstract reader to consume input in a directory whose name is based on the
  * step number for convenience
+ * <p>
+ * Readers can read ahead with {@link #createPrefetcher(List, CasPrefetcher.DocumentLoader)}, the depth is set by
+ * {@link #PARAM_PREFETCH_DEPTH}. With {@link #PARAM_NUM_SHARDS}, readers can take one shard of the directory with
+ * {@link #selectShard(List)}, so that separate processes can split a corpus.
  *
  * @author Jun Araki
  * @author Zhengzhong Liu
@@ -33,6 +40,12 @@ public abstract class AbstractStepBasedDirReader extends JCasCollectionReader_Im
 
     public static final String PARAM_INPUT_VIEW_NAME = "ViewName";
 
+    public static final String PARAM_PREFETCH_DEPTH = "PrefetchDepth";
+
+    public static final String PARAM_NUM_SHARDS = "NumShards";
+
+    public static final String PARAM_SHARD_INDEX = "ShardIndex";
+
     @ConfigurationParameter(name = PARAM_PARENT_INPUT_DIR_PATH)
     private String parentInputDirPath;
 
@@ -51,8 +64,20 @@ public abstract class AbstractStepBasedDirReader extends JCasCollectionReader_Im
     @ConfigurationParameter(name = PARAM_FAIL_UNKNOWN, defaultValue = "false")
     protected Boolean failOnUnknownType;
 
+    @ConfigurationParameter(name = PARAM_PREFETCH_DEPTH, defaultValue = "0",
+            description = "Number of documents loaded ahead on a background thread, 0 to load on getNext.")
+    protected int prefetchDepth;
+
+    @ConfigurationParameter(name = PARAM_NUM_SHARDS, defaultValue = "1")
+    protected int numShards;
+
+    @ConfigurationParameter(name = PARAM_SHARD_INDEX, defaultValue = "0")
+    protected int shardIndex;
+
     protected File inputDir;
 
+    private CasPrefetcher prefetcher;
+
     protected final Logger logger = LoggerFactory.getLogger(getClass());
 
     @Override
@@ -78,7 +103,69 @@ public abstract class AbstractStepBasedDirReader extends JCasCollectionReader_Im
                     inputDir.getAbsolutePath()));
         }
 
+        if (numShards < 1 || shardIndex < 0 || shardIndex >= numShards) {
+            throw new IllegalArgumentException(String.format("Invalid shard [%d] of [%d] shards.", shardIndex,
+                    numShards));
+        }
+
         logger.info(String.format("Reading from [%s]", inputDir.getAbsolutePath()));
     }
 
+    /**
+     * Keep the files of the shard configured by {@link #PARAM_SHARD_INDEX}. A file is assigned to a shard by the
+     * hash of its name, so every process gets the same split regardless of the listing order.
+     *
+     * @param files All the files of the directory.
+     * @return The files of this shard, in the original order.
+     */
+    protected List<File> selectShard(List<File> files) {
+        if (numShards == 1) {
+            return files;
+        }
+        List<File> shard = selectShard(files, inputDir, shardIndex, numShards);
+        logger.info(String.format("Reading shard %d of %d, %d of %d files.", shardIndex, numShards, shard.size(),
+                files.size()));
+        return shard;
+    }
+
+    /**
+     * @param files      Files under the root directory.
+     * @param root       The root directory, the shard is decided by the path relative to it.
+     * @param shardIndex The shard to keep.
+     * @param numShards  Total number of shards.
+     * @return The files of the shard, in the original order.
+     */
+    static List<File> selectShard(List<File> files, File root, int shardIndex, int numShards) {
+        List<File> shard = new ArrayList<>();
+        for (File file : files) {
+            String name = root.toPath().relativize(file.toPath()).toString();
+            int hash = Hashing.murmur3_32().hashString(name, StandardCharsets.UTF_8).asInt();
+            if (Math.floorMod(hash, numShards) == shardIndex) {
+                shard.add(file);
+            }
+        }
+        return shard;
+    }
+
+    /**
+     * Create the prefetcher if {@link #PARAM_PREFETCH_DEPTH} is positive, it is closed with the reader.
+     *
+     * @param files  The files to read, in the reading order.
+     * @param loader How to load a file into a CAS.
+     * @return The prefetcher, or null if the reader should load the files itself.
+     */
+    protected CasPrefetcher createPrefetcher(List<File> files, CasPrefetcher.DocumentLoader loader) {
+        if (prefetchDepth > 0) {
+            prefetcher = new CasPrefetcher(files, prefetchDepth, loader);
+        }
+        return prefetcher;
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (prefetcher != null) {
+            prefetcher.close();
+        }
+    }
+
 }
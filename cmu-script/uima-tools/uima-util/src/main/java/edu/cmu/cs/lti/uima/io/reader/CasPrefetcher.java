@@ -0,0 +1,159 @@
+package edu.cmu.cs.lti.uima.io.reader;
+
+import org.apache.uima.cas.CAS;
+import org.apache.uima.collection.CollectionException;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.util.CasCopier;
+import org.apache.uima.util.CasCreationUtils;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+
+/**
+ * Read ahead of a collection reader. A background thread loads the next documents (reading, inflating and parsing
+ * the files) into a pool of CASes, up to the prefetch depth. The reader then only copies the loaded CAS into the one
+ * it is given, which is much cheaper than parsing the XMI. The documents are returned in the order of the files, and a
+ * failure to load a document is thrown when that document is requested, errors wrapped in a
+ * {@link CollectionException}.
+ * <p>
+ * The pool is created with the type system of the first requested CAS, so the loading starts at the first document.
+ */
+public class CasPrefetcher {
+    private static final Logger logger = LoggerFactory.getLogger(CasPrefetcher.class);
+
+    /**
+     * Load a file into a CAS, the same way as the reader would do without read ahead.
+     */
+    public interface DocumentLoader {
+        void load(CAS cas, File file) throws IOException, CollectionException;
+    }
+
+    private final List<File> files;
+
+    private final int depth;
+
+    private final DocumentLoader loader;
+
+    private BlockingQueue<CAS> casPool;
+
+    private BlockingQueue<LoadedDocument> loadedQueue;
+
+    private Thread loaderThread;
+
+    private volatile boolean closed = false;
+
+    private static class LoadedDocument {
+        final CAS cas;
+        final Throwable error;
+
+        LoadedDocument(CAS cas, Throwable error) {
+            this.cas = cas;
+            this.error = error;
+        }
+    }
+
+    /**
+     * @param files  The files to load, in the reading order.
+     * @param depth  Number of documents to load ahead, also the number of pooled CASes.
+     * @param loader How to load a file.
+     */
+    public CasPrefetcher(List<File> files, int depth, DocumentLoader loader) {
+        this.files = files;
+        this.depth = depth;
+        this.loader = loader;
+    }
+
+    /**
+     * Fill the CAS with the next document.
+     *
+     * @param target A reset CAS to take the document.
+     */
+    public void next(CAS target) throws IOException, CollectionException {
+        if (loaderThread == null) {
+            start(target);
+        }
+
+        LoadedDocument document;
+        try {
+            document = loadedQueue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new CollectionException(e);
+        }
+
+        try {
+            if (document.error instanceof IOException) {
+                throw (IOException) document.error;
+            } else if (document.error instanceof CollectionException) {
+                throw (CollectionException) document.error;
+            } else if (document.error != null) {
+                throw new CollectionException(document.error);
+            }
+            CasCopier.copyCas(document.cas, target, true);
+        } finally {
+            if (document.cas != null) {
+                document.cas.reset();
+                casPool.add(document.cas);
+            }
+        }
+    }
+
+    private void start(CAS target) throws CollectionException {
+        casPool = new ArrayBlockingQueue<>(depth);
+        loadedQueue = new ArrayBlockingQueue<>(depth);
+        try {
+            for (int i = 0; i < depth; i++) {
+                casPool.add(CasCreationUtils.createCas(target.getTypeSystem(), null, null, null));
+            }
+        } catch (ResourceInitializationException e) {
+            throw new CollectionException(e);
+        }
+
+        logger.info(String.format("Reading %d documents ahead.", depth));
+
+        loaderThread = new Thread(this::load, "cas-prefetcher");
+        // Do not keep the JVM alive if the reader is not closed.
+        loaderThread.setDaemon(true);
+        loaderThread.start();
+    }
+
+    private void load() {
+        try {
+            for (File file : files) {
+                if (closed) {
+                    break;
+                }
+                CAS cas = casPool.take();
+                try {
+                    loader.load(cas, file);
+                    loadedQueue.put(new LoadedDocument(cas, null));
+                } catch (Throwable e) {
+                    // Errors are handed over too, otherwise the reader would wait for this document forever.
+                    loadedQueue.put(new LoadedDocument(cas, e));
+                }
+            }
+        } catch (InterruptedException e) {
+            // Closed while waiting.
+        }
+    }
+
+    /**
+     * Stop loading, the documents not requested yet are discarded.
+     */
+    public void close() {
+        closed = true;
+        if (loaderThread != null) {
+            loaderThread.interrupt();
+            try {
+                loaderThread.join();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+}
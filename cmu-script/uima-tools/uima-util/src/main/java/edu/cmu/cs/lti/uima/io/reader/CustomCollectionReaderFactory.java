@@ -1,6 +1,7 @@
 package edu.cmu.cs.lti.uima.io.reader;
 
 import edu.cmu.cs.lti.uima.annotator.CrossValidationReader;
+import edu.cmu.cs.lti.uima.util.CasSerialization;
 import org.apache.uima.collection.CollectionReaderDescription;
 import org.apache.uima.fit.factory.CollectionReaderFactory;
 import org.apache.uima.resource.ResourceInitializationException;
@@ -324,6 +325,99 @@ public class CustomCollectionReaderFactory {
         );
     }
 
+    /**
+     * Creates a reader of CASes in compressed binary form, assuming the directory naming convention.
+     *
+     * @param typeSystemDescription
+     * @param parentInputDirName
+     * @param baseInputDirName
+     * @return
+     * @throws ResourceInitializationException
+     */
+    public static CollectionReaderDescription createBinaryReader(TypeSystemDescription typeSystemDescription,
+                                                                 String parentInputDirName, String baseInputDirName)
+            throws ResourceInitializationException {
+        return CollectionReaderFactory.createReaderDescription(
+                StepBasedDirBinaryCollectionReader.class, typeSystemDescription,
+                StepBasedDirBinaryCollectionReader.PARAM_PARENT_INPUT_DIR_PATH, parentInputDirName,
+                StepBasedDirBinaryCollectionReader.PARAM_BASE_INPUT_DIR_NAME, baseInputDirName
+        );
+    }
+
+    /**
+     * Creates a reader of CASes in compressed binary form, assuming the directory naming convention.
+     *
+     * @param parentInputDirName
+     * @param baseInputDirName
+     * @return
+     * @throws ResourceInitializationException
+     */
+    public static CollectionReaderDescription createBinaryReader(String parentInputDirName, String baseInputDirName)
+            throws ResourceInitializationException {
+        return CollectionReaderFactory.createReaderDescription(
+                StepBasedDirBinaryCollectionReader.class,
+                StepBasedDirBinaryCollectionReader.PARAM_PARENT_INPUT_DIR_PATH, parentInputDirName,
+                StepBasedDirBinaryCollectionReader.PARAM_BASE_INPUT_DIR_NAME, baseInputDirName
+        );
+    }
+
+    /**
+     * Creates a reader of the given format, assuming the directory naming convention. This reads the output of
+     * {@link edu.cmu.cs.lti.uima.io.writer.CustomAnalysisEngineFactory#createWriter}.
+     *
+     * @param format
+     * @param typeSystemDescription
+     * @param parentInputDirName
+     * @param baseInputDirName
+     * @return
+     * @throws ResourceInitializationException
+     */
+    public static CollectionReaderDescription createReader(CasSerialization.Format format,
+                                                           TypeSystemDescription typeSystemDescription,
+                                                           String parentInputDirName, String baseInputDirName)
+            throws ResourceInitializationException {
+        switch (format) {
+            case BINARY:
+                return createBinaryReader(typeSystemDescription, parentInputDirName, baseInputDirName);
+            case GZIPPED_XMI:
+                return CollectionReaderFactory.createReaderDescription(
+                        StepBasedDirGzippedXmiCollectionReader.class, typeSystemDescription,
+                        StepBasedDirGzippedXmiCollectionReader.PARAM_PARENT_INPUT_DIR_PATH, parentInputDirName,
+                        StepBasedDirGzippedXmiCollectionReader.PARAM_BASE_INPUT_DIR_NAME, baseInputDirName,
+                        StepBasedDirGzippedXmiCollectionReader.PARAM_INPUT_FILE_SUFFIX, ".xmi.gz"
+                );
+            default:
+                return createXmiReader(typeSystemDescription, parentInputDirName, baseInputDirName);
+        }
+    }
+
+    /**
+     * Creates a reader of the given format, assuming the directory naming convention.
+     *
+     * @param format
+     * @param parentInputDirName
+     * @param baseInputDirName
+     * @return
+     * @throws ResourceInitializationException
+     */
+    public static CollectionReaderDescription createReader(CasSerialization.Format format, String parentInputDirName,
+                                                           String baseInputDirName)
+            throws ResourceInitializationException {
+        switch (format) {
+            case BINARY:
+                return createBinaryReader(parentInputDirName, baseInputDirName);
+            case GZIPPED_XMI:
+                return CollectionReaderFactory.createReaderDescription(
+                        StepBasedDirGzippedXmiCollectionReader.class,
+                        StepBasedDirGzippedXmiCollectionReader.PARAM_PARENT_INPUT_DIR_PATH, parentInputDirName,
+                        StepBasedDirGzippedXmiCollectionReader.PARAM_BASE_INPUT_DIR_NAME, baseInputDirName,
+                        StepBasedDirGzippedXmiCollectionReader.PARAM_INPUT_FILE_SUFFIX, ".xmi.gz"
+                );
+            default:
+                return createXmiReader(parentInputDirName, baseInputDirName);
+        }
+    }
+
     public static CollectionReaderDescription createTimeSortedGzipXmiReader(
             TypeSystemDescription typeSystemDescription, String parentInputDir, String baseInputDir)
             throws ResourceInitializationException {
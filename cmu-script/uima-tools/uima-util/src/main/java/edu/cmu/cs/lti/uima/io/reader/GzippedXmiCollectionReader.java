@@ -4,6 +4,7 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.uima.cas.CAS;
 import org.apache.uima.cas.impl.XmiCasDeserializer;
 import org.apache.uima.collection.CollectionException;
+import org.apache.uima.resource.ResourceInitializationException;
 import org.xml.sax.SAXException;
 
 import java.io.File;
@@ -18,6 +19,14 @@ public class GzippedXmiCollectionReader extends AbstractDirReader {
 
     private static final String DEFAULT_FILE_SUFFIX = "xmi.gz";
 
+    private CasPrefetcher prefetcher;
+
+    @Override
+    public void initialize() throws ResourceInitializationException {
+        super.initialize();
+        prefetcher = createPrefetcher(this::readDocument);
+    }
+
     @Override
     protected String getDefaultFileSuffix() {
         return DEFAULT_FILE_SUFFIX;
@@ -45,18 +54,18 @@ public class GzippedXmiCollectionReader extends AbstractDirReader {
         File currentFile = xmiFiles.get(currentDocIndex);
         currentDocIndex++;
 
-        GZIPInputStream gzipIn = new GZIPInputStream(new FileInputStream(currentFile));
-        try {
+        if (prefetcher != null) {
+            prefetcher.next(aCAS);
+        } else {
+            readDocument(aCAS, currentFile);
+        }
+    }
+
+    private void readDocument(CAS aCAS, File file) throws IOException, CollectionException {
+        try (GZIPInputStream gzipIn = new GZIPInputStream(new FileInputStream(file))) {
             XmiCasDeserializer.deserialize(gzipIn, aCAS, !failOnUnknownType);
-            gzipIn.close();
         } catch (SAXException e) {
             throw new CollectionException(e);
         }
     }
-
-    /**
-     * @see org.apache.uima.collection.base_cpm.BaseCollectionReader#close()
-     */
-    public void close() throws IOException {
-    }
-}
\ No newline at end of file
+}
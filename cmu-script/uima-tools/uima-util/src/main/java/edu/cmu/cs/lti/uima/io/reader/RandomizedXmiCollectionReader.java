@@ -33,6 +33,8 @@ public class RandomizedXmiCollectionReader extends AbstractStepBasedDirReader {
 
     private int currentDocIndex;
 
+    private CasPrefetcher prefetcher;
+
     /**
      * @see org.apache.uima.collection.CollectionReader_ImplBase#initialize()
      */
@@ -57,8 +59,11 @@ public class RandomizedXmiCollectionReader extends AbstractStepBasedDirReader {
         }
 
         Collections.sort(xmiFiles);
+        xmiFiles = selectShard(xmiFiles);
         Collections.shuffle(xmiFiles, new Random(initialSeed));
 
+        prefetcher = createPrefetcher(xmiFiles, (cas, file) -> CasSerialization.readXmi(cas, file, false));
+
         currentDocIndex = 0;
     }
 
@@ -81,16 +86,14 @@ public class RandomizedXmiCollectionReader extends AbstractStepBasedDirReader {
             throw new CollectionException(e);
         }
 
-        CasSerialization.readXmi(jCas, xmiFiles.get(currentDocIndex));
+        if (prefetcher != null) {
+            prefetcher.next(jCas.getCas());
+        } else {
+            CasSerialization.readXmi(jCas, xmiFiles.get(currentDocIndex));
+        }
         currentDocIndex++;
     }
 
-    /**
-     * @see org.apache.uima.collection.base_cpm.BaseCollectionReader#close()
-     */
-    public void close() throws IOException {
-    }
-
     /**
      * @see org.apache.uima.collection.base_cpm.BaseCollectionReader#getProgress()
      */
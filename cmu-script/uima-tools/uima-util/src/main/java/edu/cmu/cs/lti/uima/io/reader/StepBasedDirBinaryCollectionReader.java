@@ -0,0 +1,100 @@
+package edu.cmu.cs.lti.uima.io.reader;
+
+import edu.cmu.cs.lti.uima.io.writer.StepBasedDirBinaryWriter;
+import edu.cmu.cs.lti.uima.util.CasSerialization;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.uima.UimaContext;
+import org.apache.uima.cas.TypeSystem;
+import org.apache.uima.collection.CollectionException;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.apache.uima.util.Progress;
+import org.apache.uima.util.ProgressImpl;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A simple collection reader that reads CASes in compressed binary form 6 from a directory written by
+ * {@link StepBasedDirBinaryWriter}. The type system header of the directory is read once, types and features unknown
+ * to the pipeline are dropped when reading.
+ */
+public class StepBasedDirBinaryCollectionReader extends AbstractStepBasedDirReader {
+    private List<File> binaryFiles;
+
+    private TypeSystem sourceTypeSystem;
+
+    private int currentDocIndex;
+
+    @Override
+    public void initialize(UimaContext aContext) throws ResourceInitializationException {
+        super.initialize(aContext);
+
+        if (StringUtils.isEmpty(inputFileSuffix)) {
+            inputFileSuffix = StepBasedDirBinaryWriter.DEFAULT_FILE_SUFFIX;
+        }
+
+        binaryFiles = new ArrayList<>();
+        File[] files = inputDir.listFiles();
+        for (int i = 0; i < files.length; i++) {
+            if (!files[i].isDirectory() && files[i].getName().endsWith(inputFileSuffix)) {
+                binaryFiles.add(files[i]);
+            }
+        }
+
+        binaryFiles = selectShard(binaryFiles);
+
+        try {
+            sourceTypeSystem = CasSerialization.readTypeSystem(inputDir);
+        } catch (IOException e) {
+            throw new ResourceInitializationException(e);
+        }
+
+        if (sourceTypeSystem == null && binaryFiles.size() > 0) {
+            logger.warn("The directory " + inputDir.getAbsolutePath() + " does not have a type system header, " +
+                    "assuming the documents are written with the current type system.");
+        }
+
+        logger.info("Number of files read : " + binaryFiles.size());
+
+        currentDocIndex = 0;
+    }
+
+    /**
+     * @see org.apache.uima.collection.CollectionReader#hasNext()
+     */
+    public boolean hasNext() {
+        return currentDocIndex < binaryFiles.size();
+    }
+
+    /**
+     * @see org.apache.uima.collection.CollectionReader#getNext(org.apache.uima.cas.CAS)
+     */
+    public void getNext(JCas jCas) throws IOException, CollectionException {
+        try {
+            if (!StringUtils.isEmpty(inputViewName)) {
+                jCas = jCas.getView(inputViewName);
+            }
+        } catch (Exception e) {
+            throw new CollectionException(e);
+        }
+
+        CasSerialization.readBinary(jCas, binaryFiles.get(currentDocIndex), sourceTypeSystem);
+        currentDocIndex++;
+    }
+
+    /**
+     * @see org.apache.uima.collection.base_cpm.BaseCollectionReader#close()
+     */
+    public void close() throws IOException {
+    }
+
+    /**
+     * @see org.apache.uima.collection.base_cpm.BaseCollectionReader#getProgress()
+     */
+    public Progress[] getProgress() {
+        return new Progress[]{new ProgressImpl(currentDocIndex, binaryFiles.size(), Progress.ENTITIES)};
+    }
+}
@@ -53,6 +53,8 @@ public class StepBasedDirGzippedXmiCollectionReader extends AbstractStepBasedDir
             }
         }
 
+        xmiFiles = selectShard(xmiFiles);
+
         if (xmiFiles.size() == 0) {
             logger.warn("The directory " + inputDir.getAbsolutePath()
                     + " does not have any compressed files ending with " + inputFileSuffix);
@@ -4,6 +4,7 @@ import org.apache.commons.lang3.StringUtils;
 import org.apache.uima.cas.CAS;
 import org.apache.uima.cas.impl.XmiCasDeserializer;
 import org.apache.uima.collection.CollectionException;
+import org.apache.uima.resource.ResourceInitializationException;
 import org.xml.sax.SAXException;
 
 import java.io.File;
@@ -17,6 +18,13 @@ public class XmiCollectionReader extends AbstractDirReader {
 
     private static final String DEFAULT_FILE_SUFFIX = "xmi";
 
+    private CasPrefetcher prefetcher;
+
+    @Override
+    public void initialize() throws ResourceInitializationException {
+        super.initialize();
+        prefetcher = createPrefetcher(this::readDocument);
+    }
 
     @Override
     protected String getDefaultFileSuffix() {
@@ -44,7 +52,15 @@ public class XmiCollectionReader extends AbstractDirReader {
 
         File currentFile = xmiFiles.get(currentDocIndex++);
 
-        FileInputStream inputStream = new FileInputStream(currentFile);
+        if (prefetcher != null) {
+            prefetcher.next(aCAS);
+        } else {
+            readDocument(aCAS, currentFile);
+        }
+    }
+
+    private void readDocument(CAS aCAS, File file) throws IOException, CollectionException {
+        FileInputStream inputStream = new FileInputStream(file);
         try {
             XmiCasDeserializer.deserialize(inputStream, aCAS, !failOnUnknownType);
         } catch (SAXException e) {
@@ -53,10 +69,4 @@ public class XmiCollectionReader extends AbstractDirReader {
             inputStream.close();
         }
     }
-
-    /**
-     * @see org.apache.uima.collection.base_cpm.BaseCollectionReader#close()
-     */
-    public void close() throws IOException {
-    }
-}
\ No newline at end of file
+}
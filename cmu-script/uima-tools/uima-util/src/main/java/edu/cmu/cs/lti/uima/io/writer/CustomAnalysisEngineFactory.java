@@ -1,5 +1,6 @@
 package edu.cmu.cs.lti.uima.io.writer;
 
+import edu.cmu.cs.lti.uima.util.CasSerialization;
 import org.apache.uima.analysis_engine.AnalysisEngineDescription;
 import org.apache.uima.analysis_engine.metadata.AnalysisEngineMetaData;
 import org.apache.uima.fit.factory.AnalysisEngineFactory;
@@ -244,6 +245,73 @@ public class CustomAnalysisEngineFactory {
         return writer;
     }
 
+    /**
+     * Creates a writer of CASes in compressed binary form, assuming the directory naming convention.
+     *
+     * @param parentOutputDirPath
+     * @param baseOutputDirName
+     * @return
+     * @throws ResourceInitializationException
+     */
+    public static AnalysisEngineDescription createBinaryWriter(String parentOutputDirPath, String baseOutputDirName)
+            throws ResourceInitializationException {
+        AnalysisEngineDescription writer = AnalysisEngineFactory.createEngineDescription(
+                StepBasedDirBinaryWriter.class,
+                StepBasedDirBinaryWriter.PARAM_PARENT_OUTPUT_DIR_PATH, parentOutputDirPath,
+                StepBasedDirBinaryWriter.PARAM_BASE_OUTPUT_DIR_NAME, baseOutputDirName
+        );
+        return writer;
+    }
+
+    /**
+     * Creates a writer of CASes in compressed binary form, assuming the directory naming convention.
+     *
+     * @param parentOutputDirPath
+     * @param baseOutputDirName
+     * @param stepNumber
+     * @param outputFileSuffix
+     * @param srcDocInfoViewName  the view that contains the source document info
+     * @return
+     * @throws ResourceInitializationException
+     */
+    public static AnalysisEngineDescription createBinaryWriter(String parentOutputDirPath,
+                                                               String baseOutputDirName, Integer stepNumber,
+                                                               String outputFileSuffix,
+                                                               String srcDocInfoViewName) throws
+            ResourceInitializationException {
+        AnalysisEngineDescription writer = AnalysisEngineFactory.createEngineDescription(
+                StepBasedDirBinaryWriter.class,
+                StepBasedDirBinaryWriter.PARAM_PARENT_OUTPUT_DIR_PATH, parentOutputDirPath,
+                StepBasedDirBinaryWriter.PARAM_BASE_OUTPUT_DIR_NAME, baseOutputDirName,
+                StepBasedDirBinaryWriter.PARAM_OUTPUT_FILE_SUFFIX, outputFileSuffix,
+                StepBasedDirBinaryWriter.PARAM_OUTPUT_STEP_NUMBER, stepNumber,
+                StepBasedDirBinaryWriter.PARAM_SRC_DOC_INFO_VIEW_NAME, srcDocInfoViewName);
+        return writer;
+    }
+
+    /**
+     * Creates a writer of the given format, assuming the directory naming convention. The output can be read with
+     * {@link edu.cmu.cs.lti.uima.io.reader.CustomCollectionReaderFactory#createReader}.
+     *
+     * @param format
+     * @param parentOutputDirPath
+     * @param baseOutputDirName
+     * @return
+     * @throws ResourceInitializationException
+     */
+    public static AnalysisEngineDescription createWriter(CasSerialization.Format format, String parentOutputDirPath,
+                                                         String baseOutputDirName)
+            throws ResourceInitializationException {
+        switch (format) {
+            case BINARY:
+                return createBinaryWriter(parentOutputDirPath, baseOutputDirName);
+            case GZIPPED_XMI:
+                return createGzippedXmiWriter(parentOutputDirPath, baseOutputDirName, null, null);
+            default:
+                return createXmiWriter(parentOutputDirPath, baseOutputDirName);
+        }
+    }
+
     /**
      * Creates a plain text writer.
      *
@@ -0,0 +1,60 @@
+package edu.cmu.cs.lti.uima.io.writer;
+
+import edu.cmu.cs.lti.uima.util.CasSerialization;
+import org.apache.commons.lang3.StringUtils;
+import org.apache.uima.UimaContext;
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.fit.util.JCasUtil;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.ResourceInitializationException;
+import org.xml.sax.SAXException;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * This analysis engine outputs CAS in UIMA's compressed binary form 6, which is much faster to write and read than
+ * XMI. The type system is written once per run into the output directory, replacing the one of an earlier run, so
+ * that the reader can still read the documents when its type system is different.
+ */
+public class StepBasedDirBinaryWriter extends AbstractStepBasedDirWriter {
+    public static final String DEFAULT_FILE_SUFFIX = ".bcas";
+
+    private int docCounter;
+
+    private boolean typeSystemWritten;
+
+    @Override
+    public void initialize(UimaContext context) throws ResourceInitializationException {
+        super.initialize(context);
+        docCounter = 0;
+        typeSystemWritten = false;
+    }
+
+    @Override
+    public void process(JCas aJCas) throws AnalysisEngineProcessException {
+        JCas srcDocInfoView = JCasUtil.getView(aJCas, srcDocInfoViewName, aJCas);
+
+        if (StringUtils.isEmpty(outputFileSuffix)) {
+            outputFileSuffix = DEFAULT_FILE_SUFFIX;
+        }
+        String outputFileName = CasSerialization.getOutputFileName(srcDocInfoView, outputFileSuffix);
+
+        File outputFile;
+        if (outputFileName == null) {
+            outputFile = new File(outputDir, "doc" + (docCounter++) + outputFileSuffix);
+        } else {
+            outputFile = new File(outputDir, outputFileName);
+        }
+
+        try {
+            if (!typeSystemWritten) {
+                CasSerialization.writeTypeSystem(aJCas.getTypeSystem(), outputDir);
+                typeSystemWritten = true;
+            }
+            CasSerialization.writeAsBinary(aJCas.getCas(), outputFile);
+        } catch (IOException | SAXException e) {
+            throw new AnalysisEngineProcessException(e);
+        }
+    }
+}
@@ -0,0 +1,85 @@
+package edu.cmu.cs.lti.uima.pipeline;
+
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.analysis_engine.AnalysisEngineDescription;
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.cas.CAS;
+import org.apache.uima.resource.ResourceInitializationException;
+
+import static org.apache.uima.fit.factory.AnalysisEngineFactory.createEngine;
+import static org.apache.uima.fit.factory.AnalysisEngineFactory.createEngineDescription;
+
+/**
+ * The engines of a pipeline, run one after another on each CAS. Without instrumentation, this is a plain aggregate
+ * engine. With instrumentation, each engine is created separately so that it can be measured, and the summary is
+ * reported at {@link #collectionProcessComplete()}.
+ */
+public class InstrumentedEngines {
+    private final AnalysisEngine[] engines;
+
+    private final PipelineInstrumentation.EngineStats[] stats;
+
+    private final PipelineInstrumentation instrumentation;
+
+    /**
+     * @param descriptions    The engines to run in order.
+     * @param instrumentation The instrumentation to record to, null to run as a plain aggregate.
+     */
+    public InstrumentedEngines(AnalysisEngineDescription[] descriptions, PipelineInstrumentation instrumentation)
+            throws ResourceInitializationException {
+        this.instrumentation = instrumentation;
+        if (instrumentation == null) {
+            engines = new AnalysisEngine[]{createEngine(createEngineDescription(descriptions))};
+            stats = null;
+        } else {
+            engines = new AnalysisEngine[descriptions.length];
+            stats = new PipelineInstrumentation.EngineStats[descriptions.length];
+            for (int i = 0; i < descriptions.length; i++) {
+                engines[i] = createEngine(descriptions[i]);
+                stats[i] = instrumentation.getEngineStats(
+                        String.format("%02d_%s", i, descriptions[i].getAnalysisEngineMetaData().getName()));
+            }
+        }
+    }
+
+    /**
+     * Create engines instrumented if {@link PipelineInstrumentation#isEnabled()}.
+     *
+     * @param pipelineName Name of the instrumentation report.
+     * @param descriptions The engines to run in order.
+     */
+    public static InstrumentedEngines create(String pipelineName, AnalysisEngineDescription... descriptions)
+            throws ResourceInitializationException {
+        return new InstrumentedEngines(descriptions,
+                PipelineInstrumentation.isEnabled() ? new PipelineInstrumentation(pipelineName) : null);
+    }
+
+    public void process(CAS cas) throws AnalysisEngineProcessException {
+        if (stats == null) {
+            engines[0].process(cas);
+            return;
+        }
+
+        for (int i = 0; i < engines.length; i++) {
+            stats[i].process(engines[i], cas);
+        }
+    }
+
+    /**
+     * Signal the end of the collection to the engines, then report the instrumentation summary if any.
+     */
+    public void collectionProcessComplete() throws AnalysisEngineProcessException {
+        for (AnalysisEngine engine : engines) {
+            engine.collectionProcessComplete();
+        }
+        if (instrumentation != null) {
+            instrumentation.report();
+        }
+    }
+
+    public void destroy() {
+        for (AnalysisEngine engine : engines) {
+            engine.destroy();
+        }
+    }
+}
@@ -0,0 +1,106 @@
+package edu.cmu.cs.lti.uima.pipeline;
+
+/**
+ * A histogram of non-negative long values with a fixed relative precision, in the style of HdrHistogram. Values below
+ * 128 have their own bucket; each larger power of two range is split into 64 buckets, so a recorded value is known
+ * within 1.6%, with a fixed memory of about 30KB for the whole long range. Not thread-safe.
+ */
+public class LogLinearHistogram {
+    private static final int SUB_BUCKET_BITS = 6;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int LINEAR_LIMIT = SUB_BUCKET_COUNT * 2;
+
+    private final long[] counts = new long[LINEAR_LIMIT + (63 - SUB_BUCKET_BITS) * SUB_BUCKET_COUNT];
+
+    private long totalCount;
+    private long sum;
+    private long min = Long.MAX_VALUE;
+    private long max = Long.MIN_VALUE;
+
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts[bucketIndex(value)]++;
+        totalCount++;
+        sum += value;
+        min = Math.min(min, value);
+        max = Math.max(max, value);
+    }
+
+    static int bucketIndex(long value) {
+        if (value < LINEAR_LIMIT) {
+            return (int) value;
+        }
+        // Shift the value so that it falls into [64, 128).
+        int shift = 63 - Long.numberOfLeadingZeros(value) - SUB_BUCKET_BITS;
+        return LINEAR_LIMIT + (shift - 1) * SUB_BUCKET_COUNT + (int) (value >>> shift) - SUB_BUCKET_COUNT;
+    }
+
+    static long bucketLowerBound(int index) {
+        if (index < LINEAR_LIMIT) {
+            return index;
+        }
+        int shift = (index - LINEAR_LIMIT) / SUB_BUCKET_COUNT + 1;
+        long subBucket = (index - LINEAR_LIMIT) % SUB_BUCKET_COUNT + SUB_BUCKET_COUNT;
+        return subBucket << shift;
+    }
+
+    static long bucketUpperBound(int index) {
+        if (index < LINEAR_LIMIT) {
+            return index;
+        }
+        int shift = (index - LINEAR_LIMIT) / SUB_BUCKET_COUNT + 1;
+        return bucketLowerBound(index) + (1L << shift) - 1;
+    }
+
+    /**
+     * @param percentile A percentile between 0 and 100.
+     * @return The smallest recorded value such that the given percentage of the values are not larger, up to the
+     * precision of the buckets.
+     */
+    public long getValueAtPercentile(double percentile) {
+        if (totalCount == 0) {
+            return 0;
+        }
+        long target = Math.max(1, (long) Math.ceil(percentile / 100 * totalCount));
+        long seen = 0;
+        for (int i = 0; i < counts.length; i++) {
+            seen += counts[i];
+            if (seen >= target) {
+                return Math.min(Math.max(bucketUpperBound(i), min), max);
+            }
+        }
+        return max;
+    }
+
+    public void add(LogLinearHistogram other) {
+        for (int i = 0; i < counts.length; i++) {
+            counts[i] += other.counts[i];
+        }
+        totalCount += other.totalCount;
+        sum += other.sum;
+        min = Math.min(min, other.min);
+        max = Math.max(max, other.max);
+    }
+
+    public long getTotalCount() {
+        return totalCount;
+    }
+
+    public long getSum() {
+        return sum;
+    }
+
+    public double getMean() {
+        return totalCount == 0 ? 0 : (double) sum / totalCount;
+    }
+
+    public long getMin() {
+        return totalCount == 0 ? 0 : min;
+    }
+
+    public long getMax() {
+        return totalCount == 0 ? 0 : max;
+    }
+}
@@ -1,7 +1,6 @@
 package edu.cmu.cs.lti.uima.pipeline;
 
 import org.apache.uima.UIMAException;
-import org.apache.uima.analysis_engine.AnalysisEngine;
 import org.apache.uima.analysis_engine.AnalysisEngineDescription;
 import org.apache.uima.cas.CAS;
 import org.apache.uima.collection.CollectionReader;
@@ -15,7 +14,6 @@ import org.slf4j.LoggerFactory;
 import java.io.IOException;
 
 import static java.util.Arrays.asList;
-import static org.apache.uima.fit.factory.AnalysisEngineFactory.createEngine;
 import static org.apache.uima.fit.factory.AnalysisEngineFactory.createEngineDescription;
 
 /**
@@ -32,6 +30,8 @@ public abstract class LoopPipeline {
 
     final AnalysisEngineDescription aaeDesc;
 
+    final AnalysisEngineDescription[] descs;
+
     protected abstract boolean checkStopCriteria();
 
     protected abstract void stopActions();
@@ -41,35 +41,56 @@ public abstract class LoopPipeline {
     protected LoopPipeline(final CollectionReaderDescription readerDescription,
                            final AnalysisEngineDescription... descs) throws ResourceInitializationException {
         aaeDesc = createEngineDescription(descs);
+        this.descs = descs;
         this.readerDescription = readerDescription;
     }
 
+    /**
+     * Called before each iteration after the first one. A subclass that keeps the training data of the first
+     * iteration in memory can run the iteration on it here and return true, then the collection is not read again.
+     *
+     * @return Whether this iteration has been replayed.
+     */
+    protected boolean replayIteration() {
+        return false;
+    }
+
     public void runLoopPipeline() throws UIMAException, IOException {
         CollectionReader reader = CollectionReaderFactory.createReader(readerDescription);
-        final AnalysisEngine aae = createEngine(aaeDesc);
+        String className = getClass().getName();
+        final InstrumentedEngines aae = InstrumentedEngines.create(
+                className.substring(className.lastIndexOf('.') + 1), descs);
         final CAS cas = CasCreationUtils.createCas(asList(readerDescription.getMetaData(), aaeDesc.getMetaData()));
 
         try {
             logger.info("Loop begins!");
+            boolean firstIteration = true;
             while (true) {
-                reader.typeSystemInit(cas.getTypeSystem());
+                if (firstIteration || !replayIteration()) {
+                    if (!firstIteration) {
+                        reader.close();
+                        reader.destroy();
+                        reader = CollectionReaderFactory.createReader(readerDescription);
+                    }
+
+                    reader.typeSystemInit(cas.getTypeSystem());
 
-                // Process
-                while (reader.hasNext()) {
-                    reader.getNext(cas);
-                    aae.process(cas);
-                    cas.reset();
+                    // Process
+                    while (reader.hasNext()) {
+                        reader.getNext(cas);
+                        aae.process(cas);
+                        cas.reset();
+                    }
+                    // Signal end of processing
+                    aae.collectionProcessComplete();
                 }
-                // Signal end of processing
-                aae.collectionProcessComplete();
+                firstIteration = false;
 
                 // Call loop actions.
                 loopActions();
 
                 if (checkStopCriteria()) {
                     break;
-                } else {
-                    reader = CollectionReaderFactory.createReader(readerDescription);
                 }
             }
             logger.info("Loop finished!");
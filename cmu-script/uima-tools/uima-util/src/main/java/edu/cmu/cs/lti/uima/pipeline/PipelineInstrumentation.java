@@ -0,0 +1,240 @@
+package edu.cmu.cs.lti.uima.pipeline;
+
+import org.apache.uima.analysis_engine.AnalysisEngine;
+import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
+import org.apache.uima.cas.CAS;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Per engine measurements of a pipeline. For each document and engine, this records the wall time, the bytes
+ * allocated by the processing thread, and the size of the CAS after the engine (characters of all the sofa texts and
+ * number of annotations in all views). The summary is logged and, if the system property
+ * {@value #REPORT_DIR_PROPERTY} is set, written to that directory as CSV and JSON.
+ * <p>
+ * The pipelines only instrument their engines when {@link #isEnabled()}, the multi-thread runner always does.
+ */
+public class PipelineInstrumentation {
+    public static final String REPORT_DIR_PROPERTY = "edu.cmu.cs.lti.pipeline.instrument.dir";
+
+    private static final Logger logger = LoggerFactory.getLogger(PipelineInstrumentation.class);
+
+    private static final String[] METRICS = {"wall_time_ns", "allocated_bytes", "text_chars", "annotations"};
+
+    private final String pipelineName;
+
+    private final Map<String, EngineStats> engineStats = new LinkedHashMap<>();
+
+    private static final ThreadMXBean threadBean = ManagementFactory.getThreadMXBean();
+
+    private static final boolean allocationSupported = isAllocationSupported();
+
+    /**
+     * Measurements of one engine, thread-safe.
+     */
+    public static class EngineStats {
+        private final String name;
+        private final LogLinearHistogram[] histograms = new LogLinearHistogram[METRICS.length];
+
+        private EngineStats(String name) {
+            this.name = name;
+            for (int i = 0; i < histograms.length; i++) {
+                histograms[i] = new LogLinearHistogram();
+            }
+        }
+
+        public synchronized void record(long wallTime, long allocatedBytes, long textChars, long annotations) {
+            histograms[0].record(wallTime);
+            if (allocatedBytes >= 0) {
+                histograms[1].record(allocatedBytes);
+            }
+            histograms[2].record(textChars);
+            histograms[3].record(annotations);
+        }
+
+        /**
+         * Run the engine on the CAS and record the measurements.
+         */
+        public void process(AnalysisEngine engine, CAS cas) throws AnalysisEngineProcessException {
+            long allocatedBefore = currentThreadAllocatedBytes();
+            long start = System.nanoTime();
+            engine.process(cas);
+            long wallTime = System.nanoTime() - start;
+            long allocated = allocatedBefore < 0 ? -1 : currentThreadAllocatedBytes() - allocatedBefore;
+            record(wallTime, allocated, textSize(cas), annotationCount(cas));
+        }
+
+        public String getName() {
+            return name;
+        }
+
+        private synchronized LogLinearHistogram[] snapshot() {
+            LogLinearHistogram[] copies = new LogLinearHistogram[histograms.length];
+            for (int i = 0; i < histograms.length; i++) {
+                copies[i] = copy(histograms[i]);
+            }
+            return copies;
+        }
+
+        private static LogLinearHistogram copy(LogLinearHistogram histogram) {
+            LogLinearHistogram copy = new LogLinearHistogram();
+            copy.add(histogram);
+            return copy;
+        }
+    }
+
+    /**
+     * @param pipelineName Name used for the report files.
+     */
+    public PipelineInstrumentation(String pipelineName) {
+        this.pipelineName = pipelineName;
+    }
+
+    /**
+     * @return Whether the pipelines should instrument their engines.
+     */
+    public static boolean isEnabled() {
+        return System.getProperty(REPORT_DIR_PROPERTY) != null;
+    }
+
+    /**
+     * Get the stats of an engine, the stats are reported in the order they are first requested.
+     */
+    public synchronized EngineStats getEngineStats(String engineName) {
+        return engineStats.computeIfAbsent(engineName, EngineStats::new);
+    }
+
+    /**
+     * @return Bytes allocated by the current thread so far, or -1 if the JVM cannot measure it.
+     */
+    public static long currentThreadAllocatedBytes() {
+        if (!allocationSupported) {
+            return -1;
+        }
+        return ((com.sun.management.ThreadMXBean) threadBean).getThreadAllocatedBytes(
+                Thread.currentThread().getId());
+    }
+
+    private static boolean isAllocationSupported() {
+        if (threadBean instanceof com.sun.management.ThreadMXBean) {
+            com.sun.management.ThreadMXBean sunBean = (com.sun.management.ThreadMXBean) threadBean;
+            return sunBean.isThreadAllocatedMemorySupported() && sunBean.isThreadAllocatedMemoryEnabled();
+        }
+        return false;
+    }
+
+    /**
+     * @return Number of characters of the sofa texts in all views.
+     */
+    public static long textSize(CAS cas) {
+        long size = 0;
+        for (Iterator<CAS> views = cas.getViewIterator(); views.hasNext(); ) {
+            String text = views.next().getDocumentText();
+            if (text != null) {
+                size += text.length();
+            }
+        }
+        return size;
+    }
+
+    /**
+     * @return Number of annotations indexed in all views.
+     */
+    public static long annotationCount(CAS cas) {
+        long count = 0;
+        for (Iterator<CAS> views = cas.getViewIterator(); views.hasNext(); ) {
+            count += views.next().getAnnotationIndex().size();
+        }
+        return count;
+    }
+
+    /**
+     * Log the summary, and write it to the report directory if configured.
+     */
+    public void report() {
+        List<EngineStats> allStats;
+        synchronized (this) {
+            allStats = new ArrayList<>(engineStats.values());
+        }
+
+        List<String[]> rows = new ArrayList<>();
+        logger.info(String.format("Pipeline [%s] engine summary:", pipelineName));
+        for (EngineStats stats : allStats) {
+            LogLinearHistogram[] histograms = stats.snapshot();
+            LogLinearHistogram wallTime = histograms[0];
+            logger.info(String.format("%s : %d docs, total %.2f s, mean %.2f ms, p50 %.2f ms, p99 %.2f ms, " +
+                            "mean allocation %.1f MB", stats.getName(), wallTime.getTotalCount(),
+                    wallTime.getSum() / 1e9, wallTime.getMean() / 1e6, wallTime.getValueAtPercentile(50) / 1e6,
+                    wallTime.getValueAtPercentile(99) / 1e6, histograms[1].getMean() / 1e6));
+
+            for (int i = 0; i < METRICS.length; i++) {
+                LogLinearHistogram h = histograms[i];
+                rows.add(new String[]{stats.getName(), METRICS[i], String.valueOf(h.getTotalCount()),
+                        String.valueOf(h.getSum()), String.format(Locale.ROOT, "%.1f", h.getMean()),
+                        String.valueOf(h.getMin()), String.valueOf(h.getValueAtPercentile(50)),
+                        String.valueOf(h.getValueAtPercentile(90)), String.valueOf(h.getValueAtPercentile(99)),
+                        String.valueOf(h.getMax())});
+            }
+        }
+
+        String reportDir = System.getProperty(REPORT_DIR_PROPERTY);
+        if (reportDir != null) {
+            try {
+                write(new File(reportDir), rows);
+            } catch (IOException e) {
+                logger.warn("Cannot write the instrumentation report to " + reportDir, e);
+            }
+        }
+    }
+
+    private static final String[] COLUMNS = {"engine", "metric", "count", "sum", "mean", "min", "p50", "p90", "p99",
+            "max"};
+
+    private void write(File reportDir, List<String[]> rows) throws IOException {
+        if (!reportDir.exists()) {
+            reportDir.mkdirs();
+        }
+
+        try (PrintWriter csv = new PrintWriter(new File(reportDir, pipelineName + ".csv"))) {
+            csv.println(String.join(",", COLUMNS));
+            for (String[] row : rows) {
+                csv.println(String.join(",", row));
+            }
+        }
+
+        try (PrintWriter json = new PrintWriter(new File(reportDir, pipelineName + ".json"))) {
+            json.println("[");
+            for (int i = 0; i < rows.size(); i++) {
+                String[] row = rows.get(i);
+                StringBuilder sb = new StringBuilder("  {");
+                for (int j = 0; j < COLUMNS.length; j++) {
+                    if (j > 0) {
+                        sb.append(", ");
+                    }
+                    sb.append('"').append(COLUMNS[j]).append("\": ");
+                    if (j < 2) {
+                        sb.append('"').append(row[j].replace("\\", "\\\\").replace("\"", "\\\"")).append('"');
+                    } else {
+                        sb.append(row[j]);
+                    }
+                }
+                sb.append(i < rows.size() - 1 ? "}," : "}");
+                json.println(sb);
+            }
+            json.println("]");
+        }
+        logger.info("Instrumentation report written to " + reportDir);
+    }
+}
@@ -1,25 +1,34 @@
 package edu.cmu.cs.lti.uima.util;
 
+import org.apache.uima.UIMAFramework;
 import org.apache.uima.analysis_engine.AnalysisEngineProcessException;
 import org.apache.uima.cas.CAS;
+import org.apache.uima.cas.TypeSystem;
+import org.apache.uima.cas.impl.Serialization;
 import org.apache.uima.cas.impl.XmiCasDeserializer;
 import org.apache.uima.cas.impl.XmiCasSerializer;
 import org.apache.uima.collection.CollectionException;
 import org.apache.uima.examples.SourceDocumentInformation;
 import org.apache.uima.fit.util.JCasUtil;
 import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.ResourceInitializationException;
 import org.apache.uima.resource.ResourceProcessException;
+import org.apache.uima.resource.metadata.TypeSystemDescription;
+import org.apache.uima.util.CasCreationUtils;
+import org.apache.uima.util.InvalidXMLException;
+import org.apache.uima.util.TypeSystemUtil;
+import org.apache.uima.util.XMLInputSource;
 import org.apache.uima.util.XMLSerializer;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.xml.sax.SAXException;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
-import java.io.IOException;
+import java.io.*;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
 import java.util.zip.GZIPOutputStream;
 
 /**
@@ -32,6 +41,34 @@ import java.util.zip.GZIPOutputStream;
 public class CasSerialization {
     private static final Logger logger = LoggerFactory.getLogger(CasSerialization.class);
 
+    /**
+     * Name of the type system header stored in each directory of binary CASes.
+     */
+    public static final String BINARY_TYPE_SYSTEM_FILE = "typesystem.xml";
+
+    /**
+     * The formats that a step based directory can hold.
+     */
+    public enum Format {
+        XMI(".xmi"), GZIPPED_XMI(".xmi.gz"), BINARY(".bcas");
+
+        private final String fileSuffix;
+
+        Format(String fileSuffix) {
+            this.fileSuffix = fileSuffix;
+        }
+
+        /**
+         * @return The suffix of the files written in this format by the step based writers.
+         */
+        public String getFileSuffix() {
+            return fileSuffix;
+        }
+
+        public static Format fromName(String name) {
+            return valueOf(name.trim().toUpperCase());
+        }
+    }
 
     /**
      * Serialize a CAS to a file in XMI format
@@ -108,13 +145,118 @@ public class CasSerialization {
      */
     public static void readXmi(JCas jCas, File xmiFile, boolean failOnUnknownType) throws IOException,
             CollectionException {
+        readXmi(jCas.getCas(), xmiFile, failOnUnknownType);
+    }
+
+    /**
+     * Deserialize XMI into CAS
+     *
+     * @param aCas              The CAS to take the input.
+     * @param xmiFile           The input xmi file.
+     * @param failOnUnknownType Whether to fail on unknown types.
+     * @throws IOException
+     * @throws CollectionException
+     */
+    public static void readXmi(CAS aCas, File xmiFile, boolean failOnUnknownType) throws IOException,
+            CollectionException {
         try (FileInputStream inputStream = new FileInputStream(xmiFile)) {
-            XmiCasDeserializer.deserialize(inputStream, jCas.getCas(), !failOnUnknownType);
+            XmiCasDeserializer.deserialize(inputStream, aCas, !failOnUnknownType);
         } catch (SAXException e) {
             throw new CollectionException(e);
         }
     }
 
+    /**
+     * Serialize a CAS to a file in UIMA's compressed binary form 6. The type system is not included, store it once
+     * per directory with {@link #writeTypeSystem(TypeSystem, File)}.
+     *
+     * @param aCas       CAS to serialize
+     * @param outputFile output file
+     * @throws IOException
+     */
+    public static void writeAsBinary(CAS aCas, File outputFile) throws IOException {
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(outputFile))) {
+            // Passing the type system selects form 6, the one argument version writes form 4.
+            Serialization.serializeWithCompression(aCas, out, aCas.getTypeSystem());
+        } catch (ResourceInitializationException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Deserialize a CAS in compressed binary form 6 into JCas.
+     *
+     * @param jCas         The jCas to take the input.
+     * @param binaryFile   The input binary file.
+     * @param typeSystem   The type system the file was written with, as read by {@link #readTypeSystem(File)}. Types
+     *                     and features unknown to the jCas are dropped. If null, the file must be written with the
+     *                     same type system as the jCas.
+     * @throws IOException
+     */
+    public static void readBinary(JCas jCas, File binaryFile, TypeSystem typeSystem) throws IOException {
+        try (InputStream in = new BufferedInputStream(new FileInputStream(binaryFile))) {
+            Serialization.deserializeCAS(jCas.getCas(), in, typeSystem, null);
+        } catch (ResourceInitializationException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Write the type system header into a directory of binary CASes. A header left by an earlier run is replaced, so
+     * that it always describes the CASes written by the current run. Writers call this once per run, before their
+     * first CAS.
+     *
+     * @param typeSystem The type system of the CASes.
+     * @param directory  The output directory.
+     * @throws IOException
+     * @throws SAXException
+     */
+    public static synchronized void writeTypeSystem(TypeSystem typeSystem, File directory) throws IOException,
+            SAXException {
+        File typeSystemFile = new File(directory, BINARY_TYPE_SYSTEM_FILE);
+
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        TypeSystemUtil.typeSystem2TypeSystemDescription(typeSystem).toXML(header);
+
+        if (typeSystemFile.exists()) {
+            if (Arrays.equals(Files.readAllBytes(typeSystemFile.toPath()), header.toByteArray())) {
+                return;
+            }
+            logger.warn("Replacing the type system header of " + directory + ", binary CASes left there by an " +
+                    "earlier run with a different type system can no longer be read.");
+        }
+
+        // Written to a temporary file first, so that a reader never sees a partial header.
+        File tempFile = new File(directory, BINARY_TYPE_SYSTEM_FILE + ".tmp");
+        try (OutputStream out = new BufferedOutputStream(new FileOutputStream(tempFile))) {
+            header.writeTo(out);
+        }
+        Files.move(tempFile.toPath(), typeSystemFile.toPath(), StandardCopyOption.REPLACE_EXISTING,
+                StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Read the type system header of a directory of binary CASes.
+     *
+     * @param directory The input directory.
+     * @return The type system, or null if the directory does not have the header.
+     * @throws IOException
+     */
+    public static TypeSystem readTypeSystem(File directory) throws IOException {
+        File typeSystemFile = new File(directory, BINARY_TYPE_SYSTEM_FILE);
+        if (!typeSystemFile.exists()) {
+            return null;
+        }
+
+        try {
+            TypeSystemDescription description = UIMAFramework.getXMLParser().parseTypeSystemDescription(
+                    new XMLInputSource(typeSystemFile));
+            return CasCreationUtils.createCas(description, null, null).getTypeSystem();
+        } catch (InvalidXMLException | ResourceInitializationException e) {
+            throw new IOException(e);
+        }
+    }
+
     /**
      * Retrieve the input file name from the source document information.
      *
@@ -0,0 +1,111 @@
+package edu.cmu.cs.lti.uima.pipeline;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+public class LogLinearHistogramTest {
+    private static final double PRECISION = 1.0 / 64;
+
+    @Test
+    public void bucketsCoverTheLongRangeWithoutGaps() {
+        int lastIndex = LogLinearHistogram.bucketIndex(Long.MAX_VALUE);
+        assertEquals(0, LogLinearHistogram.bucketLowerBound(0));
+        assertEquals(Long.MAX_VALUE, LogLinearHistogram.bucketUpperBound(lastIndex));
+
+        for (int index = 0; index <= lastIndex; index++) {
+            long lower = LogLinearHistogram.bucketLowerBound(index);
+            long upper = LogLinearHistogram.bucketUpperBound(index);
+            assertEquals(index, LogLinearHistogram.bucketIndex(lower));
+            assertEquals(index, LogLinearHistogram.bucketIndex(upper));
+            assertTrue(upper - lower <= lower * PRECISION);
+            if (index < lastIndex) {
+                assertEquals(upper + 1, LogLinearHistogram.bucketLowerBound(index + 1));
+            }
+        }
+    }
+
+    @Test
+    public void valuesFallWithinTheirBucket() {
+        Random random = new Random(42);
+        for (int trial = 0; trial < 10000; trial++) {
+            long value = random.nextLong() >>> (1 + random.nextInt(63));
+            int index = LogLinearHistogram.bucketIndex(value);
+            assertTrue(LogLinearHistogram.bucketLowerBound(index) <= value);
+            assertTrue(value <= LogLinearHistogram.bucketUpperBound(index));
+        }
+    }
+
+    @Test
+    public void smallValuesAreExact() {
+        LogLinearHistogram histogram = new LogLinearHistogram();
+        for (long value = 1; value <= 100; value++) {
+            histogram.record(value);
+        }
+        assertEquals(1, histogram.getValueAtPercentile(0));
+        assertEquals(1, histogram.getValueAtPercentile(1));
+        assertEquals(50, histogram.getValueAtPercentile(50));
+        assertEquals(99, histogram.getValueAtPercentile(99));
+        assertEquals(100, histogram.getValueAtPercentile(100));
+        assertEquals(50.5, histogram.getMean(), 0);
+    }
+
+    @Test
+    public void percentilesWithinThePrecision() {
+        Random random = new Random(42);
+        long[] values = new long[10000];
+        LogLinearHistogram histogram = new LogLinearHistogram();
+        for (int i = 0; i < values.length; i++) {
+            values[i] = (long) Math.exp(random.nextDouble() * 30);
+            histogram.record(values[i]);
+        }
+        Arrays.sort(values);
+
+        for (double percentile : new double[]{10, 50, 90, 99, 99.9}) {
+            long expected = values[(int) Math.ceil(percentile / 100 * values.length) - 1];
+            long actual = histogram.getValueAtPercentile(percentile);
+            assertTrue(percentile + ": " + actual + " vs " + expected,
+                    actual >= expected && actual - expected <= expected * PRECISION);
+        }
+        assertEquals(values[values.length - 1], histogram.getValueAtPercentile(100));
+        assertEquals(values[0], histogram.getMin());
+        assertEquals(values[values.length - 1], histogram.getMax());
+    }
+
+    @Test
+    public void addMergesCounts() {
+        LogLinearHistogram first = new LogLinearHistogram();
+        LogLinearHistogram second = new LogLinearHistogram();
+        LogLinearHistogram both = new LogLinearHistogram();
+        for (long value = 0; value < 1000; value++) {
+            (value % 3 == 0 ? first : second).record(value * value);
+            both.record(value * value);
+        }
+        first.add(second);
+
+        assertEquals(both.getTotalCount(), first.getTotalCount());
+        assertEquals(both.getSum(), first.getSum());
+        assertEquals(both.getMin(), first.getMin());
+        assertEquals(both.getMax(), first.getMax());
+        for (double percentile = 0; percentile <= 100; percentile += 2.5) {
+            assertEquals(both.getValueAtPercentile(percentile), first.getValueAtPercentile(percentile));
+        }
+    }
+
+    @Test
+    public void emptyAndNegativeValues() {
+        LogLinearHistogram histogram = new LogLinearHistogram();
+        assertEquals(0, histogram.getValueAtPercentile(50));
+        assertEquals(0, histogram.getMin());
+        assertEquals(0, histogram.getMax());
+        assertEquals(0, histogram.getMean(), 0);
+
+        histogram.record(-5);
+        assertEquals(1, histogram.getTotalCount());
+        assertEquals(0, histogram.getMax());
+    }
+}
@@ -0,0 +1,154 @@
+package edu.cmu.cs.lti.uima.util;
+
+import org.apache.uima.UIMAFramework;
+import org.apache.uima.cas.*;
+import org.apache.uima.cas.impl.Serialization;
+import org.apache.uima.cas.text.AnnotationFS;
+import org.apache.uima.jcas.JCas;
+import org.apache.uima.resource.metadata.TypeDescription;
+import org.apache.uima.resource.metadata.TypeSystemDescription;
+import org.apache.uima.util.CasCreationUtils;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.BufferedInputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+
+public class CasSerializationTest {
+    private static final String TOKEN = "test.Token";
+
+    private static final String ENTITY = "test.Entity";
+
+    private static final String TEXT = "John saw Mary.";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    /**
+     * @param full Whether to include the entity type and the part of speech of the tokens.
+     */
+    private static TypeSystemDescription typeSystem(boolean full) {
+        TypeSystemDescription description = UIMAFramework.getResourceSpecifierFactory()
+                .createTypeSystemDescription();
+        TypeDescription token = description.addType(TOKEN, "", CAS.TYPE_NAME_ANNOTATION);
+        if (full) {
+            token.addFeature("pos", "", CAS.TYPE_NAME_STRING);
+            TypeDescription entity = description.addType(ENTITY, "", CAS.TYPE_NAME_ANNOTATION);
+            entity.addFeature("id", "", CAS.TYPE_NAME_INTEGER);
+        }
+        return description;
+    }
+
+    private static JCas createJCas(boolean full) throws Exception {
+        return CasCreationUtils.createCas(typeSystem(full), null, null).getJCas();
+    }
+
+    private static void annotate(CAS cas, String typeName, int begin, int end, String featureName, Object value) {
+        Type type = cas.getTypeSystem().getType(typeName);
+        AnnotationFS annotation = cas.createAnnotation(type, begin, end);
+        Feature feature = type.getFeatureByBaseName(featureName);
+        if (value instanceof String) {
+            annotation.setStringValue(feature, (String) value);
+        } else {
+            annotation.setIntValue(feature, (Integer) value);
+        }
+        cas.addFsToIndexes(annotation);
+    }
+
+    private static JCas createDocument() throws Exception {
+        JCas jCas = createJCas(true);
+        CAS cas = jCas.getCas();
+        cas.setDocumentText(TEXT);
+        annotate(cas, TOKEN, 0, 4, "pos", "NNP");
+        annotate(cas, TOKEN, 5, 8, "pos", "VBD");
+        annotate(cas, TOKEN, 9, 13, "pos", "NNP");
+        annotate(cas, ENTITY, 0, 4, "id", 1);
+        annotate(cas, ENTITY, 9, 13, "id", 2);
+        return jCas;
+    }
+
+    private static List<String> describe(CAS cas, String typeName, String featureName) {
+        Type type = cas.getTypeSystem().getType(typeName);
+        Feature feature = featureName == null ? null : type.getFeatureByBaseName(featureName);
+        List<String> annotations = new ArrayList<>();
+        for (FSIterator<AnnotationFS> iter = cas.getAnnotationIndex(type).iterator(); iter.hasNext(); ) {
+            AnnotationFS annotation = iter.next();
+            String description = annotation.getCoveredText();
+            if (feature != null) {
+                description += "/" + annotation.getFeatureValueAsString(feature);
+            }
+            annotations.add(description);
+        }
+        return annotations;
+    }
+
+    @Test
+    public void writeThenReadWithTheSameTypeSystem() throws Exception {
+        JCas original = createDocument();
+        File binaryFile = folder.newFile("doc.bcas");
+        CasSerialization.writeAsBinary(original.getCas(), binaryFile);
+
+        JCas copy = createJCas(true);
+        CasSerialization.readBinary(copy, binaryFile, null);
+
+        assertEquals(TEXT, copy.getDocumentText());
+        assertEquals(describe(original.getCas(), TOKEN, "pos"), describe(copy.getCas(), TOKEN, "pos"));
+        assertEquals(describe(original.getCas(), ENTITY, "id"), describe(copy.getCas(), ENTITY, "id"));
+    }
+
+    @Test
+    public void writesCompressedForm6() throws Exception {
+        File binaryFile = folder.newFile("doc.bcas");
+        CasSerialization.writeAsBinary(createDocument().getCas(), binaryFile);
+
+        try (InputStream in = new BufferedInputStream(new FileInputStream(binaryFile))) {
+            assertEquals(SerialFormat.COMPRESSED_FILTERED, Serialization.deserializeCAS(createJCas(true).getCas(),
+                    in));
+        }
+    }
+
+    @Test
+    public void readIntoAReducedTypeSystem() throws Exception {
+        JCas original = createDocument();
+        File directory = folder.newFolder("binary");
+        File binaryFile = new File(directory, "doc.bcas");
+        CasSerialization.writeTypeSystem(original.getTypeSystem(), directory);
+        CasSerialization.writeAsBinary(original.getCas(), binaryFile);
+
+        TypeSystem typeSystem = CasSerialization.readTypeSystem(directory);
+        assertNotNull(typeSystem);
+
+        // The reader does not know the entity type and the part of speech feature, they are dropped.
+        JCas reduced = createJCas(false);
+        CasSerialization.readBinary(reduced, binaryFile, typeSystem);
+
+        assertEquals(TEXT, reduced.getDocumentText());
+        assertEquals(describe(original.getCas(), TOKEN, null), describe(reduced.getCas(), TOKEN, null));
+        assertNull(reduced.getTypeSystem().getType(ENTITY));
+    }
+
+    @Test
+    public void replacesTheHeaderOfAnEarlierRun() throws Exception {
+        File directory = folder.newFolder("binary");
+        CasSerialization.writeTypeSystem(createJCas(false).getTypeSystem(), directory);
+        CasSerialization.writeTypeSystem(createJCas(true).getTypeSystem(), directory);
+
+        TypeSystem typeSystem = CasSerialization.readTypeSystem(directory);
+        assertNotNull(typeSystem.getType(ENTITY));
+        assertNotNull(typeSystem.getType(TOKEN).getFeatureByBaseName("pos"));
+    }
+
+    @Test
+    public void noTypeSystemHeader() throws Exception {
+        assertNull(CasSerialization.readTypeSystem(folder.newFolder("empty")));
+    }
+}
@@ -5,13 +5,11 @@ import edu.cmu.cs.lti.learning.model.*;
 import edu.cmu.cs.lti.learning.training.SequenceDecoder;
 import edu.cmu.cs.lti.learning.utils.CubicLagrangian;
 import edu.cmu.cs.lti.learning.utils.DummyCubicLagrangian;
-import edu.cmu.cs.lti.utils.Functional;
 import gnu.trove.map.TIntObjectMap;
-import org.apache.commons.lang3.mutable.MutableInt;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
-import java.util.function.BiFunction;
+import java.util.Arrays;
 
 /**
  * Created with IntelliJ IDEA.
@@ -27,6 +25,24 @@ public class ViterbiDecoder extends SequenceDecoder {
 
     private GraphFeatureVector bestVector;
 
+    private FeatureVector[] positionNodeFeatures;
+
+    private FeatureVector[] positionEdgeFeatures;
+
+    // Number of positions decoded by the last call, the position arrays can be longer.
+    private int numPositions;
+
+    // The workspace below is reused across calls, so a decoder should be used by one thread at a time. The arrays
+    // grow to the longest sequence seen.
+    // Vectors to extract into when the features are not cached, cleared instead of reallocated.
+    private RealValueSortedFeatureVector[] nodeFeaturePool;
+
+    private RealValueSortedFeatureVector[] edgeFeaturePool;
+
+    private RealValueSortedFeatureVector solutionNodeFeatures;
+
+    private RealValueSortedFeatureVector solutionEdgeFeatures;
+
     private int kBest;
 
     private CubicLagrangian dummyLagrangian = new DummyCubicLagrangian();
@@ -54,36 +70,47 @@ public class ViterbiDecoder extends SequenceDecoder {
         this.constraints = constraints;
     }
 
-    private FeatureVector newFeatureVector() {
-        return new RealValueHashFeatureVector(featureAlphabet);
+    private RealValueSortedFeatureVector newFeatureVector() {
+        return new RealValueSortedFeatureVector(featureAlphabet);
     }
 
     private GraphFeatureVector newGraphFeatureVector() {
         return new GraphFeatureVector(classAlphabet, featureAlphabet);
     }
 
+    private void ensureWorkspace(int positions) {
+        if (positionNodeFeatures == null || positionNodeFeatures.length < positions) {
+            int capacity = positionNodeFeatures == null ? positions : Math.max(positions,
+                    positionNodeFeatures.length * 2);
+            positionNodeFeatures = new FeatureVector[capacity];
+            positionEdgeFeatures = new FeatureVector[capacity];
+            nodeFeaturePool = nodeFeaturePool == null ? new RealValueSortedFeatureVector[capacity] :
+                    Arrays.copyOf(nodeFeaturePool, capacity);
+            edgeFeaturePool = edgeFeaturePool == null ? new RealValueSortedFeatureVector[capacity] :
+                    Arrays.copyOf(edgeFeaturePool, capacity);
+        }
+    }
+
+    private RealValueSortedFeatureVector pooledFeatureVector(RealValueSortedFeatureVector[] pool, int index) {
+        if (pool[index] == null) {
+            pool[index] = newFeatureVector();
+        } else {
+            pool[index].clear();
+        }
+        return pool[index];
+    }
+
     @Override
     public void decode(ChainFeatureExtractor extractor, GraphWeightVector weightVector, int sequenceLength,
                        CubicLagrangian u, CubicLagrangian v, TIntObjectMap<FeatureVector[]> featureCache,
                        boolean useAverage) {
         solution = new SequenceSolution(classAlphabet, sequenceLength, kBest);
 
-        // Dot product function on the node (i.e. only take features depend on current class)
-        BiFunction<FeatureVector, Integer, Double> nodeDotProd = useAverage ?
-                weightVector::dotProdAver :
-                weightVector::dotProd;
-
-        // Dot product function on the edge (i.e. take features depend on two classes)
-        Functional.TriFunction<FeatureVector, Integer, Integer, Double> edgeDotProd = useAverage ?
-                weightVector::dotProdAver :
-                weightVector::dotProd;
-
-        final GraphFeatureVector[] currentFeatureVectors = new GraphFeatureVector[classAlphabet.size()];
-        final GraphFeatureVector[] previousColFeatureVectors = new GraphFeatureVector[classAlphabet.size()];
-
-        for (int i = 0; i < currentFeatureVectors.length; i++) {
-            currentFeatureVectors[i] = newGraphFeatureVector();
-        }
+        // Only the features of each position are kept, the features of the best path are assembled from them when
+        // asked for, instead of copying the path features into every lattice cell.
+        numPositions = sequenceLength + 1;
+        ensureWorkspace(numPositions);
+        bestVector = null;
 
         for (; !solution.finished(); solution.advance()) {
             int sequenceIndex = solution.getCurrentPosition();
@@ -102,24 +129,31 @@ public class ViterbiDecoder extends SequenceDecoder {
 
             // The extraction part is not parallelized.
             if (allBaseFeatures == null) {
-                nodeFeature = newFeatureVector();
-                edgeFeature = newFeatureVector();
-                extractor.extract(sequenceIndex, nodeFeature, edgeFeature);
+                // Sorted once here, they are then read by the parallel scoring below. Cached vectors outlive this
+                // call, so only the others are taken from the pool.
                 if (featureCache != null) {
+                    RealValueSortedFeatureVector extractedNodeFeature = newFeatureVector();
+                    RealValueSortedFeatureVector extractedEdgeFeature = newFeatureVector();
+                    extractor.extract(sequenceIndex, extractedNodeFeature, extractedEdgeFeature);
+                    nodeFeature = extractedNodeFeature.compact();
+                    edgeFeature = extractedEdgeFeature.compact();
                     featureCache.put(sequenceIndex, new FeatureVector[]{nodeFeature, edgeFeature});
+                } else {
+                    RealValueSortedFeatureVector extractedNodeFeature = pooledFeatureVector(nodeFeaturePool,
+                            sequenceIndex);
+                    RealValueSortedFeatureVector extractedEdgeFeature = pooledFeatureVector(edgeFeaturePool,
+                            sequenceIndex);
+                    extractor.extract(sequenceIndex, extractedNodeFeature, extractedEdgeFeature);
+                    nodeFeature = extractedNodeFeature.sortPending();
+                    edgeFeature = extractedEdgeFeature.sortPending();
                 }
             } else {
                 nodeFeature = allBaseFeatures[0];
                 edgeFeature = allBaseFeatures[1];
             }
 
-            // Before move on to calculate the features of current index, copy the vector of the previous column,
-            // which are all candidates for the final feature of the prediction.
-            System.arraycopy(currentFeatureVectors, 0, previousColFeatureVectors, 0, previousColFeatureVectors.length);
-
-            for (int i = 0; i < currentFeatureVectors.length; i++) {
-                currentFeatureVectors[i] = newGraphFeatureVector();
-            }
+            positionNodeFeatures[sequenceIndex] = nodeFeature;
+            positionEdgeFeatures[sequenceIndex] = edgeFeature;
 
             // Fill up lattice score for each of class in the current column.
             // TODO currently this creates a IllegalThreadState, some threads didn't exits.
@@ -130,40 +164,45 @@ public class ViterbiDecoder extends SequenceDecoder {
                                 + v.getSumOverIVariable(sequenceIndex, classIndex)
                                 - getConstraintSumJ(constraints, v, sequenceIndex, classIndex);
 
-                double newNodeScore = nodeDotProd.apply(nodeFeature, classIndex) + lagrangianPenalty;
-
-                MutableInt argmaxPreviousState = new MutableInt(-1);
+                // The node features (only depend on current class) are scored once for each possible class, and
+                // the edge features (depend on two classes) once for each possible previous class, not for every
+                // k-best cell.
+                double newNodeScore = (useAverage ? weightVector.dotProdAver(nodeFeature, classIndex) :
+                        weightVector.dotProd(nodeFeature, classIndex)) + lagrangianPenalty;
 
                 // Check which previous state gives the best score.
                 solution.getPreviousPossibleClassIndices().forEach(prevState -> {
+                    double newEdgeScore = useAverage ? weightVector.dotProdAver(edgeFeature, classIndex, prevState) :
+                            weightVector.dotProd(edgeFeature, classIndex, prevState);
                     for (SequenceSolution.LatticeCell previousBest : solution.getPreviousBests(prevState)) {
-                        double newEdgeScore = edgeDotProd.apply(edgeFeature, classIndex, prevState);
-
                         int addResult = solution.scoreNewEdge(classIndex, previousBest, newEdgeScore, newNodeScore);
-                        if (addResult == 1) {
-                            // The new score is the best.
-                            argmaxPreviousState.setValue(prevState);
-                        } else if (addResult == -1) {
+                        if (addResult == -1) {
                             // The new score is worse than the worst, i.e. rejected by the heap. We don't
                             // need to check any scores that is worse than this.
                             break;
                         }
                     }
                 });
-
-                // Add feature vector from previous state, also added new features of current state.
-                int bestPrev = argmaxPreviousState.getValue();
-
-                // Adding features for the new cell.
-                currentFeatureVectors[classIndex].extend(nodeFeature, classIndex);
-                // Taking features from previous best cell.
-                currentFeatureVectors[classIndex].extend(previousColFeatureVectors[bestPrev]);
-                // Adding features for the edge.
-                currentFeatureVectors[classIndex].extend(edgeFeature, classIndex, bestPrev);
             });
         }
         solution.backTrace();
-        bestVector = currentFeatureVectors[classAlphabet.getOutsideClassIndex()];
+    }
+
+    /**
+     * Assemble the features along the best path, from the features kept for each position: the node features at the
+     * decoded class, and the edge features between it and the class before. The position after the sequence end is
+     * the outside class, and so is the one before the start.
+     */
+    private GraphFeatureVector bestPathFeatures() {
+        GraphFeatureVector fv = newGraphFeatureVector();
+        int previousClass = classAlphabet.getOutsideClassIndex();
+        for (int sequenceIndex = 0; sequenceIndex < numPositions; sequenceIndex++) {
+            int currentClass = solution.getClassAt(sequenceIndex);
+            fv.extend(positionNodeFeatures[sequenceIndex], currentClass);
+            fv.extend(positionEdgeFeatures[sequenceIndex], currentClass, previousClass);
+            previousClass = currentClass;
+        }
+        return fv;
     }
 
     private double getConstraintSumJ(ArrayListMultimap<Integer, Integer> allowedCorefs, CubicLagrangian l,
@@ -192,6 +231,9 @@ public class ViterbiDecoder extends SequenceDecoder {
 
     @Override
     public GraphFeatureVector getBestDecodingFeatures() {
+        if (bestVector == null && positionNodeFeatures != null) {
+            bestVector = bestPathFeatures();
+        }
         return bestVector;
     }
 
@@ -199,9 +241,17 @@ public class ViterbiDecoder extends SequenceDecoder {
     public GraphFeatureVector getSolutionFeatures(ChainFeatureExtractor extractor, SequenceSolution solution) {
         GraphFeatureVector fv = newGraphFeatureVector();
 
+        // The features are copied into the graph vector, so the same two vectors are used for all positions.
+        if (solutionNodeFeatures == null) {
+            solutionNodeFeatures = newFeatureVector();
+            solutionEdgeFeatures = newFeatureVector();
+        }
+        RealValueSortedFeatureVector nodeFeatures = solutionNodeFeatures;
+        RealValueSortedFeatureVector edgeFeatures = solutionEdgeFeatures;
+
         for (int solutionIndex = 0; solutionIndex <= solution.getSequenceLength(); solutionIndex++) {
-            FeatureVector nodeFeatures = newFeatureVector();
-            FeatureVector edgeFeatures = newFeatureVector();
+            nodeFeatures.clear();
+            edgeFeatures.clear();
 
             extractor.extract(solutionIndex, nodeFeatures, edgeFeatures);
 
@@ -0,0 +1,233 @@
+package edu.cmu.cs.lti.learning.model;
+
+import gnu.trove.iterator.TIntDoubleIterator;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * An averaged weight vector backed by flat arrays, sized to the feature dimension (e.g. 2^bits of a HashAlphabet).
+ * Lookups are direct array reads instead of hash probes. The average is kept lazily in the same way as
+ * {@link HashBasedAveragedWeightVector}. Only the non-zero entries are written out when serialized.
+ * <p>
+ * There is a single writer at a time: updates, average updates and (de)consolidation are synchronized on this
+ * vector, so the counter and the sum and timestamp of each weight always change together. Reads take no lock, a
+ * read concurrent with an update may see a weight from before it.
+ */
+public class DenseAveragedWeightVector extends AveragedWeightVector {
+    private static final long serialVersionUID = -3092416874105334627L;
+
+    private volatile int averageUpdateCount;
+
+    private transient double[] weights;
+    private transient double[] averagedWeights;
+
+    // The value of averageUpdateCount when each weight was last changed.
+    private transient int[] lastUpdated;
+
+    private boolean consolidated;
+
+    public DenseAveragedWeightVector(int featureSize) {
+        this(featureSize, 0);
+    }
+
+    public DenseAveragedWeightVector(int featureSize, int initialAverageUpdateCount) {
+        weights = new double[featureSize];
+        averagedWeights = new double[featureSize];
+        lastUpdated = new int[featureSize];
+        consolidated = false;
+        averageUpdateCount = initialAverageUpdateCount;
+        if (averageUpdateCount != 0) {
+            Arrays.fill(lastUpdated, averageUpdateCount);
+        }
+    }
+
+    @Override
+    public synchronized void updateWeightsBy(FeatureVector fv, double multiplier) {
+        // A loaded model holds the averages, continue training from the sums.
+        deconsolidate();
+        for (FeatureVector.FeatureIterator iter = fv.featureIterator(); iter.hasNext(); ) {
+            iter.next();
+            int index = iter.featureIndex();
+            catchUp(index);
+            weights[index] += iter.featureValue() * multiplier;
+        }
+    }
+
+    /**
+     * Add the current weight for all the average updates since it was last changed.
+     */
+    private void catchUp(int index) {
+        int elapsed = averageUpdateCount - lastUpdated[index];
+        if (elapsed != 0) {
+            averagedWeights[index] += weights[index] * elapsed;
+            lastUpdated[index] = averageUpdateCount;
+        }
+    }
+
+    @Override
+    public synchronized void updateAverageWeight() {
+        deconsolidate();
+        averageUpdateCount++;
+    }
+
+    @Override
+    public double dotProd(FeatureVector fv) {
+        double sum = 0;
+        for (FeatureVector.FeatureIterator iter = fv.featureIterator(); iter.hasNext(); ) {
+            iter.next();
+            sum += weights[iter.featureIndex()] * iter.featureValue();
+        }
+        return sum;
+    }
+
+    @Override
+    synchronized void consolidate() {
+        if (!consolidated) {
+            for (int i = 0; i < weights.length; i++) {
+                catchUp(i);
+            }
+            if (averageUpdateCount != 0) {
+                for (int i = 0; i < averagedWeights.length; i++) {
+                    averagedWeights[i] /= averageUpdateCount;
+                }
+            }
+            consolidated = true;
+        }
+    }
+
+    @Override
+    synchronized void deconsolidate() {
+        if (consolidated) {
+            if (averageUpdateCount != 0) {
+                for (int i = 0; i < averagedWeights.length; i++) {
+                    averagedWeights[i] *= averageUpdateCount;
+                }
+            }
+            Arrays.fill(lastUpdated, averageUpdateCount);
+            consolidated = false;
+        }
+    }
+
+    @Override
+    public double getWeightAt(int i) {
+        return weights[i];
+    }
+
+    @Override
+    public double getAverageWeightAt(int i) {
+        if (consolidated) {
+            return averagedWeights[i];
+        }
+        return averagedWeights[i] + weights[i] * (averageUpdateCount - lastUpdated[i]);
+    }
+
+    /**
+     * The dimension of this vector, i.e. the number of slots, not only the ones that are set.
+     */
+    @Override
+    public int getFeatureSize() {
+        return weights.length;
+    }
+
+    @Override
+    public TIntDoubleIterator getWeightsIterator() {
+        return new TIntDoubleIterator() {
+            private int current = -1;
+
+            private int next = seek(0);
+
+            private int seek(int from) {
+                while (from < weights.length && weights[from] == 0) {
+                    from++;
+                }
+                return from;
+            }
+
+            @Override
+            public int key() {
+                return current;
+            }
+
+            @Override
+            public double value() {
+                return weights[current];
+            }
+
+            @Override
+            public double setValue(double val) {
+                double old = weights[current];
+                weights[current] = val;
+                return old;
+            }
+
+            @Override
+            public void advance() {
+                if (next >= weights.length) {
+                    throw new NoSuchElementException();
+                }
+                current = next;
+                next = seek(current + 1);
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next < weights.length;
+            }
+
+            @Override
+            public void remove() {
+                weights[current] = 0;
+            }
+        };
+    }
+
+    /**
+     * Direct access to the weight array, for scorers that walk several class rows at once.
+     */
+    double[] weightArray() {
+        return weights;
+    }
+
+    private synchronized void writeObject(ObjectOutputStream out) throws IOException {
+        out.defaultWriteObject();
+        out.writeInt(weights.length);
+
+        int nonZeros = 0;
+        for (int i = 0; i < weights.length; i++) {
+            if (weights[i] != 0 || averagedWeights[i] != 0) {
+                nonZeros++;
+            }
+        }
+        out.writeInt(nonZeros);
+
+        for (int i = 0; i < weights.length; i++) {
+            if (weights[i] != 0 || averagedWeights[i] != 0) {
+                out.writeInt(i);
+                out.writeDouble(weights[i]);
+                out.writeDouble(averagedWeights[i]);
+                out.writeInt(lastUpdated[i]);
+            }
+        }
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        int featureSize = in.readInt();
+        weights = new double[featureSize];
+        averagedWeights = new double[featureSize];
+        lastUpdated = new int[featureSize];
+        Arrays.fill(lastUpdated, averageUpdateCount);
+
+        int nonZeros = in.readInt();
+        for (int n = 0; n < nonZeros; n++) {
+            int i = in.readInt();
+            weights[i] = in.readDouble();
+            averagedWeights[i] = in.readDouble();
+            lastUpdated[i] = in.readInt();
+        }
+    }
+}
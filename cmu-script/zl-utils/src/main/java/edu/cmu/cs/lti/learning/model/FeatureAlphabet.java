@@ -23,6 +23,17 @@ public abstract class FeatureAlphabet implements Serializable {
 
     public abstract int getFeatureId(String featureName);
 
+    /**
+     * Look up a feature that was fed to a hasher in parts. Alphabets that are not hash based fall back to the
+     * feature name.
+     *
+     * @param feature The hasher holding the current feature.
+     * @return The feature index.
+     */
+    public int getFeatureId(FeatureHasher feature) {
+        return getFeatureId(feature.featureName());
+    }
+
     public abstract String[] getFeatureNames(int featureIndex);
 
     public abstract String getFeatureNameRepre(int featureIndex);
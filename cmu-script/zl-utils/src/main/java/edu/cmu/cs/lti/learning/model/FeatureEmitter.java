@@ -0,0 +1,103 @@
+package edu.cmu.cs.lti.learning.model;
+
+/**
+ * Write features straight into a feature vector, without building the names as strings first. A feature is started
+ * with its template, the value parts are appended, and then it is added to the vector:
+ * <pre>
+ *     features.begin("Lemma_offset=").append(offset).append("::").append(lemma).add(1);
+ * </pre>
+ * The index is the same as the one of the concatenated name, so the two ways of adding features can be mixed.
+ * <p>
+ * An emitter is reused across feature vectors by resetting its target, it is not thread-safe. An emitter without a
+ * target drops everything, which is cheaper than collecting features that will not be used.
+ */
+public class FeatureEmitter {
+    private final FeatureHasher hasher = new FeatureHasher();
+
+    private FeatureVector target;
+
+    public FeatureEmitter() {
+    }
+
+    public FeatureEmitter(FeatureVector target) {
+        this.target = target;
+    }
+
+    /**
+     * @param target The vector to add features to, or null to discard them.
+     * @return This emitter.
+     */
+    public FeatureEmitter reset(FeatureVector target) {
+        this.target = target;
+        return this;
+    }
+
+    public boolean isActive() {
+        return target != null;
+    }
+
+    public FeatureEmitter begin(CharSequence template) {
+        if (target != null) {
+            hasher.reset().append(template);
+        }
+        return this;
+    }
+
+    public FeatureEmitter append(CharSequence part) {
+        if (target != null) {
+            hasher.append(part);
+        }
+        return this;
+    }
+
+    public FeatureEmitter append(CharSequence part, int start, int end) {
+        if (target != null) {
+            hasher.append(part, start, end);
+        }
+        return this;
+    }
+
+    public FeatureEmitter append(int part) {
+        if (target != null) {
+            hasher.append(part);
+        }
+        return this;
+    }
+
+    public FeatureEmitter append(char part) {
+        if (target != null) {
+            hasher.append(part);
+        }
+        return this;
+    }
+
+    /**
+     * Add the value to the current feature, values of the same feature are summed.
+     */
+    public void add(double value) {
+        if (target != null) {
+            target.addFeature(hasher, value);
+        }
+    }
+
+    /**
+     * Set the current feature to the value, replacing what was added before.
+     */
+    public void put(double value) {
+        if (target != null) {
+            int featureIndex = target.getAlphabet().getFeatureId(hasher);
+            target.addFeature(featureIndex, value - target.getFeatureValue(featureIndex));
+        }
+    }
+
+    /**
+     * Add a feature whose full name is already known.
+     */
+    public void add(String featureName, double value) {
+        begin(featureName).add(value);
+    }
+
+    public void put(String featureName, double value) {
+        begin(featureName).put(value);
+    }
+}
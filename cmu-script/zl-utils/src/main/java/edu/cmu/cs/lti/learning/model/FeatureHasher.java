@@ -0,0 +1,175 @@
+package edu.cmu.cs.lti.learning.model;
+
+/**
+ * Incremental 32 bit Murmur3 (seed 0) over the UTF-8 bytes of a feature name, which can be fed in parts. Hashing
+ * "Lemma_offset=" then -1 then "::" then "run" gives the same value as Guava's murmur3_32 over the UTF-8 bytes of
+ * the string "Lemma_offset=-1::run", so names do not need to be built before hashing. Malformed surrogates are
+ * encoded as '?', the same as String.getBytes.
+ * <p>
+ * An instance is meant to be reused for many features and is not thread-safe. The characters are also kept in a
+ * reusable buffer, so that the name can still be recovered when the alphabet stores readable names.
+ */
+public class FeatureHasher {
+    private static final int C1 = 0xcc9e2d51;
+    private static final int C2 = 0x1b873593;
+
+    private int h1;
+
+    // Bytes not yet mixed, little endian, and how many of them there are.
+    private int pending;
+    private int pendingBytes;
+
+    private int length;
+
+    // A high surrogate waiting for its pair.
+    private char highSurrogate;
+
+    private final StringBuilder name = new StringBuilder();
+
+    private final char[] digits = new char[11];
+
+    public FeatureHasher() {
+        reset();
+    }
+
+    /**
+     * Start a new feature.
+     */
+    public FeatureHasher reset() {
+        h1 = 0;
+        pending = 0;
+        pendingBytes = 0;
+        length = 0;
+        highSurrogate = 0;
+        name.setLength(0);
+        return this;
+    }
+
+    /**
+     * Append the characters, a null is appended as "null", the same as StringBuilder and String.format do.
+     */
+    public FeatureHasher append(CharSequence s) {
+        if (s == null) {
+            s = "null";
+        }
+        return append(s, 0, s.length());
+    }
+
+    public FeatureHasher append(CharSequence s, int start, int end) {
+        if (s == null) {
+            s = "null";
+        }
+        for (int i = start; i < end; i++) {
+            append(s.charAt(i));
+        }
+        return this;
+    }
+
+    /**
+     * Append the decimal form of the number, as String.valueOf would write it.
+     */
+    public FeatureHasher append(int value) {
+        if (value == Integer.MIN_VALUE) {
+            return append("-2147483648");
+        }
+        if (value < 0) {
+            append('-');
+            value = -value;
+        }
+        int pos = digits.length;
+        do {
+            digits[--pos] = (char) ('0' + value % 10);
+            value /= 10;
+        } while (value != 0);
+        for (; pos < digits.length; pos++) {
+            append(digits[pos]);
+        }
+        return this;
+    }
+
+    public FeatureHasher append(char c) {
+        name.append(c);
+
+        if (highSurrogate != 0) {
+            char high = highSurrogate;
+            highSurrogate = 0;
+            if (Character.isLowSurrogate(c)) {
+                int codePoint = Character.toCodePoint(high, c);
+                putByte(0xF0 | (codePoint >>> 18));
+                putByte(0x80 | ((codePoint >>> 12) & 0x3F));
+                putByte(0x80 | ((codePoint >>> 6) & 0x3F));
+                putByte(0x80 | (codePoint & 0x3F));
+                return this;
+            }
+            putByte('?');
+        }
+
+        if (c < 0x80) {
+            putByte(c);
+        } else if (c < 0x800) {
+            putByte(0xC0 | (c >>> 6));
+            putByte(0x80 | (c & 0x3F));
+        } else if (Character.isHighSurrogate(c)) {
+            highSurrogate = c;
+        } else if (Character.isLowSurrogate(c)) {
+            putByte('?');
+        } else {
+            putByte(0xE0 | (c >>> 12));
+            putByte(0x80 | ((c >>> 6) & 0x3F));
+            putByte(0x80 | (c & 0x3F));
+        }
+        return this;
+    }
+
+    private void putByte(int b) {
+        pending |= (b & 0xFF) << (pendingBytes << 3);
+        length++;
+        if (++pendingBytes == 4) {
+            h1 = mixH1(h1, mixK1(pending));
+            pending = 0;
+            pendingBytes = 0;
+        }
+    }
+
+    /**
+     * Finish the current feature and return its hash. Call {@link #reset()} before starting the next one.
+     */
+    public int hash() {
+        if (highSurrogate != 0) {
+            highSurrogate = 0;
+            putByte('?');
+        }
+        int h = h1;
+        if (pendingBytes != 0) {
+            h ^= mixK1(pending);
+        }
+        h ^= length;
+        h ^= h >>> 16;
+        h *= 0x85ebca6b;
+        h ^= h >>> 13;
+        h *= 0xc2b2ae35;
+        h ^= h >>> 16;
+        return h;
+    }
+
+    /**
+     * @return The characters appended since the last reset.
+     */
+    public String featureName() {
+        return name.toString();
+    }
+
+    private static int mixK1(int k1) {
+        k1 *= C1;
+        k1 = Integer.rotateLeft(k1, 15);
+        k1 *= C2;
+        return k1;
+    }
+
+    private static int mixH1(int h1, int k1) {
+        h1 ^= k1;
+        h1 = Integer.rotateLeft(h1, 13);
+        h1 = h1 * 5 + 0xe6546b64;
+        return h1;
+    }
+}
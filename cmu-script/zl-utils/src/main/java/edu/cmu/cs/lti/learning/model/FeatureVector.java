@@ -39,6 +39,10 @@ public abstract class FeatureVector implements Serializable {
         return addFeature(alphabet.getFeatureId(featureName), featureValue);
     }
 
+    public int addFeature(FeatureHasher feature, double featureValue) {
+        return addFeature(alphabet.getFeatureId(feature), featureValue);
+    }
+
     /**
      * Create a feature vector sharing this one's setting (such as Binary/Real, Alphabet)
      *
@@ -0,0 +1,160 @@
+package edu.cmu.cs.lti.learning.model;
+
+import edu.cmu.cs.lti.utils.BitUtils;
+import edu.cmu.cs.lti.utils.CacheCodec;
+import gnu.trove.iterator.TIntObjectIterator;
+import gnu.trove.map.TIntObjectMap;
+import gnu.trove.map.hash.TIntObjectHashMap;
+
+import java.io.*;
+import java.util.ArrayList;
+
+/**
+ * A compact binary format for the cached features of the sequence trainers. A vector is written as its feature count,
+ * the sorted feature indices as variable length deltas and then the values. Values are written as floats when all of
+ * them can be represented exactly (feature counts and indicators always can), otherwise as doubles, so decoding gives
+ * back the same vector. Vectors are decoded as {@link RealValueSortedFeatureVector} of the given alphabet.
+ */
+public class FeatureVectorCodec {
+    private static final byte FLOAT_VALUES = 0;
+    private static final byte DOUBLE_VALUES = 1;
+
+    private final FeatureAlphabet alphabet;
+
+    public FeatureVectorCodec(FeatureAlphabet alphabet) {
+        this.alphabet = alphabet;
+    }
+
+    public void writeVector(FeatureVector fv, DataOutput out) throws IOException {
+        if (fv == null) {
+            BitUtils.writeVarInt(out, 0);
+            return;
+        }
+
+        RealValueSortedFeatureVector sorted;
+        if (fv instanceof RealValueSortedFeatureVector) {
+            sorted = (RealValueSortedFeatureVector) fv;
+        } else {
+            sorted = new RealValueSortedFeatureVector(alphabet);
+            sorted.extend(fv);
+        }
+
+        int size = sorted.getFeatureSize();
+        BitUtils.writeVarInt(out, size + 1);
+
+        boolean floatValues = true;
+        int previous = 0;
+        for (FeatureVector.FeatureIterator iter = sorted.featureIterator(); iter.hasNext(); ) {
+            iter.next();
+            BitUtils.writeVarInt(out, iter.featureIndex() - previous);
+            previous = iter.featureIndex();
+            double value = iter.featureValue();
+            if ((float) value != value) {
+                floatValues = false;
+            }
+        }
+
+        out.writeByte(floatValues ? FLOAT_VALUES : DOUBLE_VALUES);
+        for (FeatureVector.FeatureIterator iter = sorted.featureIterator(); iter.hasNext(); ) {
+            iter.next();
+            if (floatValues) {
+                out.writeFloat((float) iter.featureValue());
+            } else {
+                out.writeDouble(iter.featureValue());
+            }
+        }
+    }
+
+    public RealValueSortedFeatureVector readVector(DataInput in) throws IOException {
+        int size = BitUtils.readVarInt(in) - 1;
+        if (size < 0) {
+            return null;
+        }
+
+        int[] indices = new int[size];
+        int previous = 0;
+        for (int i = 0; i < size; i++) {
+            indices[i] = previous + BitUtils.readVarInt(in);
+            previous = indices[i];
+        }
+
+        boolean floatValues = in.readByte() == FLOAT_VALUES;
+        RealValueSortedFeatureVector fv = new RealValueSortedFeatureVector(alphabet);
+        for (int index : indices) {
+            fv.addFeature(index, floatValues ? in.readFloat() : in.readDouble());
+        }
+        return fv.compact();
+    }
+
+    public void writeVectorMap(TIntObjectMap<FeatureVector[]> vectors, DataOutput out) throws IOException {
+        BitUtils.writeVarInt(out, vectors.size());
+        for (TIntObjectIterator<FeatureVector[]> iter = vectors.iterator(); iter.hasNext(); ) {
+            iter.advance();
+            out.writeInt(iter.key());
+            FeatureVector[] array = iter.value();
+            BitUtils.writeVarInt(out, array.length);
+            for (FeatureVector fv : array) {
+                writeVector(fv, out);
+            }
+        }
+    }
+
+    public TIntObjectHashMap<FeatureVector[]> readVectorMap(DataInput in) throws IOException {
+        int size = BitUtils.readVarInt(in);
+        TIntObjectHashMap<FeatureVector[]> vectors = new TIntObjectHashMap<>(Math.max(size, 1));
+        for (int i = 0; i < size; i++) {
+            int key = in.readInt();
+            FeatureVector[] array = new FeatureVector[BitUtils.readVarInt(in)];
+            for (int j = 0; j < array.length; j++) {
+                array[j] = readVector(in);
+            }
+            vectors.put(key, array);
+        }
+        return vectors;
+    }
+
+    /**
+     * @return Codec for the features of one sequence, keyed by position.
+     */
+    public CacheCodec<TIntObjectHashMap<FeatureVector[]>> sequenceCodec() {
+        return new CacheCodec<TIntObjectHashMap<FeatureVector[]>>() {
+            @Override
+            public void encode(TIntObjectHashMap<FeatureVector[]> value, OutputStream out) throws IOException {
+                writeVectorMap(value, new DataOutputStream(out));
+            }
+
+            @Override
+            public TIntObjectHashMap<FeatureVector[]> decode(InputStream in) throws IOException {
+                return readVectorMap(new DataInputStream(in));
+            }
+        };
+    }
+
+    /**
+     * @return Codec for the features of all sequences in a document.
+     */
+    public CacheCodec<ArrayList<TIntObjectMap<FeatureVector[]>>> documentCodec() {
+        return new CacheCodec<ArrayList<TIntObjectMap<FeatureVector[]>>>() {
+            @Override
+            public void encode(ArrayList<TIntObjectMap<FeatureVector[]>> value, OutputStream out) throws
+                    IOException {
+                DataOutputStream dataOut = new DataOutputStream(out);
+                BitUtils.writeVarInt(dataOut, value.size());
+                for (TIntObjectMap<FeatureVector[]> vectors : value) {
+                    writeVectorMap(vectors, dataOut);
+                }
+            }
+
+            @Override
+            public ArrayList<TIntObjectMap<FeatureVector[]>> decode(InputStream in) throws IOException {
+                DataInputStream dataIn = new DataInputStream(in);
+                int size = BitUtils.readVarInt(dataIn);
+                ArrayList<TIntObjectMap<FeatureVector[]>> value = new ArrayList<>(size);
+                for (int i = 0; i < size; i++) {
+                    value.add(readVectorMap(dataIn));
+                }
+                return value;
+            }
+        };
+    }
+}
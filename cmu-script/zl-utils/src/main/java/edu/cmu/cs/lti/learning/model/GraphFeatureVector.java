@@ -49,7 +49,7 @@ public class GraphFeatureVector implements Serializable {
     }
 
     private FeatureVector newFeatureVector() {
-        return new RealValueHashFeatureVector(featureAlphabet);
+        return new RealValueSortedFeatureVector(featureAlphabet);
     }
 
     public void extend(FeatureVector fv, String endClassName, String fromClassName) {
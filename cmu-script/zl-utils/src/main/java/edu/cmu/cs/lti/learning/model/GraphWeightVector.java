@@ -14,14 +14,22 @@ import org.slf4j.LoggerFactory;
 import java.io.File;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.io.Serializable;
+import java.util.Arrays;
 import java.util.Iterator;
+import java.util.concurrent.atomic.AtomicReferenceArray;
 import java.util.function.Consumer;
 
 /**
  * Created with IntelliJ IDEA.
  * Date: 9/16/15
  * Time: 8:28 PM
+ * <p>
+ * Node weights can be kept in dense arrays sized to the feature dimension (see {@link DenseAveragedWeightVector}),
+ * which is meant for hashed alphabets with a fixed size. Edge weights are always sparse, there are many class pairs
+ * but few edge features.
  *
  * @author Zhengzhong Liu
  */
@@ -35,6 +43,12 @@ public class GraphWeightVector implements Serializable {
     // <Current Key, Previous Key, Vector>
     private Table<Integer, Integer, AveragedWeightVector> edgeWeights;
 
+    // Lock free views of the node and edge weights above, indexed by class and by class pair. The maps are only
+    // changed when a new vector is created, under the lock of this object, the views are read without locking.
+    private transient volatile AtomicReferenceArray<AveragedWeightVector> nodeRows;
+
+    private transient volatile EdgeRows edgeRows;
+
     private final ClassAlphabet classAlphabet;
 
     private final FeatureAlphabet featureAlphabet;
@@ -45,52 +59,168 @@ public class GraphWeightVector implements Serializable {
 
     private int averageUpdateCount;
 
+    // Models written before this option are read with false, which keeps the hash based node weights.
+    private boolean denseNodeWeights;
+
+    /**
+     * Edge vectors in a flat array, the vector of (current, previous) is at current * stride + previous.
+     */
+    private static class EdgeRows {
+        final int stride;
+        final AtomicReferenceArray<AveragedWeightVector> rows;
+
+        EdgeRows(int stride) {
+            this.stride = stride;
+            rows = new AtomicReferenceArray<>(stride * stride);
+        }
+
+        boolean covers(int currentKey, int previousKey) {
+            return currentKey >= 0 && previousKey >= 0 && currentKey < stride && previousKey < stride;
+        }
+    }
+
     public GraphWeightVector(ClassAlphabet classAlphabet, FeatureAlphabet featureAlphabet, String featureSpec) {
+        this(classAlphabet, featureAlphabet, featureSpec, false);
+    }
+
+    /**
+     * @param denseNodeWeights Whether to store the node weights in dense arrays of the feature alphabet size. Each
+     *                         class then takes 20 bytes per feature slot, which is fast but only affordable for a
+     *                         moderate number of alphabet bits.
+     */
+    public GraphWeightVector(ClassAlphabet classAlphabet, FeatureAlphabet featureAlphabet, String featureSpec,
+                             boolean denseNodeWeights) {
         nodeWeights = new TIntObjectHashMap<>();
         edgeWeights = HashBasedTable.create();
+        this.denseNodeWeights = denseNodeWeights;
 
         this.featureAlphabet = featureAlphabet;
         this.classAlphabet = classAlphabet;
         this.featureSpec = featureSpec;
 
         averageUpdateCount = 0;
+
+        buildRows();
+
+        // Create the rows of the known classes up front, so that scoring them never needs to take the lock.
+        for (int classIndex = 0; classIndex < classAlphabet.size(); classIndex++) {
+            getOrCreateNodeWeights(classIndex);
+        }
     }
 
     private AveragedWeightVector newWeightVector() {
         return new HashBasedAveragedWeightVector(averageUpdateCount);
     }
 
+    private AveragedWeightVector newNodeWeightVector() {
+        if (denseNodeWeights) {
+            return new DenseAveragedWeightVector(featureAlphabet.getAlphabetSize(), averageUpdateCount);
+        }
+        return newWeightVector();
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        buildRows();
+    }
+
+    private synchronized void buildRows() {
+        int numClasses = classAlphabet.size();
+        for (int classIndex : nodeWeights.keys()) {
+            numClasses = Math.max(numClasses, classIndex + 1);
+        }
+        for (Table.Cell<Integer, Integer, AveragedWeightVector> cell : edgeWeights.cellSet()) {
+            numClasses = Math.max(numClasses, Math.max(cell.getRowKey(), cell.getColumnKey()) + 1);
+        }
+
+        nodeRows = new AtomicReferenceArray<>(numClasses);
+        for (TIntObjectIterator<AveragedWeightVector> iter = nodeWeights.iterator(); iter.hasNext(); ) {
+            iter.advance();
+            if (iter.key() >= 0) {
+                nodeRows.set(iter.key(), iter.value());
+            }
+        }
+
+        edgeRows = new EdgeRows(numClasses);
+        for (Table.Cell<Integer, Integer, AveragedWeightVector> cell : edgeWeights.cellSet()) {
+            if (edgeRows.covers(cell.getRowKey(), cell.getColumnKey())) {
+                edgeRows.rows.set(cell.getRowKey() * edgeRows.stride + cell.getColumnKey(), cell.getValue());
+            }
+        }
+    }
 
     public AveragedWeightVector getNodeWeights(String className) {
-        return nodeWeights.get(classAlphabet.getClassIndex(className));
+        return getNodeWeights(classAlphabet.getClassIndex(className));
     }
 
     public AveragedWeightVector getNodeWeights(int classIndex) {
-        return nodeWeights.get(classIndex);
+        AtomicReferenceArray<AveragedWeightVector> rows = nodeRows;
+        if (classIndex >= 0 && classIndex < rows.length()) {
+            return rows.get(classIndex);
+        }
+        synchronized (this) {
+            return nodeWeights.get(classIndex);
+        }
     }
 
     public AveragedWeightVector getEdgeWeights(int currentKey, int previousKey) {
-        return edgeWeights.get(currentKey, previousKey);
+        EdgeRows edges = edgeRows;
+        if (edges.covers(currentKey, previousKey)) {
+            return edges.rows.get(currentKey * edges.stride + previousKey);
+        }
+        synchronized (this) {
+            return edgeWeights.get(currentKey, previousKey);
+        }
     }
 
-    private synchronized AveragedWeightVector getOrCreateNodeWeights(int classIndex) {
-        if (nodeWeights.containsKey(classIndex)) {
-            return nodeWeights.get(classIndex);
-        } else {
-            AveragedWeightVector v = newWeightVector();
+    private AveragedWeightVector getOrCreateNodeWeights(int classIndex) {
+        AtomicReferenceArray<AveragedWeightVector> rows = nodeRows;
+        if (classIndex >= 0 && classIndex < rows.length()) {
+            AveragedWeightVector v = rows.get(classIndex);
+            if (v != null) {
+                return v;
+            }
+        }
+        return createNodeWeights(classIndex);
+    }
+
+    private synchronized AveragedWeightVector createNodeWeights(int classIndex) {
+        AveragedWeightVector v = nodeWeights.get(classIndex);
+        if (v == null) {
+            v = newNodeWeightVector();
             nodeWeights.put(classIndex, v);
-            return v;
+            if (classIndex >= nodeRows.length()) {
+                buildRows();
+            } else if (classIndex >= 0) {
+                nodeRows.set(classIndex, v);
+            }
         }
+        return v;
     }
 
-    private synchronized AveragedWeightVector getOrCreateEdgeWeights(int currentKey, int previousKey) {
-        if (edgeWeights.contains(currentKey, previousKey)) {
-            return edgeWeights.get(currentKey, previousKey);
-        } else {
-            AveragedWeightVector v = newWeightVector();
+    private AveragedWeightVector getOrCreateEdgeWeights(int currentKey, int previousKey) {
+        EdgeRows edges = edgeRows;
+        if (edges.covers(currentKey, previousKey)) {
+            AveragedWeightVector v = edges.rows.get(currentKey * edges.stride + previousKey);
+            if (v != null) {
+                return v;
+            }
+        }
+        return createEdgeWeights(currentKey, previousKey);
+    }
+
+    private synchronized AveragedWeightVector createEdgeWeights(int currentKey, int previousKey) {
+        AveragedWeightVector v = edgeWeights.get(currentKey, previousKey);
+        if (v == null) {
+            v = newWeightVector();
             edgeWeights.put(currentKey, previousKey, v);
-            return v;
+            if (edgeRows.covers(currentKey, previousKey)) {
+                edgeRows.rows.set(currentKey * edgeRows.stride + previousKey, v);
+            } else if (currentKey >= 0 && previousKey >= 0) {
+                buildRows();
+            }
         }
+        return v;
     }
 
     public Iterator<Pair<Integer, AveragedWeightVector>> nodeWeightIterator() {
@@ -127,19 +257,22 @@ public class GraphWeightVector implements Serializable {
         };
     }
 
-    public synchronized void updateWeightsBy(FeatureVector fv, int currentKey, double multiplier) {
-        AveragedWeightVector weightVector = getOrCreateNodeWeights(currentKey);
-        weightVector.updateWeightsBy(fv, multiplier);
+    /**
+     * Each weight vector serializes its own updates, so updates of different classes and class pairs do not wait
+     * for each other, and scoring never waits for an update.
+     */
+    public void updateWeightsBy(FeatureVector fv, int currentKey, double multiplier) {
+        getOrCreateNodeWeights(currentKey).updateWeightsBy(fv, multiplier);
     }
 
-    public synchronized void updateWeightsBy(FeatureVector fv, int currentKey, int previousKey, double multiplier) {
+    public void updateWeightsBy(FeatureVector fv, int currentKey, int previousKey, double multiplier) {
 //        logger.debug("Updating features for " + classAlphabet.getClassName(currentKey) + " and " + classAlphabet
 //                .getClassName(previousKey) + " by " + multiplier);
 //        logger.debug(fv.readableString());
         getOrCreateEdgeWeights(currentKey, previousKey).updateWeightsBy(fv, multiplier);
     }
 
-    public synchronized void updateWeightsBy(GraphFeatureVector updateVector, double multiplier) {
+    public void updateWeightsBy(GraphFeatureVector updateVector, double multiplier) {
         for (TIntObjectIterator<FeatureVector> iter = updateVector.nodeFvIter(); iter.hasNext(); ) {
             iter.advance();
             updateWeightsBy(iter.value(), iter.key(), multiplier);
@@ -160,6 +293,60 @@ public class GraphWeightVector implements Serializable {
         return weights.dotProd(fv);
     }
 
+    /**
+     * Score the node features against every class in a single pass over the features.
+     *
+     * @param fv     The node features.
+     * @param scores Output, indexed by class, must have the size of the class alphabet.
+     */
+    public void dotProdAllNodes(FeatureVector fv, double[] scores) {
+        dotProdAllNodes(fv, scores, false);
+    }
+
+    public void dotProdAverAllNodes(FeatureVector fv, double[] scores) {
+        dotProdAllNodes(fv, scores, true);
+    }
+
+    private void dotProdAllNodes(FeatureVector fv, double[] scores, boolean useAverage) {
+        int numClasses = scores.length;
+        AveragedWeightVector[] rows = new AveragedWeightVector[numClasses];
+        for (int classIndex = 0; classIndex < numClasses; classIndex++) {
+            rows[classIndex] = getOrCreateNodeWeights(classIndex);
+        }
+
+        if (!denseNodeWeights) {
+            for (int classIndex = 0; classIndex < numClasses; classIndex++) {
+                scores[classIndex] = useAverage ? rows[classIndex].dotProdAver(fv) : rows[classIndex].dotProd(fv);
+            }
+            return;
+        }
+
+        Arrays.fill(scores, 0);
+        if (useAverage) {
+            for (FeatureVector.FeatureIterator iter = fv.featureIterator(); iter.hasNext(); ) {
+                iter.next();
+                int index = iter.featureIndex();
+                double value = iter.featureValue();
+                for (int classIndex = 0; classIndex < numClasses; classIndex++) {
+                    scores[classIndex] += rows[classIndex].getAverageWeightAt(index) * value;
+                }
+            }
+        } else {
+            double[][] weights = new double[numClasses][];
+            for (int classIndex = 0; classIndex < numClasses; classIndex++) {
+                weights[classIndex] = ((DenseAveragedWeightVector) rows[classIndex]).weightArray();
+            }
+            for (FeatureVector.FeatureIterator iter = fv.featureIterator(); iter.hasNext(); ) {
+                iter.next();
+                int index = iter.featureIndex();
+                double value = iter.featureValue();
+                for (int classIndex = 0; classIndex < numClasses; classIndex++) {
+                    scores[classIndex] += weights[classIndex][index] * value;
+                }
+            }
+        }
+    }
+
     public double dotProd(GraphFeatureVector fv) {
         double prod = 0;
         for (TIntObjectIterator<FeatureVector> iter = fv.nodeFvIter(); iter.hasNext(); ) {
@@ -175,8 +362,11 @@ public class GraphWeightVector implements Serializable {
         return prod;
     }
 
+    /**
+     * Class pairs that were never updated have no weights and score 0, without creating their vectors.
+     */
     public double dotProd(FeatureVector fv, int currentKey, int previousKey) {
-        AveragedWeightVector weights = getOrCreateEdgeWeights(currentKey, previousKey);
+        AveragedWeightVector weights = getEdgeWeights(currentKey, previousKey);
         if (weights != null) {
             return weights.dotProd(fv);
         } else {
@@ -194,8 +384,8 @@ public class GraphWeightVector implements Serializable {
     }
 
     public double dotProdAver(FeatureVector fv, int currentKey, int previousKey) {
-        AveragedWeightVector weights = getOrCreateEdgeWeights(currentKey, previousKey);
-        return weights.dotProdAver(fv);
+        AveragedWeightVector weights = getEdgeWeights(currentKey, previousKey);
+        return weights == null ? 0 : weights.dotProdAver(fv);
     }
 
     public void write(File outputFile) throws FileNotFoundException {
@@ -240,7 +430,7 @@ public class GraphWeightVector implements Serializable {
         return featureAlphabet.getAlphabetSize();
     }
 
-    public void updateAverageWeights() {
+    public synchronized void updateAverageWeights() {
         applyToAll(AveragedWeightVector::updateAverageWeight);
         averageUpdateCount++;
     }
@@ -1,8 +1,5 @@
 package edu.cmu.cs.lti.learning.model;
 
-import com.google.common.base.Charsets;
-import com.google.common.hash.HashFunction;
-import com.google.common.hash.Hashing;
 import gnu.trove.TCollections;
 import gnu.trove.map.TObjectIntMap;
 import gnu.trove.map.hash.TObjectIntHashMap;
@@ -21,7 +18,8 @@ public class HashAlphabet extends FeatureAlphabet {
 
     private static final long serialVersionUID = 8684276781666018103L;
 
-    private final HashFunction hasher = Hashing.murmur3_32();
+    // Hashers for the plain string lookups, the hasher itself is not thread-safe.
+    private static final ThreadLocal<FeatureHasher> stringHashers = ThreadLocal.withInitial(FeatureHasher::new);
 
     private final TObjectIntMap<String>[] featureCounters;
 
@@ -62,21 +60,32 @@ public class HashAlphabet extends FeatureAlphabet {
 
     private int hash(String feature) {
         int hashVal = plainHash(feature);
+        if (storeReadable) {
+            countFeature(hashVal, feature);
+        }
+        return hashVal;
+    }
 
+    private int hash(FeatureHasher feature) {
+        int hashVal = feature.hash() & hashMask;
         if (storeReadable) {
-            TObjectIntMap<String> counter = featureCounters[hashVal];
-            if (counter == null) {
-                counter = TCollections.synchronizedMap(new TObjectIntHashMap<>());
-                featureCounters[hashVal] = counter;
-            }
-            counter.adjustOrPutValue("[" + feature + "]", 1, 1);
+            countFeature(hashVal, feature.featureName());
         }
         return hashVal;
     }
 
+    private void countFeature(int hashVal, String feature) {
+        TObjectIntMap<String> counter = featureCounters[hashVal];
+        if (counter == null) {
+            counter = TCollections.synchronizedMap(new TObjectIntHashMap<>());
+            featureCounters[hashVal] = counter;
+        }
+        counter.adjustOrPutValue("[" + feature + "]", 1, 1);
+    }
+
     private int plainHash(String feature) {
-        // It is murmur32, which can produce a maximum 4 byte element.
-        return hasher.hashString(feature, Charsets.UTF_8).asInt() & hashMask;
+        // It is murmur32 over the UTF-8 bytes, which can produce a maximum 4 byte element.
+        return stringHashers.get().reset().append(feature).hash() & hashMask;
     }
 
     public boolean storeFeatureName(int featureIndex){
@@ -133,6 +142,11 @@ public class HashAlphabet extends FeatureAlphabet {
         return hash(featureName);
     }
 
+    @Override
+    public int getFeatureId(FeatureHasher feature) {
+        return hash(feature);
+    }
+
     @Override
     public String[] getFeatureNames(int featureIndex) {
         return getMappedFeatureNames(featureIndex);
@@ -1,97 +1,217 @@
 package edu.cmu.cs.lti.learning.model;
 
 import gnu.trove.iterator.TIntDoubleIterator;
+import gnu.trove.iterator.TIntIterator;
 import gnu.trove.map.TIntDoubleMap;
+import gnu.trove.map.TIntIntMap;
 import gnu.trove.map.hash.TIntDoubleHashMap;
+import gnu.trove.map.hash.TIntIntHashMap;
+import gnu.trove.set.TIntSet;
+import gnu.trove.set.hash.TIntHashSet;
+
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.io.ObjectStreamField;
+import java.util.Arrays;
+import java.util.NoSuchElementException;
 
 /**
  * Created with IntelliJ IDEA.
  * Date: 8/21/15
  * Time: 9:19 PM
+ * <p>
+ * The average is kept lazily: the sum of each weight over all average updates is only brought up to date at the
+ * timestamp of its last change, so an average update only advances the counter instead of touching every weight.
+ * <p>
+ * The whole averaging state (weights, sums, timestamps and the counter) is written with the model, with the sums
+ * divided into averages. Training on a loaded model turns them back into sums first, so a model written as a
+ * checkpoint can be trained further.
+ * <p>
+ * The weights are kept in an open addressing table that is read without locks, like the arrays of
+ * {@link DenseAveragedWeightVector}. Updates are serialized on this vector. A new weight gets its key after its
+ * values, and a full table is copied into a larger one that replaces it as a whole, so a concurrent reader never
+ * sees a broken table, at worst a weight from before the update.
  *
  * @author Zhengzhong Liu
  */
 public class HashBasedAveragedWeightVector extends AveragedWeightVector {
     private static final long serialVersionUID = 7646416117744167293L;
 
+    // The serialized form is still the one of the trove maps the weights used to be kept in, so that models written
+    // before load unchanged.
+    private static final ObjectStreamField[] serialPersistentFields = {
+            new ObjectStreamField("averageUpdateCount", int.class),
+            new ObjectStreamField("weights", TIntDoubleMap.class),
+            new ObjectStreamField("averagedWeights", TIntDoubleMap.class),
+            new ObjectStreamField("lastUpdated", TIntIntMap.class),
+            new ObjectStreamField("consolidated", boolean.class)
+    };
+
     // Individual update count of this vector.
-    private int averageUpdateCount;
+    private volatile int averageUpdateCount;
 
-    private TIntDoubleMap weights;
-    private TIntDoubleMap averagedWeights;
+    private volatile boolean consolidated;
 
-    private boolean consolidated;
+    private transient volatile WeightTable table;
 
     public HashBasedAveragedWeightVector() {
         this(0);
     }
 
     public HashBasedAveragedWeightVector(int initialAverageUpdateCount) {
-        weights = new TIntDoubleHashMap();
-        averagedWeights = new TIntDoubleHashMap();
+        table = new WeightTable(16);
         consolidated = false;
         averageUpdateCount = initialAverageUpdateCount;
     }
 
+    /**
+     * The weights, the sum of each weight up to its last change and the value of averageUpdateCount at that change,
+     * in parallel arrays indexed by the slot of the feature.
+     */
+    private static class WeightTable {
+        private static final int FREE = -1;
+
+        final int[] keys;
+        final double[] weights;
+        final double[] sums;
+        final int[] lastUpdated;
+        final int mask;
+        int size;
+
+        WeightTable(int capacity) {
+            keys = new int[capacity];
+            Arrays.fill(keys, FREE);
+            weights = new double[capacity];
+            sums = new double[capacity];
+            lastUpdated = new int[capacity];
+            mask = capacity - 1;
+        }
+
+        /**
+         * The slot of the key, or the free slot where it would be inserted.
+         */
+        int probe(int key) {
+            int h = key * 0x9E3779B9;
+            int slot = (h ^ (h >>> 16)) & mask;
+            while (keys[slot] != key && keys[slot] != FREE) {
+                slot = (slot + 1) & mask;
+            }
+            return slot;
+        }
+
+        double weightOf(int key) {
+            int slot = probe(key);
+            return keys[slot] == key ? weights[slot] : 0;
+        }
+
+        boolean isFull() {
+            return (size + 1) * 2 > keys.length;
+        }
+
+        WeightTable grow() {
+            WeightTable larger = new WeightTable(keys.length * 2);
+            for (int slot = 0; slot < keys.length; slot++) {
+                if (keys[slot] != FREE) {
+                    larger.put(keys[slot], weights[slot], sums[slot], lastUpdated[slot]);
+                }
+            }
+            return larger;
+        }
+
+        int put(int key, double weight, double sum, int timestamp) {
+            int slot = probe(key);
+            weights[slot] = weight;
+            sums[slot] = sum;
+            lastUpdated[slot] = timestamp;
+            if (keys[slot] == FREE) {
+                keys[slot] = key;
+                size++;
+            }
+            return slot;
+        }
+    }
+
+    /**
+     * The slot of the feature in the current table, a new weight of 0 is added if there is none. Only called while
+     * holding the lock of this vector.
+     */
+    private int slotForUpdate(int index) {
+        WeightTable t = table;
+        int slot = t.probe(index);
+        if (t.keys[slot] == index) {
+            return slot;
+        }
+        if (t.isFull()) {
+            t = t.grow();
+            table = t;
+        }
+        return t.put(index, 0, 0, averageUpdateCount);
+    }
+
     @Override
-    public void updateWeightsBy(FeatureVector fv, double multiplier) {
+    public synchronized void updateWeightsBy(FeatureVector fv, double multiplier) {
+        // A loaded model holds the averages, continue training from the sums.
+        deconsolidate();
         for (FeatureVector.FeatureIterator iter = fv.featureIterator(); iter.hasNext(); ) {
             iter.next();
-            int index = iter.featureIndex();
-            double updateAmount = iter.featureValue() * multiplier;
-            weights.adjustOrPutValue(index, updateAmount, updateAmount);
+            int slot = slotForUpdate(iter.featureIndex());
+            WeightTable t = table;
+            catchUp(t, slot);
+            t.weights[slot] += iter.featureValue() * multiplier;
         }
+        // Publish the update to the readers.
+        table = table;
     }
 
-    @Override
-    public void updateAverageWeight() {
-        for (TIntDoubleIterator iter = weights.iterator(); iter.hasNext(); ) {
-            iter.advance();
-            int index = iter.key();
-            double value = iter.value();
-            averagedWeights.adjustOrPutValue(index, value, value);
+    /**
+     * Add the current weight for all the average updates since it was last changed.
+     */
+    private void catchUp(WeightTable t, int slot) {
+        int elapsed = averageUpdateCount - t.lastUpdated[slot];
+        if (elapsed != 0) {
+            t.sums[slot] += t.weights[slot] * elapsed;
+            t.lastUpdated[slot] = averageUpdateCount;
         }
+    }
+
+    @Override
+    public synchronized void updateAverageWeight() {
+        deconsolidate();
         averageUpdateCount++;
     }
 
-//    @Override
-//    public void write(File outputFile) throws FileNotFoundException {
-//        consolidate();
-//        SerializationUtils.serialize(this, new FileOutputStream(outputFile));
-//        deconsolidate();
-//    }
-//
-//    @Override
-//    public double dotProd(FeatureVector fv) {
-//        double sum = 0;
-//        for (FeatureVector.FeatureIterator iter = fv.featureIterator(); iter.hasNext(); ) {
-//            iter.next();
-//            sum += weights.get(iter.featureIndex()) * iter.featureValue();
-//        }
-//        return sum;
-//    }
-//
-//    @Override
-//    public double dotProdAver(FeatureVector fv) {
-//        double sum = 0;
-//        for (FeatureVector.FeatureIterator iter = fv.featureIterator(); iter.hasNext(); ) {
-//            iter.next();
-//            sum += averagedWeights.get(iter.featureIndex()) * iter.featureValue();
-//        }
-//        return sum;
-//    }
+    @Override
+    public double dotProd(FeatureVector fv) {
+        WeightTable t = table;
+        double sum = 0;
+        for (FeatureVector.FeatureIterator iter = fv.featureIterator(); iter.hasNext(); ) {
+            iter.next();
+            sum += t.weightOf(iter.featureIndex()) * iter.featureValue();
+        }
+        return sum;
+    }
 
     @Override
-    void consolidate() {
-        if (!consolidated) {
-            if (averageUpdateCount != 0) {
-                for (TIntDoubleIterator iter = averagedWeights.iterator(); iter.hasNext(); ) {
-                    iter.advance();
-                    if (iter.value() == 0) {
-                        iter.remove();
-                    } else {
-                        iter.setValue(iter.value() / averageUpdateCount);
+    public double dotProdAver(FeatureVector fv) {
+        WeightTable t = table;
+        double sum = 0;
+        for (FeatureVector.FeatureIterator iter = fv.featureIterator(); iter.hasNext(); ) {
+            iter.next();
+            sum += averageWeightAt(t, iter.featureIndex()) * iter.featureValue();
+        }
+        return sum;
+    }
 
+    @Override
+    synchronized void consolidate() {
+        if (!consolidated) {
+            WeightTable t = table;
+            for (int slot = 0; slot < t.keys.length; slot++) {
+                if (t.keys[slot] != WeightTable.FREE) {
+                    catchUp(t, slot);
+                    if (averageUpdateCount != 0) {
+                        t.sums[slot] /= averageUpdateCount;
                     }
                 }
             }
@@ -100,12 +220,15 @@ public class HashBasedAveragedWeightVector extends AveragedWeightVector {
     }
 
     @Override
-    void deconsolidate() {
+    synchronized void deconsolidate() {
         if (consolidated) {
-            if (averageUpdateCount != 0) {
-                for (TIntDoubleIterator iter = averagedWeights.iterator(); iter.hasNext(); ) {
-                    iter.advance();
-                    iter.setValue(iter.value() * averageUpdateCount);
+            WeightTable t = table;
+            for (int slot = 0; slot < t.keys.length; slot++) {
+                if (t.keys[slot] != WeightTable.FREE) {
+                    if (averageUpdateCount != 0) {
+                        t.sums[slot] *= averageUpdateCount;
+                    }
+                    t.lastUpdated[slot] = averageUpdateCount;
                 }
             }
             consolidated = false;
@@ -114,20 +237,127 @@ public class HashBasedAveragedWeightVector extends AveragedWeightVector {
 
     @Override
     public double getWeightAt(int i) {
-        return weights.get(i);
+        return table.weightOf(i);
     }
 
     @Override
     public double getAverageWeightAt(int i) {
-        return averagedWeights.get(i);
+        return averageWeightAt(table, i);
+    }
+
+    private double averageWeightAt(WeightTable t, int i) {
+        int slot = t.probe(i);
+        if (t.keys[slot] != i) {
+            return 0;
+        }
+        if (consolidated) {
+            return t.sums[slot];
+        }
+        return t.sums[slot] + t.weights[slot] * (averageUpdateCount - t.lastUpdated[slot]);
     }
 
     @Override
     public int getFeatureSize() {
-        return weights.size();
+        return table.size;
     }
 
     public TIntDoubleIterator getWeightsIterator() {
-        return weights.iterator();
+        WeightTable t = table;
+        return new TIntDoubleIterator() {
+            private int current = -1;
+
+            private int next = seek(0);
+
+            private int seek(int from) {
+                while (from < t.keys.length && t.keys[from] == WeightTable.FREE) {
+                    from++;
+                }
+                return from;
+            }
+
+            @Override
+            public int key() {
+                return t.keys[current];
+            }
+
+            @Override
+            public double value() {
+                return t.weights[current];
+            }
+
+            @Override
+            public double setValue(double val) {
+                double old = t.weights[current];
+                t.weights[current] = val;
+                return old;
+            }
+
+            @Override
+            public void advance() {
+                if (next >= t.keys.length) {
+                    throw new NoSuchElementException();
+                }
+                current = next;
+                next = seek(current + 1);
+            }
+
+            @Override
+            public boolean hasNext() {
+                return next < t.keys.length;
+            }
+
+            @Override
+            public void remove() {
+                t.weights[current] = 0;
+            }
+        };
+    }
+
+    private synchronized void writeObject(ObjectOutputStream out) throws IOException {
+        WeightTable t = table;
+        TIntDoubleMap weights = new TIntDoubleHashMap();
+        TIntDoubleMap averagedWeights = new TIntDoubleHashMap();
+        TIntIntMap lastUpdated = new TIntIntHashMap();
+        for (int slot = 0; slot < t.keys.length; slot++) {
+            if (t.keys[slot] != WeightTable.FREE) {
+                weights.put(t.keys[slot], t.weights[slot]);
+                if (t.sums[slot] != 0) {
+                    averagedWeights.put(t.keys[slot], t.sums[slot]);
+                }
+                lastUpdated.put(t.keys[slot], t.lastUpdated[slot]);
+            }
+        }
+
+        ObjectOutputStream.PutField fields = out.putFields();
+        fields.put("averageUpdateCount", averageUpdateCount);
+        fields.put("weights", weights);
+        fields.put("averagedWeights", averagedWeights);
+        fields.put("lastUpdated", lastUpdated);
+        fields.put("consolidated", consolidated);
+        out.writeFields();
+    }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        ObjectInputStream.GetField fields = in.readFields();
+        averageUpdateCount = fields.get("averageUpdateCount", 0);
+        consolidated = fields.get("consolidated", false);
+        TIntDoubleMap weights = (TIntDoubleMap) fields.get("weights", null);
+        TIntDoubleMap averagedWeights = (TIntDoubleMap) fields.get("averagedWeights", null);
+        // Models written before lazy averaging do not have the timestamps, all their sums are up to date.
+        TIntIntMap lastUpdated = (TIntIntMap) fields.get("lastUpdated", null);
+
+        TIntSet keys = new TIntHashSet(weights.keySet());
+        keys.addAll(averagedWeights.keySet());
+        int capacity = 16;
+        while (capacity < keys.size() * 2 + 2) {
+            capacity *= 2;
+        }
+        WeightTable t = new WeightTable(capacity);
+        for (TIntIterator iter = keys.iterator(); iter.hasNext(); ) {
+            int key = iter.next();
+            t.put(key, weights.get(key), averagedWeights.get(key),
+                    lastUpdated == null ? averageUpdateCount : lastUpdated.get(key));
+        }
+        table = t;
     }
 }
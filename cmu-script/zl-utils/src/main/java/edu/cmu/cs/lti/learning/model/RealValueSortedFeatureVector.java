@@ -0,0 +1,348 @@
+package edu.cmu.cs.lti.learning.model;
+
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+
+/**
+ * A real valued feature vector stored as parallel arrays of feature indices and values, sorted by index. Features
+ * added in increasing order are appended directly; the others are buffered and sorted and merged into the arrays once,
+ * on the next read. Extend, diff and dot product with another sorted vector are linear merges, and a compacted vector
+ * only holds its two arrays, which is much smaller than a hash map.
+ * <p>
+ * Like the hash vector, this is not thread-safe for writing. Call {@link #compact()} before sharing a vector between
+ * threads that read it.
+ */
+public class RealValueSortedFeatureVector extends FeatureVector {
+    private static final long serialVersionUID = 2811725347216083925L;
+
+    private static final int[] EMPTY_INDICES = new int[0];
+    private static final double[] EMPTY_VALUES = new double[0];
+
+    private int[] indices;
+    private double[] values;
+    private int size;
+
+    // Features that are not added in increasing order, waiting to be merged.
+    private transient int[] pendingIndices;
+    private transient double[] pendingValues;
+    private transient int pendingSize;
+
+    public RealValueSortedFeatureVector(FeatureAlphabet alphabet) {
+        super(alphabet);
+        indices = EMPTY_INDICES;
+        values = EMPTY_VALUES;
+    }
+
+    @Override
+    public FeatureVector newFeatureVector() {
+        return new RealValueSortedFeatureVector(alphabet);
+    }
+
+    @Override
+    protected FeatureVector newVector() {
+        return new RealValueSortedFeatureVector(alphabet);
+    }
+
+    /**
+     * The feature count is only known after merging, so this does not rely on the return value of
+     * {@link #addFeatureInternal(int, double)}.
+     */
+    @Override
+    protected int addFeature(int featureIndex, double featureValue) {
+        addFeatureInternal(featureIndex, featureValue);
+        return size + pendingSize;
+    }
+
+    @Override
+    protected boolean addFeatureInternal(int featureIndex, double featureValue) {
+        if (pendingSize == 0) {
+            if (size == 0 || featureIndex > indices[size - 1]) {
+                if (size == indices.length) {
+                    grow(size + 1);
+                }
+                indices[size] = featureIndex;
+                values[size] = featureValue;
+                size++;
+                return true;
+            } else if (featureIndex == indices[size - 1]) {
+                values[size - 1] += featureValue;
+                return false;
+            }
+        }
+
+        if (pendingIndices == null) {
+            pendingIndices = new int[8];
+            pendingValues = new double[8];
+        } else if (pendingSize == pendingIndices.length) {
+            pendingIndices = Arrays.copyOf(pendingIndices, pendingSize * 2);
+            pendingValues = Arrays.copyOf(pendingValues, pendingSize * 2);
+        }
+        pendingIndices[pendingSize] = featureIndex;
+        pendingValues[pendingSize] = featureValue;
+        pendingSize++;
+        return true;
+    }
+
+    /**
+     * Merge the buffered features and trim the arrays to the number of features. This is called before caching or
+     * sharing the vector.
+     *
+     * @return This vector.
+     */
+    public RealValueSortedFeatureVector compact() {
+        mergePending();
+        if (indices.length != size) {
+            indices = Arrays.copyOf(indices, size);
+            values = Arrays.copyOf(values, size);
+        }
+        pendingIndices = null;
+        pendingValues = null;
+        return this;
+    }
+
+    /**
+     * Merge the buffered features without trimming the arrays, for a vector that is cleared and reused. Like
+     * {@link #compact()}, this makes the vector safe to read from several threads.
+     *
+     * @return This vector.
+     */
+    public RealValueSortedFeatureVector sortPending() {
+        mergePending();
+        return this;
+    }
+
+    /**
+     * Remove all the features but keep the arrays, so that the vector can be filled again without reallocating.
+     */
+    public void clear() {
+        size = 0;
+        pendingSize = 0;
+    }
+
+    private void mergePending() {
+        if (pendingSize == 0) {
+            return;
+        }
+
+        // Sort the buffer by index, the position breaks ties so that the order of additions is kept.
+        long[] keys = new long[pendingSize];
+        for (int i = 0; i < pendingSize; i++) {
+            keys[i] = ((long) pendingIndices[i] << 32) | i;
+        }
+        Arrays.sort(keys);
+
+        int[] sortedIndices = new int[pendingSize];
+        double[] sortedValues = new double[pendingSize];
+        int sortedSize = 0;
+        for (long key : keys) {
+            int position = (int) key;
+            int featureIndex = pendingIndices[position];
+            if (sortedSize > 0 && sortedIndices[sortedSize - 1] == featureIndex) {
+                sortedValues[sortedSize - 1] += pendingValues[position];
+            } else {
+                sortedIndices[sortedSize] = featureIndex;
+                sortedValues[sortedSize] = pendingValues[position];
+                sortedSize++;
+            }
+        }
+
+        pendingSize = 0;
+        merge(sortedIndices, sortedValues, sortedSize, 1);
+    }
+
+    /**
+     * Add sorted, duplicate free features to this vector. The union is counted first so that the merge can be done
+     * in place from the back.
+     */
+    private void merge(int[] otherIndices, double[] otherValues, int otherSize, double multiplier) {
+        if (otherSize == 0) {
+            return;
+        }
+
+        if (size == 0) {
+            if (indices.length < otherSize) {
+                indices = new int[otherSize];
+                values = new double[otherSize];
+            }
+            System.arraycopy(otherIndices, 0, indices, 0, otherSize);
+            for (int i = 0; i < otherSize; i++) {
+                values[i] = otherValues[i] * multiplier;
+            }
+            size = otherSize;
+            return;
+        }
+
+        int unionSize = size + otherSize;
+        for (int i = 0, j = 0; i < size && j < otherSize; ) {
+            if (indices[i] < otherIndices[j]) {
+                i++;
+            } else if (indices[i] > otherIndices[j]) {
+                j++;
+            } else {
+                unionSize--;
+                i++;
+                j++;
+            }
+        }
+
+        if (indices.length < unionSize) {
+            grow(unionSize);
+        }
+
+        int i = size - 1;
+        int j = otherSize - 1;
+        for (int k = unionSize - 1; j >= 0; k--) {
+            if (i >= 0 && indices[i] > otherIndices[j]) {
+                indices[k] = indices[i];
+                values[k] = values[i];
+                i--;
+            } else if (i >= 0 && indices[i] == otherIndices[j]) {
+                indices[k] = indices[i];
+                values[k] = values[i] + otherValues[j] * multiplier;
+                i--;
+                j--;
+            } else {
+                indices[k] = otherIndices[j];
+                values[k] = otherValues[j] * multiplier;
+                j--;
+            }
+        }
+        size = unionSize;
+    }
+
+    private void grow(int minCapacity) {
+        int capacity = Math.max(minCapacity, Math.max(8, indices.length + (indices.length >> 1)));
+        indices = Arrays.copyOf(indices, capacity);
+        values = Arrays.copyOf(values, capacity);
+    }
+
+    @Override
+    public void extend(FeatureVector vectorToAdd) {
+        extend(vectorToAdd, 1);
+    }
+
+    @Override
+    public void extend(FeatureVector vectorToAdd, double multiplier) {
+        if (vectorToAdd instanceof RealValueSortedFeatureVector) {
+            RealValueSortedFeatureVector other = (RealValueSortedFeatureVector) vectorToAdd;
+            other.mergePending();
+            mergePending();
+            merge(other.indices, other.values, other.size, multiplier);
+        } else {
+            super.extend(vectorToAdd, multiplier);
+        }
+    }
+
+    @Override
+    public void diff(FeatureVector vectorToDiff, FeatureVector resultVector) {
+        if (!(vectorToDiff instanceof RealValueSortedFeatureVector)) {
+            super.diff(vectorToDiff, resultVector);
+            return;
+        }
+
+        RealValueSortedFeatureVector other = (RealValueSortedFeatureVector) vectorToDiff;
+        other.mergePending();
+        mergePending();
+
+        // Same result as the default implementation, produced in index order.
+        int i = 0;
+        int j = 0;
+        while (i < size || j < other.size) {
+            if (j == other.size || (i < size && indices[i] < other.indices[j])) {
+                resultVector.addFeature(indices[i], values[i]);
+                i++;
+            } else if (i == size || indices[i] > other.indices[j]) {
+                if (other.values[j] != 0) {
+                    resultVector.addFeature(other.indices[j], -other.values[j]);
+                }
+                j++;
+            } else {
+                if (values[i] != other.values[j]) {
+                    resultVector.addFeature(indices[i], values[i] - other.values[j]);
+                }
+                i++;
+                j++;
+            }
+        }
+    }
+
+    @Override
+    public double dotProd(FeatureVector v) {
+        mergePending();
+        if (v == this) {
+            double sum = 0;
+            for (int i = 0; i < size; i++) {
+                sum += values[i] * values[i];
+            }
+            return sum;
+        }
+
+        if (!(v instanceof RealValueSortedFeatureVector)) {
+            return super.dotProd(v);
+        }
+
+        RealValueSortedFeatureVector other = (RealValueSortedFeatureVector) v;
+        other.mergePending();
+
+        double sum = 0;
+        for (int i = 0, j = 0; i < size && j < other.size; ) {
+            if (indices[i] < other.indices[j]) {
+                i++;
+            } else if (indices[i] > other.indices[j]) {
+                j++;
+            } else {
+                sum += values[i] * other.values[j];
+                i++;
+                j++;
+            }
+        }
+        return sum;
+    }
+
+    @Override
+    public double getFeatureValue(int featureIndex) {
+        mergePending();
+        int position = Arrays.binarySearch(indices, 0, size, featureIndex);
+        return position < 0 ? 0 : values[position];
+    }
+
+    @Override
+    public int getFeatureSize() {
+        mergePending();
+        return size;
+    }
+
+    @Override
+    public FeatureIterator featureIterator() {
+        mergePending();
+        return new FeatureIterator() {
+            private int current = -1;
+
+            @Override
+            public int featureIndex() {
+                return indices[current];
+            }
+
+            @Override
+            public double featureValue() {
+                return values[current];
+            }
+
+            @Override
+            public boolean hasNext() {
+                return current + 1 < size;
+            }
+
+            @Override
+            public void next() {
+                current++;
+            }
+        };
+    }
+
+    private void writeObject(ObjectOutputStream out) throws IOException {
+        compact();
+        out.defaultWriteObject();
+    }
+}
@@ -39,6 +39,7 @@ public class SequenceSolution extends Solution {
     // To retrieve the best score for each pointer, just do poll (remove afterwards), and take the negative.
     // This also implies tie is broken on the smaller state index.
     // The queue can be iterate in order only once, hence it is temporary and will be iterate and convert as a list.
+    // The queues are emptied at each advance and reused for the next position.
     private MinMaxPriorityQueue<LatticeCell>[] temporaryCells;
 
     // A full back pointer lattice that store all the cells, each cell store a list of k best back pointers.
@@ -200,17 +201,16 @@ public class SequenceSolution extends Solution {
         }
     }
 
-    @SuppressWarnings("unchecked")
     public void advance() {
         // Store all temporary back pointers from the heap to a list for further access.
         if (currentPosition >= 0) {
             getPossibleClassIndices(currentPosition).forEach(classIndex -> {
                 MinMaxPriorityQueue<LatticeCell> tempBackPointer = temporaryCells[classIndex];
-                if (tempBackPointer == null) {
+                if (tempBackPointer == null || tempBackPointer.isEmpty()) {
                     throw new IllegalStateException(String.format("Temp pointers are not updated before call, cannot " +
                             "find cell at position %d, class %d", currentPosition - 1, classIndex));
                 }
-                latticeCells[currentPosition][classIndex] = new ArrayList<>();
+                latticeCells[currentPosition][classIndex] = new ArrayList<>(tempBackPointer.size());
                 while (!tempBackPointer.isEmpty()) {
                     latticeCells[currentPosition][classIndex].add(tempBackPointer.poll());
 //                System.out.println("Lattice cell at " + currentPosition + " " + classIndex + " updated.");
@@ -219,7 +219,11 @@ public class SequenceSolution extends Solution {
         }
 
         ++currentPosition;
-        temporaryCells = new MinMaxPriorityQueue[classAlphabet.size()];
+        for (MinMaxPriorityQueue<LatticeCell> queue : temporaryCells) {
+            if (queue != null) {
+                queue.clear();
+            }
+        }
     }
 
     public int getBestK() {
@@ -287,6 +291,9 @@ public class SequenceSolution extends Solution {
             addResult = 1;
         } else if (queue.peek().score < newScoreTillHere) {
             addResult = 1;
+        } else if (queue.size() == bestK && queue.peekLast().score > newScoreTillHere) {
+            // The heap is full and this is worse than all in it, it will be rejected, so do not create the cell.
+            return -1;
         }
 
         boolean rejected = !queue.offer(new LatticeCell(newScoreTillHere, toCellClassIndex, fromCell, newNodeScore,
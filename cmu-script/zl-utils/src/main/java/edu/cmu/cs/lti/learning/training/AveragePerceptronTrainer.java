@@ -2,6 +2,7 @@ package edu.cmu.cs.lti.learning.training;
 
 import edu.cmu.cs.lti.learning.model.*;
 import edu.cmu.cs.lti.learning.utils.CubicLagrangian;
+import edu.cmu.cs.lti.learning.utils.DummyCubicLagrangian;
 import edu.cmu.cs.lti.utils.DebugUtils;
 import gnu.trove.map.TIntObjectMap;
 import org.slf4j.Logger;
@@ -9,6 +10,9 @@ import org.slf4j.LoggerFactory;
 
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.util.List;
+import java.util.function.Supplier;
+import java.util.stream.IntStream;
 
 /**
  * Created with IntelliJ IDEA.
@@ -25,6 +29,7 @@ public class AveragePerceptronTrainer {
     private GraphWeightVector weightVector;
     private double defaultStepSize;
     private boolean passiveAggressive;
+    private final CubicLagrangian dummyLagrangian = new DummyCubicLagrangian();
 
     /**
      * A vanilla average perceptron, with a fixed step size.
@@ -37,8 +42,17 @@ public class AveragePerceptronTrainer {
      */
     public AveragePerceptronTrainer(SequenceDecoder decoder, ClassAlphabet classAlphabet,
                                     FeatureAlphabet featureAlphabet, String featureSpec, boolean passiveAggressive) {
+        this(decoder, classAlphabet, featureAlphabet, featureSpec, passiveAggressive, false);
+    }
+
+    /**
+     * @param denseWeights Whether to keep the node weights in dense arrays sized to the feature alphabet.
+     */
+    public AveragePerceptronTrainer(SequenceDecoder decoder, ClassAlphabet classAlphabet,
+                                    FeatureAlphabet featureAlphabet, String featureSpec, boolean passiveAggressive,
+                                    boolean denseWeights) {
         this.decoder = decoder;
-        weightVector = new GraphWeightVector(classAlphabet, featureAlphabet, featureSpec);
+        weightVector = new GraphWeightVector(classAlphabet, featureAlphabet, featureSpec, denseWeights);
         this.defaultStepSize = 0.1;
         this.passiveAggressive = passiveAggressive;
     }
@@ -74,6 +88,61 @@ public class AveragePerceptronTrainer {
         return loss;
     }
 
+    /**
+     * Train on a mini-batch of instances, whose features of all positions are cached. The instances are decoded in
+     * parallel, by one decoder for each thread, against the weights as they are before the batch. The updates of the
+     * wrongly predicted instances are then summed in the batch order and applied at once, followed by one average
+     * update, so the result does not depend on the number of threads or their scheduling.
+     *
+     * @param batch          The instances in this batch.
+     * @param decoderFactory Gives the decoder to use on the calling thread, since decoders keep the decoding states.
+     * @return The loss of each instance, in the batch order.
+     */
+    public double[] trainBatch(List<TrainingInstance> batch, Supplier<SequenceDecoder> decoderFactory) {
+        double[] losses = new double[batch.size()];
+        GraphFeatureVector[] predictedFvs = new GraphFeatureVector[batch.size()];
+        double[] stepSizes = new double[batch.size()];
+
+        IntStream.range(0, batch.size()).parallel().forEach(i -> {
+            TrainingInstance instance = batch.get(i);
+            SequenceSolution goldSolution = instance.getGoldSolution();
+            SequenceDecoder batchDecoder = decoderFactory.get();
+            batchDecoder.decode(null, weightVector, goldSolution.getSequenceLength(), dummyLagrangian,
+                    dummyLagrangian, instance.getFeatureCache());
+            losses[i] = goldSolution.loss(batchDecoder.getDecodedPrediction());
+
+            if (losses[i] != 0) {
+                predictedFvs[i] = batchDecoder.getBestDecodingFeatures();
+                if (passiveAggressive) {
+                    GraphFeatureVector delta = instance.getGoldFv().newGraphFeatureVector();
+                    instance.getGoldFv().diff(predictedFvs[i], delta);
+                    stepSizes[i] = losses[i] / delta.getFeatureL2();
+                } else {
+                    stepSizes[i] = defaultStepSize;
+                }
+            }
+        });
+
+        GraphFeatureVector batchUpdate = null;
+        for (int i = 0; i < batch.size(); i++) {
+            if (losses[i] != 0) {
+                GraphFeatureVector goldFv = batch.get(i).getGoldFv();
+                if (batchUpdate == null) {
+                    batchUpdate = goldFv.newGraphFeatureVector();
+                }
+                batchUpdate.extend(goldFv, stepSizes[i]);
+                batchUpdate.extend(predictedFvs[i], -stepSizes[i]);
+            }
+        }
+
+        if (batchUpdate != null) {
+            weightVector.updateWeightsBy(batchUpdate, 1);
+            weightVector.updateAverageWeights();
+        }
+
+        return losses;
+    }
+
     private void updateWeights(GraphFeatureVector goldFv, GraphFeatureVector predictedFv, double stepSize) {
         weightVector.updateWeightsBy(goldFv, stepSize);
         weightVector.updateWeightsBy(predictedFv, -stepSize);
@@ -0,0 +1,98 @@
+package edu.cmu.cs.lti.learning.training;
+
+import edu.cmu.cs.lti.learning.model.FeatureVector;
+import edu.cmu.cs.lti.learning.model.GraphFeatureVector;
+import edu.cmu.cs.lti.learning.model.SequenceSolution;
+import edu.cmu.cs.lti.learning.model.TrainingStats;
+import edu.cmu.cs.lti.learning.utils.CubicLagrangian;
+import edu.cmu.cs.lti.learning.utils.DummyCubicLagrangian;
+import gnu.trove.map.TIntObjectMap;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * Keep the compiled training instances of the first iteration in memory, so that the later iterations can train on
+ * them directly, without reading and annotating the documents again. With a batch size larger than one, the replayed
+ * instances are trained in parallel mini-batches, see
+ * {@link AveragePerceptronTrainer#trainBatch(List, Supplier)}.
+ */
+public class ReplayBuffer {
+    private final Logger logger = LoggerFactory.getLogger(getClass());
+
+    private final List<TrainingInstance> instances = new ArrayList<>();
+
+    private final TrainingStats trainingStats;
+
+    private final int batchSize;
+
+    // One decoder for each thread, so that the decoders' workspaces are reused across the batches.
+    private final ThreadLocal<SequenceDecoder> threadDecoders;
+
+    private final CubicLagrangian dummyLagrangian = new DummyCubicLagrangian();
+
+    /**
+     * @param trainingStats The stats to report the replayed losses to.
+     */
+    public ReplayBuffer(TrainingStats trainingStats) {
+        this(trainingStats, 1, null);
+    }
+
+    /**
+     * @param trainingStats  The stats to report the replayed losses to.
+     * @param batchSize      Number of instances decoded in parallel before one update.
+     * @param decoderFactory Creates the decoders for the parallel decoding, not used when batch size is one.
+     */
+    public ReplayBuffer(TrainingStats trainingStats, int batchSize, Supplier<SequenceDecoder> decoderFactory) {
+        this.trainingStats = trainingStats;
+        this.batchSize = batchSize;
+        this.threadDecoders = decoderFactory == null ? null : ThreadLocal.withInitial(decoderFactory);
+    }
+
+    /**
+     * Add an instance that has been trained once, the feature cache must contain the features of all positions.
+     */
+    public synchronized void add(SequenceSolution goldSolution, GraphFeatureVector goldFv,
+                                 TIntObjectMap<FeatureVector[]> featureCache) {
+        instances.add(new TrainingInstance(goldSolution, goldFv, featureCache));
+    }
+
+    public int size() {
+        return instances.size();
+    }
+
+    public boolean isEmpty() {
+        return instances.isEmpty();
+    }
+
+    /**
+     * Train one iteration over all the instances, in an order shuffled by the seed.
+     *
+     * @param trainer The trainer to train.
+     * @param seed    The seed to shuffle the instances.
+     */
+    public void replay(AveragePerceptronTrainer trainer, long seed) {
+        logger.info(String.format("Replaying %d training instances.", instances.size()));
+        Collections.shuffle(instances, new Random(seed));
+
+        if (batchSize > 1) {
+            for (int begin = 0; begin < instances.size(); begin += batchSize) {
+                List<TrainingInstance> batch = instances.subList(begin, Math.min(begin + batchSize, instances.size()));
+                for (double loss : trainer.trainBatch(batch, threadDecoders::get)) {
+                    trainingStats.addLoss(logger, loss);
+                }
+            }
+        } else {
+            for (TrainingInstance instance : instances) {
+                double loss = trainer.trainNext(instance.getGoldSolution(), instance.getGoldFv(), null,
+                        dummyLagrangian, dummyLagrangian, instance.getFeatureCache());
+                trainingStats.addLoss(logger, loss);
+            }
+        }
+    }
+}
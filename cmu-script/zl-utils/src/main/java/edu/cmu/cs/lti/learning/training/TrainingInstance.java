@@ -0,0 +1,35 @@
+package edu.cmu.cs.lti.learning.training;
+
+import edu.cmu.cs.lti.learning.model.FeatureVector;
+import edu.cmu.cs.lti.learning.model.GraphFeatureVector;
+import edu.cmu.cs.lti.learning.model.SequenceSolution;
+import gnu.trove.map.TIntObjectMap;
+
+/**
+ * A compiled sequence training instance: the gold solution, its features, and the features of every position of the
+ * sequence, which are all the decoder needs once they are cached.
+ */
+public class TrainingInstance {
+    private final SequenceSolution goldSolution;
+    private final GraphFeatureVector goldFv;
+    private final TIntObjectMap<FeatureVector[]> featureCache;
+
+    public TrainingInstance(SequenceSolution goldSolution, GraphFeatureVector goldFv,
+                            TIntObjectMap<FeatureVector[]> featureCache) {
+        this.goldSolution = goldSolution;
+        this.goldFv = goldFv;
+        this.featureCache = featureCache;
+    }
+
+    public SequenceSolution getGoldSolution() {
+        return goldSolution;
+    }
+
+    public GraphFeatureVector getGoldFv() {
+        return goldFv;
+    }
+
+    public TIntObjectMap<FeatureVector[]> getFeatureCache() {
+        return featureCache;
+    }
+}
@@ -2,6 +2,9 @@ package edu.cmu.cs.lti.utils;
 
 import org.apache.commons.lang3.tuple.Pair;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
 import java.util.Random;
 
 /**
@@ -21,6 +24,30 @@ public class BitUtils {
         return Pair.of((int) (l >> 32), (int) l);
     }
 
+    /**
+     * Write an int as unsigned variable length bytes, 7 bits each, lowest bits first. Small non-negative values take
+     * one byte, negative values take five.
+     */
+    public static void writeVarInt(DataOutput out, int value) throws IOException {
+        while ((value & ~0x7F) != 0) {
+            out.writeByte((value & 0x7F) | 0x80);
+            value >>>= 7;
+        }
+        out.writeByte(value);
+    }
+
+    public static int readVarInt(DataInput in) throws IOException {
+        int value = 0;
+        for (int shift = 0; shift < 32; shift += 7) {
+            byte b = in.readByte();
+            value |= (b & 0x7F) << shift;
+            if ((b & 0x80) == 0) {
+                return value;
+            }
+        }
+        throw new IOException("Malformed variable length int.");
+    }
+
     public static void main(String[] args) {
         //testing
         Random rand = new Random();
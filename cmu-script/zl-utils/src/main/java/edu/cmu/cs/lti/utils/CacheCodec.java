@@ -0,0 +1,35 @@
+package edu.cmu.cs.lti.utils;
+
+import org.apache.commons.lang3.SerializationUtils;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.Serializable;
+
+/**
+ * Encode and decode the values stored by {@link MultiKeyDiskCacher}. Each value is encoded into and decoded from its
+ * own record stream, so the codec does not need to write the record length.
+ */
+public interface CacheCodec<T> {
+    void encode(T value, OutputStream out) throws IOException;
+
+    T decode(InputStream in) throws IOException;
+
+    /**
+     * The default codec, which stores the values with Java serialization.
+     */
+    static <T extends Serializable> CacheCodec<T> javaSerialization() {
+        return new CacheCodec<T>() {
+            @Override
+            public void encode(T value, OutputStream out) {
+                SerializationUtils.serialize(value, out);
+            }
+
+            @Override
+            public T decode(InputStream in) {
+                return (T) SerializationUtils.deserialize(in);
+            }
+        };
+    }
+}
@@ -4,14 +4,16 @@ import com.google.common.base.Joiner;
 import com.google.common.cache.*;
 import edu.cmu.cs.lti.exception.CacheException;
 import edu.cmu.cs.lti.exception.CacheMissException;
-import org.apache.commons.lang3.SerializationUtils;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 
 import java.io.*;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
 import java.util.Arrays;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.ExecutionException;
 import java.util.concurrent.atomic.AtomicInteger;
 
@@ -20,10 +22,12 @@ import java.util.concurrent.atomic.AtomicInteger;
  * <p>
  * Each key is a list of strings, which jointly identify the object (you can also use one string). Values are any
  * valid objects. Cache objects are discarded based on the weigher (how much a key, value pair weight). When the
- * object is discarded, it will be written to the cache directory, the keys will form the subfolder hierarchy.
+ * object is discarded, it will be encoded by the {@link CacheCodec} and appended to a segment file in the cache
+ * directory, an index file next to it records the position of each key's record.
  * <p>
- * Cache lookup will be two level, first level is the in memory lookup, then disk lookup. Null value will be return
- * if the result is not found. Users are responsible to insert key, value pair into the cache.
+ * Cache lookup will be two level, first level is the in memory lookup, then disk lookup, which reads the record from
+ * the segment file and decodes it. Null value will be return if the result is not found. Users are responsible to
+ * insert key, value pair into the cache.
  * <p>
  * Upon close, the cacher will decide whether to write down all caches to disk or discard the whole cache (including
  * the directory) entirely based on discardAfter flag during construction.
@@ -43,6 +47,18 @@ public class MultiKeyDiskCacher<T extends Serializable> {
 
     private AtomicInteger writeOutCounter;
 
+    private final CacheCodec<T> codec;
+
+    private final FileChannel segmentChannel;
+
+    private final DataOutputStream indexOut;
+
+    // The offset and length of each record in the segment file.
+    private final Map<String, long[]> recordIndex;
+
+    // The buffer to read the records into, reused by each thread and grown to the largest record it has read.
+    private final ThreadLocal<ByteBuffer> readBuffers = ThreadLocal.withInitial(() -> ByteBuffer.allocate(8192));
+
     /**
      * @param cachePath      The main directory to store the disk based copy of the cache.
      * @param weigher        The weighting method of a key, object pair.
@@ -71,6 +87,25 @@ public class MultiKeyDiskCacher<T extends Serializable> {
      */
     public MultiKeyDiskCacher(String cachePath, Weigher<List<String>, T> weigher, long weightCapacity,
                               boolean discardAfter, String cacheSubfolder) throws IOException, CacheException {
+        this(cachePath, weigher, weightCapacity, discardAfter, cacheSubfolder, CacheCodec.javaSerialization());
+    }
+
+    /**
+     * @param cachePath      The main directory to store the disk based copy of the cache.
+     * @param weigher        The weighting method of a key, object pair.
+     * @param weightCapacity The maximum weight capacity this cache can hold.
+     * @param discardAfter   Whether to discard the whole cache at {@link MultiKeyDiskCacher#close()}.
+     *                       Note that this cannot be true when the specified cachingDirectory is not empty to
+     *                       avoid accidental deletion of non-caching files.
+     * @param cacheSubfolder We will always create a sub-folder to store to the cached files.
+     * @param codec          The codec to write and read the values on disk.
+     * @throws IOException
+     * @throws CacheException Throw when cannot start the cache.
+     */
+    public MultiKeyDiskCacher(String cachePath, Weigher<List<String>, T> weigher, long weightCapacity,
+                              boolean discardAfter, String cacheSubfolder, CacheCodec<T> codec)
+            throws IOException, CacheException {
+        this.codec = codec;
         this.cachingDirectory = FileUtils.joinPathsAsFile(cachePath, cacheSubfolder);
         FileUtils.ensureDirectory(cachingDirectory);
 
@@ -91,9 +126,19 @@ public class MultiKeyDiskCacher<T extends Serializable> {
             logger.warn("Starting the cache with existing cache directory.");
         }
 
+        File segmentFile = new File(cachingDirectory, "segment.bin");
+        File indexFile = new File(cachingDirectory, "segment.idx");
+        this.segmentChannel = new RandomAccessFile(segmentFile, "rw").getChannel();
+        this.recordIndex = new ConcurrentHashMap<>();
+        if (indexFile.exists()) {
+            readIndex(indexFile, segmentChannel.size());
+            logger.info(String.format("Found %d cached records on disk.", recordIndex.size()));
+        }
+        this.indexOut = new DataOutputStream(new BufferedOutputStream(new FileOutputStream(indexFile, true)));
+
         CacheLoader<List<String>, T> diskBackedLoader = new CacheLoader<List<String>, T>() {
             @Override
-            public T load(List<String> key) throws FileNotFoundException, CacheMissException {
+            public T load(List<String> key) throws IOException, CacheMissException {
                 T v = loadCachedObjectFromDisk(key);
                 if (v != null) {
                     return v;
@@ -107,7 +152,7 @@ public class MultiKeyDiskCacher<T extends Serializable> {
             writeOutCounter.incrementAndGet();
             try {
                 writeCacheObject(notification.getValue(), notification.getKey());
-            } catch (FileNotFoundException e) {
+            } catch (IOException e) {
                 e.printStackTrace();
             }
         };
@@ -149,24 +194,80 @@ public class MultiKeyDiskCacher<T extends Serializable> {
         return null;
     }
 
-    private T loadCachedObjectFromDisk(List<String> keys) throws FileNotFoundException {
-        File cachedFile = getCacheFile(keys);
-        if (cachedFile.exists()) {
-            return (T) SerializationUtils.deserialize(new FileInputStream(cachedFile));
-        } else {
+    private void readIndex(File indexFile, long segmentSize) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(new FileInputStream(indexFile)))) {
+            while (true) {
+                String key;
+                long offset;
+                int length;
+                try {
+                    key = in.readUTF();
+                    offset = in.readLong();
+                    length = in.readInt();
+                } catch (EOFException e) {
+                    // The end of the index, or an entry partially written when the last process stopped.
+                    break;
+                }
+                if (offset + length <= segmentSize) {
+                    recordIndex.put(key, new long[]{offset, length});
+                }
+            }
+        }
+    }
+
+    private T loadCachedObjectFromDisk(List<String> keys) throws IOException {
+        long[] record = recordIndex.get(getRecordKey(keys));
+        if (record == null) {
             return null;
         }
+
+        int length = (int) record[1];
+        ByteBuffer buffer = readBuffers.get();
+        if (buffer.capacity() < length) {
+            buffer = ByteBuffer.allocate(Math.max(length, buffer.capacity() * 2));
+            readBuffers.set(buffer);
+        }
+        buffer.clear();
+        buffer.limit(length);
+
+        // Positional reads do not move the channel position, so the lookups need no lock.
+        for (long position = record[0]; buffer.hasRemaining(); ) {
+            int n = segmentChannel.read(buffer, position);
+            if (n < 0) {
+                throw new EOFException("Record of " + keys + " is beyond the end of the segment file.");
+            }
+            position += n;
+        }
+        buffer.flip();
+        return codec.decode(new ByteBufferInputStream(buffer));
     }
 
-    private void writeCacheObject(T object, List<String> keys) throws FileNotFoundException {
-        File cacheFile = getCacheFile(keys);
-        if (!cacheFile.exists()) {
-            SerializationUtils.serialize(object, new FileOutputStream(cacheFile));
+    private synchronized void writeCacheObject(T object, List<String> keys) throws IOException {
+        String recordKey = getRecordKey(keys);
+        if (recordIndex.containsKey(recordKey)) {
+            return;
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        codec.encode(object, bytes);
+        ByteBuffer buffer = ByteBuffer.wrap(bytes.toByteArray());
+
+        // Append the record first, so that the index never points to missing data.
+        long offset = segmentChannel.size();
+        for (long position = offset; buffer.hasRemaining(); ) {
+            position += segmentChannel.write(buffer, position);
         }
+
+        indexOut.writeUTF(recordKey);
+        indexOut.writeLong(offset);
+        indexOut.writeInt(bytes.size());
+        indexOut.flush();
+
+        recordIndex.put(recordKey, new long[]{offset, bytes.size()});
     }
 
-    private File getCacheFile(List<String> keys) {
-        return new File(cachingDirectory, Joiner.on("_").join(keys));
+    private String getRecordKey(List<String> keys) {
+        return Joiner.on("_").join(keys);
     }
 
     /**
@@ -176,11 +277,6 @@ public class MultiKeyDiskCacher<T extends Serializable> {
      * @throws IOException
      */
     public void close() throws IOException {
-        if (discardAfter) {
-            logger.info("Invalidating cache at " + cachingDirectory.getAbsolutePath());
-            org.apache.commons.io.FileUtils.deleteDirectory(cachingDirectory);
-        }
-
         if (saveCaches) {
             logger.info("Writing caches to disk.");
             for (Map.Entry<List<String>, T> entry : cache.asMap().entrySet()) {
@@ -188,6 +284,14 @@ public class MultiKeyDiskCacher<T extends Serializable> {
             }
         }
 
+        indexOut.close();
+        segmentChannel.close();
+
+        if (discardAfter) {
+            logger.info("Invalidating cache at " + cachingDirectory.getAbsolutePath());
+            org.apache.commons.io.FileUtils.deleteDirectory(cachingDirectory);
+        }
+
         logger.info(String.format("The Cacher write %d times to the following path [%s]", writeOutCounter.get(),
                 cachingDirectory.getPath()));
     }
@@ -219,4 +323,35 @@ public class MultiKeyDiskCacher<T extends Serializable> {
 
         testCacher.close();
     }
+
+    /**
+     * Decode a record from the buffer it has been read into.
+     */
+    private static class ByteBufferInputStream extends InputStream {
+        private final ByteBuffer buffer;
+
+        ByteBufferInputStream(ByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+
+        @Override
+        public int read() {
+            return buffer.hasRemaining() ? buffer.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] bytes, int offset, int length) {
+            if (!buffer.hasRemaining()) {
+                return -1;
+            }
+            int n = Math.min(length, buffer.remaining());
+            buffer.get(bytes, offset, n);
+            return n;
+        }
+
+        @Override
+        public int available() {
+            return buffer.remaining();
+        }
+    }
 }
@@ -0,0 +1,56 @@
+package edu.cmu.cs.lti.learning.model;
+
+import org.junit.Test;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+
+public class FeatureEmitterTest {
+    private final HashAlphabet alphabet = new HashAlphabet(16, true);
+
+    @Test
+    public void indexIsTheOneOfTheFullName() {
+        FeatureVector fv = new RealValueHashFeatureVector(alphabet);
+        new FeatureEmitter(fv).begin("Lemma_offset=").append(-1).append("::").append("run").add(1);
+
+        int index = alphabet.getFeatureId("Lemma_offset=-1::run");
+        assertEquals(1, fv.getFeatureValue(index), 0);
+        assertEquals(1, fv.getFeatureSize());
+        assertEquals("[Lemma_offset=-1::run]", alphabet.getFeatureNames(index)[0]);
+    }
+
+    @Test
+    public void addSumsValues() {
+        FeatureVector fv = new RealValueHashFeatureVector(alphabet);
+        FeatureEmitter features = new FeatureEmitter(fv);
+        features.add("Word::run", 1);
+        features.begin("Word::").append("run").add(2);
+
+        assertEquals(3, fv.getFeatureValue("Word::run"), 0);
+    }
+
+    @Test
+    public void putReplacesValue() {
+        FeatureVector fv = new RealValueHashFeatureVector(alphabet);
+        FeatureEmitter features = new FeatureEmitter(fv);
+        features.put("MentionDistance::i<=1", 1);
+        features.begin("MentionDistance::i<=").append(1).put(1);
+        features.add("Other", 2);
+        features.put("Other", 0.5);
+
+        assertEquals(1, fv.getFeatureValue("MentionDistance::i<=1"), 0);
+        assertEquals(0.5, fv.getFeatureValue("Other"), 0);
+    }
+
+    @Test
+    public void emitterWithoutTargetDropsFeatures() {
+        FeatureVector fv = new RealValueHashFeatureVector(alphabet);
+        FeatureEmitter features = new FeatureEmitter();
+        assertFalse(features.isActive());
+        features.begin("Word::").append("run").add(1);
+
+        features.reset(fv).add("Word::walk", 1);
+        assertEquals(0, fv.getFeatureValue("Word::run"), 0);
+        assertEquals(1, fv.getFeatureValue("Word::walk"), 0);
+    }
+}
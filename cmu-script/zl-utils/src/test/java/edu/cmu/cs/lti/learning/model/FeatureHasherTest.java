@@ -0,0 +1,80 @@
+package edu.cmu.cs.lti.learning.model;
+
+import com.google.common.hash.Hashing;
+import org.junit.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.Assert.assertEquals;
+
+public class FeatureHasherTest {
+    private static int murmur(String s) {
+        return Hashing.murmur3_32().hashBytes(s.getBytes(StandardCharsets.UTF_8)).asInt();
+    }
+
+    @Test
+    public void partsHashAsTheConcatenatedName() {
+        FeatureHasher hasher = new FeatureHasher();
+        hasher.append("Lemma_offset=").append(-1).append("::").append("run");
+        assertEquals(murmur("Lemma_offset=-1::run"), hasher.hash());
+        assertEquals("Lemma_offset=-1::run", hasher.featureName());
+    }
+
+    @Test
+    public void allTailLengths() {
+        FeatureHasher hasher = new FeatureHasher();
+        String name = "";
+        for (int length = 0; length < 10; length++) {
+            assertEquals(murmur(name), hasher.reset().append(name).hash());
+            name += (char) ('a' + length);
+        }
+    }
+
+    @Test
+    public void numbers() {
+        FeatureHasher hasher = new FeatureHasher();
+        for (int value : new int[]{0, 7, -7, 10, 1234567890, Integer.MAX_VALUE, Integer.MIN_VALUE}) {
+            assertEquals(murmur("n=" + value), hasher.reset().append("n=").append(value).hash());
+        }
+    }
+
+    @Test
+    public void nonAsciiCharacters() {
+        FeatureHasher hasher = new FeatureHasher();
+        for (String name : new String[]{"café", "中文", "emoji😀", "lone\ud83d", "\ude00lone",
+                "\ud83d😀"}) {
+            assertEquals(name, murmur(name), hasher.reset().append(name).hash());
+        }
+    }
+
+    @Test
+    public void surrogatePairSplitAcrossParts() {
+        FeatureHasher hasher = new FeatureHasher();
+        hasher.append("a\ud83d").append("\ude00b");
+        assertEquals(murmur("a😀b"), hasher.hash());
+    }
+
+    @Test
+    public void nullIsAppendedAsText() {
+        FeatureHasher hasher = new FeatureHasher();
+        hasher.append("w=").append((CharSequence) null);
+        assertEquals(murmur("w=null"), hasher.hash());
+    }
+
+    @Test
+    public void subSequence() {
+        FeatureHasher hasher = new FeatureHasher();
+        hasher.append("prefix_running_suffix", 7, 14);
+        assertEquals(murmur("running"), hasher.hash());
+    }
+
+    @Test
+    public void resetStartsANewFeature() {
+        FeatureHasher hasher = new FeatureHasher();
+        hasher.append("first");
+        hasher.hash();
+        hasher.reset().append("second");
+        assertEquals(murmur("second"), hasher.hash());
+        assertEquals("second", hasher.featureName());
+    }
+}
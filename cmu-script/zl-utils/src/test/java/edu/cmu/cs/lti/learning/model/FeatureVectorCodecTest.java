@@ -0,0 +1,148 @@
+package edu.cmu.cs.lti.learning.model;
+
+import edu.cmu.cs.lti.utils.CacheCodec;
+import gnu.trove.map.TIntDoubleMap;
+import gnu.trove.map.TIntObjectMap;
+import gnu.trove.map.hash.TIntDoubleHashMap;
+import gnu.trove.map.hash.TIntObjectHashMap;
+import org.junit.Test;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+
+/**
+ * Decoding an encoded vector must give back exactly the same features and values.
+ */
+public class FeatureVectorCodecTest {
+    private final HashAlphabet alphabet = new HashAlphabet(16, false);
+
+    private final FeatureVectorCodec codec = new FeatureVectorCodec(alphabet);
+
+    private final Random random = new Random(42);
+
+    private static TIntDoubleMap toMap(FeatureVector fv) {
+        TIntDoubleMap map = new TIntDoubleHashMap();
+        for (FeatureVector.FeatureIterator iter = fv.featureIterator(); iter.hasNext(); ) {
+            iter.next();
+            map.adjustOrPutValue(iter.featureIndex(), iter.featureValue(), iter.featureValue());
+        }
+        return map;
+    }
+
+    private FeatureVector randomVector(boolean sorted, boolean integerValues) {
+        FeatureVector fv = sorted ? new RealValueSortedFeatureVector(alphabet) : new RealValueHashFeatureVector
+                (alphabet);
+        int numFeatures = random.nextInt(30);
+        for (int i = 0; i < numFeatures; i++) {
+            double value = integerValues ? random.nextInt(5) + 1 : random.nextGaussian();
+            fv.addFeature(random.nextInt(1 << 16), value);
+        }
+        return fv;
+    }
+
+    private FeatureVector roundTrip(FeatureVector fv) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        DataOutputStream out = new DataOutputStream(bytes);
+        codec.writeVector(fv, out);
+        out.flush();
+
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes.toByteArray()));
+        FeatureVector decoded = codec.readVector(in);
+        assertEquals(-1, in.read());
+        return decoded;
+    }
+
+    private void assertSameVectors(FeatureVector[] expected, FeatureVector[] actual) {
+        assertEquals(expected.length, actual.length);
+        for (int i = 0; i < expected.length; i++) {
+            if (expected[i] == null) {
+                assertNull(actual[i]);
+            } else {
+                assertEquals(toMap(expected[i]), toMap(actual[i]));
+            }
+        }
+    }
+
+    private TIntObjectHashMap<FeatureVector[]> randomVectorMap() {
+        TIntObjectHashMap<FeatureVector[]> vectors = new TIntObjectHashMap<>();
+        int size = random.nextInt(5);
+        for (int i = 0; i < size; i++) {
+            FeatureVector[] array = new FeatureVector[random.nextInt(4)];
+            for (int j = 0; j < array.length; j++) {
+                array[j] = random.nextInt(5) == 0 ? null : randomVector(random.nextBoolean(), random.nextBoolean());
+            }
+            vectors.put(random.nextInt(100) - 1, array);
+        }
+        return vectors;
+    }
+
+    private void assertSameVectorMaps(TIntObjectMap<FeatureVector[]> expected, TIntObjectMap<FeatureVector[]>
+            actual) {
+        assertEquals(expected.size(), actual.size());
+        for (int key : expected.keys()) {
+            assertSameVectors(expected.get(key), actual.get(key));
+        }
+    }
+
+    @Test
+    public void sortedAndHashVectors() throws IOException {
+        for (int trial = 0; trial < 20; trial++) {
+            for (boolean sorted : new boolean[]{true, false}) {
+                for (boolean integerValues : new boolean[]{true, false}) {
+                    FeatureVector fv = randomVector(sorted, integerValues);
+                    assertEquals(toMap(fv), toMap(roundTrip(fv)));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void valuesThatAreNotFloats() throws IOException {
+        FeatureVector fv = new RealValueSortedFeatureVector(alphabet);
+        fv.addFeature(3, 1);
+        fv.addFeature(7, 0.1);
+        fv.addFeature(Integer.MAX_VALUE, -1e300);
+        FeatureVector decoded = roundTrip(fv);
+        assertEquals(toMap(fv), toMap(decoded));
+        assertEquals(0.1, decoded.getFeatureValue(7), 0);
+    }
+
+    @Test
+    public void nullAndEmptyVectors() throws IOException {
+        assertNull(roundTrip(null));
+        assertEquals(0, roundTrip(new RealValueHashFeatureVector(alphabet)).getFeatureSize());
+    }
+
+    @Test
+    public void sequenceCodec() throws IOException {
+        CacheCodec<TIntObjectHashMap<FeatureVector[]>> sequenceCodec = codec.sequenceCodec();
+        for (int trial = 0; trial < 20; trial++) {
+            TIntObjectHashMap<FeatureVector[]> vectors = randomVectorMap();
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            sequenceCodec.encode(vectors, bytes);
+            assertSameVectorMaps(vectors, sequenceCodec.decode(new ByteArrayInputStream(bytes.toByteArray())));
+        }
+    }
+
+    @Test
+    public void documentCodec() throws IOException {
+        CacheCodec<ArrayList<TIntObjectMap<FeatureVector[]>>> documentCodec = codec.documentCodec();
+        ArrayList<TIntObjectMap<FeatureVector[]>> document = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            document.add(randomVectorMap());
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        documentCodec.encode(document, bytes);
+        ArrayList<TIntObjectMap<FeatureVector[]>> decoded = documentCodec.decode(new ByteArrayInputStream(bytes
+                .toByteArray()));
+        assertEquals(document.size(), decoded.size());
+        for (int i = 0; i < document.size(); i++) {
+            assertSameVectorMaps(document.get(i), decoded.get(i));
+        }
+    }
+}
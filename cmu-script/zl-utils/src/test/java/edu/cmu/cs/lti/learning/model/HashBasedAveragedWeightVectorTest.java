@@ -0,0 +1,79 @@
+package edu.cmu.cs.lti.learning.model;
+
+import org.apache.commons.lang3.SerializationUtils;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+
+/**
+ * The hash based vector is checked against the dense vector, trained with the same updates.
+ */
+public class HashBasedAveragedWeightVectorTest {
+    private static final double DELTA = 1e-9;
+
+    private static final int FEATURE_SIZE = 1 << 10;
+
+    private final HashAlphabet alphabet = new HashAlphabet(10, false);
+
+    private final Random random = new Random(42);
+
+    private FeatureVector randomFeatures() {
+        FeatureVector fv = new RealValueHashFeatureVector(alphabet);
+        for (int i = 0; i < 20; i++) {
+            fv.addFeature(random.nextInt(FEATURE_SIZE), random.nextInt(5) - 2);
+        }
+        return fv;
+    }
+
+    private void train(AveragedWeightVector hash, AveragedWeightVector dense, int numUpdates) {
+        for (int i = 0; i < numUpdates; i++) {
+            FeatureVector fv = randomFeatures();
+            double multiplier = random.nextDouble() - 0.5;
+            hash.updateWeightsBy(fv, multiplier);
+            dense.updateWeightsBy(fv, multiplier);
+            if (random.nextBoolean()) {
+                hash.updateAverageWeight();
+                dense.updateAverageWeight();
+            }
+        }
+    }
+
+    private void assertSameWeights(AveragedWeightVector expected, AveragedWeightVector actual) {
+        for (int i = 0; i < FEATURE_SIZE; i++) {
+            assertEquals(expected.getWeightAt(i), actual.getWeightAt(i), DELTA);
+            assertEquals(expected.getAverageWeightAt(i), actual.getAverageWeightAt(i), DELTA);
+        }
+        FeatureVector fv = randomFeatures();
+        assertEquals(expected.dotProd(fv), actual.dotProd(fv), DELTA);
+        assertEquals(expected.dotProdAver(fv), actual.dotProdAver(fv), DELTA);
+    }
+
+    @Test
+    public void matchesDenseVectorWhileGrowing() {
+        HashBasedAveragedWeightVector hash = new HashBasedAveragedWeightVector();
+        DenseAveragedWeightVector dense = new DenseAveragedWeightVector(FEATURE_SIZE);
+        train(hash, dense, 10);
+        assertSameWeights(dense, hash);
+        train(hash, dense, 500);
+        assertSameWeights(dense, hash);
+    }
+
+    @Test
+    public void trainsFurtherAfterSerialization() {
+        HashBasedAveragedWeightVector hash = new HashBasedAveragedWeightVector();
+        DenseAveragedWeightVector dense = new DenseAveragedWeightVector(FEATURE_SIZE);
+        train(hash, dense, 200);
+
+        hash.consolidate();
+        dense.consolidate();
+        HashBasedAveragedWeightVector hashCopy = SerializationUtils.deserialize(SerializationUtils.serialize(hash));
+        DenseAveragedWeightVector denseCopy = SerializationUtils.deserialize(SerializationUtils.serialize(dense));
+        assertSameWeights(dense, hashCopy);
+        assertEquals(hash.getFeatureSize(), hashCopy.getFeatureSize());
+
+        train(hashCopy, denseCopy, 200);
+        assertSameWeights(denseCopy, hashCopy);
+    }
+}
@@ -0,0 +1,151 @@
+package edu.cmu.cs.lti.learning.model;
+
+import gnu.trove.map.TIntDoubleMap;
+import gnu.trove.map.hash.TIntDoubleHashMap;
+import org.apache.commons.lang3.SerializationUtils;
+import org.junit.Test;
+
+import java.util.Random;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+/**
+ * The sorted vector is checked against the hash vector, built from the same additions.
+ */
+public class RealValueSortedFeatureVectorTest {
+    private final HashAlphabet alphabet = new HashAlphabet(10, false);
+
+    private final Random random = new Random(42);
+
+    private static TIntDoubleMap toMap(FeatureVector fv) {
+        TIntDoubleMap map = new TIntDoubleHashMap();
+        for (FeatureVector.FeatureIterator iter = fv.featureIterator(); iter.hasNext(); ) {
+            iter.next();
+            map.adjustOrPutValue(iter.featureIndex(), iter.featureValue(), iter.featureValue());
+        }
+        return map;
+    }
+
+    private void fill(FeatureVector sorted, FeatureVector hash, int numFeatures, boolean ascending) {
+        int index = 0;
+        for (int i = 0; i < numFeatures; i++) {
+            index = ascending ? index + 1 + random.nextInt(3) : random.nextInt(50);
+            double value = random.nextInt(5) + 1;
+            sorted.addFeature(index, value);
+            hash.addFeature(index, value);
+        }
+    }
+
+    @Test
+    public void appendsInOrderAndMergesOutOfOrder() {
+        for (boolean ascending : new boolean[]{true, false}) {
+            RealValueSortedFeatureVector sorted = new RealValueSortedFeatureVector(alphabet);
+            RealValueHashFeatureVector hash = new RealValueHashFeatureVector(alphabet);
+            fill(sorted, hash, 100, ascending);
+            assertEquals(toMap(hash), toMap(sorted));
+            assertEquals(hash.getFeatureSize(), sorted.getFeatureSize());
+
+            int previous = -1;
+            for (FeatureVector.FeatureIterator iter = sorted.featureIterator(); iter.hasNext(); ) {
+                iter.next();
+                assertTrue(iter.featureIndex() > previous);
+                previous = iter.featureIndex();
+            }
+        }
+    }
+
+    @Test
+    public void mergesBetweenReads() {
+        RealValueSortedFeatureVector sorted = new RealValueSortedFeatureVector(alphabet);
+        RealValueHashFeatureVector hash = new RealValueHashFeatureVector(alphabet);
+        for (int round = 0; round < 5; round++) {
+            fill(sorted, hash, 20, false);
+            for (int index = 0; index < 50; index++) {
+                assertEquals(hash.getFeatureValue(index), sorted.getFeatureValue(index), 0);
+            }
+        }
+    }
+
+    @Test
+    public void extendAsTheHashVector() {
+        for (double multiplier : new double[]{1, -1, 0.5}) {
+            RealValueSortedFeatureVector sorted = new RealValueSortedFeatureVector(alphabet);
+            RealValueHashFeatureVector hash = new RealValueHashFeatureVector(alphabet);
+            fill(sorted, hash, 30, false);
+
+            RealValueSortedFeatureVector sortedOther = new RealValueSortedFeatureVector(alphabet);
+            RealValueHashFeatureVector hashOther = new RealValueHashFeatureVector(alphabet);
+            fill(sortedOther, hashOther, 30, false);
+
+            sorted.extend(sortedOther, multiplier);
+            hash.extend(hashOther, multiplier);
+            assertEquals(toMap(hash), toMap(sorted));
+
+            // Extending with another kind of vector goes through the default implementation.
+            sorted.extend(hashOther, multiplier);
+            hash.extend(hashOther, multiplier);
+            assertEquals(toMap(hash), toMap(sorted));
+        }
+    }
+
+    @Test
+    public void diffAsTheHashVector() {
+        for (int trial = 0; trial < 10; trial++) {
+            RealValueSortedFeatureVector sorted = new RealValueSortedFeatureVector(alphabet);
+            RealValueHashFeatureVector hash = new RealValueHashFeatureVector(alphabet);
+            fill(sorted, hash, 20, false);
+
+            RealValueSortedFeatureVector sortedOther = new RealValueSortedFeatureVector(alphabet);
+            RealValueHashFeatureVector hashOther = new RealValueHashFeatureVector(alphabet);
+            fill(sortedOther, hashOther, 20, false);
+
+            RealValueSortedFeatureVector sortedResult = new RealValueSortedFeatureVector(alphabet);
+            RealValueHashFeatureVector hashResult = new RealValueHashFeatureVector(alphabet);
+            sorted.diff(sortedOther, sortedResult);
+            hash.diff(hashOther, hashResult);
+            assertEquals(toMap(hashResult), toMap(sortedResult));
+        }
+    }
+
+    @Test
+    public void dotProdAsTheHashVector() {
+        for (int trial = 0; trial < 10; trial++) {
+            RealValueSortedFeatureVector sorted = new RealValueSortedFeatureVector(alphabet);
+            RealValueHashFeatureVector hash = new RealValueHashFeatureVector(alphabet);
+            fill(sorted, hash, 20, false);
+
+            RealValueSortedFeatureVector sortedOther = new RealValueSortedFeatureVector(alphabet);
+            RealValueHashFeatureVector hashOther = new RealValueHashFeatureVector(alphabet);
+            fill(sortedOther, hashOther, 20, false);
+
+            assertEquals(hash.dotProd(hashOther), sorted.dotProd(sortedOther), 1e-9);
+            assertEquals(hash.dotProd(hashOther), sorted.dotProd(hashOther), 1e-9);
+            assertEquals(hash.dotProd(hash), sorted.dotProd(sorted), 1e-9);
+        }
+    }
+
+    @Test
+    public void clearKeepsNothing() {
+        RealValueSortedFeatureVector sorted = new RealValueSortedFeatureVector(alphabet);
+        RealValueHashFeatureVector unused = new RealValueHashFeatureVector(alphabet);
+        fill(sorted, unused, 20, false);
+        sorted.clear();
+        assertEquals(0, sorted.getFeatureSize());
+
+        RealValueHashFeatureVector hash = new RealValueHashFeatureVector(alphabet);
+        fill(sorted, hash, 20, false);
+        assertEquals(toMap(hash), toMap(sorted));
+    }
+
+    @Test
+    public void serializesPendingFeatures() {
+        RealValueSortedFeatureVector sorted = new RealValueSortedFeatureVector(alphabet);
+        RealValueHashFeatureVector hash = new RealValueHashFeatureVector(alphabet);
+        fill(sorted, hash, 40, false);
+
+        RealValueSortedFeatureVector copy = SerializationUtils.clone(sorted);
+        assertEquals(toMap(hash), toMap(copy));
+        assertEquals(toMap(hash), toMap(sorted.compact()));
+    }
+}
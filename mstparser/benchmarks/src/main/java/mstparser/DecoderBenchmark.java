@@ -0,0 +1,77 @@
+package mstparser;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * First order decoding of a sentence whose parts are already scored. The {@code withFeatures}
+ * benchmarks also build the feature vectors of the k-best parses, as in training.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class DecoderBenchmark {
+
+  @Param({ "10", "40", "100" })
+  public int length;
+
+  @Param({ "1" })
+  public int k;
+
+  private DependencyDecoder decoder;
+
+  private DependencyInstance instance;
+
+  private Parts parts;
+
+  private Parts scores;
+
+  @Setup
+  public void setUp() throws IOException {
+    File file = SyntheticTreebank.write(50, length, 1);
+    DependencyPipe pipe = SyntheticTreebank.createPipe(file, false);
+    Parameters params = SyntheticTreebank.randomParameters(pipe, 2);
+    instance = SyntheticTreebank.readInstances(pipe, file).get(0);
+    parts = new Parts(pipe, instance, false, true).fill(pipe, instance, params);
+    scores = new Parts(pipe, instance, false, false).fill(pipe, instance, params);
+    decoder = new DependencyDecoder(pipe);
+  }
+
+  @Benchmark
+  public Object[][] decodeProjective() {
+    return decoder.decodeProjective(instance, null, scores.probs, null, scores.nt_probs, k);
+  }
+
+  @Benchmark
+  public Object[][] decodeProjectiveWithFeatures() {
+    return decoder.decodeProjective(instance, parts.fvs, parts.probs, parts.nt_fvs,
+            parts.nt_probs, k);
+  }
+
+  @Benchmark
+  public Object[][] decodeNonProjective() {
+    return decoder.decodeNonProjective(instance, null, scores.probs, null, scores.nt_probs, k);
+  }
+
+  @Benchmark
+  public Object[][] decodeNonProjectiveWithFeatures() {
+    return decoder.decodeNonProjective(instance, parts.fvs, parts.probs, parts.nt_fvs,
+            parts.nt_probs, k);
+  }
+}
@@ -0,0 +1,60 @@
+package mstparser;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Extracting and scoring the features of all parts of a sentence, with feature vectors (training)
+ * and without (parsing).
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FeatureExtractionBenchmark {
+
+  @Param({ "10", "40", "100" })
+  public int length;
+
+  @Param({ "1", "2" })
+  public int order;
+
+  private DependencyPipe pipe;
+
+  private Parameters params;
+
+  private DependencyInstance instance;
+
+  @Setup
+  public void setUp() throws IOException {
+    File file = SyntheticTreebank.write(50, length, 1);
+    pipe = SyntheticTreebank.createPipe(file, order == 2);
+    params = SyntheticTreebank.randomParameters(pipe, 2);
+    instance = SyntheticTreebank.readInstances(pipe, file).get(0);
+  }
+
+  @Benchmark
+  public Parts fillFeatureVectors() {
+    return new Parts(pipe, instance, order == 2, true).fill(pipe, instance, params);
+  }
+
+  @Benchmark
+  public Parts fillScores() {
+    return new Parts(pipe, instance, order == 2, false).fill(pipe, instance, params);
+  }
+}
@@ -0,0 +1,83 @@
+package mstparser;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * The MIRA update against the {@code k} best parses of a sentence: the quadratic program alone
+ * ({@code hildreth}) and the whole update. The update keeps changing the same weights, which does
+ * not change its cost.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class MiraBenchmark {
+
+  @Param({ "10", "40", "100" })
+  public int length;
+
+  @Param({ "1", "5" })
+  public int k;
+
+  private Parameters params;
+
+  private DependencyInstance instance;
+
+  private Object[][] parses;
+
+  private FeatureVector[] dist;
+
+  private double[] b;
+
+  @Setup
+  public void setUp() throws IOException {
+    File file = SyntheticTreebank.write(50, length, 1);
+    DependencyPipe pipe = SyntheticTreebank.createPipe(file, false);
+    params = SyntheticTreebank.randomParameters(pipe, 2);
+    instance = SyntheticTreebank.readInstances(pipe, file).get(0);
+    Parts parts = new Parts(pipe, instance, false, true).fill(pipe, instance, params);
+    parses = new DependencyDecoder(pipe).decodeProjective(instance, parts.fvs, parts.probs,
+            parts.nt_fvs, parts.nt_probs, k);
+
+    // the constraints of the quadratic program, as set up by updateParamsMIRA
+    int numParses = 0;
+    while (numParses < parses.length && parses[numParses][0] != null) {
+      numParses++;
+    }
+    dist = new FeatureVector[numParses];
+    b = new double[numParses];
+    for (int i = 0; i < numParses; i++) {
+      FeatureVector fv = (FeatureVector) parses[i][0];
+      dist[i] = instance.fv.getDistVector(fv);
+      b[i] = params.numErrors(instance, (String) parses[i][1], instance.actParseTree)
+              - (params.getScore(instance.fv) - params.getScore(fv));
+    }
+  }
+
+  @Benchmark
+  public double[] hildreth() {
+    return params.hildreth(dist, b);
+  }
+
+  @Benchmark
+  public Parameters updateParamsMIRA() {
+    params.updateParamsMIRA(instance, parses);
+    return params;
+  }
+}
@@ -0,0 +1,55 @@
+package mstparser;
+
+/**
+ * The feature vectors and scores of all parts of one sentence, as filled by
+ * {@link DependencyPipe#fillFeatureVectors} and read by the decoders.
+ */
+final class Parts {
+
+  final boolean secondOrder;
+
+  final FeatureVector[][][] fvs;
+
+  final double[][][] probs;
+
+  final FeatureVector[][][][] nt_fvs;
+
+  final double[][][][] nt_probs;
+
+  final FeatureVector[][][] fvs_trips;
+
+  final double[][][] probs_trips;
+
+  final FeatureVector[][][] fvs_sibs;
+
+  final double[][][] probs_sibs;
+
+  /**
+   * @param withFeatures
+   *          if {@code false}, only the scores are filled, as when parsing.
+   */
+  Parts(DependencyPipe pipe, DependencyInstance instance, boolean secondOrder,
+          boolean withFeatures) {
+    int length = instance.length();
+    int numTypes = pipe.types.length;
+    this.secondOrder = secondOrder;
+    fvs = withFeatures ? new FeatureVector[length][length][2] : null;
+    probs = new double[length][length][2];
+    nt_fvs = withFeatures ? new FeatureVector[length][numTypes][2][2] : null;
+    nt_probs = new double[length][numTypes][2][2];
+    fvs_trips = secondOrder && withFeatures ? new FeatureVector[length][length][] : null;
+    probs_trips = secondOrder ? new double[length][length][] : null;
+    fvs_sibs = secondOrder && withFeatures ? new FeatureVector[length][length][2] : null;
+    probs_sibs = secondOrder ? new double[length][length][2] : null;
+  }
+
+  Parts fill(DependencyPipe pipe, DependencyInstance instance, Parameters params) {
+    if (secondOrder) {
+      ((DependencyPipe2O) pipe).fillFeatureVectors(instance, fvs, probs, fvs_trips, probs_trips,
+              fvs_sibs, probs_sibs, nt_fvs, nt_probs, params);
+    } else {
+      pipe.fillFeatureVectors(instance, fvs, probs, nt_fvs, nt_probs, params);
+    }
+    return this;
+  }
+}
@@ -0,0 +1,56 @@
+package mstparser;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import mstparser.io.CONLLReader;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Reading CoNLL sentences with {@link CONLLReader#getNext()}. The time is per sentence.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ReaderBenchmark {
+
+  private static final int SENTENCES = 100;
+
+  @Param({ "10", "40", "100" })
+  public int length;
+
+  private File file;
+
+  @Setup
+  public void setUp() throws IOException {
+    file = SyntheticTreebank.write(SENTENCES, length, 1);
+  }
+
+  @Benchmark
+  @OperationsPerInvocation(SENTENCES)
+  public void getNext(Blackhole blackhole) throws IOException {
+    CONLLReader reader = new CONLLReader(false);
+    reader.startReading(file.getPath());
+    for (DependencyInstance instance = reader.getNext(); instance != null; instance = reader
+            .getNext()) {
+      blackhole.consume(instance);
+    }
+  }
+}
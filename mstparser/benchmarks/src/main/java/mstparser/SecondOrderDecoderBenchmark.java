@@ -0,0 +1,77 @@
+package mstparser;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Second order decoding with {@link DependencyDecoder2O} of a sentence whose parts are already
+ * scored. {@code pruneHeads} > 0 scores the sentence with first order head pruning.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class SecondOrderDecoderBenchmark {
+
+  @Param({ "10", "40", "100" })
+  public int length;
+
+  @Param({ "1" })
+  public int k;
+
+  @Param({ "0" })
+  public int pruneHeads;
+
+  private DependencyDecoder2O decoder;
+
+  private DependencyInstance instance;
+
+  private Parts parts;
+
+  private Parts scores;
+
+  @Setup
+  public void setUp() throws IOException {
+    File file = SyntheticTreebank.write(50, length, 1);
+    DependencyPipe pipe = SyntheticTreebank.createPipe(file, true);
+    pipe.options.pruneHeads = pruneHeads;
+    Parameters params = SyntheticTreebank.randomParameters(pipe, 2);
+    instance = SyntheticTreebank.readInstances(pipe, file).get(0);
+    parts = new Parts(pipe, instance, true, true).fill(pipe, instance, params);
+    scores = new Parts(pipe, instance, true, false).fill(pipe, instance, params);
+    decoder = new DependencyDecoder2O(pipe);
+  }
+
+  @Benchmark
+  public Object[][] decodeProjective() {
+    return decoder.decodeProjective(instance, null, scores.probs, null, scores.probs_trips, null,
+            scores.probs_sibs, null, scores.nt_probs, k);
+  }
+
+  @Benchmark
+  public Object[][] decodeProjectiveWithFeatures() {
+    return decoder.decodeProjective(instance, parts.fvs, parts.probs, parts.fvs_trips,
+            parts.probs_trips, parts.fvs_sibs, parts.probs_sibs, parts.nt_fvs, parts.nt_probs, k);
+  }
+
+  @Benchmark
+  public Object[][] decodeNonProjective() {
+    return decoder.decodeNonProjective(instance, null, scores.probs, null, scores.probs_trips,
+            null, scores.probs_sibs, null, scores.nt_probs, k);
+  }
+}
@@ -0,0 +1,116 @@
+package mstparser;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Reproducible synthetic CoNLL data for the benchmarks.
+ *
+ * <p>
+ * Words are drawn from a Zipf-like vocabulary, so that feature counts are similar to real text.
+ * Every token is attached to a random token that was attached before it, so the trees are valid
+ * but not necessarily projective.
+ */
+final class SyntheticTreebank {
+
+  private static final String[] TAGS = { "NN", "NNS", "NNP", "VB", "VBD", "VBZ", "VBN", "VBG",
+      "JJ", "RB", "DT", "IN", "PRP", "CC", "CD", "TO", "MD", ",", ".", "POS" };
+
+  private static final String[] LABELS = { "SBJ", "OBJ", "NMOD", "VMOD", "PMOD", "AMOD", "P",
+      "ROOT", "COORD", "DEP" };
+
+  private static final int VOCABULARY = 5000;
+
+  private SyntheticTreebank() {
+  }
+
+  /**
+   * Write {@code numSentences} sentences of {@code length} tokens to a temporary CoNLL file.
+   */
+  static File write(int numSentences, int length, long seed) throws IOException {
+    File file = File.createTempFile("synthetic-" + length, ".conll");
+    file.deleteOnExit();
+
+    Random random = new Random(seed);
+    Writer out = new BufferedWriter(new OutputStreamWriter(new FileOutputStream(file), "UTF-8"));
+    try {
+      for (int s = 0; s < numSentences; s++) {
+        int[] heads = randomTree(length, random);
+        for (int i = 1; i <= length; i++) {
+          // Zipf-like: small word ids are much more frequent
+          int word = (int) Math.pow(VOCABULARY, random.nextDouble()) - 1;
+          String tag = TAGS[(word + random.nextInt(3)) % TAGS.length];
+          String label = LABELS[random.nextInt(LABELS.length)];
+          out.write(i + "\tw" + word + "\tw" + word + "\t" + tag.charAt(0) + "\t" + tag + "\t_\t"
+                  + heads[i] + "\t" + label + "\t_\t_\n");
+        }
+        out.write("\n");
+      }
+    } finally {
+      out.close();
+    }
+    return file;
+  }
+
+  private static int[] randomTree(int length, Random random) {
+    int[] order = new int[length];
+    for (int i = 0; i < length; i++) {
+      order[i] = i + 1;
+    }
+    for (int i = length - 1; i > 0; i--) {
+      int j = random.nextInt(i + 1);
+      int tmp = order[i];
+      order[i] = order[j];
+      order[j] = tmp;
+    }
+
+    int[] heads = new int[length + 1];
+    heads[0] = -1;
+    for (int i = 0; i < length; i++) {
+      // the root or one of the tokens attached so far
+      int h = random.nextInt(i + 1);
+      heads[order[i]] = h == 0 ? 0 : order[h - 1];
+    }
+    return heads;
+  }
+
+  /**
+   * Create a pipe with its alphabets built from the given file.
+   */
+  static DependencyPipe createPipe(File file, boolean secondOrder) throws IOException {
+    ParserOptions options = new ParserOptions(new String[] { "train-file:" + file.getPath(),
+        "create-forest:false", "order:" + (secondOrder ? 2 : 1) });
+    DependencyPipe pipe = secondOrder ? new DependencyPipe2O(options) : new DependencyPipe(options);
+    pipe.createInstances(file.getPath(), options.trainforest);
+    return pipe;
+  }
+
+  static List<DependencyInstance> readInstances(DependencyPipe pipe, File file) throws IOException {
+    List<DependencyInstance> instances = new ArrayList<DependencyInstance>();
+    pipe.initInputFile(file.getPath());
+    for (DependencyInstance instance = pipe.nextInstance(); instance != null; instance = pipe
+            .nextInstance()) {
+      instances.add(instance);
+    }
+    return instances;
+  }
+
+  /**
+   * Parameters with small random weights, so that decoding has to make real decisions.
+   */
+  static Parameters randomParameters(DependencyPipe pipe, long seed) {
+    Parameters params = new Parameters(pipe.dataAlphabet.size());
+    Random random = new Random(seed);
+    for (int i = 0; i < params.parameters.length; i++) {
+      params.parameters[i] = random.nextGaussian() * 0.1;
+    }
+    return params;
+  }
+}
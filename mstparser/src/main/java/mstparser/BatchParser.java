@@ -0,0 +1,130 @@
+package mstparser;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import mstparser.io.DependencyWriter;
+
+/**
+ * Parses a stream of instances on a pool of worker threads.
+ *
+ * <p>
+ * Every worker thread has its own {@link DependencyDecoder} (or {@link DependencyDecoder2O}), while
+ * the {@link Parameters} and alphabets of the parser are shared read-only. Parses are returned in
+ * input order. At most a fixed number of instances are in flight, so arbitrarily long streams can
+ * be parsed in constant memory.
+ *
+ * <pre>
+ * BatchParser batchParser = new BatchParser(parser, 8, null);
+ * try {
+ *   batchParser.parse(instances, writer);
+ * } finally {
+ *   batchParser.close();
+ * }
+ * </pre>
+ */
+public class BatchParser {
+
+  private final DependencyParser parser;
+
+  private final ConfidenceEstimator confEstimator;
+
+  private final ExecutorService executor;
+
+  private final ThreadLocal<DependencyDecoder> decoders;
+
+  private final LinkedList<Future<DependencyInstance>> pending = new LinkedList<Future<DependencyInstance>>();
+
+  private final int maxPending;
+
+  /**
+   * @param confEstimator
+   *          adds confidence scores to every parse. Can be {@code null}.
+   */
+  public BatchParser(final DependencyParser parser, int numThreads,
+          ConfidenceEstimator confEstimator) {
+    this.parser = parser;
+    this.confEstimator = confEstimator;
+    this.maxPending = numThreads * 4;
+    this.executor = Executors.newFixedThreadPool(numThreads);
+    this.decoders = new ThreadLocal<DependencyDecoder>() {
+      @Override
+      protected DependencyDecoder initialValue() {
+        return parser.createDecoder();
+      }
+    };
+  }
+
+  /**
+   * Queue an instance for parsing. The instance must have been read through
+   * {@link DependencyPipe#nextInstance()}.
+   *
+   * @return the parses that are finished and next in input order. Blocks until the oldest pending
+   *         parse is done when too many instances are in flight.
+   */
+  public List<DependencyInstance> submit(final DependencyInstance instance) throws IOException {
+    pending.add(executor.submit(new Callable<DependencyInstance>() {
+      public DependencyInstance call() {
+        return parser.parse(instance, decoders.get(), confEstimator);
+      }
+    }));
+
+    List<DependencyInstance> parses = new ArrayList<DependencyInstance>();
+    while (!pending.isEmpty() && (pending.size() > maxPending || pending.getFirst().isDone())) {
+      parses.add(DependencyParser.waitFor(pending.removeFirst()));
+    }
+    return parses;
+  }
+
+  /**
+   * Wait for all pending parses.
+   *
+   * @return the remaining parses in input order.
+   */
+  public List<DependencyInstance> finish() throws IOException {
+    List<DependencyInstance> parses = new ArrayList<DependencyInstance>();
+    while (!pending.isEmpty()) {
+      parses.add(DependencyParser.waitFor(pending.removeFirst()));
+    }
+    return parses;
+  }
+
+  /**
+   * Parse all instances and write the parses in input order.
+   *
+   * @return the number of instances parsed.
+   */
+  public int parse(Iterator<DependencyInstance> instances, DependencyWriter writer)
+          throws IOException {
+    int count = 0;
+    while (instances.hasNext()) {
+      for (DependencyInstance parsedInstance : submit(instances.next())) {
+        writer.write(parsedInstance);
+        count++;
+      }
+    }
+    for (DependencyInstance parsedInstance : finish()) {
+      writer.write(parsedInstance);
+      count++;
+    }
+    return count;
+  }
+
+  /**
+   * Stop the worker threads. Pending parses are discarded.
+   */
+  public void close() {
+    for (Future<DependencyInstance> future : pending) {
+      future.cancel(true);
+    }
+    pending.clear();
+    executor.shutdownNow();
+  }
+}
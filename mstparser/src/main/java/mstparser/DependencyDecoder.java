@@ -9,6 +9,15 @@ public class DependencyDecoder {
 
   DependencyPipe pipe;
 
+  // The chart is reused between sentences. Decoders may be shared between threads, e.g. by
+  // ConfidenceEstimatorKDFix, so every thread has its own.
+  private final ThreadLocal<KBestParseForest> forests = new ThreadLocal<KBestParseForest>() {
+    @Override
+    protected KBestParseForest initialValue() {
+      return new KBestParseForest(0, 0, null, 1);
+    }
+  };
+
   public DependencyDecoder(DependencyPipe pipe) {
     this.pipe = pipe;
   }
@@ -41,85 +50,74 @@ public class DependencyDecoder {
     return static_types;
   }
 
+  /**
+   * Creates an empty feature vector for items without features of their own, or {@code null} when
+   * decoding without feature vectors.
+   */
+  protected static FeatureVector emptyFV(boolean withFeatures) {
+    return withFeatures ? new FeatureVector() : null;
+  }
+
   // static type for each edge: run time O(n^3 + Tn^2) T is number of types
+  // If fvs and nt_fvs are null, only the scores are used and the returned
+  // parses have no feature vectors.
   public Object[][] decodeProjective(DependencyInstance inst, FeatureVector[][][] fvs,
           double[][][] probs, FeatureVector[][][][] nt_fvs, double[][][][] nt_probs, int K) {
 
     String[] forms = inst.forms;
-    String[] pos = inst.postags;
 
     int[][] static_types = null;
     if (pipe.labeled) {
       static_types = getTypes(nt_probs, forms.length);
     }
 
-    KBestParseForest pf = new KBestParseForest(0, forms.length - 1, inst, K);
+    KBestParseForest pf = forests.get();
+    pf.reset(0, forms.length - 1, inst, K);
 
     for (int s = 0; s < forms.length; s++) {
-      pf.add(s, -1, 0, 0.0, new FeatureVector());
-      pf.add(s, -1, 1, 0.0, new FeatureVector());
+      pf.add(s, -1, 0, 0.0);
+      pf.add(s, -1, 1, 0.0);
     }
 
     for (int j = 1; j < forms.length; j++) {
       for (int s = 0; s < forms.length && s + j < forms.length; s++) {
         int t = s + j;
 
-        FeatureVector prodFV_st = fvs[s][t][0];
-        FeatureVector prodFV_ts = fvs[s][t][1];
         double prodProb_st = probs[s][t][0];
         double prodProb_ts = probs[s][t][1];
 
         int type1 = pipe.labeled ? static_types[s][t] : 0;
         int type2 = pipe.labeled ? static_types[t][s] : 0;
 
-        FeatureVector nt_fv_s_01 = nt_fvs[s][type1][0][1];
-        FeatureVector nt_fv_s_10 = nt_fvs[s][type2][1][0];
-        FeatureVector nt_fv_t_00 = nt_fvs[t][type1][0][0];
-        FeatureVector nt_fv_t_11 = nt_fvs[t][type2][1][1];
-        double nt_prob_s_01 = nt_probs[s][type1][0][1];
-        double nt_prob_s_10 = nt_probs[s][type2][1][0];
-        double nt_prob_t_00 = nt_probs[t][type1][0][0];
-        double nt_prob_t_11 = nt_probs[t][type2][1][1];
-
-        double prodProb = 0.0;
+        double nt_prob_st = 0.0;
+        double nt_prob_ts = 0.0;
+        if (pipe.labeled) {
+          nt_prob_st = nt_probs[s][type1][0][1] + nt_probs[t][type1][0][0];
+          nt_prob_ts = nt_probs[t][type2][1][1] + nt_probs[s][type2][1][0];
+        }
 
         for (int r = s; r <= t; r++) {
 
           /** first is direction, second is complete */
           /** _s means s is the parent */
           if (r != t) {
-            ParseForestItem[] b1 = pf.getItems(s, r, 0, 0);
-            ParseForestItem[] c1 = pf.getItems(r + 1, t, 1, 0);
-
-            if (b1 != null && c1 != null) {
-              int[][] pairs = pf.getKBestPairs(b1, c1);
-              for (int k = 0; k < pairs.length; k++) {
-
-                if (pairs[k][0] == -1 || pairs[k][1] == -1)
-                  break;
-
-                int comp1 = pairs[k][0];
-                int comp2 = pairs[k][1];
-
-                double bc = b1[comp1].prob + c1[comp2].prob;
-
-                double prob_fin = bc + prodProb_st;
-                FeatureVector fv_fin = prodFV_st;
-                if (pipe.labeled) {
-                  fv_fin = nt_fv_s_01.cat(nt_fv_t_00.cat(fv_fin));
-                  prob_fin += nt_prob_s_01 + nt_prob_t_00;
-                }
-                pf.add(s, r, t, type1, 0, 1, prob_fin, fv_fin, b1[comp1], c1[comp2]);
-
-                prob_fin = bc + prodProb_ts;
-                fv_fin = prodFV_ts;
-                if (pipe.labeled) {
-                  fv_fin = nt_fv_t_11.cat(nt_fv_s_10.cat(fv_fin));
-                  prob_fin += nt_prob_t_11 + nt_prob_s_10;
-                }
-                pf.add(s, r, t, type2, 1, 1, prob_fin, fv_fin, b1[comp1], c1[comp2]);
-
-              }
+            int numPairs = pf.kBestPairs(s, r, 0, 0, r + 1, t, 1, 0);
+            for (int k = 0; k < numPairs; k++) {
+
+              int comp1 = pf.getPair(k, 0);
+              int comp2 = pf.getPair(k, 1);
+
+              double bc = pf.getProb(s, r, 0, 0, comp1) + pf.getProb(r + 1, t, 1, 0, comp2);
+
+              double prob_fin = bc + prodProb_st;
+              if (pipe.labeled)
+                prob_fin += nt_prob_st;
+              pf.add(s, r, t, type1, 0, 1, prob_fin, comp1, comp2);
+
+              prob_fin = bc + prodProb_ts;
+              if (pipe.labeled)
+                prob_fin += nt_prob_ts;
+              pf.add(s, r, t, type2, 1, 1, prob_fin, comp1, comp2);
             }
           }
         }
@@ -127,44 +125,30 @@ public class DependencyDecoder {
         for (int r = s; r <= t; r++) {
 
           if (r != s) {
-            ParseForestItem[] b1 = pf.getItems(s, r, 0, 1);
-            ParseForestItem[] c1 = pf.getItems(r, t, 0, 0);
-            if (b1 != null && c1 != null) {
-              int[][] pairs = pf.getKBestPairs(b1, c1);
-              for (int k = 0; k < pairs.length; k++) {
-
-                if (pairs[k][0] == -1 || pairs[k][1] == -1)
-                  break;
+            int numPairs = pf.kBestPairs(s, r, 0, 1, r, t, 0, 0);
+            for (int k = 0; k < numPairs; k++) {
 
-                int comp1 = pairs[k][0];
-                int comp2 = pairs[k][1];
+              int comp1 = pf.getPair(k, 0);
+              int comp2 = pf.getPair(k, 1);
 
-                double bc = b1[comp1].prob + c1[comp2].prob;
+              double bc = pf.getProb(s, r, 0, 1, comp1) + pf.getProb(r, t, 0, 0, comp2);
 
-                if (!pf.add(s, r, t, -1, 0, 0, bc, new FeatureVector(), b1[comp1], c1[comp2]))
-                  break;
-              }
+              if (!pf.add(s, r, t, -1, 0, 0, bc, comp1, comp2))
+                break;
             }
           }
 
           if (r != t) {
-            ParseForestItem[] b1 = pf.getItems(s, r, 1, 0);
-            ParseForestItem[] c1 = pf.getItems(r, t, 1, 1);
-            if (b1 != null && c1 != null) {
-              int[][] pairs = pf.getKBestPairs(b1, c1);
-              for (int k = 0; k < pairs.length; k++) {
+            int numPairs = pf.kBestPairs(s, r, 1, 0, r, t, 1, 1);
+            for (int k = 0; k < numPairs; k++) {
 
-                if (pairs[k][0] == -1 || pairs[k][1] == -1)
-                  break;
+              int comp1 = pf.getPair(k, 0);
+              int comp2 = pf.getPair(k, 1);
 
-                int comp1 = pairs[k][0];
-                int comp2 = pairs[k][1];
+              double bc = pf.getProb(s, r, 1, 0, comp1) + pf.getProb(r, t, 1, 1, comp2);
 
-                double bc = b1[comp1].prob + c1[comp2].prob;
-
-                if (!pf.add(s, r, t, -1, 1, 0, bc, new FeatureVector(), b1[comp1], c1[comp2]))
-                  break;
-              }
+              if (!pf.add(s, r, t, -1, 1, 0, bc, comp1, comp2))
+                break;
             }
           }
         }
@@ -172,7 +156,7 @@ public class DependencyDecoder {
 
     }
 
-    return pf.getBestParses();
+    return pf.getBestParses(fvs, nt_fvs, pipe.labeled);
   }
 
   public Object[][] decodeNonProjective(DependencyInstance inst, FeatureVector[][][] fvs,
@@ -180,6 +164,8 @@ public class DependencyDecoder {
 
     String[] pos = inst.postags;
 
+    boolean withFeatures = fvs != null;
+
     int numWords = inst.length();
 
     int[][] oldI = new int[numWords][numWords];
@@ -244,7 +230,7 @@ public class DependencyDecoder {
         c++;
       }
     }
-    for (int k = 0; k < fin_par.length; k++) {
+    for (int k = 0; k < fin_par.length && withFeatures; k++) {
       for (int i = 0; i < fin_par[k].length; i++) {
         int ch = i;
         int pr = fin_par[k][i];
@@ -262,9 +248,11 @@ public class DependencyDecoder {
     FeatureVector[] fin = new FeatureVector[new_k];
     String[] result = new String[new_k];
     for (int k = 0; k < fin.length; k++) {
-      fin[k] = new FeatureVector();
-      for (int i = 1; i < fin_fv[k].length; i++)
-        fin[k] = fin_fv[k][i].cat(fin[k]);
+      if (withFeatures) {
+        fin[k] = new FeatureVector();
+        for (int i = 1; i < fin_fv[k].length; i++)
+          fin[k] = fin_fv[k][i].cat(fin[k]);
+      }
       result[k] = "";
       for (int i = 1; i < par.length; i++)
         result[k] += fin_par[k][i] + "|" + i
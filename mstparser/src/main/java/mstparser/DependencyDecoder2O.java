@@ -41,13 +41,14 @@ public class DependencyDecoder2O extends DependencyDecoder {
         boolean lDir = ch < par[ch];
         double change = 0.0
                 - probs[lDir ? ch : par[ch]][lDir ? par[ch] : ch][lDir ? 1 : 0]
-                - probs_trips[par[ch]][aSib][ch]
+                - tripProb(probs_trips, par[ch], aSib, ch)
                 - probs_sibs[aSib][ch][aSib == par[ch] ? 0 : 1]
-                - (bSib != ch ? probs_trips[par[ch]][ch][bSib] + probs_sibs[ch][bSib][1] : 0.0)
+                - (bSib != ch ? tripProb(probs_trips, par[ch], ch, bSib) + probs_sibs[ch][bSib][1]
+                        : 0.0)
                 - (pipe.labeled ? (nt_probs[ch][labs[ch]][lDir ? 1 : 0][0] + nt_probs[par[ch]][labs[ch]][lDir ? 1
                         : 0][1])
                         : 0.0)
-                + (bSib != ch ? probs_trips[par[ch]][aSib][bSib]
+                + (bSib != ch ? tripProb(probs_trips, par[ch], aSib, bSib)
                         + probs_sibs[aSib][bSib][aSib == par[ch] ? 0 : 1] : 0.0);
         for (int pa = 0; pa < par.length; pa++) {
           if (ch == pa || pa == par[ch] || isChild[ch][pa])
@@ -57,13 +58,14 @@ public class DependencyDecoder2O extends DependencyDecoder {
           boolean lDir1 = ch < pa;
           double change1 = 0.0
                   + probs[lDir1 ? ch : pa][lDir1 ? pa : ch][lDir1 ? 1 : 0]
-                  + probs_trips[pa][aSib][ch]
+                  + tripProb(probs_trips, pa, aSib, ch)
                   + probs_sibs[aSib][ch][aSib == pa ? 0 : 1]
-                  + (bSib != ch ? probs_trips[pa][ch][bSib] + probs_sibs[ch][bSib][1] : 0.0)
+                  + (bSib != ch ? tripProb(probs_trips, pa, ch, bSib) + probs_sibs[ch][bSib][1]
+                          : 0.0)
                   + (pipe.labeled ? (nt_probs[ch][static_types[pa][ch]][lDir1 ? 1 : 0][0] + nt_probs[pa][static_types[pa][ch]][lDir1 ? 1
                           : 0][1])
                           : 0.0)
-                  - (bSib != ch ? probs_trips[pa][aSib][bSib]
+                  - (bSib != ch ? tripProb(probs_trips, pa, aSib, bSib)
                           + probs_sibs[aSib][bSib][aSib == pa ? 0 : 1] : 0.0);
           if (max < change + change1) {
             max = change + change1;
@@ -115,7 +117,8 @@ public class DependencyDecoder2O extends DependencyDecoder {
     for (int i = 0; i < labs.length; i++)
       inst.deprels[i] = pipe.getType(labs[i]);
 
-    orig[0][0] = ((DependencyPipe2O) pipe).createFeatureVector(inst);
+    // only the final tree's features are rebuilt, and only when decoding with features
+    orig[0][0] = fvs == null ? null : ((DependencyPipe2O) pipe).createFeatureVector(inst);
     orig[0][1] = pars;
 
     return orig;
@@ -176,6 +179,8 @@ public class DependencyDecoder2O extends DependencyDecoder {
     String[] forms = inst.forms;
     String[] pos = inst.postags;
 
+    boolean withFeatures = fvs != null;
+
     int[][] static_types = null;
     if (pipe.labeled) {
       static_types = getTypes(nt_probs, forms.length);
@@ -184,26 +189,26 @@ public class DependencyDecoder2O extends DependencyDecoder {
     KBestParseForest2O pf = new KBestParseForest2O(0, forms.length - 1, inst, K);
 
     for (int s = 0; s < forms.length; s++) {
-      pf.add(s, -1, 0, 0.0, new FeatureVector());
-      pf.add(s, -1, 1, 0.0, new FeatureVector());
+      pf.add(s, -1, 0, 0.0, emptyFV(withFeatures));
+      pf.add(s, -1, 1, 0.0, emptyFV(withFeatures));
     }
 
     for (int j = 1; j < forms.length; j++) {
       for (int s = 0; s < forms.length && s + j < forms.length; s++) {
         int t = s + j;
 
-        FeatureVector prodFV_st = fvs[s][t][0];
-        FeatureVector prodFV_ts = fvs[s][t][1];
+        FeatureVector prodFV_st = withFeatures ? fvs[s][t][0] : null;
+        FeatureVector prodFV_ts = withFeatures ? fvs[s][t][1] : null;
         double prodProb_st = probs[s][t][0];
         double prodProb_ts = probs[s][t][1];
 
         int type1 = pipe.labeled ? static_types[s][t] : 0;
         int type2 = pipe.labeled ? static_types[t][s] : 0;
 
-        FeatureVector nt_fv_s_01 = nt_fvs[s][type1][0][1];
-        FeatureVector nt_fv_s_10 = nt_fvs[s][type2][1][0];
-        FeatureVector nt_fv_t_00 = nt_fvs[t][type1][0][0];
-        FeatureVector nt_fv_t_11 = nt_fvs[t][type2][1][1];
+        FeatureVector nt_fv_s_01 = withFeatures ? nt_fvs[s][type1][0][1] : null;
+        FeatureVector nt_fv_s_10 = withFeatures ? nt_fvs[s][type2][1][0] : null;
+        FeatureVector nt_fv_t_00 = withFeatures ? nt_fvs[t][type1][0][0] : null;
+        FeatureVector nt_fv_t_11 = withFeatures ? nt_fvs[t][type2][1][1] : null;
         double nt_prob_s_01 = nt_probs[s][type1][0][1];
         double nt_prob_s_10 = nt_probs[s][type2][1][0];
         double nt_prob_t_00 = nt_probs[t][type1][0][0];
@@ -216,8 +221,9 @@ public class DependencyDecoder2O extends DependencyDecoder {
           ParseForestItem[] c1 = pf.getItems(s + 1, t, 1, 0);
           if (!(b1 == null || c1 == null)) {
 
-            FeatureVector prodFV_sst = pf.cat(fvs_trips[s][s][t], fvs_sibs[s][t][0]);
-            double prodProb_sst = probs_trips[s][s][t] + probs_sibs[s][t][0];
+            FeatureVector prodFV_sst = withFeatures ? pf.cat(tripFV(fvs_trips, s, s, t),
+                    fvs_sibs[s][t][0]) : null;
+            double prodProb_sst = tripProb(probs_trips, s, s, t) + probs_sibs[s][t][0];
 
             int[][] pairs = pf.getKBestPairs(b1, c1);
 
@@ -238,7 +244,8 @@ public class DependencyDecoder2O extends DependencyDecoder {
               FeatureVector fv_fin = pf.cat(prodFV_st, prodFV_sst);
               if (pipe.labeled) {
                 bc += nt_prob_s_01 + nt_prob_t_00;
-                fv_fin = nt_fv_s_01.cat(nt_fv_t_00.cat(fv_fin));
+                if (withFeatures)
+                  fv_fin = nt_fv_s_01.cat(nt_fv_t_00.cat(fv_fin));
               }
 
               pf.add(s, s, t, type1, 0, 1, bc, fv_fin, b1[comp1], c1[comp2]);
@@ -251,8 +258,9 @@ public class DependencyDecoder2O extends DependencyDecoder {
           c1 = pf.getItems(t, t, 1, 0);
           if (!(b1 == null || c1 == null)) {
 
-            FeatureVector prodFV_stt = pf.cat(fvs_trips[t][t][s], fvs_sibs[t][s][0]);
-            double prodProb_stt = probs_trips[t][t][s] + probs_sibs[t][s][0];
+            FeatureVector prodFV_stt = withFeatures ? pf.cat(tripFV(fvs_trips, t, t, s),
+                    fvs_sibs[t][s][0]) : null;
+            double prodProb_stt = tripProb(probs_trips, t, t, s) + probs_sibs[t][s][0];
 
             int[][] pairs = pf.getKBestPairs(b1, c1);
 
@@ -273,7 +281,8 @@ public class DependencyDecoder2O extends DependencyDecoder {
               FeatureVector fv_fin = pf.cat(prodFV_ts, prodFV_stt);
               if (pipe.labeled) {
                 bc += nt_prob_t_11 + nt_prob_s_10;
-                fv_fin = nt_fv_t_11.cat(nt_fv_s_10.cat(fv_fin));
+                if (withFeatures)
+                  fv_fin = nt_fv_t_11.cat(nt_fv_s_10.cat(fv_fin));
               }
 
               pf.add(s, t, t, type2, 1, 1, bc, fv_fin, b1[comp1], c1[comp2]);
@@ -301,8 +310,10 @@ public class DependencyDecoder2O extends DependencyDecoder {
 
               double bc = b1[comp1].prob + c1[comp2].prob;
 
-              pf.add(s, r, t, -1, 0, 2, bc, new FeatureVector(), b1[comp1], c1[comp2]);
-              pf.add(s, r, t, -1, 1, 2, bc, new FeatureVector(), b1[comp1], c1[comp2]);
+              pf.add(s, r, t, -1, 0, 2, bc, emptyFV(withFeatures), b1[comp1],
+                      c1[comp2]);
+              pf.add(s, r, t, -1, 1, 2, bc, emptyFV(withFeatures), b1[comp1],
+                      c1[comp2]);
             }
           }
         }
@@ -326,13 +337,14 @@ public class DependencyDecoder2O extends DependencyDecoder {
 
               double bc = b1[comp1].prob + c1[comp2].prob;
 
-              bc += prodProb_st + probs_trips[s][r][t] + probs_sibs[r][t][1];
-              FeatureVector fv_fin = pf.cat(prodFV_st,
-                      pf.cat(fvs_trips[s][r][t], fvs_sibs[r][t][1]));
+              bc += prodProb_st + tripProb(probs_trips, s, r, t) + probs_sibs[r][t][1];
+              FeatureVector fv_fin = withFeatures ? pf.cat(prodFV_st,
+                      pf.cat(tripFV(fvs_trips, s, r, t), fvs_sibs[r][t][1])) : null;
 
               if (pipe.labeled) {
                 bc += nt_prob_s_01 + nt_prob_t_00;
-                fv_fin = nt_fv_s_01.cat(nt_fv_t_00.cat(fv_fin));
+                if (withFeatures)
+                  fv_fin = nt_fv_s_01.cat(nt_fv_t_00.cat(fv_fin));
               }
 
               pf.add(s, r, t, type1, 0, 1, bc, fv_fin, b1[comp1], c1[comp2]);
@@ -357,13 +369,14 @@ public class DependencyDecoder2O extends DependencyDecoder {
 
               double bc = b1[comp1].prob + c1[comp2].prob;
 
-              bc += prodProb_ts + probs_trips[t][r][s] + probs_sibs[r][s][1];
+              bc += prodProb_ts + tripProb(probs_trips, t, r, s) + probs_sibs[r][s][1];
 
-              FeatureVector fv_fin = pf.cat(prodFV_ts,
-                      pf.cat(fvs_trips[t][r][s], fvs_sibs[r][s][1]));
+              FeatureVector fv_fin = withFeatures ? pf.cat(prodFV_ts,
+                      pf.cat(tripFV(fvs_trips, t, r, s), fvs_sibs[r][s][1])) : null;
               if (pipe.labeled) {
                 bc += nt_prob_t_11 + nt_prob_s_10;
-                fv_fin = nt_fv_t_11.cat(nt_fv_s_10.cat(fv_fin));
+                if (withFeatures)
+                  fv_fin = nt_fv_t_11.cat(nt_fv_s_10.cat(fv_fin));
               }
 
               pf.add(s, r, t, type2, 1, 1, bc, fv_fin, b1[comp1], c1[comp2]);
@@ -393,7 +406,8 @@ public class DependencyDecoder2O extends DependencyDecoder {
 
                 double bc = b1[comp1].prob + c1[comp2].prob;
 
-                if (!pf.add(s, r, t, -1, 0, 0, bc, new FeatureVector(), b1[comp1], c1[comp2]))
+                if (!pf.add(s, r, t, -1, 0, 0, bc, emptyFV(withFeatures), b1[comp1],
+                        c1[comp2]))
                   break;
               }
             }
@@ -417,7 +431,8 @@ public class DependencyDecoder2O extends DependencyDecoder {
 
                 double bc = b1[comp1].prob + c1[comp2].prob;
 
-                if (!pf.add(s, r, t, -1, 1, 0, bc, new FeatureVector(), b1[comp1], c1[comp2]))
+                if (!pf.add(s, r, t, -1, 1, 0, bc, emptyFV(withFeatures), b1[comp1],
+                        c1[comp2]))
                   break;
               }
             }
@@ -431,4 +446,19 @@ public class DependencyDecoder2O extends DependencyDecoder {
     return pf.getBestParses();
   }
 
+  /**
+   * The score of the trip {@code (par, ch1, ch2)}. Only the rows of the trip arrays whose arc
+   * {@code par -> ch1} survived the head pruning are allocated, the trips of the other rows are
+   * pruned and score negative infinity, see {@link DependencyPipe2O#allocateTrips}.
+   */
+  private static double tripProb(double[][][] probs_trips, int par, int ch1, int ch2) {
+    double[] row = probs_trips[par][ch1];
+    return row != null ? row[ch2] : Double.NEGATIVE_INFINITY;
+  }
+
+  private static FeatureVector tripFV(FeatureVector[][][] fvs_trips, int par, int ch1, int ch2) {
+    FeatureVector[] row = fvs_trips[par][ch1];
+    return row != null ? row[ch2] : null;
+  }
+
 }
@@ -1,5 +1,6 @@
 package mstparser;
 
+import java.io.EOFException;
 import java.io.File;
 import java.io.FileInputStream;
 import java.io.FileNotFoundException;
@@ -10,6 +11,13 @@ import java.io.ObjectInputStream;
 import java.io.ObjectOutputStream;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import mstparser.io.ForestReader;
 
 public class DependencyParser {
 
@@ -31,7 +39,11 @@ public class DependencyParser {
 
     // Set up arrays
     params = new Parameters(pipe.dataAlphabet.size());
-    decoder = options.secondOrder ? new DependencyDecoder2O(pipe) : new DependencyDecoder(pipe);
+    decoder = createDecoder();
+  }
+
+  DependencyDecoder createDecoder() {
+    return options.secondOrder ? new DependencyDecoder2O(pipe) : new DependencyDecoder(pipe);
   }
 
   public void train(int[] instanceLengths, String trainfile, File train_forest) throws IOException {
@@ -39,95 +51,370 @@ public class DependencyParser {
     // System.out.print("About to train. ");
     // System.out.print("Num Feats: " + pipe.dataAlphabet.size());
 
-    int i = 0;
-    for (i = 0; i < options.numIters; i++) {
+    File trip_forest = null;
+    if (options.secondOrder && options.pruneHeads > 0) {
+      trainPruningModel(instanceLengths, train_forest);
+      trip_forest = File.createTempFile("train", ".trips");
+      trip_forest.deleteOnExit();
+      ((DependencyPipe2O) pipe).createTripForest(train_forest, trip_forest, instanceLengths);
+    }
+
+    if (options.trainThreads > 1) {
+      if (options.checkpointFile != null) {
+        System.out.println("Checkpoints are only written when training with a single thread.");
+      }
+      trainParallel(instanceLengths, train_forest, trip_forest);
+      return;
+    }
+
+    int numInstances = instanceLengths.length;
+    File checkpoint = options.checkpointFile != null ? new File(options.checkpointFile) : null;
+    if (checkpoint != null && checkpoint.exists()) {
+      readCheckpoint(checkpoint, numInstances);
+      System.out.println("Resuming training from " + checkpoint + " after " + params.getTime()
+              + " instances.");
+    }
+
+    ForestReader in = null;
+    ForestReader trips = null;
+    try {
+      in = new ForestReader(train_forest);
+      trips = trip_forest != null ? new ForestReader(trip_forest) : null;
 
-      System.out.print(" Iteration " + i);
-      // System.out.println("========================");
-      // System.out.println("Iteration: " + i);
-      // System.out.println("========================");
-      System.out.print("[");
+      int i = 0;
+      for (i = params.getTime() / numInstances; i < options.numIters; i++) {
 
-      long start = System.currentTimeMillis();
+        System.out.print(" Iteration " + i);
+        // System.out.println("========================");
+        // System.out.println("Iteration: " + i);
+        // System.out.println("========================");
+        System.out.print("[");
 
-      trainingIter(instanceLengths, trainfile, train_forest, i + 1);
+        long start = System.currentTimeMillis();
 
-      long end = System.currentTimeMillis();
-      // System.out.println("Training iter took: " + (end-start));
-      System.out.println("|Time:" + (end - start) + "]");
+        in.rewind();
+        if (trips != null) {
+          trips.rewind();
+        }
+        trainingIter(instanceLengths, trainfile, in, trips, params.getTime() % numInstances,
+                checkpoint);
+        if (checkpoint != null) {
+          writeCheckpoint(checkpoint, numInstances);
+        }
+
+        long end = System.currentTimeMillis();
+        // System.out.println("Training iter took: " + (end-start));
+        System.out.println("|Time:" + (end - start) + "]");
+      }
+
+      params.averageParams();
+    } finally {
+      Util.closeQuietly(in);
+      Util.closeQuietly(trips);
     }
 
-    params.averageParams(i * instanceLengths.length);
+  }
+
+  /**
+   * Train the first order model that prunes the heads for the second order model, on the forest,
+   * which only has the first order parts then. The surviving second order parts are written to a
+   * trip forest afterwards, so the second order model is trained on pruned parts from the first
+   * iteration on.
+   */
+  private void trainPruningModel(int[] instanceLengths, File train_forest) throws IOException {
 
+    Parameters pruningParams = new Parameters(pipe.dataAlphabet.size());
+    DependencyDecoder pruningDecoder = new DependencyDecoder(pipe);
+
+    ForestReader in = null;
+    try {
+      in = new ForestReader(train_forest);
+
+      for (int i = 0; i < options.pruneIters; i++) {
+
+        System.out.print(" Pruning iteration " + i);
+        System.out.print("[");
+
+        long start = System.currentTimeMillis();
+
+        in.rewind();
+        for (int j = 0; j < instanceLengths.length; j++) {
+          trainInstance(in, null, j, instanceLengths[j], pruningParams, pruningDecoder, false);
+        }
+
+        long end = System.currentTimeMillis();
+        System.out.print(instanceLengths.length);
+        System.out.println("|Time:" + (end - start) + "]");
+      }
+    } finally {
+      Util.closeQuietly(in);
+    }
+
+    pruningParams.averageParams();
+    ((DependencyPipe2O) pipe).setPruningParams(pruningParams);
   }
 
-  private void trainingIter(int[] instanceLengths, String trainfile, File train_forest, int iter)
-          throws IOException {
+  /**
+   * Train on the instances of one iteration from instance {@code first} on, which is not 0 when
+   * resuming from a checkpoint. A checkpoint is written every {@code checkpoint-interval}
+   * instances if {@code checkpoint} is not {@code null}.
+   */
+  private void trainingIter(int[] instanceLengths, String trainfile, ForestReader in,
+          ForestReader trips, int first, File checkpoint) throws IOException {
+
+    int numInstances = instanceLengths.length;
 
-    int numUpd = 0;
+    for (int i = first; i < numInstances; i++) {
+      if ((i + 1) % 500 == 0) {
+        System.out.print((i + 1) + ",");
+        // System.out.println("  "+(i+1)+" instances");
+      }
+
+      trainInstance(in, trips, i, instanceLengths[i], params, decoder, options.secondOrder);
+
+      if (checkpoint != null && options.checkpointInterval > 0 && i + 1 < numInstances
+              && params.getTime() % options.checkpointInterval == 0) {
+        writeCheckpoint(checkpoint, numInstances);
+      }
+    }
+
+    // System.out.println("");
+    // System.out.println("  "+numInstances+" instances");
+
+    System.out.print(numInstances);
+  }
+
+  /**
+   * Write the whole training state of the parameters, including the running average, so that
+   * training can be resumed from it. The position in the training data follows from the number of
+   * instances trained on so far. The checkpoint is written to a temporary file first, so that an
+   * interrupted write does not destroy the previous checkpoint.
+   */
+  private void writeCheckpoint(File checkpoint, int numInstances) throws IOException {
+    File tmp = new File(checkpoint.getPath() + ".tmp");
+    ObjectOutputStream out = null;
+    try {
+      out = new ObjectOutputStream(new FileOutputStream(tmp));
+      out.writeInt(numInstances);
+      params.writeTrainingState(out);
+      out.close();
+      out = null;
+    } finally {
+      Util.closeQuietly(out);
+    }
+    if (checkpoint.exists() && !checkpoint.delete() || !tmp.renameTo(checkpoint)) {
+      throw new IOException("Unable to write checkpoint " + checkpoint);
+    }
+  }
+
+  private void readCheckpoint(File checkpoint, int numInstances) throws IOException {
     ObjectInputStream in = null;
     try {
-      in = new ObjectInputStream(new FileInputStream(train_forest));
-      boolean evaluateI = true;
+      in = new ObjectInputStream(new FileInputStream(checkpoint));
+      if (in.readInt() != numInstances) {
+        throw new IOException("Checkpoint " + checkpoint + " was written for different training "
+                + "data.");
+      }
+      params.readTrainingState(in);
+    } finally {
+      Util.closeQuietly(in);
+    }
+  }
 
-      int numInstances = instanceLengths.length;
+  /**
+   * Read instance {@code i} of the forest, decode it with the given parameters and update them.
+   * With {@code secondOrder} false, only the first order parts are read, also for a second order
+   * model with head pruning. {@code trips} is the trip forest with the second order parts of such
+   * a model, {@code null} otherwise.
+   */
+  private void trainInstance(ForestReader in, ForestReader trips, int i, int length,
+          Parameters params, DependencyDecoder decoder, boolean secondOrder) throws IOException {
+
+    // Get production crap.
+    FeatureVector[][][] fvs = new FeatureVector[length][length][2];
+    double[][][] probs = new double[length][length][2];
+    FeatureVector[][][][] nt_fvs = new FeatureVector[length][pipe.types.length][2][2];
+    double[][][][] nt_probs = new double[length][pipe.types.length][2][2];
+    FeatureVector[][][] fvs_trips = null;
+    double[][][] probs_trips = null;
+    FeatureVector[][][] fvs_sibs = null;
+    double[][][] probs_sibs = null;
+
+    DependencyInstance inst;
+
+    in.seek(i);
+    if (secondOrder) {
+      // The rows of the trips are only allocated for the arcs that survive the pruning.
+      fvs_trips = new FeatureVector[length][length][];
+      probs_trips = new double[length][length][];
+      fvs_sibs = new FeatureVector[length][length][2];
+      probs_sibs = new double[length][length][2];
+      if (trips != null) {
+        trips.seek(i);
+      }
+      inst = ((DependencyPipe2O) pipe).readInstance(in, trips, length, fvs, probs, fvs_trips,
+              probs_trips, fvs_sibs, probs_sibs, nt_fvs, nt_probs, params);
+    } else {
+      inst = pipe.readInstance(in, length, fvs, probs, nt_fvs, nt_probs, params);
+    }
 
-      for (int i = 0; i < numInstances; i++) {
-        if ((i + 1) % 500 == 0) {
-          System.out.print((i + 1) + ",");
-          // System.out.println("  "+(i+1)+" instances");
-        }
+    int K = options.trainK;
+    Object[][] d = null;
+    if (options.decodeType.equals("proj")) {
+      if (secondOrder) {
+        d = ((DependencyDecoder2O) decoder).decodeProjective(inst, fvs, probs, fvs_trips,
+                probs_trips, fvs_sibs, probs_sibs, nt_fvs, nt_probs, K);
+      } else {
+        d = decoder.decodeProjective(inst, fvs, probs, nt_fvs, nt_probs, K);
+      }
+    }
+    if (options.decodeType.equals("non-proj")) {
+      if (secondOrder) {
+        d = ((DependencyDecoder2O) decoder).decodeNonProjective(inst, fvs, probs, fvs_trips,
+                probs_trips, fvs_sibs, probs_sibs, nt_fvs, nt_probs, K);
+      } else {
+        d = decoder.decodeNonProjective(inst, fvs, probs, nt_fvs, nt_probs, K);
+      }
+    }
+    if (options.updateType.equals("perceptron")) {
+      params.updateParamsPerceptron(inst, d);
+    } else {
+      params.updateParamsMIRA(inst, d);
+    }
+  }
 
-        int length = instanceLengths[i];
+  // /////////////////////////////////////////////////////
+  // Parallel training with iterative parameter mixing
+  // /////////////////////////////////////////////////////
 
-        // Get production crap.
-        FeatureVector[][][] fvs = new FeatureVector[length][length][2];
-        double[][][] probs = new double[length][length][2];
-        FeatureVector[][][][] nt_fvs = new FeatureVector[length][pipe.types.length][2][2];
-        double[][][][] nt_probs = new double[length][pipe.types.length][2][2];
-        FeatureVector[][][] fvs_trips = new FeatureVector[length][length][length];
-        double[][][] probs_trips = new double[length][length][length];
-        FeatureVector[][][] fvs_sibs = new FeatureVector[length][length][2];
-        double[][][] probs_sibs = new double[length][length][2];
+  /**
+   * Train with iterative parameter mixing (McDonald et al., 2010). Every mixing round is split
+   * into contiguous shards, one per worker thread. Each worker starts the round from the mixed
+   * weights with its own {@link Parameters} and decoder, and the weights and totals of the workers
+   * are averaged at the end of the round. There are {@code mixing-rounds} rounds per iteration.
+   */
+  private void trainParallel(int[] instanceLengths, File train_forest, File trip_forest)
+          throws IOException {
 
-        DependencyInstance inst;
+    int numThreads = options.trainThreads;
+    int numInstances = instanceLengths.length;
+    int numRounds = Math.max(1, Math.min(options.mixingRounds, numInstances));
 
-        if (options.secondOrder) {
-          inst = ((DependencyPipe2O) pipe).readInstance(in, length, fvs, probs, fvs_trips,
-                  probs_trips, fvs_sibs, probs_sibs, nt_fvs, nt_probs, params);
-        } else {
-          inst = pipe.readInstance(in, length, fvs, probs, nt_fvs, nt_probs, params);
-        }
+    ExecutorService executor = Executors.newFixedThreadPool(numThreads);
+    TrainingWorker[] workers = new TrainingWorker[numThreads];
+    try {
+      for (int w = 0; w < numThreads; w++) {
+        workers[w] = new TrainingWorker(new ForestReader(train_forest),
+                trip_forest != null ? new ForestReader(trip_forest) : null, instanceLengths);
+      }
+
+      Parameters[] mixture = new Parameters[numThreads];
+      for (int w = 0; w < numThreads; w++) {
+        mixture[w] = workers[w].params;
+      }
 
-        double upd = options.numIters * numInstances - (numInstances * (iter - 1) + (i + 1)) + 1;
-        int K = options.trainK;
-        Object[][] d = null;
-        if (options.decodeType.equals("proj")) {
-          if (options.secondOrder) {
-            d = ((DependencyDecoder2O) decoder).decodeProjective(inst, fvs, probs, fvs_trips,
-                    probs_trips, fvs_sibs, probs_sibs, nt_fvs, nt_probs, K);
-          } else {
-            d = decoder.decodeProjective(inst, fvs, probs, nt_fvs, nt_probs, K);
+      int i = 0;
+      for (i = 0; i < options.numIters; i++) {
+
+        System.out.print(" Iteration " + i);
+        System.out.print("[");
+
+        long start = System.currentTimeMillis();
+
+        for (int round = 0; round < numRounds; round++) {
+          int roundStart = (int) ((long) numInstances * round / numRounds);
+          int roundEnd = (int) ((long) numInstances * (round + 1) / numRounds);
+          int roundLength = roundEnd - roundStart;
+
+          List<Future<Object>> results = new ArrayList<Future<Object>>();
+          for (int w = 0; w < numThreads; w++) {
+            workers[w].startRound(roundStart + (int) ((long) roundLength * w / numThreads),
+                    roundStart + (int) ((long) roundLength * (w + 1) / numThreads));
+            results.add(executor.submit(workers[w]));
           }
-        }
-        if (options.decodeType.equals("non-proj")) {
-          if (options.secondOrder) {
-            d = ((DependencyDecoder2O) decoder).decodeNonProjective(inst, fvs, probs, fvs_trips,
-                    probs_trips, fvs_sibs, probs_sibs, nt_fvs, nt_probs, K);
-          } else {
-            d = decoder.decodeNonProjective(inst, fvs, probs, nt_fvs, nt_probs, K);
+          for (Future<Object> result : results) {
+            waitFor(result);
           }
+
+          params.mixParams(mixture);
         }
-        params.updateParamsMIRA(inst, d, upd);
 
+        long end = System.currentTimeMillis();
+        System.out.print(numInstances);
+        System.out.println("|Time:" + (end - start) + "]");
       }
 
-      // System.out.println("");
-      // System.out.println("  "+numInstances+" instances");
-
-      System.out.print(numInstances);
+      params.averageParams();
     } finally {
-      Util.closeQuietly(in);
+      executor.shutdownNow();
+      for (TrainingWorker worker : workers) {
+        if (worker != null) {
+          Util.closeQuietly(worker.in);
+          Util.closeQuietly(worker.trips);
+        }
+      }
+    }
+  }
+
+  static <T> T waitFor(Future<T> result) throws IOException {
+    try {
+      return result.get();
+    } catch (InterruptedException e) {
+      IOException e2 = new IOException("Interrupted while waiting for a worker.");
+      e2.initCause(e);
+      throw e2;
+    } catch (ExecutionException e) {
+      if (e.getCause() instanceof IOException) {
+        throw (IOException) e.getCause();
+      }
+      IOException e2 = new IOException("Worker failed: " + e.getCause());
+      e2.initCause(e.getCause());
+      throw e2;
+    }
+  }
+
+  /**
+   * Trains on one shard of the forest per mixing round, with its own parameters and decoder.
+   */
+  private class TrainingWorker implements Callable<Object> {
+
+    private final ForestReader in;
+
+    private final ForestReader trips;
+
+    private final int[] instanceLengths;
+
+    private final Parameters params;
+
+    private final DependencyDecoder decoder;
+
+    private int shardStart;
+
+    private int shardEnd;
+
+    TrainingWorker(ForestReader in, ForestReader trips, int[] instanceLengths) {
+      this.in = in;
+      this.trips = trips;
+      this.instanceLengths = instanceLengths;
+      this.params = new Parameters(pipe.dataAlphabet.size());
+      this.decoder = createDecoder();
+    }
+
+    void startRound(int shardStart, int shardEnd) {
+      this.shardStart = shardStart;
+      this.shardEnd = shardEnd;
+      params.startMixingRound(DependencyParser.this.params);
+    }
+
+    public Object call() throws IOException {
+      in.rewind();
+      if (trips != null) {
+        trips.rewind();
+      }
+      for (int i = shardStart; i < shardEnd; i++) {
+        trainInstance(in, trips, i, instanceLengths[i], params, decoder, options.secondOrder);
+      }
+      return null;
     }
   }
 
@@ -141,6 +428,10 @@ public class DependencyParser {
       out.writeObject(params.parameters);
       out.writeObject(pipe.dataAlphabet);
       out.writeObject(pipe.typeAlphabet);
+      if (pipe instanceof DependencyPipe2O) {
+        Parameters pruningParams = ((DependencyPipe2O) pipe).getPruningParams();
+        out.writeObject(pruningParams != null ? pruningParams.parameters : null);
+      }
     } finally {
       Util.closeQuietly(out);
     }
@@ -162,6 +453,11 @@ public class DependencyParser {
       params.parameters = (double[]) is.readObject();
       pipe.dataAlphabet = (Alphabet) is.readObject();
       pipe.typeAlphabet = (Alphabet) is.readObject();
+      if (pipe instanceof DependencyPipe2O) {
+        double[] pruningParams = readOptionalObject(is);
+        ((DependencyPipe2O) pipe).setPruningParams(pruningParams != null ? new Parameters(
+                pruningParams) : null);
+      }
       pipe.closeAlphabets();
     } catch (ClassNotFoundException e) {
       IOException e2 = new IOException("Unable to load model: " + e.getMessage());
@@ -170,6 +466,20 @@ public class DependencyParser {
     }
   }
 
+  /**
+   * Read the next object of the model, or {@code null} at the end of a model written before the
+   * object was added.
+   */
+  @SuppressWarnings("unchecked")
+  private static <T> T readOptionalObject(ObjectInputStream is) throws IOException,
+          ClassNotFoundException {
+    try {
+      return (T) is.readObject();
+    } catch (EOFException e) {
+      return null;
+    }
+  }
+
   // ////////////////////////////////////////////////////
   // Get Best Parses ///////////////////////////////////
   // ////////////////////////////////////////////////////
@@ -217,47 +527,41 @@ public class DependencyParser {
     if (writeOutput) {
       System.out.print("Processing Sentence: ");
     }
-    DependencyInstance instance = pipe.nextInstance();
-    int cnt = 0;
-    while (instance != null) {
-      cnt++;
-      if (writeOutput) {
-        System.out.print(cnt + " ");
-      }
-      String[] forms = instance.forms;
-      String[] formsNoRoot = new String[forms.length - 1];
-      String[] posNoRoot = new String[formsNoRoot.length];
-      String[] labels = new String[formsNoRoot.length];
-      int[] heads = new int[formsNoRoot.length];
-
-      decode(instance, options.testK, params, formsNoRoot, posNoRoot, labels, heads);
-
-      DependencyInstance parsedInstance;
-      if (confEstimator != null) {
-        double[] confidenceScores = confEstimator.estimateConfidence(instance);
-        parsedInstance = new DependencyInstance(formsNoRoot, posNoRoot, labels, heads,
-                confidenceScores);
-      } else {
-        parsedInstance = new DependencyInstance(formsNoRoot, posNoRoot, labels, heads);
+    BatchParser batchParser = null;
+    if (options.testThreads > 1) {
+      batchParser = new BatchParser(this, options.testThreads, confEstimator);
+    }
+
+    try {
+      DependencyInstance instance = pipe.nextInstance();
+      int cnt = 0;
+      while (instance != null) {
+        cnt++;
+        if (writeOutput) {
+          System.out.print(cnt + " ");
+        }
+
+        if (batchParser != null) {
+          // parses come back in input order, once they are done
+          for (DependencyInstance parsedInstance : batchParser.submit(instance)) {
+            handleParse(parsedInstance, allInstances, writeOutput);
+          }
+        } else {
+          handleParse(parse(instance, decoder, confEstimator), allInstances, writeOutput);
+        }
+
+        instance = pipe.nextInstance();
       }
-      if (writeOutput) {
-        pipe.outputInstance(parsedInstance);
+
+      if (batchParser != null) {
+        for (DependencyInstance parsedInstance : batchParser.finish()) {
+          handleParse(parsedInstance, allInstances, writeOutput);
+        }
       }
-      if (allInstances != null) {
-        allInstances.add(parsedInstance);
+    } finally {
+      if (batchParser != null) {
+        batchParser.close();
       }
-
-      // String line1 = ""; String line2 = ""; String line3 = ""; String line4 = "";
-      // for(int j = 1; j < pos.length; j++) {
-      // String[] trip = res[j-1].split("[\\|:]");
-      // line1+= sent[j] + "\t"; line2 += pos[j] + "\t";
-      // line4 += trip[0] + "\t"; line3 += pipe.types[Integer.parseInt(trip[2])] + "\t";
-      // }
-      // pred.write(line1.trim() + "\n" + line2.trim() + "\n"
-      // + (pipe.labeled ? line3.trim() + "\n" : "")
-      // + line4.trim() + "\n\n");
-
-      instance = pipe.nextInstance();
     }
     pipe.close();
 
@@ -268,45 +572,80 @@ public class DependencyParser {
 
   }
 
+  private void handleParse(DependencyInstance parsedInstance,
+          List<DependencyInstance> allInstances, boolean writeOutput) throws IOException {
+    if (writeOutput) {
+      pipe.outputInstance(parsedInstance);
+    }
+    if (allInstances != null) {
+      allInstances.add(parsedInstance);
+    }
+  }
+
+  /**
+   * Parse one instance with the given decoder.
+   * 
+   * @param confEstimator
+   *          adds confidence scores to the parse. Can be {@code null}.
+   */
+  DependencyInstance parse(DependencyInstance instance, DependencyDecoder decoder,
+          ConfidenceEstimator confEstimator) {
+    String[] forms = instance.forms;
+    String[] formsNoRoot = new String[forms.length - 1];
+    String[] posNoRoot = new String[formsNoRoot.length];
+    String[] labels = new String[formsNoRoot.length];
+    int[] heads = new int[formsNoRoot.length];
+
+    decode(instance, options.testK, params, decoder, formsNoRoot, posNoRoot, labels, heads);
+
+    if (confEstimator != null) {
+      double[] confidenceScores = confEstimator.estimateConfidence(instance);
+      return new DependencyInstance(formsNoRoot, posNoRoot, labels, heads, confidenceScores);
+    }
+    return new DependencyInstance(formsNoRoot, posNoRoot, labels, heads);
+  }
+
   // ////////////////////////////////////////////////////
   // Decode single instance
   // ////////////////////////////////////////////////////
   String[] decode(DependencyInstance instance, int K, Parameters params) {
+    return decode(instance, K, params, decoder);
+  }
+
+  private String[] decode(DependencyInstance instance, int K, Parameters params,
+          DependencyDecoder decoder) {
 
     String[] forms = instance.forms;
 
     int length = forms.length;
 
-    FeatureVector[][][] fvs = new FeatureVector[forms.length][forms.length][2];
+    // Only the scores are needed for parsing, so no feature vectors are created.
     double[][][] probs = new double[forms.length][forms.length][2];
-    FeatureVector[][][][] nt_fvs = new FeatureVector[forms.length][pipe.types.length][2][2];
     double[][][][] nt_probs = new double[forms.length][pipe.types.length][2][2];
-    FeatureVector[][][] fvs_trips = new FeatureVector[length][length][length];
-    double[][][] probs_trips = new double[length][length][length];
-    FeatureVector[][][] fvs_sibs = new FeatureVector[length][length][2];
-    double[][][] probs_sibs = new double[length][length][2];
+    double[][][] probs_trips = options.secondOrder ? new double[length][length][] : null;
+    double[][][] probs_sibs = options.secondOrder ? new double[length][length][2] : null;
     if (options.secondOrder) {
-      ((DependencyPipe2O) pipe).fillFeatureVectors(instance, fvs, probs, fvs_trips, probs_trips,
-              fvs_sibs, probs_sibs, nt_fvs, nt_probs, params);
+      ((DependencyPipe2O) pipe).fillFeatureVectors(instance, null, probs, null, probs_trips, null,
+              probs_sibs, null, nt_probs, params);
     } else {
-      pipe.fillFeatureVectors(instance, fvs, probs, nt_fvs, nt_probs, params);
+      pipe.fillFeatureVectors(instance, null, probs, null, nt_probs, params);
     }
 
     Object[][] d = null;
     if (options.decodeType.equals("proj")) {
       if (options.secondOrder) {
-        d = ((DependencyDecoder2O) decoder).decodeProjective(instance, fvs, probs, fvs_trips,
-                probs_trips, fvs_sibs, probs_sibs, nt_fvs, nt_probs, K);
+        d = ((DependencyDecoder2O) decoder).decodeProjective(instance, null, probs, null,
+                probs_trips, null, probs_sibs, null, nt_probs, K);
       } else {
-        d = decoder.decodeProjective(instance, fvs, probs, nt_fvs, nt_probs, K);
+        d = decoder.decodeProjective(instance, null, probs, null, nt_probs, K);
       }
     }
     if (options.decodeType.equals("non-proj")) {
       if (options.secondOrder) {
-        d = ((DependencyDecoder2O) decoder).decodeNonProjective(instance, fvs, probs, fvs_trips,
-                probs_trips, fvs_sibs, probs_sibs, nt_fvs, nt_probs, K);
+        d = ((DependencyDecoder2O) decoder).decodeNonProjective(instance, null, probs, null,
+                probs_trips, null, probs_sibs, null, nt_probs, K);
       } else {
-        d = decoder.decodeNonProjective(instance, fvs, probs, nt_fvs, nt_probs, K);
+        d = decoder.decodeNonProjective(instance, null, probs, null, nt_probs, K);
       }
     }
 
@@ -316,10 +655,16 @@ public class DependencyParser {
 
   public void decode(DependencyInstance instance, int K, Parameters params, String[] formsNoRoot,
           String[] posNoRoot, String[] labels, int[] heads) {
+    decode(instance, K, params, decoder, formsNoRoot, posNoRoot, labels, heads);
+  }
+
+  private void decode(DependencyInstance instance, int K, Parameters params,
+          DependencyDecoder decoder, String[] formsNoRoot, String[] posNoRoot, String[] labels,
+          int[] heads) {
 
     String[] forms = instance.forms;
 
-    String[] res = decode(instance, K, params);
+    String[] res = decode(instance, K, params, decoder);
 
     String[] pos = instance.cpostags;
 
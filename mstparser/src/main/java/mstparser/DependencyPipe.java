@@ -3,13 +3,12 @@ package mstparser;
 import gnu.trove.TIntArrayList;
 
 import java.io.File;
-import java.io.FileOutputStream;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
 
 import mstparser.io.DependencyReader;
 import mstparser.io.DependencyWriter;
+import mstparser.io.ForestReader;
+import mstparser.io.ForestWriter;
 
 public class DependencyPipe {
 
@@ -29,7 +28,7 @@ public class DependencyPipe {
 
   private boolean isCONLL = true;
 
-  private final ParserOptions options;
+  protected final ParserOptions options;
 
   public DependencyPipe(ParserOptions options) throws IOException {
     this.options = options;
@@ -38,7 +37,7 @@ public class DependencyPipe {
       isCONLL = false;
     }
 
-    dataAlphabet = new Alphabet();
+    dataAlphabet = options.hashBits > 0 ? new HashAlphabet(options.hashBits) : new Alphabet();
     typeAlphabet = new Alphabet();
 
     depReader = DependencyReader.createDependencyReader(options.format, options.discourseMode);
@@ -98,8 +97,7 @@ public class DependencyPipe {
 
     TIntArrayList lengths = new TIntArrayList();
 
-    ObjectOutputStream out = options.createForest ? new ObjectOutputStream(new FileOutputStream(
-            featFileName)) : null;
+    ForestWriter out = options.createForest ? new ForestWriter(featFileName) : null;
 
     DependencyInstance instance = depReader.getNext();
     int num1 = 0;
@@ -150,6 +148,9 @@ public class DependencyPipe {
 
     labeled = depReader.startReading(file);
 
+    // A hashed alphabet needs no features, only the edge labels are collected.
+    boolean hashed = dataAlphabet instanceof HashAlphabet;
+
     DependencyInstance instance = depReader.getNext();
 
     while (instance != null) {
@@ -159,7 +160,9 @@ public class DependencyPipe {
         typeAlphabet.lookupIndex(lab);
       }
 
-      createFeatureVector(instance);
+      if (!hashed) {
+        createFeatureVector(instance);
+      }
 
       instance = depReader.getNext();
     }
@@ -184,14 +187,14 @@ public class DependencyPipe {
   }
 
   // add with default 1.0
-  public final void add(String feat, FeatureVector fv) {
+  public final void add(String feat, FeatureSink fv) {
     int num = dataAlphabet.lookupIndex(feat);
     if (num >= 0) {
       fv.add(num, 1.0);
     }
   }
 
-  public final void add(String feat, double val, FeatureVector fv) {
+  public final void add(String feat, double val, FeatureSink fv) {
     int num = dataAlphabet.lookupIndex(feat);
     if (num >= 0) {
       fv.add(num, val);
@@ -199,6 +202,15 @@ public class DependencyPipe {
   }
 
   public FeatureVector createFeatureVector(DependencyInstance instance) {
+    FeatureVector fv = createFirstOrderFeatureVector(instance);
+    addExtendedFeatures(instance, fv);
+    return fv;
+  }
+
+  /**
+   * The first order and labeled features of the tree of the instance, without the extended ones.
+   */
+  public FeatureVector createFirstOrderFeatureVector(DependencyInstance instance) {
 
     final int instanceLength = instance.length();
 
@@ -220,8 +232,6 @@ public class DependencyPipe {
       }
     }
 
-    addExtendedFeatures(instance, fv);
-
     return fv;
   }
 
@@ -229,7 +239,7 @@ public class DependencyPipe {
   }
 
   public void addCoreFeatures(DependencyInstance instance, int small, int large, boolean attR,
-          FeatureVector fv) {
+          FeatureSink fv) {
 
     String[] forms = instance.forms;
     String[] pos = instance.postags;
@@ -319,7 +329,7 @@ public class DependencyPipe {
   }
 
   private final void addLinearFeatures(String type, String[] obsVals, int first, int second,
-          String attachDistance, FeatureVector fv) {
+          String attachDistance, FeatureSink fv) {
 
     String pLeft = first > 0 ? obsVals[first - 1] : "STR";
     String pRight = second < obsVals.length - 1 ? obsVals[second + 1] : "END";
@@ -342,7 +352,7 @@ public class DependencyPipe {
   }
 
   private final void addCorePosFeatures(String prefix, String leftOf1, String one, String rightOf1,
-          String leftOf2, String two, String rightOf2, String attachDistance, FeatureVector fv) {
+          String leftOf2, String two, String rightOf2, String attachDistance, FeatureSink fv) {
 
     // feature posL-1 posL posR posR+1
 
@@ -424,7 +434,7 @@ public class DependencyPipe {
    * observations.)
    **/
   private final void addTwoObsFeatures(String prefix, String item1F1, String item1F2,
-          String item2F1, String item2F2, String attachDistance, FeatureVector fv) {
+          String item2F1, String item2F2, String attachDistance, FeatureSink fv) {
 
     StringBuilder feat = new StringBuilder(prefix + "2FF1=" + item1F1);
     add(feat.toString(), fv);
@@ -495,7 +505,7 @@ public class DependencyPipe {
   }
 
   public void addLabeledFeatures(DependencyInstance instance, int word, String type, boolean attR,
-          boolean childFeatures, FeatureVector fv) {
+          boolean childFeatures, FeatureSink fv) {
 
     if (!labeled) {
       return;
@@ -536,7 +546,7 @@ public class DependencyPipe {
   }
 
   private void addDiscourseFeatures(DependencyInstance instance, int small, int large,
-          int headIndex, int childIndex, String attDist, FeatureVector fv) {
+          int headIndex, int childIndex, String attDist, FeatureSink fv) {
 
     addLinearFeatures("FORM", instance.forms, small, large, attDist, fv);
     addLinearFeatures("LEMMA", instance.lemmas, small, large, attDist, fv);
@@ -634,12 +644,18 @@ public class DependencyPipe {
     }
   }
 
+  /**
+   * Fill in the scores of all edges and labels of the instance. If {@code fvs} and {@code nt_fvs}
+   * are {@code null}, only the scores are computed, without creating any feature vectors.
+   */
   public void fillFeatureVectors(DependencyInstance instance, FeatureVector[][][] fvs,
           double[][][] probs, FeatureVector[][][][] nt_fvs, double[][][][] nt_probs,
           Parameters params) {
 
     final int instanceLength = instance.length();
 
+    FeatureScorer scorer = fvs == null ? new FeatureScorer(params.parameters) : null;
+
     // Get production crap.
     for (int w1 = 0; w1 < instanceLength; w1++) {
       for (int w2 = w1 + 1; w2 < instanceLength; w2++) {
@@ -649,6 +665,13 @@ public class DependencyPipe {
           int childInt = attR ? w2 : w1;
           int parInt = attR ? w1 : w2;
 
+          if (scorer != null) {
+            scorer.clear();
+            addCoreFeatures(instance, w1, w2, attR, scorer);
+            probs[w1][w2][ph] = scorer.getScore();
+            continue;
+          }
+
           FeatureVector prodFV = new FeatureVector();
           addCoreFeatures(instance, w1, w2, attR, prodFV);
           double prodProb = params.getScore(prodFV);
@@ -669,6 +692,13 @@ public class DependencyPipe {
 
               boolean child = ch == 0 ? true : false;
 
+              if (scorer != null) {
+                scorer.clear();
+                addLabeledFeatures(instance, w1, type, attR, child, scorer);
+                nt_probs[w1][t][ph][ch] = scorer.getScore();
+                continue;
+              }
+
               FeatureVector prodFV = new FeatureVector();
               addLabeledFeatures(instance, w1, type, attR, child, prodFV);
 
@@ -684,57 +714,46 @@ public class DependencyPipe {
   }
 
   /**
-   * Write an instance to an output stream for later reading.
+   * Write an instance to a feature forest for later reading.
    * 
    **/
-  protected void writeInstance(DependencyInstance instance, ObjectOutputStream out) {
+  protected void writeInstance(DependencyInstance instance, ForestWriter out) throws IOException {
 
     int instanceLength = instance.length();
 
-    try {
+    out.startInstance();
 
-      for (int w1 = 0; w1 < instanceLength; w1++) {
-        for (int w2 = w1 + 1; w2 < instanceLength; w2++) {
-          for (int ph = 0; ph < 2; ph++) {
-            boolean attR = ph == 0 ? true : false;
-            FeatureVector prodFV = new FeatureVector();
-            addCoreFeatures(instance, w1, w2, attR, prodFV);
-            out.writeObject(prodFV.keys());
-          }
+    for (int w1 = 0; w1 < instanceLength; w1++) {
+      for (int w2 = w1 + 1; w2 < instanceLength; w2++) {
+        for (int ph = 0; ph < 2; ph++) {
+          boolean attR = ph == 0 ? true : false;
+          FeatureVector prodFV = new FeatureVector();
+          addCoreFeatures(instance, w1, w2, attR, prodFV);
+          out.writeKeys(prodFV.keys());
         }
       }
-      out.writeInt(-3);
+    }
 
-      if (labeled) {
-        for (int w1 = 0; w1 < instanceLength; w1++) {
-          for (String type : types) {
-            for (int ph = 0; ph < 2; ph++) {
-              boolean attR = ph == 0 ? true : false;
-              for (int ch = 0; ch < 2; ch++) {
-                boolean child = ch == 0 ? true : false;
-                FeatureVector prodFV = new FeatureVector();
-                addLabeledFeatures(instance, w1, type, attR, child, prodFV);
-                out.writeObject(prodFV.keys());
-              }
+    if (labeled) {
+      for (int w1 = 0; w1 < instanceLength; w1++) {
+        for (String type : types) {
+          for (int ph = 0; ph < 2; ph++) {
+            boolean attR = ph == 0 ? true : false;
+            for (int ch = 0; ch < 2; ch++) {
+              boolean child = ch == 0 ? true : false;
+              FeatureVector prodFV = new FeatureVector();
+              addLabeledFeatures(instance, w1, type, attR, child, prodFV);
+              out.writeKeys(prodFV.keys());
             }
           }
         }
-        out.writeInt(-3);
       }
-
-      writeExtendedFeatures(instance, out);
-
-      out.writeObject(instance.fv.keys());
-      out.writeInt(-4);
-
-      out.writeObject(instance);
-      out.writeInt(-1);
-
-      out.reset();
-
-    } catch (IOException e) {
     }
 
+    out.writeKeys(instance.fv.keys());
+    out.writeInstance(instance);
+
+    writeExtendedFeatures(instance, out);
   }
 
   /**
@@ -742,85 +761,67 @@ public class DependencyPipe {
    * DependencyPipe, nothing happens.
    * 
    */
-  protected void writeExtendedFeatures(DependencyInstance instance, ObjectOutputStream out)
+  protected void writeExtendedFeatures(DependencyInstance instance, ForestWriter out)
           throws IOException {
   }
 
   /**
-   * Read an instance from an input stream.
+   * Read an instance from a feature forest. The reader has to be positioned at the start of the
+   * instance, see {@link ForestReader#seek(int)}.
    * 
    **/
-  public DependencyInstance readInstance(ObjectInputStream in, int length, FeatureVector[][][] fvs,
+  public DependencyInstance readInstance(ForestReader in, int length, FeatureVector[][][] fvs,
           double[][][] probs, FeatureVector[][][][] nt_fvs, double[][][][] nt_probs,
           Parameters params) throws IOException {
 
-    try {
+    readCoreFeatures(in, length, fvs, probs, nt_fvs, nt_probs, params);
 
-      // Get production crap.
-      for (int w1 = 0; w1 < length; w1++) {
-        for (int w2 = w1 + 1; w2 < length; w2++) {
-          for (int ph = 0; ph < 2; ph++) {
-            FeatureVector prodFV = new FeatureVector((int[]) in.readObject());
-            double prodProb = params.getScore(prodFV);
-            fvs[w1][w2][ph] = prodFV;
-            probs[w1][w2][ph] = prodProb;
-          }
+    return readMarshalledInstance(in);
+  }
+
+  /**
+   * Read the first order and labeled feature blocks of the current instance.
+   */
+  protected final void readCoreFeatures(ForestReader in, int length, FeatureVector[][][] fvs,
+          double[][][] probs, FeatureVector[][][][] nt_fvs, double[][][][] nt_probs,
+          Parameters params) {
+
+    // Get production crap.
+    for (int w1 = 0; w1 < length; w1++) {
+      for (int w2 = w1 + 1; w2 < length; w2++) {
+        for (int ph = 0; ph < 2; ph++) {
+          FeatureVector prodFV = new FeatureVector(in.readKeys());
+          double prodProb = params.getScore(prodFV);
+          fvs[w1][w2][ph] = prodFV;
+          probs[w1][w2][ph] = prodProb;
         }
       }
-      int last = in.readInt();
-      if (last != -3) {
-        System.out.println("Error reading file.");
-        System.exit(0);
-      }
+    }
 
-      if (labeled) {
-        for (int w1 = 0; w1 < length; w1++) {
-          for (int t = 0; t < types.length; t++) {
-            String type = types[t];
-
-            for (int ph = 0; ph < 2; ph++) {
-              for (int ch = 0; ch < 2; ch++) {
-                FeatureVector prodFV = new FeatureVector((int[]) in.readObject());
-                double nt_prob = params.getScore(prodFV);
-                nt_fvs[w1][t][ph][ch] = prodFV;
-                nt_probs[w1][t][ph][ch] = nt_prob;
-              }
+    if (labeled) {
+      for (int w1 = 0; w1 < length; w1++) {
+        for (int t = 0; t < types.length; t++) {
+          for (int ph = 0; ph < 2; ph++) {
+            for (int ch = 0; ch < 2; ch++) {
+              FeatureVector prodFV = new FeatureVector(in.readKeys());
+              double nt_prob = params.getScore(prodFV);
+              nt_fvs[w1][t][ph][ch] = prodFV;
+              nt_probs[w1][t][ph][ch] = nt_prob;
             }
           }
         }
-        last = in.readInt();
-        if (last != -3) {
-          System.out.println("Error reading file.");
-          System.exit(0);
-        }
       }
-
-      FeatureVector nfv = new FeatureVector((int[]) in.readObject());
-      last = in.readInt();
-      if (last != -4) {
-        System.out.println("Error reading file.");
-        System.exit(0);
-      }
-
-      DependencyInstance marshalledDI;
-      marshalledDI = (DependencyInstance) in.readObject();
-      marshalledDI.setFeatureVector(nfv);
-
-      last = in.readInt();
-      if (last != -1) {
-        System.out.println("Error reading file.");
-        System.exit(0);
-      }
-
-      return marshalledDI;
-
-    } catch (ClassNotFoundException e) {
-      System.out.println("Error reading file.");
-      System.exit(0);
     }
+  }
 
-    // this won't happen, but it takes care of compilation complaints
-    return null;
+  /**
+   * Read the gold feature vector and the instance itself, which close every instance.
+   */
+  protected final DependencyInstance readMarshalledInstance(ForestReader in) throws IOException {
+    FeatureVector nfv = new FeatureVector(in.readKeys());
+    DependencyInstance marshalledDI = in.readInstance();
+    marshalledDI.setFeatureVector(nfv);
+    return marshalledDI;
   }
 
   /**
@@ -830,7 +831,7 @@ public class DependencyPipe {
    * 
    */
   private final void addOldMSTStemFeatures(String hLemma, String headP, String cLemma,
-          String childP, String attDist, int hL, int cL, FeatureVector fv) {
+          String childP, String attDist, int hL, int cL, FeatureSink fv) {
 
     String all = hLemma + " " + headP + " " + cLemma + " " + childP;
     String hPos = headP + " " + cLemma + " " + childP;
@@ -1,11 +1,18 @@
 package mstparser;
 
+import gnu.trove.TIntArrayList;
+
+import java.io.File;
 import java.io.IOException;
-import java.io.ObjectInputStream;
-import java.io.ObjectOutputStream;
+import java.util.Arrays;
+
+import mstparser.io.ForestReader;
+import mstparser.io.ForestWriter;
 
 public class DependencyPipe2O extends DependencyPipe {
 
+  private Parameters pruningParams;
+
   public DependencyPipe2O(ParserOptions options) throws IOException {
     super(options);
   }
@@ -40,6 +47,12 @@ public class DependencyPipe2O extends DependencyPipe {
     }
   }
 
+  /**
+   * Fill in the scores of all first and second order parts of the instance. If the feature vector
+   * arrays are {@code null}, only the scores are computed, without creating any feature vectors.
+   * The rows of the trip arrays are allocated here, so {@code fvs_trips} and {@code probs_trips}
+   * only need their first two dimensions, see {@link #allocateTrips}.
+   */
   public void fillFeatureVectors(DependencyInstance instance, FeatureVector[][][] fvs,
           double[][][] probs, FeatureVector[][][] fvs_trips, double[][][] probs_trips,
           FeatureVector[][][] fvs_sibs, double[][][] probs_sibs, FeatureVector[][][][] nt_fvs,
@@ -49,23 +62,32 @@ public class DependencyPipe2O extends DependencyPipe {
 
     final int instanceLength = instance.length();
 
+    boolean[][] keep = null;
+    if (isPruning()) {
+      double[][][] pruningProbs = new double[instanceLength][instanceLength][2];
+      double[][][][] pruningNtProbs = new double[instanceLength][types.length][2][2];
+      super.fillFeatureVectors(instance, null, pruningProbs, null, pruningNtProbs, pruningParams);
+      keep = pruneHeads(instanceLength, pruningProbs, pruningNtProbs, null);
+      removePrunedArcs(instanceLength, keep, probs);
+    }
+
+    allocateTrips(instanceLength, keep, fvs_trips, probs_trips);
+
+    FeatureScorer scorer = fvs_trips == null ? new FeatureScorer(params.parameters) : null;
+
     for (int w1 = 0; w1 < instanceLength; w1++) {
       for (int w2 = w1; w2 < instanceLength; w2++) {
         for (int w3 = w2 + 1; w3 < instanceLength; w3++) {
-          FeatureVector prodFV = new FeatureVector();
-          addTripFeatures(instance, w1, w2, w3, prodFV);
-          double prodProb = params.getScore(prodFV);
-          fvs_trips[w1][w2][w3] = prodFV;
-          probs_trips[w1][w2][w3] = prodProb;
+          if (!isPruned(keep, w1, w2, w3)) {
+            fillTrip(instance, w1, w2, w3, fvs_trips, probs_trips, scorer, params);
+          }
         }
       }
       for (int w2 = w1; w2 >= 0; w2--) {
         for (int w3 = w2 - 1; w3 >= 0; w3--) {
-          FeatureVector prodFV = new FeatureVector();
-          addTripFeatures(instance, w1, w2, w3, prodFV);
-          double prodProb = params.getScore(prodFV);
-          fvs_trips[w1][w2][w3] = prodFV;
-          probs_trips[w1][w2][w3] = prodProb;
+          if (!isPruned(keep, w1, w2, w3)) {
+            fillTrip(instance, w1, w2, w3, fvs_trips, probs_trips, scorer, params);
+          }
         }
       }
     }
@@ -74,6 +96,12 @@ public class DependencyPipe2O extends DependencyPipe {
       for (int w2 = 0; w2 < instanceLength; w2++) {
         for (int wh = 0; wh < 2; wh++) {
           if (w1 != w2) {
+            if (scorer != null) {
+              scorer.clear();
+              addSiblingFeatures(instance, w1, w2, wh == 0, scorer);
+              probs_sibs[w1][w2][wh] = scorer.getScore();
+              continue;
+            }
             FeatureVector prodFV = new FeatureVector();
             addSiblingFeatures(instance, w1, w2, wh == 0, prodFV);
             double prodProb = params.getScore(prodFV);
@@ -85,8 +113,148 @@ public class DependencyPipe2O extends DependencyPipe {
     }
   }
 
+  /**
+   * The first order model whose arc scores decide which heads survive the pruning, {@code null} to
+   * score all second order parts. It is trained separately, since the first order weights of the
+   * second order model are a poor ranking of the arcs on their own.
+   */
+  public Parameters getPruningParams() {
+    return pruningParams;
+  }
+
+  public void setPruningParams(Parameters pruningParams) {
+    this.pruningParams = pruningParams;
+  }
+
+  private boolean isPruning() {
+    return pruningParams != null && options.pruneHeads > 0;
+  }
+
+  /**
+   * Select the {@code options.pruneHeads} best scoring heads of every token, so that second order
+   * parts only need to be scored for the surviving arcs. An arc is scored by its first order score
+   * plus the score of its best label, under the pruning model. Attachment to the root is always
+   * kept, so that a projective tree over the surviving arcs exists, and so is the gold head if
+   * given.
+   *
+   * @return {@code keep[head][child]} for every surviving arc.
+   */
+  protected boolean[][] pruneHeads(int length, double[][][] pruningProbs,
+          double[][][][] pruningNtProbs, int[] goldHeads) {
+
+    boolean[][] keep = new boolean[length][length];
+    double[] scores = new double[length];
+
+    for (int ch = 1; ch < length; ch++) {
+      for (int par = 0; par < length; par++) {
+        scores[par] = par == ch ? Double.NEGATIVE_INFINITY : arcScore(par, ch, pruningProbs,
+                pruningNtProbs);
+      }
+      for (int k = 0; k < options.pruneHeads; k++) {
+        int best = -1;
+        for (int par = 0; par < length; par++) {
+          if (scores[par] > Double.NEGATIVE_INFINITY && (best < 0 || scores[par] > scores[best])) {
+            best = par;
+          }
+        }
+        if (best < 0) {
+          break;
+        }
+        keep[best][ch] = true;
+        scores[best] = Double.NEGATIVE_INFINITY;
+      }
+      keep[0][ch] = true;
+      if (goldHeads != null && goldHeads[ch] >= 0) {
+        keep[goldHeads[ch]][ch] = true;
+      }
+    }
+    return keep;
+  }
+
+  /**
+   * Set the first order scores of the pruned arcs to negative infinity.
+   */
+  private static void removePrunedArcs(int length, boolean[][] keep, double[][][] probs) {
+    for (int w1 = 0; w1 < length; w1++) {
+      for (int w2 = w1 + 1; w2 < length; w2++) {
+        if (!keep[w1][w2]) {
+          probs[w1][w2][0] = Double.NEGATIVE_INFINITY;
+        }
+        if (!keep[w2][w1]) {
+          probs[w1][w2][1] = Double.NEGATIVE_INFINITY;
+        }
+      }
+    }
+  }
+
+  private double arcScore(int par, int ch, double[][][] probs, double[][][][] nt_probs) {
+    int small = par < ch ? par : ch;
+    int large = par < ch ? ch : par;
+    int ph = par < ch ? 0 : 1;
+    double score = probs[small][large][ph];
+    if (labeled) {
+      double best = Double.NEGATIVE_INFINITY;
+      for (int t = 0; t < types.length; t++) {
+        best = Math.max(best, nt_probs[par][t][ph][1] + nt_probs[ch][t][ph][0]);
+      }
+      score += best;
+    }
+    return score;
+  }
+
+  /**
+   * A trip is pruned if {@code w1} is not a surviving head of {@code w3}, or of {@code w2} unless
+   * {@code w2} is the start marker.
+   */
+  private static boolean isPruned(boolean[][] keep, int w1, int w2, int w3) {
+    return keep != null && (!keep[w1][w3] || (w2 != w1 && !keep[w1][w2]));
+  }
+
+  /**
+   * Allocate the rows {@code [w1][w2]} of the trip arrays, for the start marker {@code w2 == w1}
+   * and for every arc {@code w1 -> w2} that survives the pruning, or for all arcs if {@code keep}
+   * is {@code null}. The rows of pruned arcs stay {@code null}, so the trip arrays take
+   * {@code O(n^2 K)} instead of {@code O(n^3)} space with {@code K} heads per token. The trips of
+   * a row score negative infinity until they are filled in. {@code fvs_trips} may be {@code null}.
+   */
+  static void allocateTrips(int length, boolean[][] keep, FeatureVector[][][] fvs_trips,
+          double[][][] probs_trips) {
+    for (int w1 = 0; w1 < length; w1++) {
+      for (int w2 = 0; w2 < length; w2++) {
+        if (w2 != w1 && keep != null && !keep[w1][w2]) {
+          probs_trips[w1][w2] = null;
+          if (fvs_trips != null) {
+            fvs_trips[w1][w2] = null;
+          }
+          continue;
+        }
+        probs_trips[w1][w2] = new double[length];
+        Arrays.fill(probs_trips[w1][w2], Double.NEGATIVE_INFINITY);
+        if (fvs_trips != null) {
+          fvs_trips[w1][w2] = new FeatureVector[length];
+        }
+      }
+    }
+  }
+
+  private void fillTrip(DependencyInstance instance, int w1, int w2, int w3,
+          FeatureVector[][][] fvs_trips, double[][][] probs_trips, FeatureScorer scorer,
+          Parameters params) {
+    if (scorer != null) {
+      scorer.clear();
+      addTripFeatures(instance, w1, w2, w3, scorer);
+      probs_trips[w1][w2][w3] = scorer.getScore();
+      return;
+    }
+    FeatureVector prodFV = new FeatureVector();
+    addTripFeatures(instance, w1, w2, w3, prodFV);
+    double prodProb = params.getScore(prodFV);
+    fvs_trips[w1][w2][w3] = prodFV;
+    probs_trips[w1][w2][w3] = prodProb;
+  }
+
   private final void addSiblingFeatures(DependencyInstance instance, int ch1, int ch2,
-          boolean isST, FeatureVector fv) {
+          boolean isST, FeatureSink fv) {
 
     String[] forms = instance.forms;
     String[] pos = instance.postags;
@@ -130,7 +298,7 @@ public class DependencyPipe2O extends DependencyPipe {
   }
 
   private final void addTripFeatures(DependencyInstance instance, int par, int ch1, int ch2,
-          FeatureVector fv) {
+          FeatureSink fv) {
 
     String[] pos = instance.postags;
 
@@ -147,162 +315,208 @@ public class DependencyPipe2O extends DependencyPipe {
 
   }
 
+
   /**
-   * Write out the second order features.
-   * 
+   * Write out the second order features. With head pruning they are left out of the forest, since
+   * the pruning model that decides which of them survive is trained on the first order parts of
+   * this forest. They are written to a separate trip forest afterwards, see
+   * {@link #createTripForest}.
+   *
    **/
   @Override
-  protected void writeExtendedFeatures(DependencyInstance instance, ObjectOutputStream out)
+  protected void writeExtendedFeatures(DependencyInstance instance, ForestWriter out)
           throws IOException {
+    if (options.pruneHeads > 0) {
+      return;
+    }
+    writeSecondOrderParts(instance, null, out);
+  }
+
+  /**
+   * Write the trips that survive the pruning, all of them if {@code keep} is {@code null}, followed
+   * by all sibling pairs. Features are only extracted for the surviving trips.
+   */
+  private void writeSecondOrderParts(DependencyInstance instance, boolean[][] keep,
+          ForestWriter out) throws IOException {
 
     final int instanceLength = instance.length();
 
     for (int w1 = 0; w1 < instanceLength; w1++) {
       for (int w2 = w1; w2 < instanceLength; w2++) {
         for (int w3 = w2 + 1; w3 < instanceLength; w3++) {
-          FeatureVector prodFV = new FeatureVector();
-          addTripFeatures(instance, w1, w2, w3, prodFV);
-          out.writeObject(prodFV.keys());
+          if (!isPruned(keep, w1, w2, w3)) {
+            FeatureVector prodFV = new FeatureVector();
+            addTripFeatures(instance, w1, w2, w3, prodFV);
+            out.writeKeys(prodFV.keys());
+          }
         }
       }
       for (int w2 = w1; w2 >= 0; w2--) {
         for (int w3 = w2 - 1; w3 >= 0; w3--) {
-          FeatureVector prodFV = new FeatureVector();
-          addTripFeatures(instance, w1, w2, w3, prodFV);
-          out.writeObject(prodFV.keys());
+          if (!isPruned(keep, w1, w2, w3)) {
+            FeatureVector prodFV = new FeatureVector();
+            addTripFeatures(instance, w1, w2, w3, prodFV);
+            out.writeKeys(prodFV.keys());
+          }
         }
       }
     }
 
-    out.writeInt(-3);
-
     for (int w1 = 0; w1 < instanceLength; w1++) {
       for (int w2 = 0; w2 < instanceLength; w2++) {
         for (int wh = 0; wh < 2; wh++) {
           if (w1 != w2) {
             FeatureVector prodFV = new FeatureVector();
             addSiblingFeatures(instance, w1, w2, wh == 0, prodFV);
-            out.writeObject(prodFV.keys());
+            out.writeKeys(prodFV.keys());
           }
         }
       }
     }
-
-    out.writeInt(-3);
   }
 
-  public DependencyInstance readInstance(ObjectInputStream in, int length, FeatureVector[][][] fvs,
-          double[][][] probs, FeatureVector[][][] fvs_trips, double[][][] probs_trips,
-          FeatureVector[][][] fvs_sibs, double[][][] probs_sibs, FeatureVector[][][][] nt_fvs,
-          double[][][][] nt_probs, Parameters params) throws IOException {
+  /**
+   * Write the second order parts of every instance of a first order forest to {@code tripForest},
+   * pruned with the pruning model. Each instance starts with the surviving arcs, as
+   * {@code head * length + child}, and the gold heads always survive, so that the gold tree can be
+   * reached during training. The pruning model must be set.
+   */
+  public void createTripForest(File forest, File tripForest, int[] instanceLengths)
+          throws IOException {
 
+    ForestReader in = null;
+    ForestWriter out = null;
     try {
-      // Get production crap.
-      for (int w1 = 0; w1 < length; w1++) {
-        for (int w2 = w1 + 1; w2 < length; w2++) {
-          for (int ph = 0; ph < 2; ph++) {
-            FeatureVector prodFV = new FeatureVector((int[]) in.readObject());
-            double prodProb = params.getScore(prodFV);
-            fvs[w1][w2][ph] = prodFV;
-            probs[w1][w2][ph] = prodProb;
-          }
-        }
-      }
-      int last = in.readInt();
-      if (last != -3) {
-        System.out.println("Error reading file.");
-        System.exit(0);
+      in = new ForestReader(forest);
+      out = new ForestWriter(tripForest);
+
+      for (int i = 0; i < instanceLengths.length; i++) {
+        int length = instanceLengths[i];
+        FeatureVector[][][] fvs = new FeatureVector[length][length][2];
+        double[][][] probs = new double[length][length][2];
+        FeatureVector[][][][] nt_fvs = new FeatureVector[length][types.length][2][2];
+        double[][][][] nt_probs = new double[length][types.length][2][2];
+
+        in.seek(i);
+        readCoreFeatures(in, length, fvs, probs, nt_fvs, nt_probs, pruningParams);
+        DependencyInstance instance = readMarshalledInstance(in);
+        boolean[][] keep = pruneHeads(length, probs, nt_probs, instance.heads);
+
+        out.startInstance();
+        out.writeKeys(encodeArcs(length, keep));
+        writeSecondOrderParts(instance, keep, out);
       }
 
-      if (labeled) {
-        for (int w1 = 0; w1 < length; w1++) {
-          for (int t = 0; t < types.length; t++) {
-            String type = types[t];
-            for (int ph = 0; ph < 2; ph++) {
-              for (int ch = 0; ch < 2; ch++) {
-                FeatureVector prodFV = new FeatureVector((int[]) in.readObject());
-                double nt_prob = params.getScore(prodFV);
-                nt_fvs[w1][t][ph][ch] = prodFV;
-                nt_probs[w1][t][ph][ch] = nt_prob;
-              }
-            }
-          }
-        }
-        last = in.readInt();
-        if (last != -3) {
-          System.out.println("Error reading file.");
-          System.exit(0);
+      out.close();
+      out = null;
+    } finally {
+      Util.closeQuietly(in);
+      Util.closeQuietly(out);
+    }
+  }
+
+  private static int[] encodeArcs(int length, boolean[][] keep) {
+    TIntArrayList arcs = new TIntArrayList();
+    for (int par = 0; par < length; par++) {
+      for (int ch = 0; ch < length; ch++) {
+        if (keep[par][ch]) {
+          arcs.add(par * length + ch);
         }
       }
+    }
+    return arcs.toNativeArray();
+  }
 
-      for (int w1 = 0; w1 < length; w1++) {
-        for (int w2 = w1; w2 < length; w2++) {
-          for (int w3 = w2 + 1; w3 < length; w3++) {
-            FeatureVector prodFV = new FeatureVector((int[]) in.readObject());
-            double prodProb = params.getScore(prodFV);
-            fvs_trips[w1][w2][w3] = prodFV;
-            probs_trips[w1][w2][w3] = prodProb;
+  private static boolean[][] decodeArcs(int length, int[] arcs) {
+    boolean[][] keep = new boolean[length][length];
+    for (int arc : arcs) {
+      keep[arc / length][arc % length] = true;
+    }
+    return keep;
+  }
+
+  /**
+   * Read an instance with its second order parts. Without head pruning these follow the first order
+   * parts in {@code in} and {@code trips} is {@code null}. With pruning, only the surviving second
+   * order parts are stored, in the trip forest written by {@link #createTripForest}, and
+   * {@code trips} has to be positioned at the start of the same instance. Only the rows of the trip
+   * arrays of the surviving arcs are allocated, see {@link #allocateTrips}.
+   */
+  public DependencyInstance readInstance(ForestReader in, ForestReader trips, int length,
+          FeatureVector[][][] fvs, double[][][] probs, FeatureVector[][][] fvs_trips,
+          double[][][] probs_trips, FeatureVector[][][] fvs_sibs, double[][][] probs_sibs,
+          FeatureVector[][][][] nt_fvs, double[][][][] nt_probs, Parameters params)
+          throws IOException {
+
+    readCoreFeatures(in, length, fvs, probs, nt_fvs, nt_probs, params);
+    DependencyInstance marshalledDI = readMarshalledInstance(in);
+
+    boolean[][] keep = null;
+    ForestReader secondOrder = in;
+    if (trips != null) {
+      keep = decodeArcs(length, trips.readKeys());
+      removePrunedArcs(length, keep, probs);
+      secondOrder = trips;
+    }
+
+    allocateTrips(length, keep, fvs_trips, probs_trips);
+
+    for (int w1 = 0; w1 < length; w1++) {
+      for (int w2 = w1; w2 < length; w2++) {
+        for (int w3 = w2 + 1; w3 < length; w3++) {
+          if (!isPruned(keep, w1, w2, w3)) {
+            readTrip(secondOrder, w1, w2, w3, fvs_trips, probs_trips, params);
           }
         }
-        for (int w2 = w1; w2 >= 0; w2--) {
-          for (int w3 = w2 - 1; w3 >= 0; w3--) {
-            FeatureVector prodFV = new FeatureVector((int[]) in.readObject());
-            double prodProb = params.getScore(prodFV);
-            fvs_trips[w1][w2][w3] = prodFV;
-            probs_trips[w1][w2][w3] = prodProb;
+      }
+      for (int w2 = w1; w2 >= 0; w2--) {
+        for (int w3 = w2 - 1; w3 >= 0; w3--) {
+          if (!isPruned(keep, w1, w2, w3)) {
+            readTrip(secondOrder, w1, w2, w3, fvs_trips, probs_trips, params);
           }
         }
       }
-      last = in.readInt();
-      if (last != -3) {
-        System.out.println("Error reading file.");
-        System.exit(0);
-      }
+    }
 
-      for (int w1 = 0; w1 < length; w1++) {
-        for (int w2 = 0; w2 < length; w2++) {
-          for (int wh = 0; wh < 2; wh++) {
-            if (w1 != w2) {
-              FeatureVector prodFV = new FeatureVector((int[]) in.readObject());
-              double prodProb = params.getScore(prodFV);
-              fvs_sibs[w1][w2][wh] = prodFV;
-              probs_sibs[w1][w2][wh] = prodProb;
-            }
+    for (int w1 = 0; w1 < length; w1++) {
+      for (int w2 = 0; w2 < length; w2++) {
+        for (int wh = 0; wh < 2; wh++) {
+          if (w1 != w2) {
+            FeatureVector prodFV = new FeatureVector(secondOrder.readKeys());
+            double prodProb = params.getScore(prodFV);
+            fvs_sibs[w1][w2][wh] = prodFV;
+            probs_sibs[w1][w2][wh] = prodProb;
           }
         }
       }
-      last = in.readInt();
-      if (last != -3) {
-        System.out.println("Error reading file.");
-        System.exit(0);
-      }
-
-      FeatureVector nfv = new FeatureVector((int[]) in.readObject());
-      last = in.readInt();
-      if (last != -4) {
-        System.out.println("Error reading file.");
-        System.exit(0);
-      }
+    }
 
-      DependencyInstance marshalledDI;
-      marshalledDI = (DependencyInstance) in.readObject();
-      marshalledDI.setFeatureVector(nfv);
-      last = in.readInt();
-      if (last != -1) {
-        System.out.println("Error reading file.");
-        System.exit(0);
-      }
+    return marshalledDI;
+  }
 
-      return marshalledDI;
+  /**
+   * Read only the first order parts of the instance, as for training the pruning model. This is
+   * only done on the forest of a model with head pruning, which has no second order parts, and the
+   * gold feature vector is reduced to the first order features.
+   */
+  @Override
+  public DependencyInstance readInstance(ForestReader in, int length, FeatureVector[][][] fvs,
+          double[][][] probs, FeatureVector[][][][] nt_fvs, double[][][][] nt_probs,
+          Parameters params) throws IOException {
 
-    } catch (ClassNotFoundException e) {
-      System.out.println("Error reading file.");
-      System.exit(0);
-    }
+    readCoreFeatures(in, length, fvs, probs, nt_fvs, nt_probs, params);
+    DependencyInstance marshalledDI = readMarshalledInstance(in);
+    marshalledDI.setFeatureVector(createFirstOrderFeatureVector(marshalledDI));
 
-    // this won't happen, but it takes care of compilation complaints
-    return null;
+    return marshalledDI;
+  }
 
+  private void readTrip(ForestReader in, int w1, int w2, int w3, FeatureVector[][][] fvs_trips,
+          double[][][] probs_trips, Parameters params) {
+    FeatureVector prodFV = new FeatureVector(in.readKeys());
+    double prodProb = params.getScore(prodFV);
+    fvs_trips[w1][w2][w3] = prodFV;
+    probs_trips[w1][w2][w3] = prodProb;
   }
 
 }
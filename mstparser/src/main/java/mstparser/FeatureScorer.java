@@ -0,0 +1,29 @@
+package mstparser;
+
+/**
+ * Sums the scores of the features added to it under the given weights, without storing them. The
+ * pipes use it to score the parts of a sentence when no feature vectors are needed.
+ */
+public final class FeatureScorer implements FeatureSink {
+
+  private final double[] parameters;
+
+  private double score = 0.0;
+
+  public FeatureScorer(double[] parameters) {
+    this.parameters = parameters;
+  }
+
+  public void add(int index, double value) {
+    score += value == 1.0 ? parameters[index] : parameters[index] * value;
+  }
+
+  public double getScore() {
+    return score;
+  }
+
+  public void clear() {
+    score = 0.0;
+  }
+
+}
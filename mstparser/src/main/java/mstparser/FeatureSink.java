@@ -0,0 +1,11 @@
+package mstparser;
+
+/**
+ * Where the feature extraction methods of the pipes put the features they find: a
+ * {@link FeatureVector} to store them, or a {@link FeatureScorer} to only sum their scores.
+ */
+public interface FeatureSink {
+
+  void add(int index, double value);
+
+}
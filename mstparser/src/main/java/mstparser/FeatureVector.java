@@ -12,11 +12,7 @@
 
 package mstparser;
 
-import gnu.trove.TIntArrayList;
 import gnu.trove.TIntDoubleHashMap;
-import gnu.trove.TLinkedList;
-
-import java.util.ListIterator;
 
 /**
  * A <tt>FeatureVector</tt> that can hold up to two <tt>FeatureVector</tt> instances inside it,
@@ -27,20 +23,33 @@ import java.util.ListIterator;
  * be negated, so that it has the effect of subtracting any values rather than adding them.
  * 
  * <p>
+ * The features of a vector are packed into a primitive <tt>int[]</tt> of indices and a parallel
+ * <tt>double[]</tt> of values. Most vectors are binary, so the value array is only allocated once a
+ * feature with a value other than 1.0 is added.
+ * 
+ * <p>
  * Created: Sat Nov 10 15:25:10 2001
  * </p>
  * 
  * @author Jason Baldridge
  * @version $Id: FeatureVector.java 137 2013-09-10 09:33:47Z wyldfire $
- * @see mstparser.Feature
  */
-public final class FeatureVector extends TLinkedList {
+public final class FeatureVector implements FeatureSink {
+  private static final int[] NO_KEYS = new int[0];
+
   private FeatureVector subfv1 = null;
 
   private FeatureVector subfv2 = null;
 
   private boolean negateSecondSubFV = false;
 
+  private int[] indices = NO_KEYS;
+
+  // null while all values are 1.0
+  private double[] values = null;
+
+  private int size = 0;
+
   public FeatureVector() {
   }
 
@@ -59,33 +68,71 @@ public final class FeatureVector extends TLinkedList {
     negateSecondSubFV = negSecond;
   }
 
+  /**
+   * A binary vector over the given keys. The array is used as is, not copied.
+   */
   public FeatureVector(int[] keys) {
-    for (int i = 0; i < keys.length; i++)
-      add(new Feature(keys[i], 1.0));
+    indices = keys;
+    size = keys.length;
   }
 
   public void add(int index, double value) {
-    add(new Feature(index, value));
+    if (size == indices.length) {
+      int capacity = Math.max(8, size * 2);
+      int[] newIndices = new int[capacity];
+      System.arraycopy(indices, 0, newIndices, 0, size);
+      indices = newIndices;
+      if (values != null) {
+        double[] newValues = new double[capacity];
+        System.arraycopy(values, 0, newValues, 0, size);
+        values = newValues;
+      }
+    }
+    if (values == null && value != 1.0) {
+      values = new double[indices.length];
+      for (int i = 0; i < size; i++)
+        values[i] = 1.0;
+    }
+    indices[size] = index;
+    if (values != null)
+      values[size] = value;
+    size++;
+  }
+
+  /**
+   * The number of features held directly by this vector, not counting the inner vectors.
+   */
+  public int size() {
+    return size;
   }
 
   public int[] keys() {
-    TIntArrayList keys = new TIntArrayList();
-    addKeysToList(keys);
-    return keys.toNativeArray();
+    int[] keys = new int[numKeys()];
+    addKeysToArray(keys, 0);
+    return keys;
   }
 
-  private void addKeysToList(TIntArrayList keys) {
+  private int numKeys() {
+    int n = size;
     if (null != subfv1) {
-      subfv1.addKeysToList(keys);
+      n += subfv1.numKeys();
 
       if (null != subfv2)
-        subfv2.addKeysToList(keys);
+        n += subfv2.numKeys();
     }
+    return n;
+  }
+
+  private int addKeysToArray(int[] keys, int offset) {
+    if (null != subfv1) {
+      offset = subfv1.addKeysToArray(keys, offset);
 
-    ListIterator it = listIterator();
-    while (it.hasNext())
-      keys.add(((Feature) it.next()).index);
+      if (null != subfv2)
+        offset = subfv2.addKeysToArray(keys, offset);
+    }
 
+    System.arraycopy(indices, 0, keys, offset, size);
+    return offset + size;
   }
 
   public final FeatureVector cat(FeatureVector fl2) {
@@ -116,56 +163,63 @@ public final class FeatureVector extends TLinkedList {
       }
     }
 
-    ListIterator it = listIterator();
+    final int[] indices = this.indices;
+    final double[] values = this.values;
 
-    if (negate) {
-      while (it.hasNext()) {
-        Feature f = (Feature) it.next();
-        score -= parameters[f.index] * f.value;
+    if (values == null) {
+      if (negate) {
+        for (int i = 0; i < size; i++)
+          score -= parameters[indices[i]];
+      } else {
+        for (int i = 0; i < size; i++)
+          score += parameters[indices[i]];
       }
     } else {
-      while (it.hasNext()) {
-        Feature f = (Feature) it.next();
-        score += parameters[f.index] * f.value;
+      if (negate) {
+        for (int i = 0; i < size; i++)
+          score -= parameters[indices[i]] * values[i];
+      } else {
+        for (int i = 0; i < size; i++)
+          score += parameters[indices[i]] * values[i];
       }
     }
 
     return score;
   }
 
-  public void update(double[] parameters, double[] total, double alpha_k, double upd) {
-    update(parameters, total, alpha_k, upd, false);
+  /**
+   * Add {@code alpha_k} times this vector to the weights. Before a weight changes, the time it kept
+   * its old value is added to its running total, see {@link Parameters}.
+   */
+  public void update(double[] parameters, double[] total, int[] lastUpdate, int time,
+          double alpha_k) {
+    update(parameters, total, lastUpdate, time, alpha_k, false);
   }
 
-  private final void update(double[] parameters, double[] total, double alpha_k, double upd,
-          boolean negate) {
+  private final void update(double[] parameters, double[] total, int[] lastUpdate, int time,
+          double alpha_k, boolean negate) {
 
     if (null != subfv1) {
-      subfv1.update(parameters, total, alpha_k, upd, negate);
+      subfv1.update(parameters, total, lastUpdate, time, alpha_k, negate);
 
       if (null != subfv2) {
         if (negate) {
-          subfv2.update(parameters, total, alpha_k, upd, !negateSecondSubFV);
+          subfv2.update(parameters, total, lastUpdate, time, alpha_k, !negateSecondSubFV);
         } else {
-          subfv2.update(parameters, total, alpha_k, upd, negateSecondSubFV);
+          subfv2.update(parameters, total, lastUpdate, time, alpha_k, negateSecondSubFV);
         }
       }
     }
 
-    ListIterator it = listIterator();
+    final int[] indices = this.indices;
+    final double sign = negate ? -1.0 : 1.0;
 
-    if (negate) {
-      while (it.hasNext()) {
-        Feature f = (Feature) it.next();
-        parameters[f.index] -= alpha_k * f.value;
-        total[f.index] -= upd * alpha_k * f.value;
-      }
-    } else {
-      while (it.hasNext()) {
-        Feature f = (Feature) it.next();
-        parameters[f.index] += alpha_k * f.value;
-        total[f.index] += upd * alpha_k * f.value;
-      }
+    for (int i = 0; i < size; i++) {
+      int index = indices[i];
+      double value = values == null ? 1.0 : values[i];
+      total[index] += (time - lastUpdate[index]) * parameters[index];
+      lastUpdate[index] = time;
+      parameters[index] += sign * alpha_k * value;
     }
 
   }
@@ -203,19 +257,12 @@ public final class FeatureVector extends TLinkedList {
       }
     }
 
-    ListIterator it = listIterator();
-    if (negate) {
-      while (it.hasNext()) {
-        Feature f = (Feature) it.next();
-        if (!map.adjustValue(f.index, -f.value))
-          map.put(f.index, -f.value);
-      }
-    } else {
-      while (it.hasNext()) {
-        Feature f = (Feature) it.next();
-        if (!map.adjustValue(f.index, f.value))
-          map.put(f.index, f.value);
-      }
+    for (int i = 0; i < size; i++) {
+      double value = values == null ? 1.0 : values[i];
+      if (negate)
+        value = -value;
+      if (!map.adjustValue(indices[i], value))
+        map.put(indices[i], value);
     }
   }
 
@@ -233,9 +280,8 @@ public final class FeatureVector extends TLinkedList {
       if (null != subfv2)
         subfv2.toString(sb);
     }
-    ListIterator it = listIterator();
-    while (it.hasNext())
-      sb.append(it.next().toString()).append(' ');
+    for (int i = 0; i < size; i++)
+      sb.append(indices[i]).append('=').append(values == null ? 1.0 : values[i]).append(' ');
   }
 
 }
@@ -0,0 +1,88 @@
+package mstparser;
+
+import java.io.IOException;
+import java.io.InvalidObjectException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+/**
+ * An {@link Alphabet} that hashes feature strings into a fixed range of 2^bits indices instead of
+ * storing them.
+ *
+ * <p>
+ * No pass over the training data is needed to build it, every lookup succeeds, and only the number
+ * of bits is written with a model. Different features may share an index; use enough bits to keep
+ * collisions rare (e.g. 22-24 bits for a large treebank).
+ */
+public class HashAlphabet extends Alphabet {
+
+  private int bits;
+
+  private int mask;
+
+  public HashAlphabet(int bits) {
+    super(1);
+    if (bits < 1 || bits > 30) {
+      throw new IllegalArgumentException("Number of hash bits must be in [1, 30]: " + bits);
+    }
+    this.bits = bits;
+    this.mask = (1 << bits) - 1;
+  }
+
+  public int getBits() {
+    return bits;
+  }
+
+  @Override
+  public int lookupIndex(Object entry) {
+    if (entry == null) {
+      throw new IllegalArgumentException("Can't lookup \"null\" in an Alphabet.");
+    }
+
+    // murmur3 finalizer, spreads the String hash over all bits
+    int h = entry.hashCode();
+    h ^= h >>> 16;
+    h *= 0x85ebca6b;
+    h ^= h >>> 13;
+    h *= 0xc2b2ae35;
+    h ^= h >>> 16;
+    return h & mask;
+  }
+
+  /** The features themselves are not stored. */
+  @Override
+  public Object[] toArray() {
+    return new Object[0];
+  }
+
+  @Override
+  public boolean contains(Object entry) {
+    return true;
+  }
+
+  @Override
+  public int size() {
+    return 1 << bits;
+  }
+
+  // Serialization
+
+  private static final long serialVersionUID = 1;
+
+  private static final int CURRENT_SERIAL_VERSION = 0;
+
+  private void writeObject(ObjectOutputStream out) throws IOException {
+    out.writeInt(CURRENT_SERIAL_VERSION);
+    out.writeInt(bits);
+  }
+
+  private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+    int version = in.readInt();
+    if (version != CURRENT_SERIAL_VERSION) {
+      throw new InvalidObjectException("Unknown HashAlphabet serial version " + version);
+    }
+    bits = in.readInt();
+    mask = (1 << bits) - 1;
+  }
+
+}
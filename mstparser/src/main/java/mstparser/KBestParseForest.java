@@ -1,86 +1,114 @@
 package mstparser;
 
+import java.util.Arrays;
+
+/**
+ * The chart of the first order Eisner algorithm, kept in flat primitive arrays.
+ *
+ * <p>
+ * Every chart cell {@code [s][t][dir][comp]} holds the K best items of the span, sorted by score.
+ * An item is only a score and a backpointer: the split point, the label and the ranks of its two
+ * child items in their cells, whose spans follow from the split point. Feature vectors and
+ * dependency strings are built only for the returned parses. A forest can be {@link #reset} and
+ * reused for the next sentence, so decoding allocates nothing per span.
+ *
+ * <p>
+ * The K best items of every cell are built eagerly, bottom up: each split point of a span merges
+ * the K best pairs of its child cells, and each pair is inserted into the sorted cell. Filling the
+ * chart is so O(K log K n^3) for the pairs plus up to O(K^2 n^3) for the insertions, against
+ * O(n^3) for K = 1. Lazy k-best extraction, which only expands the cells the final K parses need,
+ * is not implemented.
+ */
 public class KBestParseForest {
 
   public static int rootType;
 
-  public ParseForestItem[][][][][] chart;
+  private int start, end, n;
 
-  private String[] sent, pos;
+  private int K;
 
-  private int start, end;
+  private double[] prob;
 
-  private int K;
+  private int[] split, type, left, right;
 
-  public KBestParseForest(int start, int end, DependencyInstance inst, int K) {
-    this.K = K;
-    chart = new ParseForestItem[end + 1][end + 1][2][2][K];
-    this.start = start;
-    this.end = end;
-    this.sent = inst.forms;
-    this.pos = inst.postags;
-  }
+  // workspace of kBestPairs()
+  private int[] pairs;
 
-  public boolean add(int s, int type, int dir, double score, FeatureVector fv) {
+  private double[] heapVal;
 
-    boolean added = false;
+  private int[] heapI1, heapI2;
 
-    if (chart[s][s][dir][0][0] == null) {
-      for (int i = 0; i < K; i++)
-        chart[s][s][dir][0][i] = new ParseForestItem(s, type, dir, Double.NEGATIVE_INFINITY, null);
-    }
+  private boolean[] beenPushed;
 
-    if (chart[s][s][dir][0][K - 1].prob > score)
-      return false;
+  public KBestParseForest(int start, int end, DependencyInstance inst, int K) {
+    reset(start, end, inst, K);
+  }
 
-    for (int i = 0; i < K; i++) {
-      if (chart[s][s][dir][0][i].prob < score) {
-        ParseForestItem tmp = chart[s][s][dir][0][i];
-        chart[s][s][dir][0][i] = new ParseForestItem(s, type, dir, score, fv);
-        for (int j = i + 1; j < K && tmp.prob != Double.NEGATIVE_INFINITY; j++) {
-          ParseForestItem tmp1 = chart[s][s][dir][0][j];
-          chart[s][s][dir][0][j] = tmp;
-          tmp = tmp1;
-        }
-        added = true;
-        break;
-      }
+  /**
+   * Clear the chart for a new sentence, reusing the arrays if they are large enough.
+   */
+  public void reset(int start, int end, DependencyInstance inst, int K) {
+    this.start = start;
+    this.end = end;
+    this.n = end + 1;
+    this.K = K;
+
+    int size = n * n * 4 * K;
+    if (prob == null || prob.length < size) {
+      prob = new double[size];
+      split = new int[size];
+      type = new int[size];
+      left = new int[size];
+      right = new int[size];
+    }
+    Arrays.fill(prob, 0, size, Double.NEGATIVE_INFINITY);
+
+    if (pairs == null || pairs.length < 2 * K) {
+      pairs = new int[2 * K];
+      heapVal = new double[K + 2];
+      heapI1 = new int[K + 2];
+      heapI2 = new int[K + 2];
+      beenPushed = new boolean[K * K];
     }
+  }
 
-    return added;
+  private int cell(int s, int t, int dir, int comp) {
+    return (((s * n + t) << 1 | dir) << 1 | comp) * K;
   }
 
-  public boolean add(int s, int r, int t, int type, int dir, int comp, double score,
-          FeatureVector fv, ParseForestItem p1, ParseForestItem p2) {
+  public boolean add(int s, int type, int dir, double score) {
+    return add(s, -1, s, type, dir, 0, score, -1, -1);
+  }
 
-    boolean added = false;
+  /**
+   * Add an item built from rank {@code k1} of the left and rank {@code k2} of the right child cell
+   * of the span split at {@code r}.
+   */
+  public boolean add(int s, int r, int t, int type, int dir, int comp, double score, int k1, int k2) {
 
-    if (chart[s][t][dir][comp][0] == null) {
-      for (int i = 0; i < K; i++)
-        chart[s][t][dir][comp][i] = new ParseForestItem(s, r, t, type, dir, comp,
-                Double.NEGATIVE_INFINITY, null, null, null);
-    }
+    int c = cell(s, t, dir, comp);
 
-    if (chart[s][t][dir][comp][K - 1].prob > score)
+    if (prob[c + K - 1] > score)
       return false;
 
     for (int i = 0; i < K; i++) {
-      if (chart[s][t][dir][comp][i].prob < score) {
-        ParseForestItem tmp = chart[s][t][dir][comp][i];
-        chart[s][t][dir][comp][i] = new ParseForestItem(s, r, t, type, dir, comp, score, fv, p1, p2);
-        for (int j = i + 1; j < K && tmp.prob != Double.NEGATIVE_INFINITY; j++) {
-          ParseForestItem tmp1 = chart[s][t][dir][comp][j];
-          chart[s][t][dir][comp][j] = tmp;
-          tmp = tmp1;
-        }
-        added = true;
-        break;
+      if (prob[c + i] < score) {
+        int last = c + K - 1;
+        System.arraycopy(prob, c + i, prob, c + i + 1, last - c - i);
+        System.arraycopy(split, c + i, split, c + i + 1, last - c - i);
+        System.arraycopy(this.type, c + i, this.type, c + i + 1, last - c - i);
+        System.arraycopy(left, c + i, left, c + i + 1, last - c - i);
+        System.arraycopy(right, c + i, right, c + i + 1, last - c - i);
+        prob[c + i] = score;
+        split[c + i] = r;
+        this.type[c + i] = type;
+        left[c + i] = k1;
+        right[c + i] = k2;
+        return true;
       }
-
     }
 
-    return added;
-
+    return false;
   }
 
   public double getProb(int s, int t, int dir, int comp) {
@@ -88,48 +116,31 @@ public class KBestParseForest {
   }
 
   public double getProb(int s, int t, int dir, int comp, int i) {
-    if (chart[s][t][dir][comp][i] != null)
-      return chart[s][t][dir][comp][i].prob;
-    return Double.NEGATIVE_INFINITY;
+    return prob[cell(s, t, dir, comp) + i];
   }
 
   public double[] getProbs(int s, int t, int dir, int comp) {
     double[] result = new double[K];
-    for (int i = 0; i < K; i++)
-      result[i] = chart[s][t][dir][comp][i] != null ? chart[s][t][dir][comp][i].prob
-              : Double.NEGATIVE_INFINITY;
+    System.arraycopy(prob, cell(s, t, dir, comp), result, 0, K);
     return result;
   }
 
-  public ParseForestItem getItem(int s, int t, int dir, int comp) {
-    return getItem(s, t, dir, comp, 0);
-  }
-
-  public ParseForestItem getItem(int s, int t, int dir, int comp, int k) {
-    if (chart[s][t][dir][comp][k] != null)
-      return chart[s][t][dir][comp][k];
-    return null;
-  }
-
-  public ParseForestItem[] getItems(int s, int t, int dir, int comp) {
-    if (chart[s][t][dir][comp][0] != null)
-      return chart[s][t][dir][comp];
-    return null;
-  }
-
-  public Object[] getBestParse() {
-    Object[] d = new Object[2];
-    d[0] = getFeatureVector(chart[0][end][0][0][0]);
-    d[1] = getDepString(chart[0][end][0][0][0]);
-    return d;
-  }
-
-  public Object[][] getBestParses() {
+  /**
+   * The K best parses with their feature vectors, built from the first order and labeled feature
+   * vectors the chart was filled from. If {@code fvs} is {@code null}, the parses have no feature
+   * vectors.
+   */
+  public Object[][] getBestParses(FeatureVector[][][] fvs, FeatureVector[][][][] nt_fvs,
+          boolean labeled) {
     Object[][] d = new Object[K][2];
+    int c = cell(0, end, 0, 0);
     for (int k = 0; k < K; k++) {
-      if (chart[0][end][0][0][k].prob != Double.NEGATIVE_INFINITY) {
-        d[k][0] = getFeatureVector(chart[0][end][0][0][k]);
-        d[k][1] = getDepString(chart[0][end][0][0][k]);
+      if (prob[c + k] != Double.NEGATIVE_INFINITY) {
+        if (fvs != null) {
+          FeatureVector fv = getFeatureVector(0, end, 0, 0, k, fvs, nt_fvs, labeled);
+          d[k][0] = fv != null ? fv : new FeatureVector();
+        }
+        d[k][1] = getDepString(0, end, 0, 0, k);
       } else {
         d[k][0] = null;
         d[k][1] = null;
@@ -138,81 +149,173 @@ public class KBestParseForest {
     return d;
   }
 
-  public FeatureVector getFeatureVector(ParseForestItem pfi) {
-    if (pfi.left == null)
-      return pfi.fv;
-
-    return cat(pfi.fv, cat(getFeatureVector(pfi.left), getFeatureVector(pfi.right)));
-  }
-
-  public String getDepString(ParseForestItem pfi) {
-    if (pfi.left == null)
-      return "";
-
-    if (pfi.comp == 0) {
-      return (getDepString(pfi.left) + " " + getDepString(pfi.right)).trim();
-    } else if (pfi.dir == 0) {
-      return ((getDepString(pfi.left) + " " + getDepString(pfi.right)).trim() + " " + pfi.s + "|"
-              + pfi.t + ":" + pfi.type).trim();
+  // returns null if the item has no features
+  private FeatureVector getFeatureVector(int s, int t, int dir, int comp, int k,
+          FeatureVector[][][] fvs, FeatureVector[][][][] nt_fvs, boolean labeled) {
+    if (s == t)
+      return null;
+
+    int i = cell(s, t, dir, comp) + k;
+    int r = split[i];
+    FeatureVector sub;
+    if (comp == 1) {
+      sub = cat(getFeatureVector(s, r, 0, 0, left[i], fvs, nt_fvs, labeled), getFeatureVector(
+              r + 1, t, 1, 0, right[i], fvs, nt_fvs, labeled));
+      FeatureVector fv = fvs[s][t][dir];
+      if (labeled) {
+        int ty = type[i];
+        if (dir == 0)
+          fv = nt_fvs[s][ty][0][1].cat(nt_fvs[t][ty][0][0].cat(fv));
+        else
+          fv = nt_fvs[t][ty][1][1].cat(nt_fvs[s][ty][1][0].cat(fv));
+      }
+      return sub == null ? fv : fv.cat(sub);
+    } else if (dir == 0) {
+      return cat(getFeatureVector(s, r, 0, 1, left[i], fvs, nt_fvs, labeled), getFeatureVector(r,
+              t, 0, 0, right[i], fvs, nt_fvs, labeled));
     } else {
-      return (pfi.t + "|" + pfi.s + ":" + pfi.type + " " + (getDepString(pfi.left) + " " + getDepString(pfi.right))
-              .trim()).trim();
+      return cat(getFeatureVector(s, r, 1, 0, left[i], fvs, nt_fvs, labeled), getFeatureVector(r,
+              t, 1, 1, right[i], fvs, nt_fvs, labeled));
     }
   }
 
-  public FeatureVector cat(FeatureVector fv1, FeatureVector fv2) {
+  private static FeatureVector cat(FeatureVector fv1, FeatureVector fv2) {
+    if (fv1 == null)
+      return fv2;
+    if (fv2 == null)
+      return fv1;
     return fv1.cat(fv2);
   }
 
-  // returns pairs of indeces and -1,-1 if < K pairs
-  public int[][] getKBestPairs(ParseForestItem[] items1, ParseForestItem[] items2) {
-    // in this case K = items1.length
-
-    boolean[][] beenPushed = new boolean[K][K];
+  private String getDepString(int s, int t, int dir, int comp, int k) {
+    if (s == t)
+      return "";
 
-    int[][] result = new int[K][2];
-    for (int i = 0; i < K; i++) {
-      result[i][0] = -1;
-      result[i][1] = -1;
+    int i = cell(s, t, dir, comp) + k;
+    int r = split[i];
+    if (comp == 1) {
+      String children = (getDepString(s, r, 0, 0, left[i]) + " " + getDepString(r + 1, t, 1, 0,
+              right[i])).trim();
+      if (dir == 0)
+        return (children + " " + s + "|" + t + ":" + type[i]).trim();
+      return (t + "|" + s + ":" + type[i] + " " + children).trim();
+    } else if (dir == 0) {
+      return (getDepString(s, r, 0, 1, left[i]) + " " + getDepString(r, t, 0, 0, right[i])).trim();
+    } else {
+      return (getDepString(s, r, 1, 0, left[i]) + " " + getDepString(r, t, 1, 1, right[i])).trim();
     }
+  }
 
-    if (items1 == null || items2 == null || items1[0] == null || items2[0] == null)
-      return result;
+  /**
+   * Find the K best combinations of the items of two cells.
+   *
+   * @return the number of pairs found. The ranks of pair {@code i} are {@code getPair(i, 0)} and
+   *         {@code getPair(i, 1)}.
+   */
+  public int kBestPairs(int s1, int t1, int dir1, int comp1, int s2, int t2, int dir2, int comp2) {
+    int c1 = cell(s1, t1, dir1, comp1);
+    int c2 = cell(s2, t2, dir2, comp2);
+
+    if (K == 1) {
+      double val = prob[c1] + prob[c2];
+      if (val == Double.NEGATIVE_INFINITY)
+        return 0;
+      pairs[0] = 0;
+      pairs[1] = 0;
+      return 1;
+    }
 
-    BinaryHeap heap = new BinaryHeap(K + 1);
+    int size = 0;
     int n = 0;
-    ValueIndexPair vip = new ValueIndexPair(items1[0].prob + items2[0].prob, 0, 0);
-
-    heap.add(vip);
-    beenPushed[0][0] = true;
+    size = heapAdd(size, prob[c1] + prob[c2], 0, 0);
+    beenPushed[0] = true;
 
     while (n < K) {
-      vip = heap.removeMax();
+      double val = heapVal[1];
+      int i1 = heapI1[1];
+      int i2 = heapI2[1];
+      size = heapRemoveMax(size);
 
-      if (vip.val == Double.NEGATIVE_INFINITY)
+      if (val == Double.NEGATIVE_INFINITY)
         break;
 
-      result[n][0] = vip.i1;
-      result[n][1] = vip.i2;
+      pairs[2 * n] = i1;
+      pairs[2 * n + 1] = i2;
 
       n++;
       if (n >= K)
         break;
 
-      if (!beenPushed[vip.i1 + 1][vip.i2]) {
-        heap.add(new ValueIndexPair(items1[vip.i1 + 1].prob + items2[vip.i2].prob, vip.i1 + 1,
-                vip.i2));
-        beenPushed[vip.i1 + 1][vip.i2] = true;
+      if (!beenPushed[(i1 + 1) * K + i2]) {
+        size = heapAdd(size, prob[c1 + i1 + 1] + prob[c2 + i2], i1 + 1, i2);
+        beenPushed[(i1 + 1) * K + i2] = true;
       }
-      if (!beenPushed[vip.i1][vip.i2 + 1]) {
-        heap.add(new ValueIndexPair(items1[vip.i1].prob + items2[vip.i2 + 1].prob, vip.i1,
-                vip.i2 + 1));
-        beenPushed[vip.i1][vip.i2 + 1] = true;
+      if (!beenPushed[i1 * K + i2 + 1]) {
+        size = heapAdd(size, prob[c1 + i1] + prob[c2 + i2 + 1], i1, i2 + 1);
+        beenPushed[i1 * K + i2 + 1] = true;
       }
+    }
+
+    Arrays.fill(beenPushed, false);
+    return n;
+  }
 
+  public int getPair(int i, int which) {
+    return pairs[2 * i + which];
+  }
+
+  // Max heap on heapVal[1..size], same ordering as BinaryHeap
+
+  private int heapAdd(int size, double val, int i1, int i2) {
+    int where = size + 1;
+    while (where > 1 && val > heapVal[where / 2]) {
+      heapVal[where] = heapVal[where / 2];
+      heapI1[where] = heapI1[where / 2];
+      heapI2[where] = heapI2[where / 2];
+      where = where / 2;
     }
+    heapVal[where] = val;
+    heapI1[where] = i1;
+    heapI2[where] = i2;
+    return size + 1;
+  }
 
-    return result;
+  private int heapRemoveMax(int size) {
+    heapVal[1] = heapVal[size];
+    heapI1[1] = heapI1[size];
+    heapI2[1] = heapI2[size];
+    size--;
+    boolean switched = true;
+    for (int parent = 1; switched && parent < size;) {
+      switched = false;
+      int leftChild = 2 * parent;
+      int rightChild = 2 * parent + 1;
+
+      if (leftChild <= size) {
+        int largerChild = leftChild;
+        if (rightChild <= size && heapVal[rightChild] > heapVal[leftChild]) {
+          largerChild = rightChild;
+        }
+        if (heapVal[largerChild] > heapVal[parent]) {
+          swap(largerChild, parent);
+          parent = largerChild;
+          switched = true;
+        }
+      }
+    }
+    return size;
+  }
+
+  private void swap(int a, int b) {
+    double val = heapVal[a];
+    heapVal[a] = heapVal[b];
+    heapVal[b] = val;
+    int i = heapI1[a];
+    heapI1[a] = heapI1[b];
+    heapI1[b] = i;
+    i = heapI2[a];
+    heapI2[a] = heapI2[b];
+    heapI2[b] = i;
   }
 }
 
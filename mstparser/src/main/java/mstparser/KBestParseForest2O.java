@@ -137,6 +137,10 @@ public class KBestParseForest2O {
   }
 
   public FeatureVector getFeatureVector(ParseForestItem pfi) {
+    // decoded without feature vectors
+    if (pfi.fv == null)
+      return null;
+
     if (pfi.left == null)
       return pfi.fv;
 
@@ -157,6 +161,8 @@ public class KBestParseForest2O {
   }
 
   public FeatureVector cat(FeatureVector fv1, FeatureVector fv2) {
+    if (fv1 == null)
+      return null;
     return fv1.cat(fv2);
   }
 
@@ -1,5 +1,20 @@
 package mstparser;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.Arrays;
+
+/**
+ * The weights of the parser and their running average.
+ *
+ * <p>
+ * The average is kept lazily: every training instance advances a clock, and {@code total[j]} holds
+ * the sum of weight {@code j} over all ticks up to {@code lastUpdate[j]}, the last time the weight
+ * changed. An update only touches the weights of its features, and the average can be taken at any
+ * point of training. To resume training from a checkpoint in the middle of an iteration, the whole
+ * state is saved with {@link #writeTrainingState} instead.
+ */
 public class Parameters {
 
   private double SCORE = 0.0;
@@ -8,15 +23,16 @@ public class Parameters {
 
   public double[] total;
 
+  private int[] lastUpdate;
+
+  private int time = 0;
+
   public String lossType = "punc";
 
   public Parameters(int size) {
     parameters = new double[size];
     total = new double[size];
-    for (int i = 0; i < parameters.length; i++) {
-      parameters[i] = 0.0;
-      total[i] = 0.0;
-    }
+    lastUpdate = new int[size];
     lossType = "punc";
   }
 
@@ -28,13 +44,117 @@ public class Parameters {
     lossType = lt;
   }
 
-  public void averageParams(double avVal) {
-    for (int j = 0; j < total.length; j++)
-      total[j] *= 1.0 / ((double) avVal);
-    parameters = total;
+  /**
+   * The number of training instances seen so far.
+   */
+  public int getTime() {
+    return time;
+  }
+
+  /**
+   * The average of the weights over all training instances seen so far. The weights themselves are
+   * not changed, so training can continue.
+   */
+  public double[] getAveragedParams() {
+    double[] averaged = new double[parameters.length];
+    if (time == 0) {
+      System.arraycopy(parameters, 0, averaged, 0, parameters.length);
+      return averaged;
+    }
+    for (int j = 0; j < parameters.length; j++) {
+      averaged[j] = (total[j] + (time - lastUpdate[j]) * parameters[j]) / time;
+    }
+    return averaged;
+  }
+
+  /**
+   * Write the weights with the whole state of the running average: the clock, the totals and the
+   * time of the last change of every weight. The clock is also the position in the training data,
+   * the number of instances trained on so far.
+   */
+  public void writeTrainingState(ObjectOutputStream out) throws IOException {
+    out.writeInt(time);
+    out.writeObject(parameters);
+    out.writeObject(total);
+    out.writeObject(lastUpdate);
+  }
+
+  /**
+   * Read the state written by {@link #writeTrainingState}, so that training continues exactly as if
+   * it had not been interrupted.
+   */
+  public void readTrainingState(ObjectInputStream in) throws IOException {
+    try {
+      int time = in.readInt();
+      double[] parameters = (double[]) in.readObject();
+      double[] total = (double[]) in.readObject();
+      int[] lastUpdate = (int[]) in.readObject();
+      if (parameters.length != this.parameters.length) {
+        throw new IOException("Training state has " + parameters.length + " features, expected "
+                + this.parameters.length + ".");
+      }
+      this.time = time;
+      this.parameters = parameters;
+      this.total = total;
+      this.lastUpdate = lastUpdate;
+    } catch (ClassNotFoundException e) {
+      IOException e2 = new IOException("Unable to read training state: " + e.getMessage());
+      e2.initCause(e);
+      throw e2;
+    }
+  }
+
+  /**
+   * Replace the weights by their average at the end of training.
+   */
+  public void averageParams() {
+    parameters = getAveragedParams();
+    total = null;
+    lastUpdate = null;
   }
 
-  public void updateParamsMIRA(DependencyInstance inst, Object[][] d, double upd) {
+  /**
+   * Start a round of iterative parameter mixing from the given weights. The clock and the total are
+   * cleared, so that afterwards they only cover the instances of this round.
+   */
+  public void startMixingRound(Parameters mixed) {
+    System.arraycopy(mixed.parameters, 0, parameters, 0, parameters.length);
+    Arrays.fill(total, 0.0);
+    Arrays.fill(lastUpdate, 0);
+    time = 0;
+  }
+
+  /**
+   * Iterative parameter mixing: set the weights to the uniform average of the weights of the given
+   * parameters. The instances of the round count once each for the average: the sums of the
+   * weights of all parameters over their shards are added to the total. The parameters are summed
+   * in the given order, so the result does not depend on thread scheduling.
+   */
+  public void mixParams(Parameters[] mixture) {
+    for (int j = 0; j < parameters.length; j++) {
+      total[j] += (time - lastUpdate[j]) * parameters[j];
+      parameters[j] = 0.0;
+    }
+    int roundTime = 0;
+    for (Parameters p : mixture) {
+      for (int j = 0; j < parameters.length; j++) {
+        parameters[j] += p.parameters[j];
+        total[j] += p.total[j] + (p.time - p.lastUpdate[j]) * p.parameters[j];
+      }
+      roundTime += p.time;
+    }
+    time += roundTime;
+    for (int j = 0; j < parameters.length; j++) {
+      parameters[j] /= mixture.length;
+      lastUpdate[j] = time;
+    }
+  }
+
+  /**
+   * MIRA update towards the gold parse of the instance, away from the k-best parses {@code d}.
+   * Advances the clock by one instance.
+   */
+  public void updateParamsMIRA(DependencyInstance inst, Object[][] d) {
 
     String actParseTree = inst.actParseTree;
     FeatureVector actFV = inst.fv;
@@ -57,22 +177,25 @@ public class Parameters {
 
     double[] alpha = hildreth(dist, b);
 
-    FeatureVector fv = null;
-    int res = 0;
     for (int k = 0; k < K; k++) {
-      fv = dist[k];
-
-      fv.update(parameters, total, alpha[k], upd);
+      dist[k].update(parameters, total, lastUpdate, time, alpha[k]);
+    }
 
-      // for(FeatureVector curr = fv; curr.index >= 0; curr = curr.next) {
-      // if(curr.index < 0)
-      // continue;
-      // parameters[curr.index] += alpha[k]*curr.value;
-      // total[curr.index] += upd*alpha[k]*curr.value;
-      // }
+    time++;
+  }
 
+  /**
+   * Perceptron update towards the gold parse of the instance, away from the best parse in
+   * {@code d} if it has any errors. Advances the clock by one instance.
+   */
+  public void updateParamsPerceptron(DependencyInstance inst, Object[][] d) {
+    if (d.length > 0 && d[0][0] != null
+            && numErrors(inst, (String) d[0][1], inst.actParseTree) > 0) {
+      inst.fv.getDistVector((FeatureVector) d[0][0]).update(parameters, total, lastUpdate, time,
+              1.0);
     }
 
+    time++;
   }
 
   public double getScore(FeatureVector fv) {
@@ -83,7 +206,7 @@ public class Parameters {
     // return score;
   }
 
-  private double[] hildreth(FeatureVector[] a, double[] b) {
+  double[] hildreth(FeatureVector[] a, double[] b) {
 
     int i;
     int max_iter = 10000;
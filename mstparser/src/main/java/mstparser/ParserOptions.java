@@ -71,6 +71,24 @@ public final class ParserOptions {
 
   public String confidenceEstimator = null;
 
+  public int trainThreads = 1;
+
+  public int mixingRounds = 1;
+
+  public int testThreads = 1;
+
+  public int hashBits = 0;
+
+  public int pruneHeads = 0;
+
+  public int pruneIters = 10;
+
+  public String checkpointFile = null;
+
+  public int checkpointInterval = 0;
+
+  public String updateType = "mira";
+
   public ParserOptions(String[] args) {
 
     for (int i = 0; i < args.length; i++) {
@@ -130,6 +148,33 @@ public final class ParserOptions {
       if (pair[0].equals("confidence-estimation")) {
         confidenceEstimator = pair[1];
       }
+      if (pair[0].equals("train-threads")) {
+        trainThreads = Integer.parseInt(pair[1]);
+      }
+      if (pair[0].equals("mixing-rounds")) {
+        mixingRounds = Integer.parseInt(pair[1]);
+      }
+      if (pair[0].equals("test-threads")) {
+        testThreads = Integer.parseInt(pair[1]);
+      }
+      if (pair[0].equals("hash-bits")) {
+        hashBits = Integer.parseInt(pair[1]);
+      }
+      if (pair[0].equals("prune-heads")) {
+        pruneHeads = Integer.parseInt(pair[1]);
+      }
+      if (pair[0].equals("prune-iters")) {
+        pruneIters = Integer.parseInt(pair[1]);
+      }
+      if (pair[0].equals("checkpoint-file")) {
+        checkpointFile = pair[1];
+      }
+      if (pair[0].equals("checkpoint-interval")) {
+        checkpointInterval = Integer.parseInt(pair[1]);
+      }
+      if (pair[0].equals("update-type")) {
+        updateType = pair[1];
+      }
       if (pair[0].equals("rankEdgesByConfidence")) {
         rankEdgesByConfidence = true;
       }
@@ -191,6 +236,24 @@ public final class ParserOptions {
     sb.append("relational-features: " + useRelationalFeatures);
     sb.append(" | ");
     sb.append("discourse-mode: " + discourseMode);
+    sb.append(" | ");
+    sb.append("train-threads: " + trainThreads);
+    sb.append(" | ");
+    sb.append("mixing-rounds: " + mixingRounds);
+    sb.append(" | ");
+    sb.append("test-threads: " + testThreads);
+    sb.append(" | ");
+    sb.append("hash-bits: " + hashBits);
+    sb.append(" | ");
+    sb.append("prune-heads: " + pruneHeads);
+    sb.append(" | ");
+    sb.append("prune-iters: " + pruneIters);
+    sb.append(" | ");
+    sb.append("checkpoint-file: " + checkpointFile);
+    sb.append(" | ");
+    sb.append("checkpoint-interval: " + checkpointInterval);
+    sb.append(" | ");
+    sb.append("update-type: " + updateType);
     sb.append("]\n");
     return sb.toString();
   }
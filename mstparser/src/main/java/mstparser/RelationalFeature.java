@@ -21,6 +21,11 @@ public class RelationalFeature implements Serializable {
     }
   }
 
+  public RelationalFeature(String name, String[][] values) {
+    this.name = name;
+    this.values = values;
+  }
+
   public String getFeature(int firstIndex, int secondIndex) {
     if (firstIndex == 0 || secondIndex == 0)
       return name + "=NULL";
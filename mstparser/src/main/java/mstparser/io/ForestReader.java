@@ -0,0 +1,259 @@
+package mstparser.io;
+
+import java.io.Closeable;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+
+import mstparser.DependencyInstance;
+import mstparser.RelationalFeature;
+
+/**
+ * Reads a feature forest written by {@link ForestWriter} through a memory-mapped
+ * {@link FileChannel}.
+ *
+ * <p>
+ * The file is mapped in chunks of at most {@link #MAX_CHUNK} bytes, each chunk starting at an
+ * instance boundary, so forests larger than 2GB can be read as well. A reader can be rewound and
+ * reused for every training iteration.
+ *
+ * @see mstparser.io.ForestWriter
+ */
+public class ForestReader implements Closeable {
+
+  static final long MAX_CHUNK = 1L << 30;
+
+  private final RandomAccessFile file;
+
+  private final FileChannel channel;
+
+  private final long[] offsets;
+
+  private MappedByteBuffer buffer;
+
+  private long chunkStart = 0;
+
+  private long chunkEnd = 0;
+
+  private int current = -1;
+
+  public ForestReader(File forest) throws IOException {
+    file = new RandomAccessFile(forest, "r");
+    channel = file.getChannel();
+
+    long size = channel.size();
+    if (size < 24) {
+      close();
+      throw new IOException("Error reading file: " + forest + " is not a feature forest.");
+    }
+    ByteBuffer header = ByteBuffer.allocate(8);
+    readFully(header, 0);
+    if (header.getInt() != ForestWriter.MAGIC) {
+      close();
+      throw new IOException("Error reading file: " + forest + " is not a feature forest.");
+    }
+    int version = header.getInt();
+    if (version != ForestWriter.VERSION) {
+      close();
+      throw new IOException("Error reading file: " + forest + " has forest version " + version
+              + ", expected " + ForestWriter.VERSION + ". Create the forest again.");
+    }
+    ByteBuffer footer = ByteBuffer.allocate(16);
+    readFully(footer, size - 16);
+    long indexOffset = footer.getLong();
+    int numInstances = footer.getInt();
+    if (footer.getInt() != ForestWriter.MAGIC) {
+      close();
+      throw new IOException("Error reading file: " + forest + " is not a feature forest.");
+    }
+
+    ByteBuffer index = ByteBuffer.allocate((numInstances + 1) * 8);
+    readFully(index, indexOffset);
+    offsets = new long[numInstances + 1];
+    for (int i = 0; i < offsets.length; i++) {
+      offsets[i] = index.getLong();
+    }
+  }
+
+  public int numInstances() {
+    return offsets.length - 1;
+  }
+
+  /**
+   * Go back to the first instance.
+   */
+  public void rewind() {
+    current = -1;
+  }
+
+  /**
+   * Move to the start of the next instance.
+   *
+   * @throws IOException
+   *           if the previous instance was not read completely.
+   */
+  public void nextInstance() throws IOException {
+    seek(current + 1);
+  }
+
+  /**
+   * Move to the start of the given instance, so that shards of the forest can be read
+   * independently.
+   *
+   * @throws IOException
+   *           if the previous instance was not read completely.
+   */
+  public void seek(int instance) throws IOException {
+    if (current >= 0 && chunkStart + buffer.position() != offsets[current + 1]) {
+      throw new IOException("Error reading file: instance " + current + " ends at "
+              + (chunkStart + buffer.position()) + " instead of " + offsets[current + 1]);
+    }
+    if (instance < 0 || instance >= numInstances()) {
+      throw new IOException("Error reading file: no instance " + instance);
+    }
+    current = instance;
+    long start = offsets[instance];
+    long end = offsets[instance + 1];
+    if (buffer == null || start < chunkStart || end > chunkEnd) {
+      long length = Math.min(offsets[numInstances()] - start, MAX_CHUNK);
+      if (end - start > length) {
+        throw new IOException("Error reading file: instance " + instance + " is larger than "
+                + MAX_CHUNK + " bytes.");
+      }
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, start, length);
+      chunkStart = start;
+      chunkEnd = start + length;
+    }
+    buffer.position((int) (start - chunkStart));
+  }
+
+  /**
+   * Read one block of feature keys.
+   */
+  public int[] readKeys() {
+    int[] keys = new int[readVarint()];
+    int prev = 0;
+    for (int i = 0; i < keys.length; i++) {
+      prev += readZigZag();
+      keys[i] = prev;
+    }
+    return keys;
+  }
+
+  /**
+   * Skip one block of feature keys without decoding it.
+   */
+  public void skipKeys() {
+    for (int n = readVarint(); n > 0; n--) {
+      while ((buffer.get() & 0x80) != 0) {
+      }
+    }
+  }
+
+  /**
+   * Read the instance written by {@link ForestWriter#writeInstance(DependencyInstance)}.
+   */
+  public DependencyInstance readInstance() throws IOException {
+    DependencyInstance instance = new DependencyInstance();
+    instance.forms = readStrings();
+    instance.lemmas = readStrings();
+    instance.cpostags = readStrings();
+    instance.postags = readStrings();
+    instance.heads = readInts();
+    instance.deprels = readStrings();
+    instance.actParseTree = readString();
+
+    int numFeats = readVarint() - 1;
+    if (numFeats >= 0) {
+      instance.feats = new String[numFeats][];
+      for (int i = 0; i < numFeats; i++) {
+        instance.feats[i] = readStrings();
+      }
+    }
+
+    int numRelFeats = readVarint() - 1;
+    if (numRelFeats >= 0) {
+      instance.relFeats = new RelationalFeature[numRelFeats];
+      for (int i = 0; i < numRelFeats; i++) {
+        String name = readString();
+        String[][] values = new String[readVarint()][];
+        for (int j = 0; j < values.length; j++) {
+          values[j] = readStrings();
+        }
+        instance.relFeats[i] = new RelationalFeature(name, values);
+      }
+    }
+    return instance;
+  }
+
+  /**
+   * Close the file. The mapped chunk is not unmapped explicitly, Java has no public API for that;
+   * it is released when the buffer is garbage collected, until then the file may not be deletable
+   * on some platforms.
+   */
+  public void close() throws IOException {
+    buffer = null;
+    file.close();
+  }
+
+  private String[] readStrings() throws IOException {
+    int length = readVarint() - 1;
+    if (length < 0) {
+      return null;
+    }
+    String[] strings = new String[length];
+    for (int i = 0; i < length; i++) {
+      strings[i] = readString();
+    }
+    return strings;
+  }
+
+  private int[] readInts() {
+    int length = readVarint() - 1;
+    if (length < 0) {
+      return null;
+    }
+    int[] ints = new int[length];
+    for (int i = 0; i < length; i++) {
+      ints[i] = readZigZag();
+    }
+    return ints;
+  }
+
+  private String readString() throws IOException {
+    int length = readVarint() - 1;
+    if (length < 0) {
+      return null;
+    }
+    byte[] bytes = new byte[length];
+    buffer.get(bytes);
+    return new String(bytes, "UTF-8");
+  }
+
+  private int readZigZag() {
+    int value = readVarint();
+    return (value >>> 1) ^ -(value & 1);
+  }
+
+  private int readVarint() {
+    int b = buffer.get();
+    int value = b & 0x7f;
+    for (int shift = 7; (b & 0x80) != 0; shift += 7) {
+      b = buffer.get();
+      value |= (b & 0x7f) << shift;
+    }
+    return value;
+  }
+
+  private void readFully(ByteBuffer dst, long position) throws IOException {
+    while (dst.hasRemaining()) {
+      if (channel.read(dst, position + dst.position()) < 0) {
+        throw new IOException("Error reading file: unexpected end of feature forest.");
+      }
+    }
+    dst.flip();
+  }
+}
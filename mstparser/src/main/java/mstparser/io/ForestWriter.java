@@ -0,0 +1,200 @@
+package mstparser.io;
+
+import gnu.trove.TLongArrayList;
+
+import java.io.BufferedOutputStream;
+import java.io.Closeable;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import mstparser.DependencyInstance;
+import mstparser.RelationalFeature;
+
+/**
+ * Writes the training feature forest in a compact binary format.
+ *
+ * <p>
+ * Every cell of an instance is written as a length-prefixed block of delta-encoded varint feature
+ * keys. Keys keep their original order, so scores are summed exactly as before and training
+ * results do not change with the forest format. The first order cells and the gold feature vector
+ * of an instance are followed by the instance itself and then by any higher order cells, so that
+ * a reader knows the gold tree before it reaches those. After the last instance an index with the
+ * byte offset of every instance is appended, so that {@link ForestReader} can map the file and
+ * check instance boundaries without any per-cell markers. The trip forest of a second order model
+ * with head pruning has the same layout, but its instances only consist of blocks, see
+ * {@link mstparser.DependencyPipe2O#createTripForest}.
+ *
+ * <pre>
+ * file     := MAGIC VERSION instance* index footer
+ * instance := block* goldBlock instanceData block*
+ * block    := varint(n) zigzag(key_0) zigzag(key_1 - key_0) ... zigzag(key_n-1 - key_n-2)
+ * index    := int64(offset_0) ... int64(offset_numInstances)
+ * footer   := int64(indexOffset) int32(numInstances) MAGIC
+ * </pre>
+ *
+ * @see mstparser.io.ForestReader
+ */
+public class ForestWriter implements Closeable {
+
+  static final int MAGIC = 0x4d535446; // "MSTF"
+
+  static final int VERSION = 2;
+
+  private final OutputStream out;
+
+  private final TLongArrayList offsets = new TLongArrayList();
+
+  private long position = 0;
+
+  private boolean inInstance = false;
+
+  public ForestWriter(File file) throws IOException {
+    out = new BufferedOutputStream(new FileOutputStream(file), 1 << 16);
+    writeInt(MAGIC);
+    writeInt(VERSION);
+  }
+
+  /**
+   * Mark the start of a new instance. All blocks written until the next call belong to it.
+   */
+  public void startInstance() {
+    offsets.add(position);
+    inInstance = true;
+  }
+
+  /**
+   * Write one block of feature keys.
+   */
+  public void writeKeys(int[] keys) throws IOException {
+    writeVarint(keys.length);
+    int prev = 0;
+    for (int key : keys) {
+      writeZigZag(key - prev);
+      prev = key;
+    }
+  }
+
+  /**
+   * Write the fields of the instance needed during training. The feature vector of the instance
+   * is not included, write it with {@link #writeKeys(int[])}.
+   */
+  public void writeInstance(DependencyInstance instance) throws IOException {
+    writeStrings(instance.forms);
+    writeStrings(instance.lemmas);
+    writeStrings(instance.cpostags);
+    writeStrings(instance.postags);
+    writeInts(instance.heads);
+    writeStrings(instance.deprels);
+    writeString(instance.actParseTree);
+
+    if (instance.feats == null) {
+      writeVarint(0);
+    } else {
+      writeVarint(instance.feats.length + 1);
+      for (String[] feat : instance.feats) {
+        writeStrings(feat);
+      }
+    }
+
+    if (instance.relFeats == null) {
+      writeVarint(0);
+    } else {
+      writeVarint(instance.relFeats.length + 1);
+      for (RelationalFeature relFeat : instance.relFeats) {
+        writeString(relFeat.name);
+        writeVarint(relFeat.values.length);
+        for (String[] values : relFeat.values) {
+          writeStrings(values);
+        }
+      }
+    }
+  }
+
+  public int numInstances() {
+    return offsets.size();
+  }
+
+  /**
+   * Write the instance index and footer, and close the file.
+   */
+  public void close() throws IOException {
+    if (inInstance) {
+      // The end of the last instance is also stored, so its length is known to the reader.
+      offsets.add(position);
+      inInstance = false;
+    }
+    if (offsets.size() == 0) {
+      offsets.add(position);
+    }
+    long indexOffset = position;
+    for (int i = 0; i < offsets.size(); i++) {
+      writeLong(offsets.get(i));
+    }
+    writeLong(indexOffset);
+    writeInt(offsets.size() - 1);
+    writeInt(MAGIC);
+    out.close();
+  }
+
+  private void writeStrings(String[] strings) throws IOException {
+    if (strings == null) {
+      writeVarint(0);
+      return;
+    }
+    writeVarint(strings.length + 1);
+    for (String s : strings) {
+      writeString(s);
+    }
+  }
+
+  private void writeInts(int[] ints) throws IOException {
+    if (ints == null) {
+      writeVarint(0);
+      return;
+    }
+    writeVarint(ints.length + 1);
+    for (int i : ints) {
+      writeZigZag(i);
+    }
+  }
+
+  private void writeString(String s) throws IOException {
+    if (s == null) {
+      writeVarint(0);
+      return;
+    }
+    byte[] bytes = s.getBytes("UTF-8");
+    writeVarint(bytes.length + 1);
+    out.write(bytes);
+    position += bytes.length;
+  }
+
+  private void writeZigZag(int value) throws IOException {
+    writeVarint((value << 1) ^ (value >> 31));
+  }
+
+  private void writeVarint(int value) throws IOException {
+    while ((value & ~0x7f) != 0) {
+      out.write((value & 0x7f) | 0x80);
+      value >>>= 7;
+      position++;
+    }
+    out.write(value);
+    position++;
+  }
+
+  private void writeInt(int value) throws IOException {
+    out.write(value >>> 24);
+    out.write(value >>> 16);
+    out.write(value >>> 8);
+    out.write(value);
+    position += 4;
+  }
+
+  private void writeLong(long value) throws IOException {
+    writeInt((int) (value >>> 32));
+    writeInt((int) value);
+  }
+}